@@ -1,7 +1,16 @@
 import enums.AccountStatus;
+import enums.ExecutionLane;
+import enums.LimitType;
+import enums.OverflowPolicy;
+import enums.PaymentEventType;
+import enums.RejectionReason;
 import enums.TransactionStatus;
+import events.PaymentEventBus;
+import events.WaitStrategy;
 import exception.IdempotencyException;
+import exception.LimitExceededException;
 import lock.LockManager;
+import models.BalanceSnapshot;
 import models.Bank;
 import models.BankAccount;
 import models.Transaction;
@@ -11,13 +20,18 @@ import repositoryimpl.InMemoryBankAccountRepository;
 import repositoryimpl.InMemoryBankRepository;
 import repositoryimpl.InMemoryTransactionRepository;
 import repositoryimpl.InMemoryUserRepository;
+import repositoryimpl.TransactionArchiveCompactor;
+import scheduling.SimulatedScheduler;
 import service.*;
 
 import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.*;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 /**
  * Demo / test harness that runs multiple scenarios against the no-framework
@@ -33,40 +47,68 @@ public class FlipkartUPI {
         InMemoryTransactionRepository txnRepo = new InMemoryTransactionRepository();
 
         // PSP clients with different behaviors
-        MockPspClient pspDefault = new MockPspClient(0.6, 0.3);   // normal-ish
-        MockPspClient pspAlwaysPending = new MockPspClient(0.0, 1.0); // always pending
-        MockPspClient pspAlwaysFail = new MockPspClient(0.0, 0.0);    // always fail
+        MockPspClient pspDefault = new MockPspClient("psp-default", 0.6, 0.3);   // normal-ish
+        MockPspClient pspAlwaysPending = new MockPspClient("psp-pending", 0.0, 1.0); // always pending
+        MockPspClient pspAlwaysFail = new MockPspClient("psp-fail", 0.0, 0.0);    // always fail
 
-        // Bank health registry
-        BankHealthRegistry bankHealthRegistry = new InMemoryBankHealthRegistry();
+        // Bank health registry (circuit breaker fed by PSP outcomes; markDown/markUp still work)
+        BankHealthRegistry bankHealthRegistry = new AdaptiveBankHealthRegistry();
+
+        // State-change / balance event stream; one consumer counts events by type, a LedgerAuditor checks the ledger
+        PaymentEventBus events = new PaymentEventBus(4, 1024, OverflowPolicy.BLOCK);
+        long[] eventCounts = new long[PaymentEventType.values().length];
+        events.subscribe("counter", (e, seq, endOfBatch) -> eventCounts[e.type.ordinal()]++, WaitStrategy.parking(Duration.ofMillis(1)));
 
         // services
         UserService userService = new UserService(userRepo);
         BankService bankService = new BankService(bankRepo);
-        BankAccountService acctService = new BankAccountService(acctRepo, userRepo, lockManager);
+        BankAccountService acctService = new BankAccountService(acctRepo, userRepo, lockManager, events);
+        LedgerAuditor auditor = new LedgerAuditor(acctService, txnRepo, events);
+        events.start();
+        auditor.start();
+
+        // Shared executor for async PSP calls across services; checkout, reconciler re-initiations and bulk runs get their own lanes
+        PriorityLaneExecutor asyncExecutor = new PriorityLaneExecutor("psp-async", 8);
+        LaneExecutor pspLanes = asyncExecutor; // both an ExecutorService and a LaneExecutor: the services take it as the latter
+
+        // Admission control for the default service: in-flight budget, payer/bank token buckets, load shedding
+        AdmissionController admission = new AdmissionController(1_000, 5, 10, 500, 1_000, Duration.ofMillis(500));
+
+        // Per-user limits for the default service: Rs 10,000 and 20 payments a day, 3 payments a minute
+        LimitsEngine limits = new LimitsEngine(new LimitsEngine.Limits(10_000_00L, 20, 3), LimitsEngine.Limits.none());
 
-        // Shared executor for async PSP calls across services
-        ExecutorService asyncExecutor = Executors.newFixedThreadPool(8);
+        // Live TPS / outcome ratios / volume per bank and per PSP, shared by all services
+        PaymentAnalytics analytics = new PaymentAnalytics();
+        analytics.start();
 
         // Create multiple TransactionService instances using different PSP clients
         TransactionService txnServiceDefault = new TransactionService(
-                txnRepo, acctRepo, acctService, pspDefault, asyncExecutor, lockManager, bankHealthRegistry);
+                txnRepo, acctRepo, acctService, pspDefault, pspLanes, lockManager, bankHealthRegistry,
+                new TransactionService.Options().admission(admission).events(events).limits(limits).analytics(analytics));
 
         TransactionService txnServicePending = new TransactionService(
-                txnRepo, acctRepo, acctService, pspAlwaysPending, asyncExecutor, lockManager, bankHealthRegistry);
+                txnRepo, acctRepo, acctService, pspAlwaysPending, pspLanes, lockManager, bankHealthRegistry,
+                new TransactionService.Options().events(events).analytics(analytics));
 
         TransactionService txnServiceFail = new TransactionService(
-                txnRepo, acctRepo, acctService, pspAlwaysFail, asyncExecutor, lockManager, bankHealthRegistry);
+                txnRepo, acctRepo, acctService, pspAlwaysFail, pspLanes, lockManager, bankHealthRegistry,
+                new TransactionService.Options().events(events).analytics(analytics));
 
-        // Reconcilers (one main reconciler that uses txnServiceDefault and another for pending service)
-        ReconciliationService reconcilerDefault = new ReconciliationService(txnServiceDefault, txnRepo);
-        ReconciliationService reconcilerPending = new ReconciliationService(txnServicePending, txnRepo);
-        ReconciliationService reconcilerFail = new ReconciliationService(txnServiceFail, txnRepo);
+        // Reconcilers (one main reconciler that uses txnServiceDefault and another for pending service).
+        // Their runs are driven by a simulated scheduler, so the demo steps them forward instead of sleeping for them.
+        SimulatedScheduler reconcileTime = new SimulatedScheduler(Instant.now());
+        ReconciliationService reconcilerDefault = newReconciler(txnServiceDefault, txnRepo, reconcileTime);
+        ReconciliationService reconcilerPending = newReconciler(txnServicePending, txnRepo, reconcileTime);
+        ReconciliationService reconcilerFail = newReconciler(txnServiceFail, txnRepo, reconcileTime);
 
         reconcilerDefault.start();
         reconcilerPending.start();
         reconcilerFail.start();
 
+        // Moves finalized transactions into the columnar archive; queries below see both tiers
+        TransactionArchiveCompactor compactor = new TransactionArchiveCompactor(txnRepo, Duration.ofSeconds(5), Duration.ofSeconds(5));
+        compactor.start();
+
         // ---------- Setup initial data ----------
         User alice = userService.onboardUser("Alice", "99990001");
         User bob = userService.onboardUser("Bob", "99990002");
@@ -118,8 +160,9 @@ public class FlipkartUPI {
             System.out.println("Error creating pending txn: " + ex.getMessage());
         }
 
-        // wait longer — reconciler will query PSP and resolve
-        Thread.sleep(8000);
+        // let the async PSP call land, then 10 s of reconciler time: it queries the PSP and resolves
+        Thread.sleep(500);
+        reconcileTime.runFor(Duration.ofSeconds(10));
         System.out.println("After reconciliation attempt:");
         printAccounts(acctRepo);
         printTxnSummary(txnRepo);
@@ -173,25 +216,24 @@ public class FlipkartUPI {
         concExec.submit(rtask);
         concExec.shutdown();
         concExec.awaitTermination(10, TimeUnit.SECONDS);
-        // allow background tasks and reconciler
-        Thread.sleep(6000);
+        // allow background tasks, a reconciler run, and any PSP call it re-initiated
+        Thread.sleep(500);
+        reconcileTime.runFor(Duration.ofSeconds(10));
+        Thread.sleep(500);
         printAccounts(acctRepo);
         printTxnSummary(txnRepo);
 
         // ---------- Scenario 7: Payment to inactive account ----------
         System.out.println("\nSCENARIO 7: Payment to an inactive destination account (mark Bob's account inactive)");
         // set Bob account inactive
-        BankAccount bobAcctObj = acctRepo.findById(bobAcct.id).orElseThrow();
-        bobAcctObj.status = AccountStatus.INACTIVE;
-        acctRepo.update(bobAcctObj);
+        acctService.changeStatus(bobAcct.id, AccountStatus.INACTIVE);
         try {
             txnServiceDefault.createPayment("idem-inactive-1", aliceAcct.id, bobAcct.id, bob.phone, new BigDecimal("5.00"));
         } catch (Exception ex) {
             System.out.println("Expected failure (destination inactive): " + ex.getMessage());
         }
         // reactivate for cleanup
-        bobAcctObj.status = AccountStatus.ACTIVE;
-        acctRepo.update(bobAcctObj);
+        acctService.changeStatus(bobAcct.id, AccountStatus.ACTIVE);
 
         // ---------- Scenario 8: PSP failure -> should release reserved funds and mark txn FAILED ----------
         System.out.println("\nSCENARIO 8: PSP failure (force) -> txn should fail and reserved funds released");
@@ -205,25 +247,73 @@ public class FlipkartUPI {
         printAccounts(acctRepo);
         printTxnSummary(txnRepo);
 
+        // ---------- Scenario 9: Velocity limit -> payments over 3 a minute are refused before reserving ----------
+        System.out.println("\nSCENARIO 9: Velocity limit (Carol sends 1.00 four times in a row, limit 3 per minute)");
+        for (int i = 1; i <= 4; i++) {
+            try {
+                Transaction tv = txnServiceDefault.createPayment("idem-velocity-" + i, carolAcct.id, null, "ext-velocity", new BigDecimal("1.00"));
+                System.out.println("  payment " + i + " created: " + tv.id);
+            } catch (LimitExceededException ex) {
+                System.out.println("  payment " + i + " refused (" + ex.limit + "): " + ex.getMessage());
+            }
+        }
+        Thread.sleep(2000);
+
         // ---------- Final summary ----------
         System.out.println("\n=== FINAL ACCOUNTS & TRANSACTIONS ===");
         printAccounts(acctRepo);
         printTxnSummary(txnRepo);
+        System.out.println("Admission: admitted=" + admission.getAdmittedCount()
+                + " rejected=" + Arrays.stream(RejectionReason.values())
+                        .map(r -> r + ":" + admission.getRejectedCount(r)).collect(Collectors.joining(",")));
+        System.out.println("Limits: accepted=" + limits.getAcceptedCount()
+                + " rejected=" + Arrays.stream(LimitType.values())
+                        .map(l -> l + ":" + limits.getRejectedCount(l)).collect(Collectors.joining(",")));
+
+        System.out.println("Analytics (last 1m): overall " + analytics.overall(Duration.ofMinutes(1)));
+        analytics.byPsp(Duration.ofMinutes(1)).forEach((psp, st) -> System.out.println("  psp " + psp + ": " + st));
+        analytics.byBank(Duration.ofMinutes(1)).forEach((bank, st) -> System.out.println("  bank " + bank + ": " + st));
 
         // shutdown
+        analytics.stop();
         reconcilerDefault.stop();
         reconcilerPending.stop();
         reconcilerFail.stop();
+        compactor.stop();
         asyncExecutor.shutdown();
         asyncExecutor.awaitTermination(5, TimeUnit.SECONDS);
+        System.out.println("PSP executor lanes: " + Arrays.stream(ExecutionLane.values())
+                .map(l -> String.format("%s completed=%d wait p99=%.2fms", l, asyncExecutor.getCompleted(l), asyncExecutor.getQueueWaitMillis(l, 0.99)))
+                .collect(Collectors.joining(", ")));
+        System.out.println("Optimistic account writes: commits=" + acctRepo.getOptimisticCommits()
+                + " conflicts=" + acctRepo.getOptimisticConflicts());
+        events.stop(); // drains the ring before returning
+        auditor.audit();
+        auditor.stop();
+        System.out.println("Ledger audit: events=" + auditor.getEventsSeen() + " accountsChecked=" + auditor.getAccountsChecked()
+                + " chainBreaks=" + auditor.getChainBreaks() + " drifting=" + auditor.getDrifting());
+        System.out.println("Events: published=" + events.published() + " dropped=" + events.dropped() + " "
+                + Arrays.stream(PaymentEventType.values())
+                        .map(t -> t + ":" + eventCounts[t.ordinal()]).collect(Collectors.joining(",")));
+    }
+
+    private static ReconciliationService newReconciler(TransactionService txnService, InMemoryTransactionRepository txnRepo,
+                                                       SimulatedScheduler time) {
+        return new ReconciliationService(txnService, txnRepo, time, Duration.ofSeconds(5), Duration.ofSeconds(10),
+                Duration.ofSeconds(120), 5, Duration.ZERO);
     }
 
     private static void printAccounts(InMemoryBankAccountRepository acctRepo) {
-        System.out.println("Accounts:");
-        acctRepo.listAll().forEach(a ->
-                System.out.println(String.format("  acct=%s user=%s bank=%s balance=%s reserved=%s status=%s",
-                        a.id, a.userId, a.bankId, a.getBalance(), a.getReserved(), a.status))
-        );
+        // one consistent view while async payments keep running; status is not versioned, read live
+        try (BalanceSnapshot snap = acctRepo.snapshot()) {
+            System.out.println("Accounts (snapshot @" + snap.sequence() + "):");
+            snap.balances().forEach(b ->
+                    System.out.println(String.format("  acct=%s user=%s bank=%s balance=%s reserved=%s status=%s",
+                            b.accountId, b.userId, b.bankId, b.balance, b.reserved,
+                            acctRepo.findById(b.accountId).map(a -> a.status).orElse(null)))
+            );
+            System.out.println("  total=" + snap.totalBalance() + " in transit=" + snap.inTransit() + " by bank=" + snap.totalsByBank());
+        }
     }
 
     private static void printTxnSummary(InMemoryTransactionRepository txnRepo) {
@@ -0,0 +1,106 @@
+package bench;
+
+import lock.LockManager;
+import models.Bank;
+import models.BankAccount;
+import models.User;
+import repositoryimpl.InMemoryBankAccountRepository;
+import repositoryimpl.InMemoryBankRepository;
+import repositoryimpl.InMemoryUserRepository;
+import service.AccountExecutor;
+import service.BankAccountService;
+import service.LockingAccountExecutor;
+import service.PartitionedAccountExecutor;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Transfers (reserve on the payer, then settle + credit) between random accounts:
+ * - locking: BankAccountService over LockManager locks, called from client threads
+ * - partitioned K (sync): the same service calls over K single-writer partitions
+ * - partitioned K (async): clients pipeline transfers as chained messages and only bound how
+ *   many are in flight, the way a partition-aware caller would use it
+ * Checks afterwards that money was conserved and nothing is left reserved.
+ *
+ * Usage: AccountPartitionBenchmark [transfers per client] [clients] [accounts]
+ */
+public class AccountPartitionBenchmark {
+    private static final BigDecimal AMOUNT = new BigDecimal("1.00");
+
+    public static void main(String[] args) throws Exception {
+        int perClient = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int clients = args.length > 1 ? Integer.parseInt(args[1]) : Math.max(2, Runtime.getRuntime().availableProcessors());
+        int accounts = args.length > 2 ? Integer.parseInt(args[2]) : 10_000;
+        System.out.println(String.format("clients=%d transfers/client=%,d accounts=%,d cores=%d",
+                clients, perClient, accounts, Runtime.getRuntime().availableProcessors()));
+
+        run("locking", 0, false, perClient, clients, accounts);
+        for (int k = 1; k <= 8; k *= 2) {
+            run("partitioned K=" + k + " sync", k, false, perClient, clients, accounts);
+            run("partitioned K=" + k + " async", k, true, perClient, clients, accounts);
+        }
+    }
+
+    private static void run(String label, int partitions, boolean async, int perClient, int clients, int accountCount) throws Exception {
+        LockManager lockManager = new LockManager();
+        InMemoryUserRepository userRepo = new InMemoryUserRepository();
+        InMemoryBankRepository bankRepo = new InMemoryBankRepository();
+        InMemoryBankAccountRepository acctRepo = new InMemoryBankAccountRepository(userRepo, lockManager);
+        PartitionedAccountExecutor partitioned = partitions > 0 ? new PartitionedAccountExecutor(acctRepo, partitions) : null;
+        AccountExecutor executor = partitioned != null ? partitioned : new LockingAccountExecutor(acctRepo, lockManager);
+        BankAccountService acctService = new BankAccountService(acctRepo, userRepo, lockManager, null, executor);
+
+        Bank bank = bankRepo.createBank("Bench Bank", "BNB");
+        UUID[] ids = new UUID[accountCount];
+        for (int i = 0; i < accountCount; i++) {
+            User u = userRepo.createUser("u" + i, "8" + String.format("%09d", i));
+            ids[i] = acctService.linkBankAccount(u.id, bank.id, "ACC" + i, new BigDecimal("1000000.00")).id;
+        }
+        BigDecimal before = total(acctRepo);
+
+        List<Thread> threads = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int c = 0; c < clients; c++) {
+            SplittableRandom rnd = new SplittableRandom(c);
+            Thread t = new Thread(() -> {
+                Semaphore inFlight = new Semaphore(256);
+                for (int i = 0; i < perClient; i++) {
+                    UUID from = ids[rnd.nextInt(ids.length)], to = ids[rnd.nextInt(ids.length)];
+                    if (!async) {
+                        acctService.reserve(from, AMOUNT);
+                        acctService.settleAndCredit(from, to, AMOUNT);
+                        continue;
+                    }
+                    inFlight.acquireUninterruptibly();
+                    executor.submit(from, a -> { a.reserveOwned(AMOUNT); a.settleOwned(AMOUNT); })
+                            .thenCompose(v -> executor.submit(to, a -> a.creditOwned(AMOUNT)))
+                            .whenComplete((v, e) -> inFlight.release());
+                }
+                inFlight.acquireUninterruptibly(256); // drain
+            });
+            threads.add(t);
+            t.start();
+        }
+        for (Thread t : threads) t.join();
+        long elapsed = System.nanoTime() - start;
+        if (partitioned != null) partitioned.stop();
+
+        BigDecimal after = total(acctRepo);
+        boolean reservedLeft = acctRepo.streamAll().anyMatch(a -> a.getReserved().signum() != 0);
+        if (after.compareTo(before) != 0 || reservedLeft) {
+            throw new IllegalStateException(label + ": balances not conserved (" + before + " -> " + after + ", reserved left " + reservedLeft + ")");
+        }
+        long transfers = (long) perClient * clients;
+        System.out.println(String.format("  %-26s %,10.0f transfers/s  (%,d ms)", label, transfers / (elapsed / 1e9), elapsed / 1_000_000));
+    }
+
+    private static BigDecimal total(InMemoryBankAccountRepository acctRepo) {
+        return acctRepo.streamAll().map(BankAccount::getBalance).reduce(BigDecimal.ZERO, BigDecimal::add);
+    }
+}
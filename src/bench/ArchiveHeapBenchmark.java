@@ -0,0 +1,89 @@
+package bench;
+
+import exception.IdempotencyException;
+import models.Transaction;
+import repositoryimpl.InMemoryTransactionRepository;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * Heap per transaction with everything in the hot map vs after moving it into the columnar
+ * archive, plus findById latency for both tiers. Run with enough heap, e.g. -Xmx4g.
+ *
+ * Usage: ArchiveHeapBenchmark [transactions] [accounts]
+ */
+public class ArchiveHeapBenchmark {
+    public static void main(String[] args) throws Exception {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int accountCount = args.length > 1 ? Integer.parseInt(args[1]) : 10_000;
+        Random rnd = new Random(7);
+
+        UUID[] accounts = new UUID[accountCount];
+        String[] phones = new String[accountCount];
+        for (int i = 0; i < accountCount; i++) {
+            accounts[i] = UUID.randomUUID();
+            phones[i] = "9" + String.format("%09d", i);
+        }
+        UUID[] sample = new UUID[10_000];
+
+        long base = usedHeap();
+        InMemoryTransactionRepository repo = new InMemoryTransactionRepository();
+        for (int i = 0; i < n; i++) {
+            int to = rnd.nextInt(accountCount);
+            Transaction t = new Transaction(UUID.randomUUID(), "idem-" + i, accounts[rnd.nextInt(accountCount)],
+                    accounts[to], phones[to], BigDecimal.valueOf(100 + rnd.nextInt(100_000), 2));
+            save(repo, t);
+            if (rnd.nextInt(10) == 0) t.markFailed("PSP_FAILURE");
+            else t.markSuccess(UUID.randomUUID().toString());
+            if (i < sample.length) sample[i] = t.id;
+        }
+        long hot = usedHeap() - base;
+        double hotLookupNs = lookupNanos(repo, sample);
+
+        Thread.sleep(5);
+        long start = System.nanoTime();
+        int moved = repo.compactFinalized(Duration.ZERO);
+        long compactMs = (System.nanoTime() - start) / 1_000_000;
+        long archived = usedHeap() - base;
+        double archivedLookupNs = lookupNanos(repo, sample);
+
+        System.out.println(String.format("transactions=%,d moved=%,d compaction=%d ms", n, moved, compactMs));
+        System.out.println(String.format("hot map : %,d bytes total, %.0f bytes/txn, findById %.0f ns", hot, (double) hot / n, hotLookupNs));
+        System.out.println(String.format("archive : %,d bytes total, %.0f bytes/txn, findById %.0f ns", archived, (double) archived / n, archivedLookupNs));
+        System.out.println("(both include the idempotency index, which stays on heap)");
+        if (repo.findById(sample[0]).isEmpty()) throw new IllegalStateException("archived txn not found");
+    }
+
+    private static void save(InMemoryTransactionRepository repo, Transaction t) {
+        try {
+            repo.saveNew(t);
+        } catch (IdempotencyException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static double lookupNanos(InMemoryTransactionRepository repo, UUID[] ids) {
+        long sink = 0;
+        for (int warm = 0; warm < 5; warm++) for (UUID id : ids) sink += repo.findById(id).get().amount.scale();
+        int rounds = 20;
+        long start = System.nanoTime();
+        for (int r = 0; r < rounds; r++) for (UUID id : ids) sink += repo.findById(id).get().amount.scale();
+        long elapsed = System.nanoTime() - start;
+        if (sink == 42) System.out.print("");
+        return (double) elapsed / (rounds * ids.length);
+    }
+
+    static long usedHeap() throws InterruptedException {
+        Runtime rt = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            Thread.sleep(50);
+            used = Math.min(used, rt.totalMemory() - rt.freeMemory());
+        }
+        return used;
+    }
+}
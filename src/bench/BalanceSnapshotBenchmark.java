@@ -0,0 +1,107 @@
+package bench;
+
+import lock.LockManager;
+import models.BalanceSnapshot;
+import models.Bank;
+import models.BankAccount;
+import models.User;
+import repositoryimpl.InMemoryBankAccountRepository;
+import repositoryimpl.InMemoryBankRepository;
+import repositoryimpl.InMemoryUserRepository;
+import service.BankAccountService;
+
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Internal transfers between random accounts while a reporter keeps computing the total money in
+ * the system:
+ * - none: transfers only, the baseline
+ * - live reads: the reporter sums getBalance() account by account (the account monitor)
+ * - snapshots: the reporter sums a BalanceSnapshot (balances + in transit)
+ * Reports transfer throughput, reports/s, how many reports got a wrong total and the reporter's
+ * CPU time per report.
+ *
+ * Usage: BalanceSnapshotBenchmark [transfers per thread] [threads] [accounts]
+ */
+public class BalanceSnapshotBenchmark {
+    private static final BigDecimal AMOUNT = new BigDecimal("1.00");
+
+    public static void main(String[] args) throws Exception {
+        int perThread = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Math.max(2, Runtime.getRuntime().availableProcessors());
+        int accounts = args.length > 2 ? Integer.parseInt(args[2]) : 10_000;
+        System.out.println(String.format("threads=%d transfers/thread=%,d accounts=%,d cores=%d",
+                threads, perThread, accounts, Runtime.getRuntime().availableProcessors()));
+        for (int round = 0; round < 2; round++) {
+            run("none      ", 0, perThread, threads, accounts);
+            run("live reads", 1, perThread, threads, accounts);
+            run("snapshots ", 2, perThread, threads, accounts);
+        }
+    }
+
+    private static void run(String label, int reporter, int perThread, int threadCount, int accountCount) throws Exception {
+        LockManager lockManager = new LockManager();
+        InMemoryUserRepository userRepo = new InMemoryUserRepository();
+        InMemoryBankAccountRepository acctRepo = new InMemoryBankAccountRepository(userRepo, lockManager);
+        BankAccountService acctService = new BankAccountService(acctRepo, userRepo, lockManager);
+        Bank bank = new InMemoryBankRepository().createBank("Bench Bank", "BNB");
+        UUID[] ids = new UUID[accountCount];
+        for (int i = 0; i < accountCount; i++) {
+            User u = userRepo.createUser("u" + i, "8" + String.format("%09d", i));
+            ids[i] = acctService.linkBankAccount(u.id, bank.id, "ACC" + i, new BigDecimal("1000000.00")).id;
+        }
+        BigDecimal expected = new BigDecimal("1000000.00").multiply(BigDecimal.valueOf(accountCount));
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        long[] reports = new long[1], wrong = new long[1], cpu = new long[1];
+        Thread reporterThread = new Thread(() -> {
+            while (running.get()) {
+                BigDecimal total;
+                if (reporter == 1) {
+                    total = acctRepo.streamAll().map(BankAccount::getBalance).reduce(BigDecimal.ZERO, BigDecimal::add);
+                } else {
+                    try (BalanceSnapshot snap = acctService.snapshotBalances()) {
+                        total = snap.totalBalance().add(snap.inTransit());
+                    }
+                }
+                reports[0]++;
+                cpu[0] = ManagementFactory.getThreadMXBean().getCurrentThreadCpuTime();
+                if (total.compareTo(expected) != 0) wrong[0]++;
+            }
+        });
+        if (reporter > 0) reporterThread.start();
+
+        List<Thread> threads = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int t = 0; t < threadCount; t++) {
+            SplittableRandom rnd = new SplittableRandom(t);
+            Thread th = new Thread(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    UUID from = ids[rnd.nextInt(ids.length)], to = ids[rnd.nextInt(ids.length)];
+                    acctService.reserve(from, AMOUNT);
+                    acctService.settleAndCredit(from, to, AMOUNT);
+                }
+            });
+            threads.add(th);
+            th.start();
+        }
+        for (Thread th : threads) th.join();
+        long elapsed = System.nanoTime() - start;
+        running.set(false);
+        if (reporter > 0) reporterThread.join();
+
+        try (BalanceSnapshot snap = acctRepo.snapshot()) {
+            if (snap.totalBalance().compareTo(expected) != 0 || snap.inTransit().signum() != 0) {
+                throw new IllegalStateException(label + ": final snapshot " + snap.totalBalance() + " + " + snap.inTransit() + " != " + expected);
+            }
+        }
+        System.out.println(String.format("  %s %,10.0f transfers/s  reports %,d (%,.1f/s), wrong totals %,d, reporter cpu %,d us/report",
+                label, (double) perThread * threadCount / (elapsed / 1e9), reports[0], reports[0] / (elapsed / 1e9), wrong[0], cpu[0] / Math.max(1, reports[0]) / 1000));
+    }
+}
@@ -0,0 +1,126 @@
+package bench;
+
+import lock.LockManager;
+import models.Bank;
+import models.User;
+import repositoryimpl.BulkOnboardingLoader;
+import repositoryimpl.InMemoryBankAccountRepository;
+import repositoryimpl.InMemoryBankRepository;
+import repositoryimpl.InMemoryUserRepository;
+import service.BankAccountService;
+import service.BankService;
+import service.UserService;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+/**
+ * Onboarding a partner file of users with linked accounts (about 2 accounts per user, 1% of the
+ * lines repeating an earlier bank+account number, 0.1% malformed):
+ * - one by one: read line by line, UserService.onboardUser + BankAccountService.linkBankAccount
+ * - BulkOnboardingLoader: memory-mapped chunks parsed and inserted in parallel
+ * Both must end with the same users and accounts.
+ *
+ * Usage: BulkOnboardingBenchmark [lines] [banks]
+ */
+public class BulkOnboardingBenchmark {
+    public static void main(String[] args) throws IOException {
+        int lines = args.length > 0 ? Integer.parseInt(args[0]) : 2_000_000;
+        int banks = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        Path csv = Files.createTempFile("onboarding", ".csv");
+        try {
+            write(csv, lines, banks);
+            System.out.println(String.format("lines=%,d banks=%d file=%,d MB cores=%d",
+                    lines, banks, Files.size(csv) >> 20, Runtime.getRuntime().availableProcessors()));
+            long[] oneByOne = oneByOne(csv);
+            long[] bulk = bulk(csv);
+            if (oneByOne[1] != bulk[1] || oneByOne[2] != bulk[2]) {
+                throw new IllegalStateException("different results: users/accounts " + oneByOne[1] + "/" + oneByOne[2]
+                        + " vs " + bulk[1] + "/" + bulk[2]);
+            }
+        } finally {
+            Files.deleteIfExists(csv);
+        }
+    }
+
+    // phone,name,bankCode,accountNumber,initialBalance
+    private static void write(Path csv, int lines, int banks) throws IOException {
+        SplittableRandom rnd = new SplittableRandom(7);
+        try (BufferedWriter w = Files.newBufferedWriter(csv, StandardCharsets.UTF_8)) {
+            w.write("phone,name,bankCode,accountNumber,initialBalance\n");
+            for (int i = 0; i < lines; i++) {
+                if (rnd.nextInt(1000) == 0) {
+                    w.write("9" + i + ",broken line\n");
+                    continue;
+                }
+                int acct = rnd.nextInt(100) == 0 && i > 0 ? rnd.nextInt(i) : i; // 1%: an earlier account again
+                int user = acct / 2;
+                w.write(String.format("%d,User %d,BNK%02d,%012d,%d.%02d\n",
+                        9_000_000_000L + user, user, acct % banks, acct, rnd.nextInt(100_000), rnd.nextInt(100)));
+            }
+        }
+    }
+
+    private static long[] oneByOne(Path csv) throws IOException {
+        long base = usedHeap();
+        InMemoryUserRepository userRepo = new InMemoryUserRepository();
+        InMemoryBankRepository bankRepo = new InMemoryBankRepository();
+        InMemoryBankAccountRepository acctRepo = new InMemoryBankAccountRepository(userRepo, new LockManager());
+        UserService users = new UserService(userRepo);
+        BankService bankService = new BankService(bankRepo);
+        BankAccountService accounts = new BankAccountService(acctRepo, userRepo, new LockManager());
+        Map<String, Bank> banksByCode = new HashMap<>();
+
+        long rows = 0, rejected = 0;
+        long start = System.nanoTime();
+        try (BufferedReader r = Files.newBufferedReader(csv, StandardCharsets.UTF_8)) {
+            r.readLine(); // header
+            for (String line; (line = r.readLine()) != null; ) {
+                rows++;
+                String[] f = line.split(",");
+                if (f.length != 5) {
+                    rejected++;
+                    continue;
+                }
+                User u = users.onboardUser(f[1], f[0]);
+                Bank bank = banksByCode.computeIfAbsent(f[2], c -> bankService.registerBank(c, c));
+                accounts.linkBankAccount(u.id, bank.id, f[3], new BigDecimal(f[4]));
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        long userCount = userRepo.streamAll().count(), acctCount = acctRepo.streamAll().count();
+        System.out.println(String.format("  one by one  %,10.0f rows/s  (%,d ms) users=%,d accounts=%,d rejected=%,d  heap %.0f bytes/account",
+                rows / (elapsed / 1e9), elapsed / 1_000_000, userCount, acctCount, rejected, (double) (usedHeap() - base) / acctCount));
+        return new long[]{rows, userCount, acctCount};
+    }
+
+    private static long[] bulk(Path csv) throws IOException {
+        long base = usedHeap();
+        InMemoryUserRepository userRepo = new InMemoryUserRepository();
+        InMemoryBankRepository bankRepo = new InMemoryBankRepository();
+        InMemoryBankAccountRepository acctRepo = new InMemoryBankAccountRepository(userRepo, new LockManager());
+        BulkOnboardingLoader.Report report = new BulkOnboardingLoader(userRepo, bankRepo, acctRepo).load(csv);
+        long userCount = userRepo.streamAll().count(), acctCount = acctRepo.streamAll().count();
+        System.out.println(String.format("  bulk loader %,10.0f rows/s  (%,d ms) users=%,d accounts=%,d rejected=%,d  heap %.0f bytes/account  duplicates=%,d",
+                report.rowsPerSecond(), report.elapsedNanos / 1_000_000, userCount, acctCount, report.rejected,
+                (double) (usedHeap() - base) / acctCount, report.duplicateAccounts));
+        if (report.usersCreated != userCount || report.accountsCreated != acctCount) {
+            throw new IllegalStateException("report does not match the repositories: " + report);
+        }
+        return new long[]{report.rows, userCount, acctCount};
+    }
+
+    private static long usedHeap() {
+        Runtime rt = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) System.gc();
+        return rt.totalMemory() - rt.freeMemory();
+    }
+}
@@ -0,0 +1,86 @@
+package bench;
+
+import lock.LockManager;
+import models.BankAccount;
+import models.Bank;
+import models.User;
+import psp.MockPspClient;
+import repositoryimpl.InMemoryBankAccountRepository;
+import repositoryimpl.InMemoryBankRepository;
+import repositoryimpl.InMemoryTransactionRepository;
+import repositoryimpl.InMemoryUserRepository;
+import service.*;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares TransactionService.createPayments against the equivalent loop of createPayment calls.
+ * The PSP always succeeds instantly so the numbers reflect our own reserve / save / hand-off cost.
+ *
+ * Usage: BulkPaymentBenchmark [payments] [sourceAccounts] [rounds]
+ */
+public class BulkPaymentBenchmark {
+    public static void main(String[] args) throws Exception {
+        int payments = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        int sources = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+
+        System.out.println("payments=" + payments + " sources=" + sources);
+        for (int round = 1; round <= rounds; round++) {
+            System.out.println("round " + round);
+            run("loop", payments, sources, false);
+            run("bulk", payments, sources, true);
+        }
+    }
+
+    private static void run(String label, int payments, int sources, boolean bulk) throws Exception {
+        LockManager lockManager = new LockManager();
+        InMemoryUserRepository userRepo = new InMemoryUserRepository();
+        InMemoryBankRepository bankRepo = new InMemoryBankRepository();
+        InMemoryBankAccountRepository acctRepo = new InMemoryBankAccountRepository(userRepo, lockManager);
+        InMemoryTransactionRepository txnRepo = new InMemoryTransactionRepository();
+        BankAccountService acctService = new BankAccountService(acctRepo, userRepo, lockManager);
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(2, Runtime.getRuntime().availableProcessors()));
+        TransactionService txnService = new TransactionService(txnRepo, acctRepo, acctService,
+                new MockPspClient(1.0, 0.0), executor, lockManager, new InMemoryBankHealthRegistry());
+
+        Bank bank = bankRepo.createBank("Bench Bank", "BNB");
+        List<BankAccount> payers = new ArrayList<>();
+        for (int i = 0; i < sources; i++) {
+            User u = userRepo.createUser("payer-" + i, "80000" + String.format("%05d", i));
+            payers.add(acctService.linkBankAccount(u.id, bank.id, "ACC" + i, new BigDecimal("1000000000.00")));
+        }
+        User payee = userRepo.createUser("payee", "7000000000");
+        BankAccount payeeAcct = acctService.linkBankAccount(payee.id, bank.id, "PAYEE", BigDecimal.ZERO);
+
+        List<PaymentRequest> requests = new ArrayList<>(payments);
+        BigDecimal amount = new BigDecimal("10.00");
+        for (int i = 0; i < payments; i++) {
+            requests.add(new PaymentRequest(label + "-" + i, payers.get(i % sources).id, payeeAcct.id, payee.phone, amount));
+        }
+
+        long start = System.nanoTime();
+        if (bulk) {
+            txnService.createPayments(requests);
+        } else {
+            for (PaymentRequest r : requests) {
+                txnService.createPayment(r.idempotencyKey, r.fromAccountId, r.toAccountId, r.toIdentifier, r.amount);
+            }
+        }
+        long submitted = System.nanoTime();
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.MINUTES);
+        long done = System.nanoTime();
+
+        System.out.println(String.format("  %-4s accept=%,.0f/s  end-to-end=%,.0f/s  (accept %.0f ms, total %.0f ms)",
+                label,
+                payments / ((submitted - start) / 1e9),
+                payments / ((done - start) / 1e9),
+                (submitted - start) / 1e6, (done - start) / 1e6));
+    }
+}
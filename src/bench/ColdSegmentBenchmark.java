@@ -0,0 +1,120 @@
+package bench;
+
+import exception.IdempotencyException;
+import models.Transaction;
+import repositoryimpl.InMemoryTransactionRepository;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Cold-tier read latency: spill transactions to segment files, then time findById,
+ * findByIdempotencyKey and findByFromOrTo against the memory-mapped segments. The repository is
+ * then reopened on the same directory (a restart) and the same reads are checked and timed again.
+ *
+ * Usage: ColdSegmentBenchmark [transactions] [accounts] [spill batches]
+ */
+public class ColdSegmentBenchmark {
+    public static void main(String[] args) throws Exception {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int accountCount = args.length > 1 ? Integer.parseInt(args[1]) : 10_000;
+        int batches = args.length > 2 ? Integer.parseInt(args[2]) : 8;
+        Random rnd = new Random(7);
+        Path dir = Files.createTempDirectory("txn-segments");
+
+        UUID[] accounts = new UUID[accountCount];
+        for (int i = 0; i < accountCount; i++) accounts[i] = UUID.randomUUID();
+        UUID[] sampleIds = new UUID[10_000];
+        String[] sampleKeys = new String[sampleIds.length];
+
+        try {
+            InMemoryTransactionRepository repo = new InMemoryTransactionRepository(dir);
+            long spillNanos = 0;
+            int perBatch = (n + batches - 1) / batches;
+            for (int i = 0; i < n; i++) {
+                int to = rnd.nextInt(accountCount);
+                Transaction t = new Transaction(UUID.randomUUID(), "idem-" + i, accounts[rnd.nextInt(accountCount)],
+                        accounts[to], "9" + String.format("%09d", to), BigDecimal.valueOf(100 + rnd.nextInt(100_000), 2));
+                save(repo, t);
+                if (rnd.nextInt(10) == 0) t.markFailed("PSP_FAILURE");
+                else t.markSuccess(UUID.randomUUID().toString());
+                if (i < sampleIds.length) { sampleIds[i] = t.id; sampleKeys[i] = t.idempotencyKey; }
+                if ((i + 1) % perBatch == 0 || i == n - 1) {
+                    Thread.sleep(2);
+                    long start = System.nanoTime();
+                    repo.spillOlderThan(Duration.ZERO);
+                    spillNanos += System.nanoTime() - start;
+                }
+            }
+            int segmentsBefore = repo.coldSegmentCount();
+            long start = System.nanoTime();
+            int removed = repo.compactSegments(Integer.MAX_VALUE);
+            long compactMs = (System.nanoTime() - start) / 1_000_000;
+
+            System.out.println(String.format("transactions=%,d spilled=%,d hot=%,d archived=%,d spill=%d ms",
+                    n, repo.coldSize(), repo.hotSize(), repo.archivedSize(), spillNanos / 1_000_000));
+            System.out.println(String.format("segments %d -> %d after compaction (%d ms), %,d bytes on disk",
+                    segmentsBefore, segmentsBefore - removed, compactMs, diskBytes(dir)));
+            int perAccount = measure("cold", repo, sampleIds, sampleKeys, accounts);
+
+            // restart: nothing on heap, everything must come back from the segment files
+            repo = new InMemoryTransactionRepository(dir);
+            if (repo.coldSize() != n) throw new IllegalStateException("reopened with " + repo.coldSize() + " rows, expected " + n);
+            if (measure("reopened", repo, sampleIds, sampleKeys, accounts) != perAccount) {
+                throw new IllegalStateException("findByFromOrTo differs after restart");
+            }
+            try {
+                repo.saveNew(new Transaction(UUID.randomUUID(), sampleKeys[0], accounts[0], accounts[1], "9000000001", BigDecimal.ONE));
+                throw new IllegalStateException("spilled idempotency key accepted again");
+            } catch (IdempotencyException expected) {
+                // keys of spilled transactions are still enforced
+            }
+        } finally {
+            try (Stream<Path> files = Files.walk(dir)) {
+                files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+            }
+        }
+    }
+
+    // prints latencies; returns the total rows found by findByFromOrTo so runs can be compared
+    private static int measure(String label, InMemoryTransactionRepository repo, UUID[] ids, String[] keys, UUID[] accounts) {
+        double byId = nanosPerOp(ids.length, i -> { if (repo.findById(ids[i]).isEmpty()) throw new IllegalStateException("missing " + ids[i]); });
+        double byKey = nanosPerOp(keys.length, i -> { if (repo.findByIdempotencyKey(keys[i]).isEmpty()) throw new IllegalStateException("missing " + keys[i]); });
+        int queries = Math.min(accounts.length, 1_000);
+        int rows = 0;
+        for (int i = 0; i < queries; i++) rows += repo.findByFromOrTo(accounts[i], accounts[i]).size();
+        double byAccount = nanosPerOp(queries, i -> repo.findByFromOrTo(accounts[i], accounts[i]));
+        System.out.println(String.format("%-8s: findById %.0f ns, findByIdempotencyKey %.0f ns, findByFromOrTo %.1f us (%.0f rows/account)",
+                label, byId, byKey, byAccount / 1_000, (double) rows / queries));
+        return rows;
+    }
+
+    private static double nanosPerOp(int ops, Consumer<Integer> op) {
+        for (int i = 0; i < ops; i++) op.accept(i); // warm-up, also faults the pages in
+        long start = System.nanoTime();
+        for (int i = 0; i < ops; i++) op.accept(i);
+        return (double) (System.nanoTime() - start) / ops;
+    }
+
+    private static void save(InMemoryTransactionRepository repo, Transaction t) {
+        try {
+            repo.saveNew(t);
+        } catch (IdempotencyException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static long diskBytes(Path dir) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.mapToLong(p -> p.toFile().length()).sum();
+        }
+    }
+}
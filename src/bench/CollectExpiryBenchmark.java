@@ -0,0 +1,136 @@
+package bench;
+
+import enums.CollectStatus;
+import lock.LockManager;
+import models.Bank;
+import models.BankAccount;
+import models.CollectRequest;
+import models.User;
+import psp.MockPspClient;
+import repositoryimpl.InMemoryBankAccountRepository;
+import repositoryimpl.InMemoryBankRepository;
+import repositoryimpl.InMemoryCollectRequestRepository;
+import repositoryimpl.InMemoryTransactionRepository;
+import repositoryimpl.InMemoryUserRepository;
+import service.*;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.SplittableRandom;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Millions of outstanding collect requests from 1,000 merchants to a population of payers, with
+ * expiries spread over several seconds (starting 20 s after creation); 1% are approved and 1% declined before then. Reports the
+ * cost of creating them, of a payer's "pending requests" read, and of expiring them through the
+ * timing wheel (ticks of 10 ms), next to what one full scan of the requests per tick would cost.
+ *
+ * Usage: CollectExpiryBenchmark [requests] [payers] [expiry spread seconds]
+ */
+public class CollectExpiryBenchmark {
+    private static final int MERCHANTS = 1_000;
+    private static final long TICK_MILLIS = 10;
+    private static final int EXPIRY_BASE_MILLIS = 20_000; // after set-up and answering
+
+    public static void main(String[] args) throws Exception {
+        int requests = args.length > 0 ? Integer.parseInt(args[0]) : 2_000_000;
+        int payers = args.length > 1 ? Integer.parseInt(args[1]) : 200_000;
+        int spread = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        System.out.println(String.format("requests=%,d payers=%,d expiry spread=%d s tick=%d ms cores=%d",
+                requests, payers, spread, TICK_MILLIS, Runtime.getRuntime().availableProcessors()));
+
+        LockManager lockManager = new LockManager();
+        InMemoryUserRepository userRepo = new InMemoryUserRepository();
+        InMemoryBankAccountRepository acctRepo = new InMemoryBankAccountRepository(userRepo, lockManager);
+        InMemoryCollectRequestRepository collectRepo = new InMemoryCollectRequestRepository();
+        BankAccountService acctService = new BankAccountService(acctRepo, userRepo, lockManager);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        TransactionService txnService = new TransactionService(new InMemoryTransactionRepository(), acctRepo, acctService,
+                new MockPspClient(1.0, 0.0), executor, lockManager, new InMemoryBankHealthRegistry());
+        CollectService collects = new CollectService(collectRepo, userRepo, acctRepo, txnService,
+                Duration.ofMinutes(30), Duration.ofMillis(TICK_MILLIS));
+
+        Bank bank = new InMemoryBankRepository().createBank("Bench Bank", "BNB");
+        BankAccount[] merchants = new BankAccount[MERCHANTS];
+        for (int i = 0; i < MERCHANTS; i++) {
+            User u = userRepo.createUser("merchant-" + i, "7" + String.format("%09d", i));
+            merchants[i] = acctService.linkBankAccount(u.id, bank.id, "M" + i, BigDecimal.ZERO);
+        }
+        String[] phones = new String[payers];
+        UUID[] payerAccounts = new UUID[payers];
+        for (int i = 0; i < payers; i++) {
+            phones[i] = "8" + String.format("%09d", i);
+            User u = userRepo.createUser("payer-" + i, phones[i]);
+            payerAccounts[i] = acctService.linkBankAccount(u.id, bank.id, "P" + i, new BigDecimal("100000.00")).id;
+        }
+
+        SplittableRandom rnd = new SplittableRandom(3);
+        BigDecimal amount = new BigDecimal("49.00");
+        long t0 = System.nanoTime();
+        for (int i = 0; i < requests; i++) {
+            BankAccount m = merchants[i % MERCHANTS];
+            collects.requestCollect(m.id, m.accountNumber, phones[rnd.nextInt(payers)], amount, null,
+                    Duration.ofMillis(EXPIRY_BASE_MILLIS + rnd.nextInt(spread * 1_000)));
+        }
+        long createNanos = System.nanoTime() - t0;
+
+        int reads = 200_000;
+        long pendingSeen = 0;
+        t0 = System.nanoTime();
+        for (int i = 0; i < reads; i++) pendingSeen += collects.pendingFor(phones[rnd.nextInt(payers)]).size();
+        long readNanos = System.nanoTime() - t0;
+
+        // answer 2% of them: half approved (a payment each), half declined
+        int answered = 0;
+        for (int i = 0; i < requests / 50; i++) {
+            int p = rnd.nextInt(payers);
+            for (CollectRequest r : collects.pendingFor(phones[p])) {
+                try {
+                    if ((answered & 1) == 0) collects.approve(r.id, payerAccounts[p]);
+                    else collects.decline(r.id);
+                    answered++;
+                } catch (IllegalStateException expiredMeanwhile) {
+                    continue;
+                }
+                break;
+            }
+        }
+
+        // one full pass over the requests, the per-tick cost of expiring by scanning
+        t0 = System.nanoTime();
+        long now = System.currentTimeMillis(), dueByScan = 0;
+        for (int slot = 0, n = collectRepo.slotCount(); slot < n; slot++) {
+            CollectRequest r = collectRepo.get(slot);
+            if (r.status == CollectStatus.PENDING && r.expiresAt.toEpochMilli() <= now) dueByScan++;
+        }
+        long scanNanos = System.nanoTime() - t0;
+
+        long expireNanos = 0, ticks = 0, start = System.currentTimeMillis();
+        while (collects.getPending() > 0) {
+            Thread.sleep(TICK_MILLIS);
+            long s = System.nanoTime();
+            if (collects.expireDue() == 0 && collects.getExpired() == 0) start = System.currentTimeMillis(); // not yet due
+            else ticks++;
+            expireNanos += System.nanoTime() - s;
+        }
+        long drainMillis = System.currentTimeMillis() - start;
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.MINUTES);
+
+        long expired = collects.getExpired();
+        if (expired + collects.getApproved() + collects.getDeclined() != requests) {
+            throw new IllegalStateException("expired " + expired + " + approved " + collects.getApproved()
+                    + " + declined " + collects.getDeclined() + " != " + requests);
+        }
+        System.out.println(String.format("create: %,.0f requests/s", requests / (createNanos / 1e9)));
+        System.out.println(String.format("pending read: %,.0f ns (%.1f pending per payer)", readNanos / (double) reads, pendingSeen / (double) reads));
+        System.out.println(String.format("answered: %,d approved, %,d declined", collects.getApproved(), collects.getDeclined()));
+        System.out.println(String.format("expiry wheel: %,d expired over %,d ticks (%,d ms): %,.0f ns per expiry, %.2f ms per tick on average",
+                expired, ticks, drainMillis, expireNanos / (double) expired, expireNanos / 1e6 / ticks));
+        System.out.println(String.format("full scan: %.1f ms per pass (%,d found due), i.e. %,.0f ms of scanning per second of %d ms ticks",
+                scanNanos / 1e6, dueByScan, scanNanos / 1e6 * (1000 / TICK_MILLIS), TICK_MILLIS));
+    }
+}
@@ -0,0 +1,127 @@
+package bench;
+
+import lock.LockManager;
+import models.BankAccount;
+import models.Transaction;
+import models.User;
+import repositoryimpl.CommitSequence;
+import repositoryimpl.InMemoryBankAccountRepository;
+import repositoryimpl.InMemoryUserRepository;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Users and accounts under dense ids vs the previous UUID-keyed ConcurrentHashMaps (rebuilt here):
+ * - heap per user + account (live-heap delta after GC, entities included)
+ * - findById latency for random accounts, findByUserId (index vs scan over all accounts)
+ * - heap per transaction when its account ids are fresh UUID copies vs the accounts' own instances
+ *
+ * Usage: DenseIdBenchmark [users] [lookups]
+ */
+public class DenseIdBenchmark {
+    public static void main(String[] args) {
+        int users = args.length > 0 ? Integer.parseInt(args[0]) : 500_000;
+        int lookups = args.length > 1 ? Integer.parseInt(args[1]) : 2_000_000;
+        System.out.println(String.format("users=%,d (one account each) lookups=%,d", users, lookups));
+        UUID bankId = UUID.randomUUID();
+        transactionHeap(users);
+
+        // previous layout: byId maps keyed by random UUIDs, phone and bank+account indexes by String
+        long base = usedHeap();
+        ConcurrentMap<UUID, User> oldUsers = new ConcurrentHashMap<>();
+        ConcurrentMap<String, UUID> oldPhones = new ConcurrentHashMap<>();
+        ConcurrentMap<UUID, BankAccount> oldAccounts = new ConcurrentHashMap<>();
+        ConcurrentMap<String, UUID> oldAcctIndex = new ConcurrentHashMap<>();
+        UUID[] oldAcctIds = new UUID[users];
+        CommitSequence commits = new CommitSequence(); // same balance versioning as the repository's accounts
+        for (int i = 0; i < users; i++) {
+            User u = new User(UUID.randomUUID(), "u", phone(i));
+            oldUsers.put(u.id, u);
+            oldPhones.put(u.phone, u.id);
+            BankAccount a = new BankAccount(UUID.randomUUID(), u.id, bankId, "ACC" + i, new BigDecimal("100.00"),
+                    commits.newChain(new BigDecimal("100.00")));
+            oldAccounts.put(a.id, a);
+            oldAcctIndex.put(bankId + ":" + a.accountNumber, a.id);
+            oldAcctIds[i] = a.id;
+        }
+        long oldBytes = usedHeap() - base;
+
+        long before = usedHeap();
+        InMemoryUserRepository userRepo = new InMemoryUserRepository();
+        InMemoryBankAccountRepository acctRepo = new InMemoryBankAccountRepository(userRepo, new LockManager());
+        UUID[] acctIds = new UUID[users], userIds = new UUID[users];
+        for (int i = 0; i < users; i++) {
+            User u = userRepo.createUser("u", phone(i));
+            userIds[i] = u.id;
+            acctIds[i] = acctRepo.createAccount(u.id, bankId, "ACC" + i, new BigDecimal("100.00")).id;
+        }
+        long newBytes = usedHeap() - before;
+        System.out.println(String.format("  heap per user+account: UUID maps %.1f bytes, dense ids %.1f bytes",
+                (double) oldBytes / users, (double) newBytes / users));
+
+        for (int round = 0; round < 3; round++) {
+            SplittableRandom rnd = new SplittableRandom(round);
+            long sink = 0;
+            long start = System.nanoTime();
+            for (int i = 0; i < lookups; i++) if (oldAccounts.get(oldAcctIds[rnd.nextInt(users)]) != null) sink++;
+            long oldNs = (System.nanoTime() - start) / lookups;
+            rnd = new SplittableRandom(round);
+            start = System.nanoTime();
+            for (int i = 0; i < lookups; i++) if (acctRepo.findById(acctIds[rnd.nextInt(users)]).isPresent()) sink++;
+            long newNs = (System.nanoTime() - start) / lookups;
+            System.out.println(String.format("  account findById: UUID map %,d ns, dense %,d ns (found %,d)", oldNs, newNs, sink));
+        }
+
+        int userLookups = 20;
+        SplittableRandom rnd = new SplittableRandom(7);
+        long start = System.nanoTime();
+        long found = 0;
+        for (int i = 0; i < userLookups; i++) {
+            UUID u = userIds[rnd.nextInt(users)];
+            found += acctRepo.streamAll().filter(a -> a.userId.equals(u)).count();
+        }
+        long scanNs = (System.nanoTime() - start) / userLookups;
+        start = System.nanoTime();
+        for (int i = 0; i < lookups; i++) found += acctRepo.findByUserId(userIds[rnd.nextInt(users)]).size();
+        long indexNs = (System.nanoTime() - start) / lookups;
+        System.out.println(String.format("  findByUserId: scan %,d ns, index %,d ns (found %,d)", scanNs, indexNs, found));
+
+    }
+
+    // transactions: three UUID fields; the two account ids either copied per txn or shared with the account
+    private static void transactionHeap(int accounts) {
+        UUID[] acctIds = new UUID[accounts];
+        for (int i = 0; i < accounts; i++) acctIds[i] = UUID.randomUUID();
+        int txns = 1_000_000;
+        List<Transaction> list = new ArrayList<>(txns);
+        long before = usedHeap();
+        for (int i = 0; i < txns; i++) {
+            UUID from = acctIds[i % accounts], to = acctIds[(i + 1) % accounts];
+            list.add(new Transaction(UUID.randomUUID(), null, new UUID(from.getMostSignificantBits(), from.getLeastSignificantBits()),
+                    new UUID(to.getMostSignificantBits(), to.getLeastSignificantBits()), "x", BigDecimal.TEN));
+        }
+        long copied = usedHeap() - before;
+        list.clear();
+        before = usedHeap();
+        for (int i = 0; i < txns; i++) list.add(new Transaction(UUID.randomUUID(), null, acctIds[i % accounts], acctIds[(i + 1) % accounts], "x", BigDecimal.TEN));
+        long shared = usedHeap() - before;
+        System.out.println(String.format("  heap per transaction: copied account ids %.1f bytes, shared %.1f bytes (%d in list)",
+                (double) copied / txns, (double) shared / txns, list.size()));
+    }
+
+    private static String phone(int i) {
+        return Long.toString(6_000_000_000L + i);
+    }
+
+    private static long usedHeap() {
+        Runtime rt = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) System.gc();
+        return rt.totalMemory() - rt.freeMemory();
+    }
+}
@@ -0,0 +1,133 @@
+package bench;
+
+import enums.OverflowPolicy;
+import enums.PaymentEventType;
+import events.PaymentEventBus;
+import events.WaitStrategy;
+import lock.LockManager;
+import models.BankAccount;
+import models.Transaction;
+import repositoryimpl.InMemoryBankAccountRepository;
+import repositoryimpl.InMemoryUserRepository;
+import service.BankAccountService;
+
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Publish-to-consume latency of PaymentEventBus for each wait strategy, bytes allocated by the
+ * publishing threads, and a slow consumer under the DROP policy. Then bytes allocated per
+ * BankAccountService reserve + release, without a bus and with one (the cost of balance events).
+ *
+ * Usage: EventBusBenchmark [events per producer] [producers] [interval between publishes, us]
+ */
+public class EventBusBenchmark {
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    public static void main(String[] args) throws Exception {
+        int perProducer = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        int producers = args.length > 1 ? Integer.parseInt(args[1]) : 2;
+        long intervalNanos = (args.length > 2 ? Long.parseLong(args[2]) : 5) * 1_000L;
+        System.out.println(String.format("producers=%d events/producer=%,d interval=%d us cores=%d",
+                producers, perProducer, intervalNanos / 1_000, Runtime.getRuntime().availableProcessors()));
+
+        run("busy-spin", WaitStrategy.busySpin(), OverflowPolicy.BLOCK, 0, perProducer, producers, intervalNanos);
+        run("yielding ", WaitStrategy.yielding(), OverflowPolicy.BLOCK, 0, perProducer, producers, intervalNanos);
+        run("parking  ", WaitStrategy.parking(Duration.ofMillis(1)), OverflowPolicy.BLOCK, 0, perProducer, producers, intervalNanos);
+        // consumer needs ~20 us per event, producers publish as fast as they can
+        run("slow/DROP", WaitStrategy.parking(Duration.ofMillis(1)), OverflowPolicy.DROP, 20_000, perProducer, producers, 0);
+        run("slow/BLOCK", WaitStrategy.parking(Duration.ofMillis(1)), OverflowPolicy.BLOCK, 20_000, perProducer / 20, producers, 0);
+
+        accounts("no bus", false, perProducer);
+        accounts("bus", true, perProducer);
+    }
+
+    // reserve + release on one account, single thread; the bus' subscriber does nothing
+    private static void accounts(String label, boolean withBus, int ops) {
+        PaymentEventBus bus = null;
+        if (withBus) {
+            bus = new PaymentEventBus(4, 4096, OverflowPolicy.BLOCK);
+            bus.subscribe("bench", (e, seq, endOfBatch) -> { }, WaitStrategy.yielding());
+            bus.start();
+        }
+        LockManager lockManager = new LockManager();
+        InMemoryUserRepository userRepo = new InMemoryUserRepository();
+        BankAccountService svc = new BankAccountService(new InMemoryBankAccountRepository(userRepo, lockManager), userRepo, lockManager, bus);
+        BankAccount acct = svc.linkBankAccount(userRepo.createUser("bench", "9000000000").id, UUID.randomUUID(), "1", new BigDecimal("1000"));
+        for (int i = 0; i < 20_000; i++) { svc.reserve(acct.id, BigDecimal.ONE); svc.release(acct.id, BigDecimal.ONE); } // warm-up
+        long tid = Thread.currentThread().getId();
+        long before = THREADS.getThreadAllocatedBytes(tid);
+        for (int i = 0; i < ops; i++) {
+            svc.reserve(acct.id, BigDecimal.ONE);
+            svc.release(acct.id, BigDecimal.ONE);
+        }
+        long bytes = THREADS.getThreadAllocatedBytes(tid) - before;
+        if (bus != null) bus.stop();
+        System.out.println(String.format("accounts/%-6s: %,d reserve+release | alloc=%,d bytes (%.1f per op)",
+                label, ops, bytes, bytes / (double) ops));
+    }
+
+    private static void run(String label, WaitStrategy wait, OverflowPolicy policy, long handlerNanos,
+                            int perProducer, int producers, long intervalNanos) throws Exception {
+        PaymentEventBus bus = new PaymentEventBus(4, 4096, policy);
+        int total = perProducer * producers;
+        long[] latencies = new long[total];
+        int[] handled = new int[1];
+        bus.subscribe("bench", (e, seq, endOfBatch) -> {
+            latencies[handled[0]++] = System.nanoTime() - e.publishNanos;
+            if (handlerNanos > 0) spin(handlerNanos);
+        }, wait);
+        bus.start();
+
+        AtomicLong producerBytes = new AtomicLong();
+        CountDownLatch done = new CountDownLatch(producers);
+        long start = System.nanoTime();
+        for (int p = 0; p < producers; p++) {
+            Thread t = new Thread(() -> {
+                Transaction[] txns = new Transaction[64];
+                for (int i = 0; i < txns.length; i++) {
+                    txns[i] = new Transaction(UUID.randomUUID(), null, UUID.randomUUID(), UUID.randomUUID(), "9000000000", BigDecimal.TEN);
+                }
+                long tid = Thread.currentThread().getId();
+                long before = THREADS.getThreadAllocatedBytes(tid);
+                for (int i = 0; i < perProducer; i++) {
+                    bus.publishTransaction(PaymentEventType.TXN_SUCCESS, txns[i & 63]);
+                    if (intervalNanos > 0) LockSupport.parkNanos(intervalNanos);
+                }
+                producerBytes.addAndGet(THREADS.getThreadAllocatedBytes(tid) - before);
+                done.countDown();
+            });
+            t.start();
+        }
+        done.await();
+        bus.stop();
+        long elapsed = System.nanoTime() - start;
+
+        int n = handled[0];
+        long[] sorted = Arrays.copyOf(latencies, n);
+        Arrays.sort(sorted);
+        System.out.println(String.format("%-10s: handled=%,d dropped=%,d in %,d ms | latency p50=%s p99=%s p99.9=%s max=%s | publisher alloc=%,d bytes",
+                label, n, bus.dropped(), elapsed / 1_000_000,
+                micros(sorted, 0.50), micros(sorted, 0.99), micros(sorted, 0.999), micros(sorted, 1.0), producerBytes.get()));
+        if (policy == OverflowPolicy.BLOCK && n != total) throw new IllegalStateException("BLOCK lost events: " + n + " of " + total);
+        if (n + bus.dropped() != total) throw new IllegalStateException("handled + dropped != published");
+    }
+
+    private static String micros(long[] sorted, double q) {
+        if (sorted.length == 0) return "-";
+        int i = (int) Math.min(sorted.length - 1, Math.round(q * (sorted.length - 1)));
+        return String.format("%.1fus", sorted[i] / 1_000.0);
+    }
+
+    private static void spin(long nanos) {
+        long end = System.nanoTime() + nanos;
+        while (System.nanoTime() < end) Thread.onSpinWait();
+    }
+}
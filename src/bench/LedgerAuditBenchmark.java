@@ -0,0 +1,192 @@
+package bench;
+
+import enums.OverflowPolicy;
+import enums.TransactionStatus;
+import events.PaymentEventBus;
+import lock.LockManager;
+import models.Bank;
+import models.BankAccount;
+import models.Transaction;
+import models.User;
+import psp.MockPspClient;
+import repositoryimpl.InMemoryBankAccountRepository;
+import repositoryimpl.InMemoryBankRepository;
+import repositoryimpl.InMemoryTransactionRepository;
+import repositoryimpl.InMemoryUserRepository;
+import scheduling.Scheduler;
+import service.*;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * LedgerAuditor under payment load (70% SUCCESS, 20% left PENDING, 10% FAILED) with faults
+ * injected while it runs:
+ * - orphaned reservations: funds reserved on a random account with no transaction behind them;
+ *   each must be flagged and auto-released, timed from injection to release
+ * - one shortfall: a PENDING payment's reservation released behind its back; must be flagged
+ *   with a negative excess and left alone
+ * - one balance credited on the account object, bypassing the events; must show as a chain break
+ * Audit runs every 250 ms with a 1 s grace period; reports the audit cost per run and per
+ * account checked against one full scan of all accounts and PENDING transactions.
+ *
+ * Usage: LedgerAuditBenchmark [seconds] [accounts] [orphans]
+ */
+public class LedgerAuditBenchmark {
+    private static final Duration INTERVAL = Duration.ofMillis(250);
+    private static final Duration GRACE = Duration.ofSeconds(1);
+    private static final BigDecimal AMOUNT = new BigDecimal("1.00");
+
+    public static void main(String[] args) throws Exception {
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+        int accountCount = args.length > 1 ? Integer.parseInt(args[1]) : 200_000;
+        int orphanCount = args.length > 2 ? Integer.parseInt(args[2]) : 8;
+        System.out.println(String.format("seconds=%d accounts=%,d orphans=%d, audit every %d ms, grace %d ms, cores=%d",
+                seconds, accountCount, orphanCount, INTERVAL.toMillis(), GRACE.toMillis(), Runtime.getRuntime().availableProcessors()));
+
+        LockManager lockManager = new LockManager();
+        InMemoryUserRepository userRepo = new InMemoryUserRepository();
+        InMemoryBankAccountRepository acctRepo = new InMemoryBankAccountRepository(userRepo, lockManager);
+        InMemoryTransactionRepository txnRepo = new InMemoryTransactionRepository();
+        PaymentEventBus events = new PaymentEventBus(4, 1 << 14, OverflowPolicy.BLOCK);
+        BankAccountService acctService = new BankAccountService(acctRepo, userRepo, lockManager, events);
+        ExecutorService pspExecutor = Executors.newFixedThreadPool(2);
+        TransactionService txnService = new TransactionService(txnRepo, acctRepo, acctService, new MockPspClient(0.7, 0.2),
+                pspExecutor, lockManager, new InMemoryBankHealthRegistry(), new TransactionService.Options().events(events));
+        Scheduler scheduler = Scheduler.system("ledger-auditor");
+        LedgerAuditor auditor = new LedgerAuditor(acctService, txnRepo, events, scheduler, INTERVAL, GRACE, true);
+        events.start();
+
+        Bank bank = new InMemoryBankRepository().createBank("Audit Bank", "AUD");
+        BankAccount[] accounts = new BankAccount[accountCount];
+        for (int i = 0; i < accountCount; i++) {
+            User u = userRepo.createUser("u" + i, "9" + String.format("%09d", i));
+            accounts[i] = acctService.linkBankAccount(u.id, bank.id, "A" + i, new BigDecimal("1000000.00"));
+        }
+
+        // audits on their own thread, timed one by one
+        long[] auditNanos = new long[seconds * 8 + 64];
+        int[] audits = new int[1];
+        AtomicBoolean running = new AtomicBoolean(true);
+        Thread auditThread = new Thread(() -> {
+            while (running.get()) {
+                long s = System.nanoTime();
+                auditor.audit();
+                if (audits[0] < auditNanos.length) auditNanos[audits[0]++] = System.nanoTime() - s;
+                sleep(INTERVAL.toMillis());
+            }
+        }, "audit");
+        Thread load = new Thread(() -> {
+            SplittableRandom rnd = new SplittableRandom(7);
+            long seq = 0;
+            while (running.get()) {
+                BankAccount from = accounts[rnd.nextInt(accounts.length)], to = accounts[rnd.nextInt(accounts.length)];
+                try {
+                    txnService.createPayment("p-" + seq++, from.id, to.id, to.accountNumber, AMOUNT);
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+                if ((seq & 63) == 0) sleep(1); // leave the single core room for the PSP and event threads
+            }
+        }, "load");
+        auditThread.start();
+        load.start();
+        long start = System.nanoTime();
+
+        // orphans, spread over the run; each timed until the auditor released it
+        SplittableRandom rnd = new SplittableRandom(11);
+        long[] detect = new long[orphanCount];
+        long gap = TimeUnit.SECONDS.toMillis(seconds) / (orphanCount + 2);
+        for (int i = 0; i < orphanCount; i++) {
+            sleep(gap);
+            BankAccount victim = accounts[rnd.nextInt(accounts.length)];
+            long released = auditor.getOrphansReleased();
+            long injected = System.nanoTime();
+            acctService.reserve(victim.id, new BigDecimal("5.00"));
+            while (auditor.getOrphansReleased() == released) {
+                if (System.nanoTime() - injected > TimeUnit.SECONDS.toNanos(30)) throw new IllegalStateException("orphan on " + victim.id + " not released");
+                sleep(5);
+            }
+            detect[i] = System.nanoTime() - injected;
+        }
+
+        // a shortfall and an untracked credit
+        Transaction pending = txnRepo.search(t -> t.status == TransactionStatus.PENDING && t.pspTxnId != null).get(0);
+        acctService.release(pending.fromAccountId, pending.amount);
+        BankAccount bypassed = accounts[rnd.nextInt(accounts.length)];
+        long chainBreaks = auditor.getChainBreaks();
+        bypassed.credit(AMOUNT);
+        acctService.reserve(bypassed.id, AMOUNT);
+        acctService.release(bypassed.id, AMOUNT);
+        long injected = System.nanoTime();
+        LedgerAuditor.Drift shortfall = null;
+        while (shortfall == null) {
+            for (LedgerAuditor.Drift d : auditor.getDrifting()) if (d.accountId.equals(pending.fromAccountId)) shortfall = d;
+            if (System.nanoTime() - injected > TimeUnit.SECONDS.toNanos(30)) throw new IllegalStateException("shortfall not flagged");
+            sleep(5);
+        }
+        long shortfallNanos = System.nanoTime() - injected;
+        if (shortfall.reservedExcess.signum() >= 0) throw new IllegalStateException("shortfall flagged as " + shortfall);
+
+        running.set(false);
+        load.join();
+        auditThread.join();
+        long elapsed = System.nanoTime() - start;
+        pspExecutor.shutdown();
+        pspExecutor.awaitTermination(1, TimeUnit.MINUTES);
+        events.stop();
+        auditor.audit();
+
+        // one full scan for comparison: every account's reserved vs its PENDING transactions
+        long scanStart = System.nanoTime();
+        Map<UUID, BigDecimal> open = new HashMap<>();
+        txnRepo.streamByStatus(TransactionStatus.PENDING).forEach(t -> open.merge(t.fromAccountId, t.amount, BigDecimal::add));
+        List<UUID> mismatched = new ArrayList<>();
+        for (BankAccount a : accounts) {
+            if (a.getReserved().compareTo(open.getOrDefault(a.id, BigDecimal.ZERO)) != 0) mismatched.add(a.id);
+        }
+        long scanNanos = System.nanoTime() - scanStart;
+        if (!mismatched.equals(List.of(pending.fromAccountId))) throw new IllegalStateException("full scan mismatches: " + mismatched);
+
+        Arrays.sort(detect);
+        long[] runs = Arrays.copyOf(auditNanos, audits[0]);
+        Arrays.sort(runs);
+        long totalAudit = 0;
+        for (long r : runs) totalAudit += r;
+        System.out.println(String.format("%,d payments, %,d events audited in %.1f s (%,.0f events/s)",
+                txnRepo.streamAll().count(), auditor.getEventsSeen(), elapsed / 1e9, auditor.getEventsSeen() / (elapsed / 1e9)));
+        System.out.println(String.format("orphans: %d of %d released, injection to release p50 %.2f s / max %.2f s, %s released in total",
+                auditor.getOrphansReleased(), orphanCount, detect[detect.length / 2] / 1e9, detect[detect.length - 1] / 1e9,
+                auditor.getReleasedAmount()));
+        System.out.println(String.format("shortfall flagged after %.2f s: %s; chain breaks %d; drifts flagged %d, resolved %d",
+                shortfallNanos / 1e9, shortfall, auditor.getChainBreaks() - chainBreaks, auditor.getDriftsFlagged(), auditor.getDriftsResolved()));
+        System.out.println(String.format("audit: %,d runs, %,d accounts checked (%,.0f per run), p50 %.2f ms / max %.2f ms per run, %.2f us per account",
+                runs.length, auditor.getAccountsChecked(), (double) auditor.getAccountsChecked() / auditor.getAudits(),
+                runs[runs.length / 2] / 1e6, runs[runs.length - 1] / 1e6, totalAudit / 1e3 / Math.max(1, auditor.getAccountsChecked())));
+        System.out.println(String.format("full scan of %,d accounts + PENDING transactions: %.1f ms (%.0fx an incremental run)",
+                accounts.length, scanNanos / 1e6, (double) scanNanos / Math.max(1, runs[runs.length / 2])));
+
+        if (auditor.getOrphansReleased() != orphanCount) throw new IllegalStateException(auditor.getOrphansReleased() + " orphans released");
+        if (auditor.getChainBreaks() != chainBreaks + 1) throw new IllegalStateException((auditor.getChainBreaks() - chainBreaks) + " chain breaks");
+        scheduler.shutdown();
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
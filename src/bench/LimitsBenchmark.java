@@ -0,0 +1,107 @@
+package bench;
+
+import exception.LimitExceededException;
+import models.Transaction;
+import repositoryimpl.InMemoryTransactionRepository;
+import service.LimitsEngine;
+
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.UUID;
+
+/**
+ * Cost of a per-user daily-amount + velocity check:
+ * - scan: sum the account's transactions of the last 24h from the repository (findByFromOrTo)
+ * - engine: LimitsEngine.acquire (+ release, so the limits never trip)
+ * Reports ns per check, bytes allocated per engine check and multi-threaded engine throughput.
+ *
+ * Usage: LimitsBenchmark [accounts] [history txns per account] [threads]
+ */
+public class LimitsBenchmark {
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    public static void main(String[] args) throws Exception {
+        int accountCount = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        int history = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : Math.max(2, Runtime.getRuntime().availableProcessors());
+        System.out.println(String.format("accounts=%,d history/account=%d threads=%d cores=%d",
+                accountCount, history, threads, Runtime.getRuntime().availableProcessors()));
+
+        UUID[] users = new UUID[accountCount], accounts = new UUID[accountCount];
+        for (int i = 0; i < accountCount; i++) {
+            users[i] = UUID.randomUUID();
+            accounts[i] = UUID.randomUUID();
+        }
+        InMemoryTransactionRepository txnRepo = new InMemoryTransactionRepository();
+        List<Transaction> txns = new ArrayList<>();
+        for (UUID acct : accounts) {
+            for (int h = 0; h < history; h++) txns.add(new Transaction(UUID.randomUUID(), null, acct, null, "ext", new BigDecimal("10.00")));
+        }
+        txnRepo.saveAllNew(txns);
+
+        // scan-based check, as createPayment would have to do without counters
+        SplittableRandom rnd = new SplittableRandom(1);
+        long scanChecks = 200;
+        long sink = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < scanChecks; i++) {
+            UUID acct = accounts[rnd.nextInt(accountCount)];
+            Instant dayAgo = Instant.now().minus(Duration.ofDays(1));
+            BigDecimal today = BigDecimal.ZERO;
+            for (Transaction t : txnRepo.findByFromOrTo(acct, null)) {
+                if (t.createdAt.isAfter(dayAgo)) today = today.add(t.amount);
+            }
+            sink += today.signum();
+        }
+        System.out.println(String.format("  scan   %,10d ns/check", (System.nanoTime() - start) / scanChecks));
+
+        // engine: a check never trips (acquire + release), so each op is a full check + count + rollback
+        LimitsEngine engine = new LimitsEngine(new LimitsEngine.Limits(100_000_00L, 1_000, 1_000), new LimitsEngine.Limits(100_000_00L, 1_000, 1_000));
+        for (int i = 0; i < accountCount; i++) engine.acquire(users[i], accounts[i], 1_000, System.currentTimeMillis());
+        long ops = 2_000_000;
+        for (int round = 0; round < 2; round++) {
+            long tid = Thread.currentThread().getId();
+            long bytesBefore = THREADS.getThreadAllocatedBytes(tid);
+            start = System.nanoTime();
+            for (long i = 0; i < ops; i++) {
+                int k = rnd.nextInt(accountCount);
+                long now = System.currentTimeMillis();
+                engine.acquire(users[k], accounts[k], 1_000, now);
+                engine.release(users[k], accounts[k], 1_000, now, now);
+            }
+            long elapsed = System.nanoTime() - start;
+            long bytes = THREADS.getThreadAllocatedBytes(tid) - bytesBefore;
+            System.out.println(String.format("  engine %,10d ns/check  %.3f bytes/check", elapsed / ops, (double) bytes / ops));
+        }
+
+        List<Thread> workers = new ArrayList<>();
+        long perThread = ops / threads;
+        start = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            SplittableRandom r = new SplittableRandom(t + 2);
+            Thread th = new Thread(() -> {
+                for (long i = 0; i < perThread; i++) {
+                    int k = r.nextInt(accountCount);
+                    long now = System.currentTimeMillis();
+                    try {
+                        engine.acquire(users[k], accounts[k], 1_000, now);
+                        engine.release(users[k], accounts[k], 1_000, now, now);
+                    } catch (LimitExceededException e) {
+                        throw new IllegalStateException("limit tripped: counts not rolled back", e);
+                    }
+                }
+            });
+            workers.add(th);
+            th.start();
+        }
+        for (Thread th : workers) th.join();
+        long elapsed = System.nanoTime() - start;
+        System.out.println(String.format("  engine x%d threads %,10.0f checks/s (sink %d)", threads, perThread * threads / (elapsed / 1e9), sink));
+    }
+}
@@ -0,0 +1,157 @@
+package bench;
+
+import enums.MandateFrequency;
+import exception.IdempotencyException;
+import lock.LockManager;
+import models.Bank;
+import models.BankAccount;
+import models.Transaction;
+import models.User;
+import psp.MockPspClient;
+import repositoryimpl.InMemoryBankAccountRepository;
+import repositoryimpl.InMemoryBankRepository;
+import repositoryimpl.InMemoryMandateRepository;
+import repositoryimpl.InMemoryTransactionRepository;
+import repositoryimpl.InMemoryUserRepository;
+import service.*;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A due burst of monthly mandates (about 50 per payer, to 1,000 merchants, payers spread over 8
+ * banks) all falling on the same second, drained by MandateScheduler unpaced and then paced at a
+ * given rate. Meanwhile one client keeps making interactive payments one at a time and records
+ * their end-to-end latency (createPayment until the PSP result is in), which is what a burst
+ * sharing the PSP executor delays. One bank is down for the first second of each burst.
+ * The PSP always succeeds instantly.
+ *
+ * Usage: MandateBurstBenchmark [mandates] [paced payments per second] [parallel batches]
+ */
+public class MandateBurstBenchmark {
+    private static final int BANKS = 8;
+    private static final int MERCHANTS = 1_000;
+    private static final int MANDATES_PER_PAYER = 50;
+
+    public static void main(String[] args) throws Exception {
+        int mandates = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        double rate = args.length > 1 ? Double.parseDouble(args[1]) : 40_000;
+        int parallel = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+        System.out.println(String.format("mandates=%,d payers=%,d banks=%d merchants=%,d cores=%d",
+                mandates, mandates / MANDATES_PER_PAYER, BANKS, MERCHANTS, Runtime.getRuntime().availableProcessors()));
+        run("warm-up", mandates / 10, 0, parallel, false);
+        run("unpaced", mandates, 0, parallel, true);
+        run(String.format("paced %,.0f/s", rate), mandates, rate, parallel, true);
+    }
+
+    private static void run(String label, int mandateCount, double rate, int parallel, boolean print) throws Exception {
+        LockManager lockManager = new LockManager();
+        InMemoryUserRepository userRepo = new InMemoryUserRepository();
+        InMemoryBankRepository bankRepo = new InMemoryBankRepository();
+        InMemoryBankAccountRepository acctRepo = new InMemoryBankAccountRepository(userRepo, lockManager);
+        InMemoryTransactionRepository txnRepo = new InMemoryTransactionRepository();
+        InMemoryMandateRepository mandateRepo = new InMemoryMandateRepository();
+        BankAccountService acctService = new BankAccountService(acctRepo, userRepo, lockManager);
+        InMemoryBankHealthRegistry health = new InMemoryBankHealthRegistry();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(2, Runtime.getRuntime().availableProcessors()));
+        TransactionService txnService = new TransactionService(txnRepo, acctRepo, acctService,
+                new MockPspClient(1.0, 0.0), executor, lockManager, health);
+
+        Bank[] banks = new Bank[BANKS];
+        for (int b = 0; b < BANKS; b++) banks[b] = bankRepo.createBank("Bank " + b, "BK" + b);
+        BankAccount[] merchants = new BankAccount[MERCHANTS];
+        for (int i = 0; i < MERCHANTS; i++) {
+            User u = userRepo.createUser("merchant-" + i, "7" + String.format("%09d", i));
+            merchants[i] = acctService.linkBankAccount(u.id, banks[i % BANKS].id, "M" + i, BigDecimal.ZERO);
+        }
+        int payerCount = Math.max(1, mandateCount / MANDATES_PER_PAYER);
+        UUID[] payers = new UUID[payerCount];
+        for (int i = 0; i < payerCount; i++) {
+            User u = userRepo.createUser("payer-" + i, "8" + String.format("%09d", i));
+            payers[i] = acctService.linkBankAccount(u.id, banks[i % BANKS].id, "P" + i, new BigDecimal("100000.00")).id;
+        }
+
+        User p2p = userRepo.createUser("p2p", "9000000000");
+        UUID p2pAccount = acctService.linkBankAccount(p2p.id, banks[0].id, "P2P", new BigDecimal("100000000.00")).id;
+
+        MandateScheduler scheduler = new MandateScheduler(mandateRepo, txnService, acctRepo, health, rate,
+                256, parallel, Duration.ofMillis(100), ZoneId.of("Asia/Kolkata"));
+        Instant dueAt = Instant.now().plusSeconds(2);
+        BigDecimal amount = new BigDecimal("199.00");
+        long createStart = System.nanoTime();
+        for (int i = 0; i < mandateCount; i++) {
+            BankAccount merchant = merchants[i % MERCHANTS];
+            scheduler.createMandate(payers[i % payerCount], merchant.id, merchant.accountNumber, amount, MandateFrequency.MONTHLY, dueAt);
+        }
+        long createNanos = System.nanoTime() - createStart;
+        long storeBytes = mandateRepo.footprintBytes(), wheelBytes = scheduler.wheelFootprintBytes();
+
+        // interactive client: its own account pays merchant 0, one payment at a time
+        long[] latencies = new long[1 << 20];
+        int[] probes = new int[1];
+        Thread probe = new Thread(() -> {
+            int i = 0;
+            while (!Thread.currentThread().isInterrupted() && i < latencies.length) {
+                long t0 = System.nanoTime();
+                Transaction t;
+                try {
+                    t = txnService.createPayment(label + "-p2p-" + i, p2pAccount, merchants[0].id, "p2p", BigDecimal.ONE);
+                } catch (IdempotencyException e) {
+                    throw new IllegalStateException(e);
+                }
+                while (!t.isFinal()) LockSupport.parkNanos(20_000);
+                latencies[i++] = System.nanoTime() - t0;
+                LockSupport.parkNanos(1_000_000);
+            }
+            probes[0] = i;
+        });
+
+        while (Instant.now().isBefore(dueAt)) Thread.sleep(10);
+        health.markDown(banks[BANKS - 1].id);
+        scheduler.start();
+        probe.start();
+        long start = System.nanoTime();
+        boolean bankBack = false;
+        while (scheduler.getPaid() + scheduler.getRejected() < mandateCount) {
+            Thread.sleep(5);
+            if (!bankBack && System.nanoTime() - start > 1_000_000_000L) {
+                health.markUp(banks[BANKS - 1].id);
+                bankBack = true;
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        probe.interrupt();
+        probe.join();
+        scheduler.stop();
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.MINUTES);
+
+        if (scheduler.getPaid() != mandateCount) {
+            throw new IllegalStateException(label + ": paid " + scheduler.getPaid() + " of " + mandateCount
+                    + ", rejected " + scheduler.getRejected());
+        }
+        if (!print) return;
+        long[] sorted = Arrays.copyOf(latencies, probes[0]);
+        Arrays.sort(sorted);
+        System.out.println(String.format("%s: created %,.0f mandates/s, store %.1f B/mandate, wheel %.1f B/mandate",
+                label, mandateCount / (createNanos / 1e9), storeBytes / (double) mandateCount, wheelBytes / (double) mandateCount));
+        System.out.println(String.format("  drained %,d in %,d ms = %,.0f debits/s (one bank down for the first second), skipped %,d",
+                mandateCount, elapsed / 1_000_000, mandateCount / (elapsed / 1e9), scheduler.getSkipped()));
+        System.out.println(String.format("  interactive payments %,d: p50 %.2f ms, p99 %.2f ms, max %.2f ms",
+                sorted.length, percentile(sorted, 0.50) / 1e6, percentile(sorted, 0.99) / 1e6,
+                sorted.length == 0 ? 0 : sorted[sorted.length - 1] / 1e6));
+    }
+
+    private static long percentile(long[] sorted, double p) {
+        if (sorted.length == 0) return 0;
+        return sorted[Math.min(sorted.length - 1, (int) (sorted.length * p))];
+    }
+}
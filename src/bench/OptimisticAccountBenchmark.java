@@ -0,0 +1,126 @@
+package bench;
+
+import lock.LockManager;
+import models.Bank;
+import models.BankAccount;
+import models.User;
+import repositoryimpl.InMemoryBankAccountRepository;
+import repositoryimpl.InMemoryBankRepository;
+import repositoryimpl.InMemoryUserRepository;
+import service.BankAccountService;
+
+import enums.AccountStatus;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.UUID;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Mixed read/write load on user accounts, pessimistic (LockManager locks for setPrimary and for
+ * primary-account reads) vs optimistic (version checks, no locks). Per operation:
+ * - read: resolve a user's primary active account (RecipientResolver's read)
+ * - balance: reserve + release on a random account (always under its account lock)
+ * - setPrimary: make a random account of the user primary
+ * Verifies at the end that every user has exactly one primary account.
+ *
+ * Usage: OptimisticAccountBenchmark [ops per thread] [threads] [users] [read %] [setPrimary %]
+ */
+public class OptimisticAccountBenchmark {
+    private static final int ACCOUNTS_PER_USER = 3;
+    private static final BigDecimal AMOUNT = new BigDecimal("1.00");
+
+    public static void main(String[] args) throws Exception {
+        int ops = args.length > 0 ? Integer.parseInt(args[0]) : 500_000;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Math.max(4, Runtime.getRuntime().availableProcessors());
+        int users = args.length > 2 ? Integer.parseInt(args[2]) : 1_000;
+        int readPct = args.length > 3 ? Integer.parseInt(args[3]) : 90;
+        int setPrimaryPct = args.length > 4 ? Integer.parseInt(args[4]) : 2;
+        System.out.println(String.format("threads=%d ops/thread=%,d users=%,d mix: read %d%%, setPrimary %d%%, balance %d%% cores=%d",
+                threads, ops, users, readPct, setPrimaryPct, 100 - readPct - setPrimaryPct, Runtime.getRuntime().availableProcessors()));
+        for (int round = 0; round < 2; round++) {
+            run("pessimistic", false, ops, threads, users, readPct, setPrimaryPct);
+            run("optimistic ", true, ops, threads, users, readPct, setPrimaryPct);
+        }
+    }
+
+    private static void run(String label, boolean optimistic, int ops, int threadCount, int userCount, int readPct, int setPrimaryPct) throws Exception {
+        LockManager lockManager = new LockManager();
+        InMemoryUserRepository userRepo = new InMemoryUserRepository();
+        InMemoryBankAccountRepository acctRepo = new InMemoryBankAccountRepository(userRepo, lockManager, optimistic);
+        BankAccountService acctService = new BankAccountService(acctRepo, userRepo, lockManager);
+        Bank bank = new InMemoryBankRepository().createBank("Bench Bank", "BNB");
+
+        UUID[] users = new UUID[userCount];
+        UUID[][] accounts = new UUID[userCount][ACCOUNTS_PER_USER];
+        for (int u = 0; u < userCount; u++) {
+            User user = userRepo.createUser("u" + u, "8" + String.format("%09d", u));
+            users[u] = user.id;
+            for (int a = 0; a < ACCOUNTS_PER_USER; a++) {
+                accounts[u][a] = acctService.linkBankAccount(user.id, bank.id, "ACC" + u + "-" + a, new BigDecimal("1000.00")).id;
+            }
+            acctService.setPrimaryAccount(user.id, accounts[u][0]);
+        }
+        long commitsBefore = acctRepo.getOptimisticCommits(), conflictsBefore = acctRepo.getOptimisticConflicts();
+
+        List<Thread> threads = new ArrayList<>();
+        long[] misses = new long[threadCount];
+        long start = System.nanoTime();
+        for (int t = 0; t < threadCount; t++) {
+            int id = t;
+            SplittableRandom rnd = new SplittableRandom(t);
+            Thread th = new Thread(() -> {
+                for (int i = 0; i < ops; i++) {
+                    int u = rnd.nextInt(userCount);
+                    int roll = rnd.nextInt(100);
+                    if (roll < readPct) {
+                        if (resolvePrimary(acctRepo, lockManager, users[u], optimistic) == null) misses[id]++;
+                    } else if (roll < readPct + setPrimaryPct) {
+                        acctService.setPrimaryAccount(users[u], accounts[u][rnd.nextInt(ACCOUNTS_PER_USER)]);
+                    } else {
+                        UUID acct = accounts[u][rnd.nextInt(ACCOUNTS_PER_USER)];
+                        acctService.reserve(acct, AMOUNT);
+                        acctService.release(acct, AMOUNT);
+                    }
+                }
+            });
+            threads.add(th);
+            th.start();
+        }
+        for (Thread th : threads) th.join();
+        long elapsed = System.nanoTime() - start;
+
+        for (UUID user : users) {
+            long primaries = acctRepo.findByUserId(user).stream().filter(a -> a.isPrimary).count();
+            if (primaries != 1) throw new IllegalStateException(label + ": user " + user + " has " + primaries + " primary accounts");
+        }
+        long missed = 0;
+        for (long m : misses) missed += m;
+        long commits = acctRepo.getOptimisticCommits() - commitsBefore, conflicts = acctRepo.getOptimisticConflicts() - conflictsBefore;
+        System.out.println(String.format("  %s %,10.0f ops/s  primary not found %,d  optimistic commits %,d conflicts %,d (%.2f%% retried)",
+                label, (double) ops * threadCount / (elapsed / 1e9), missed, commits, conflicts,
+                commits + conflicts == 0 ? 0.0 : 100.0 * conflicts / (commits + conflicts)));
+    }
+
+    // the user's primary active account: lock-free validated reads, or each account read under its lock
+    private static UUID resolvePrimary(InMemoryBankAccountRepository acctRepo, LockManager lockManager, UUID userId, boolean optimistic) {
+        for (BankAccount a : acctRepo.findByUserId(userId)) {
+            boolean primary;
+            if (optimistic) {
+                primary = a.readConsistent(x -> x.isPrimary && x.status == AccountStatus.ACTIVE);
+            } else {
+                Lock l = lockManager.getLockForAccount(a.id);
+                l.lock();
+                try {
+                    primary = a.isPrimary && a.status == AccountStatus.ACTIVE;
+                } finally {
+                    l.unlock();
+                }
+            }
+            if (primary) return a.id;
+        }
+        return null;
+    }
+}
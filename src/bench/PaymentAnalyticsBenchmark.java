@@ -0,0 +1,114 @@
+package bench;
+
+import enums.TransactionStatus;
+import lock.LockManager;
+import models.Bank;
+import models.BankAccount;
+import models.User;
+import psp.MockPspClient;
+import repositoryimpl.InMemoryBankAccountRepository;
+import repositoryimpl.InMemoryBankRepository;
+import repositoryimpl.InMemoryTransactionRepository;
+import repositoryimpl.InMemoryUserRepository;
+import service.*;
+
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Overhead of PaymentAnalytics on the payment path:
+ * - record: ns and bytes per payment (created + outcome) with all threads on the same bank and PSP
+ *   (worst case for the counters)
+ * - payments: end-to-end createPayment throughput without and with analytics (PSP always
+ *   succeeds instantly, so our own path dominates)
+ * - query: cost of a 1m / 5m / 1h stats query
+ *
+ * Usage: PaymentAnalyticsBenchmark [payments] [threads]
+ */
+public class PaymentAnalyticsBenchmark {
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    public static void main(String[] args) throws Exception {
+        int payments = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Math.max(2, Runtime.getRuntime().availableProcessors());
+        System.out.println(String.format("payments=%,d threads=%d cores=%d", payments, threads, Runtime.getRuntime().availableProcessors()));
+
+        PaymentAnalytics analytics = new PaymentAnalytics();
+        analytics.start();
+        UUID bank = UUID.randomUUID();
+        for (int round = 0; round < 2; round++) {
+            long[] bytes = new long[1];
+            List<Thread> workers = new ArrayList<>();
+            int perThread = payments * 5 / threads;
+            long start = System.nanoTime();
+            for (int t = 0; t < threads; t++) {
+                Thread th = new Thread(() -> {
+                    long tid = Thread.currentThread().getId();
+                    long before = THREADS.getThreadAllocatedBytes(tid);
+                    for (int i = 0; i < perThread; i++) {
+                        analytics.recordCreated(bank, "psp", 1_000);
+                        analytics.recordOutcome(bank, "psp", TransactionStatus.SUCCESS, 1_000);
+                    }
+                    synchronized (bytes) { bytes[0] += THREADS.getThreadAllocatedBytes(tid) - before; }
+                });
+                workers.add(th);
+                th.start();
+            }
+            for (Thread th : workers) th.join();
+            long elapsed = System.nanoTime() - start;
+            long n = (long) perThread * threads;
+            System.out.println(String.format("  record   %,6d ns/payment  %.3f bytes/payment", elapsed / n, (double) bytes[0] / n));
+        }
+
+        for (int round = 0; round < 2; round++) {
+            double without = run(null, payments);
+            PaymentAnalytics a = new PaymentAnalytics();
+            a.start();
+            double with = run(a, payments);
+            a.stop();
+            System.out.println(String.format("  payments %,10.0f/s without, %,10.0f/s with analytics (%+.1f%%)", without, with, 100 * (with - without) / without));
+        }
+
+        for (Duration w : new Duration[] { Duration.ofMinutes(1), Duration.ofMinutes(5), Duration.ofHours(1) }) {
+            int q = 100_000;
+            long start = System.nanoTime();
+            long sink = 0;
+            for (int i = 0; i < q; i++) sink += analytics.forBank(bank, w).created;
+            System.out.println(String.format("  query %-5s %,6d ns (created=%,d)", w, (System.nanoTime() - start) / q, sink / q));
+        }
+        analytics.stop();
+    }
+
+    private static double run(PaymentAnalytics analytics, int payments) throws Exception {
+        LockManager lockManager = new LockManager();
+        InMemoryUserRepository userRepo = new InMemoryUserRepository();
+        InMemoryBankAccountRepository acctRepo = new InMemoryBankAccountRepository(userRepo, lockManager);
+        BankAccountService acctService = new BankAccountService(acctRepo, userRepo, lockManager);
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(2, Runtime.getRuntime().availableProcessors()));
+        TransactionService txnService = new TransactionService(new InMemoryTransactionRepository(), acctRepo, acctService,
+                new MockPspClient(1.0, 0.0), executor, lockManager, new InMemoryBankHealthRegistry(),
+                new TransactionService.Options().analytics(analytics));
+        Bank bank = new InMemoryBankRepository().createBank("Bench Bank", "BNB");
+        List<BankAccount> payers = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            User u = userRepo.createUser("payer-" + i, "80000" + String.format("%05d", i));
+            payers.add(acctService.linkBankAccount(u.id, bank.id, "ACC" + i, new BigDecimal("1000000000.00")));
+        }
+        BigDecimal amount = new BigDecimal("10.00");
+        long start = System.nanoTime();
+        for (int i = 0; i < payments; i++) {
+            txnService.createPayment(null, payers.get(i % payers.size()).id, null, "ext", amount);
+        }
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.MINUTES);
+        return payments / ((System.nanoTime() - start) / 1e9);
+    }
+}
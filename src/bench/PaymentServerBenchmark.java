@@ -0,0 +1,267 @@
+package bench;
+
+import lock.LockManager;
+import models.Bank;
+import models.BankAccount;
+import models.Transaction;
+import models.User;
+import psp.MockPspClient;
+import repositoryimpl.InMemoryBankAccountRepository;
+import repositoryimpl.InMemoryBankRepository;
+import repositoryimpl.InMemoryTransactionRepository;
+import repositoryimpl.InMemoryUserRepository;
+import server.PaymentHttpServer;
+import service.*;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * PaymentHttpServer over loopback: client threads each keep one connection and send batches of
+ * pipelined requests (50% payments, 30% balance reads, 20% transaction lookups), timing every
+ * request from the batch's write to its response. Reports end-to-end throughput and latency
+ * percentiles; before that, checks the history endpoint and a few error statuses once.
+ *
+ * Usage: PaymentServerBenchmark [seconds] [connections] [pipeline depth] [io threads]
+ */
+public class PaymentServerBenchmark {
+    private static final int ACCOUNTS = 10_000;
+
+    public static void main(String[] args) throws Exception {
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        int connections = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+        int depth = args.length > 2 ? Integer.parseInt(args[2]) : 16;
+        int ioThreads = args.length > 3 ? Integer.parseInt(args[3]) : Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        System.out.println(String.format("seconds=%d connections=%d pipeline depth=%d io threads=%d cores=%d",
+                seconds, connections, depth, ioThreads, Runtime.getRuntime().availableProcessors()));
+
+        LockManager lockManager = new LockManager();
+        InMemoryUserRepository userRepo = new InMemoryUserRepository();
+        InMemoryBankAccountRepository acctRepo = new InMemoryBankAccountRepository(userRepo, lockManager);
+        BankAccountService acctService = new BankAccountService(acctRepo, userRepo, lockManager);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        TransactionService txnService = new TransactionService(new InMemoryTransactionRepository(), acctRepo, acctService,
+                new MockPspClient(1.0, 0.0), executor, lockManager, new InMemoryBankHealthRegistry());
+
+        Bank bank = new InMemoryBankRepository().createBank("Bench Bank", "BNB");
+        BankAccount[] accounts = new BankAccount[ACCOUNTS];
+        for (int i = 0; i < ACCOUNTS; i++) {
+            User u = userRepo.createUser("u" + i, "9" + String.format("%09d", i));
+            accounts[i] = acctService.linkBankAccount(u.id, bank.id, "A" + i, new BigDecimal("100000000.00"));
+        }
+        UUID[] lookups = new UUID[1_000];
+        for (int i = 0; i < lookups.length; i++) {
+            BankAccount from = accounts[i], to = accounts[ACCOUNTS - 1 - i];
+            lookups[i] = txnService.createPayment("seed-" + i, from.id, to.id, to.accountNumber, new BigDecimal("1.00")).id;
+        }
+
+        PaymentHttpServer server = new PaymentHttpServer(txnService, acctService, 0, ioThreads);
+        server.start();
+        InetSocketAddress address = new InetSocketAddress("127.0.0.1", server.getPort());
+        try {
+            checks(address, accounts[0].id, lookups[0]);
+
+            Client[] clients = new Client[connections];
+            List<Thread> threads = new ArrayList<>();
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+            for (int c = 0; c < connections; c++) {
+                clients[c] = new Client(c, address, depth, accounts, lookups, deadline);
+                Thread t = new Thread(clients[c], "client-" + c);
+                threads.add(t);
+                t.start();
+            }
+            long start = System.nanoTime();
+            for (Thread t : threads) t.join();
+            long elapsed = System.nanoTime() - start;
+
+            long total = 0, failed = 0;
+            int n = 0;
+            for (Client c : clients) {
+                if (c.failure != null) throw new IllegalStateException("client failed", c.failure);
+                total += c.completed;
+                failed += c.unexpected;
+                n += c.latencyCount;
+            }
+            long[] latencies = new long[n];
+            int at = 0;
+            for (Client c : clients) {
+                System.arraycopy(c.latencies, 0, latencies, at, c.latencyCount);
+                at += c.latencyCount;
+            }
+            Arrays.sort(latencies);
+            if (failed > 0) throw new IllegalStateException(failed + " responses had an unexpected status");
+            System.out.println(String.format("%,d requests in %.1f s: %,.0f requests/s over %d keep-alive connections",
+                    total, elapsed / 1e9, total / (elapsed / 1e9), connections));
+            System.out.println(String.format("latency (write of batch to response): p50 %.0f us, p99 %.0f us, p99.9 %.0f us, max %.1f ms",
+                    percentile(latencies, 0.50) / 1e3, percentile(latencies, 0.99) / 1e3, percentile(latencies, 0.999) / 1e3,
+                    latencies[latencies.length - 1] / 1e6));
+            System.out.println(String.format("server: %,d connections, %,d requests, %,d error responses",
+                    server.getConnections(), server.getRequests(), server.getErrors()));
+        } finally {
+            server.stop();
+            executor.shutdown();
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        }
+    }
+
+    // history once, plus the error statuses the load mix does not produce
+    private static void checks(InetSocketAddress address, UUID account, UUID txn) throws IOException {
+        try (SocketChannel ch = SocketChannel.open(address)) {
+            Response r = new Response();
+            String history = exchange(ch, r, "GET /accounts/" + account + "/transactions?limit=5 HTTP/1.1\r\nHost: x\r\n\r\n");
+            expect(r, 200, history);
+            if (!history.contains(txn.toString())) throw new IllegalStateException("history misses " + txn + ": " + history);
+            expect(r, 404, exchange(ch, r, "GET /transactions/" + UUID.randomUUID() + " HTTP/1.1\r\nHost: x\r\n\r\n"));
+            expect(r, 400, exchange(ch, r, post("bad-amount", account, account, "1.234")));
+            expect(r, 405, exchange(ch, r, "GET /payments HTTP/1.1\r\nHost: x\r\n\r\n"));
+            String first = exchange(ch, r, post("check", account, account, "2.50"));
+            expect(r, 201, first);
+            expect(r, 201, exchange(ch, r, post("check", account, account, "2.50")));
+            if (!first.contains("\"amount\":\"2.50\"")) throw new IllegalStateException(first);
+        }
+    }
+
+    private static String exchange(SocketChannel ch, Response r, String request) throws IOException {
+        ch.write(ByteBuffer.wrap(request.getBytes(StandardCharsets.US_ASCII)));
+        r.read(ch);
+        return r.body();
+    }
+
+    private static void expect(Response r, int status, String body) {
+        if (r.status != status) throw new IllegalStateException("expected " + status + ", got " + r.status + ": " + body);
+    }
+
+    private static String post(String key, UUID from, UUID to, String amount) {
+        String body = "key=" + key + "&from=" + from + "&to=" + to + "&toIdentifier=x&amount=" + amount;
+        return "POST /payments HTTP/1.1\r\nHost: x\r\nContent-Type: application/x-www-form-urlencoded\r\nContent-Length: "
+                + body.length() + "\r\n\r\n" + body;
+    }
+
+    private static long percentile(long[] sorted, double p) {
+        return sorted[Math.min(sorted.length - 1, (int) (sorted.length * p))];
+    }
+
+    private static final class Client implements Runnable {
+        private final int id;
+        private final InetSocketAddress address;
+        private final int depth;
+        private final BankAccount[] accounts;
+        private final UUID[] lookups;
+        private final long deadline;
+        private final SplittableRandom rnd;
+        long completed, unexpected;
+        long[] latencies = new long[1 << 16];
+        int latencyCount;
+        Throwable failure;
+
+        Client(int id, InetSocketAddress address, int depth, BankAccount[] accounts, UUID[] lookups, long deadline) {
+            this.id = id;
+            this.address = address;
+            this.depth = depth;
+            this.accounts = accounts;
+            this.lookups = lookups;
+            this.deadline = deadline;
+            this.rnd = new SplittableRandom(id);
+        }
+
+        @Override public void run() {
+            try (SocketChannel ch = SocketChannel.open(address)) {
+                ch.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                ByteBuffer out = ByteBuffer.allocate(depth * 512);
+                int[] expected = new int[depth];
+                Response r = new Response();
+                long seq = 0;
+                while (System.nanoTime() < deadline) {
+                    out.clear();
+                    for (int i = 0; i < depth; i++) {
+                        int kind = rnd.nextInt(10);
+                        String request;
+                        if (kind < 5) {
+                            BankAccount from = accounts[rnd.nextInt(accounts.length)], to = accounts[rnd.nextInt(accounts.length)];
+                            request = post("c" + id + "-" + seq++, from.id, to.id, "1.00");
+                            expected[i] = 201;
+                        } else if (kind < 8) {
+                            request = "GET /accounts/" + accounts[rnd.nextInt(accounts.length)].id + "/balance HTTP/1.1\r\nHost: x\r\n\r\n";
+                            expected[i] = 200;
+                        } else {
+                            request = "GET /transactions/" + lookups[rnd.nextInt(lookups.length)] + " HTTP/1.1\r\nHost: x\r\n\r\n";
+                            expected[i] = 200;
+                        }
+                        out.put(request.getBytes(StandardCharsets.US_ASCII));
+                    }
+                    out.flip();
+                    long sent = System.nanoTime();
+                    while (out.hasRemaining()) ch.write(out);
+                    for (int i = 0; i < depth; i++) {
+                        r.read(ch);
+                        if (r.status != expected[i]) unexpected++;
+                        if (latencyCount == latencies.length) latencies = Arrays.copyOf(latencies, latencyCount * 2);
+                        latencies[latencyCount++] = System.nanoTime() - sent;
+                        completed++;
+                    }
+                }
+            } catch (Throwable t) {
+                failure = t;
+            }
+        }
+    }
+
+    /** Reads one response at a time off a blocking channel, keeping any bytes of the next. */
+    private static final class Response {
+        private final ByteBuffer in = ByteBuffer.allocate(64 * 1024);
+        int status;
+        private int bodyStart, bodyEnd;
+
+        void read(SocketChannel ch) throws IOException {
+            // drop the previous response
+            if (bodyEnd > 0) {
+                in.flip();
+                in.position(bodyEnd);
+                in.compact();
+                bodyEnd = 0;
+            }
+            int headersEnd;
+            while ((headersEnd = indexOfBlankLine()) < 0) fill(ch);
+            byte[] b = in.array();
+            status = (b[9] - '0') * 100 + (b[10] - '0') * 10 + (b[11] - '0');
+            int length = contentLength(headersEnd);
+            bodyStart = headersEnd + 4;
+            while (in.position() < bodyStart + length) fill(ch);
+            bodyEnd = bodyStart + length;
+        }
+
+        String body() { return new String(in.array(), bodyStart, bodyEnd - bodyStart, StandardCharsets.UTF_8); }
+
+        private void fill(SocketChannel ch) throws IOException {
+            if (ch.read(in) < 0) throw new IOException("server closed the connection");
+        }
+
+        private int indexOfBlankLine() {
+            byte[] b = in.array();
+            for (int i = 0; i + 3 < in.position(); i++) {
+                if (b[i] == '\r' && b[i + 1] == '\n' && b[i + 2] == '\r' && b[i + 3] == '\n') return i;
+            }
+            return -1;
+        }
+
+        private int contentLength(int headersEnd) {
+            String headers = new String(in.array(), 0, headersEnd, StandardCharsets.US_ASCII);
+            int at = headers.indexOf("Content-Length:");
+            int end = headers.indexOf('\r', at);
+            return Integer.parseInt(headers.substring(at + "Content-Length:".length(), end < 0 ? headers.length() : end).trim());
+        }
+    }
+}
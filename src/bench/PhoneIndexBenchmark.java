@@ -0,0 +1,81 @@
+package bench;
+
+import models.User;
+import repositoryimpl.InMemoryUserRepository;
+
+import java.util.Optional;
+import java.util.SplittableRandom;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Memory per user and findByPhone latency of the user repository:
+ * - string map: the previous layout, byId plus a ConcurrentHashMap phone String -> UUID
+ *   (rebuilt here for comparison)
+ * - InMemoryUserRepository: byId plus the primitive phone index
+ * Heap is measured as the live-heap delta after GC, so it includes the User objects themselves.
+ *
+ * Usage: PhoneIndexBenchmark [users] [lookups]
+ */
+public class PhoneIndexBenchmark {
+    public static void main(String[] args) {
+        int users = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int lookups = args.length > 1 ? Integer.parseInt(args[1]) : 2_000_000;
+        String[] phones = new String[users];
+        for (int i = 0; i < users; i++) phones[i] = Long.toString(6_000_000_000L + i * 3L);
+        System.out.println(String.format("users=%,d lookups=%,d", users, lookups));
+
+        long base = usedHeap();
+        ConcurrentMap<UUID, User> byId = new ConcurrentHashMap<>();
+        User[] created = new User[users];
+        for (int i = 0; i < users; i++) {
+            created[i] = new User(UUID.randomUUID(), "u", new String(phones[i]));
+            byId.put(created[i].id, created[i]);
+        }
+        long withoutIndex = usedHeap();
+        // same object sharing as the old createUser: the index key/value are the User's own phone/id
+        ConcurrentMap<String, UUID> phoneToId = new ConcurrentHashMap<>();
+        for (User u : created) phoneToId.put(u.phone, u.id);
+        long stringIndexBytes = usedHeap() - withoutIndex;
+        long stringBytes = usedHeap() - base;
+        created = null;
+
+        InMemoryUserRepository repo = new InMemoryUserRepository();
+        long before = usedHeap();
+        for (int i = 0; i < users; i++) repo.createUser("u", new String(phones[i]));
+        long repoBytes = usedHeap() - before;
+
+        System.out.println(String.format("  string map       %6.1f bytes/user total, phone index %5.1f bytes/user",
+                (double) stringBytes / users, (double) stringIndexBytes / users));
+        System.out.println(String.format("  primitive index  %6.1f bytes/user total, phone index %5.1f bytes/user",
+                (double) repoBytes / users, (double) repo.getPhoneIndexFootprintBytes() / users));
+
+        for (int round = 0; round < 3; round++) {
+            SplittableRandom rnd = new SplittableRandom(round);
+            long sink = 0;
+            long start = System.nanoTime();
+            for (int i = 0; i < lookups; i++) {
+                UUID id = phoneToId.get(phones[rnd.nextInt(users)]);
+                User u = id == null ? null : byId.get(id);
+                if (u != null) sink++;
+            }
+            long stringNs = (System.nanoTime() - start) / lookups;
+            rnd = new SplittableRandom(round);
+            start = System.nanoTime();
+            for (int i = 0; i < lookups; i++) {
+                Optional<User> u = repo.findByPhone(phones[rnd.nextInt(users)]);
+                if (u.isPresent()) sink++;
+            }
+            long primitiveNs = (System.nanoTime() - start) / lookups;
+            System.out.println(String.format("  findByPhone: string map %,d ns, primitive index %,d ns (found %,d)", stringNs, primitiveNs, sink));
+        }
+        if (byId.size() != users || repo.getPhoneIndexSize() != users) throw new IllegalStateException("lost users");
+    }
+
+    private static long usedHeap() {
+        Runtime rt = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) System.gc();
+        return rt.totalMemory() - rt.freeMemory();
+    }
+}
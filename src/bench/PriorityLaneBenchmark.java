@@ -0,0 +1,183 @@
+package bench;
+
+import enums.ExecutionLane;
+import lock.LockManager;
+import models.Bank;
+import models.BankAccount;
+import models.Transaction;
+import models.User;
+import psp.LatencyDistribution;
+import psp.PspClient;
+import psp.SimulatedPspClient;
+import repositoryimpl.InMemoryBankAccountRepository;
+import repositoryimpl.InMemoryBankRepository;
+import repositoryimpl.InMemoryTransactionRepository;
+import repositoryimpl.InMemoryUserRepository;
+import service.*;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Checkout payments while a reconciler retry backlog and a bulk run drain through the PSP
+ * executor. A backlog of PENDING transactions without a PSP id is handed to reconcileOnce (each
+ * re-initiates its PSP call) and a bulk run goes through createPayments; meanwhile one thread
+ * makes interactive createPayment calls at a fixed rate. PSP initiates take 2 ms. Run once with
+ * a FIFO fixed pool and once with a PriorityLaneExecutor of the same size; reports, per run, the
+ * delay from an interactive createPayment call to its PSP call starting (idle, then while the
+ * backlog drains), how long the backlog
+ * and the bulk run took to drain, and the lane executor's own queue-wait metrics.
+ *
+ * Usage: PriorityLaneBenchmark [retry backlog] [bulk payments] [threads] [interactive per second]
+ */
+public class PriorityLaneBenchmark {
+    private static final int ACCOUNTS = 10_000;
+    private static final BigDecimal AMOUNT = new BigDecimal("1.00");
+
+    public static void main(String[] args) throws Exception {
+        int backlog = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int bulk = args.length > 1 ? Integer.parseInt(args[1]) : 20_000;
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : 16;
+        int perSecond = args.length > 3 ? Integer.parseInt(args[3]) : 200;
+        System.out.println(String.format("retry backlog=%,d bulk=%,d threads=%d interactive=%d/s, PSP initiate 2 ms, cores=%d",
+                backlog, bulk, threads, perSecond, Runtime.getRuntime().availableProcessors()));
+
+        run("FIFO pool", Executors.newFixedThreadPool(threads), backlog, bulk, perSecond);
+        run("priority lanes", new PriorityLaneExecutor("psp-lanes", threads), backlog, bulk, perSecond);
+    }
+
+    private static void run(String label, ExecutorService executor, int backlog, int bulk, int perSecond) throws Exception {
+        LockManager lockManager = new LockManager();
+        InMemoryUserRepository userRepo = new InMemoryUserRepository();
+        InMemoryBankAccountRepository acctRepo = new InMemoryBankAccountRepository(userRepo, lockManager);
+        InMemoryTransactionRepository txnRepo = new InMemoryTransactionRepository();
+        BankAccountService acctService = new BankAccountService(acctRepo, userRepo, lockManager);
+        Tracking psp = new Tracking(new SimulatedPspClient(1.0, 0.0, 0.6, LatencyDistribution.fixed(2), LatencyDistribution.none(),
+                Integer.MAX_VALUE, Duration.ZERO, Duration.ofMinutes(10), 1_000_000, 3));
+        TransactionService txnService = new TransactionService(txnRepo, acctRepo, acctService, psp, executor, lockManager,
+                new InMemoryBankHealthRegistry());
+
+        Bank bank = new InMemoryBankRepository().createBank("Lane Bank", "LNB");
+        BankAccount[] accounts = new BankAccount[ACCOUNTS];
+        for (int i = 0; i < ACCOUNTS; i++) {
+            User u = userRepo.createUser("u" + i, "9" + String.format("%09d", i));
+            accounts[i] = acctService.linkBankAccount(u.id, bank.id, "A" + i, new BigDecimal("100000000.00"));
+        }
+        // the backlog: funds reserved, transactions saved PENDING, no PSP call made yet
+        List<Transaction> stuck = new ArrayList<>(backlog);
+        for (int i = 0; i < backlog; i++) {
+            BankAccount from = accounts[i % ACCOUNTS];
+            acctService.reserve(from.id, AMOUNT);
+            Transaction t = new Transaction(UUID.randomUUID(), "r-" + i, from.id, null, "retry", AMOUNT);
+            txnRepo.saveNew(t);
+            stuck.add(t);
+        }
+        List<PaymentRequest> bulkRun = new ArrayList<>(bulk);
+        for (int i = 0; i < bulk; i++) {
+            bulkRun.add(new PaymentRequest("b-" + i, accounts[(i * 7) % ACCOUNTS].id, null, "bulk", AMOUNT));
+        }
+
+        AtomicBoolean interactiveRunning = new AtomicBoolean(true);
+        Thread interactive = new Thread(() -> {
+            long period = TimeUnit.SECONDS.toNanos(1) / perSecond;
+            long next = System.nanoTime();
+            for (int i = 0; interactiveRunning.get() && i < psp.issued.length; i++) {
+                while (System.nanoTime() < next) sleepNanos(next - System.nanoTime());
+                next += period;
+                psp.issued[i] = System.nanoTime();
+                try {
+                    txnService.createPayment("i-" + i, accounts[i % ACCOUNTS].id, null, "i:" + i, AMOUNT);
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+                psp.interactive.set(i + 1);
+            }
+        }, "checkout");
+
+        long start = System.nanoTime();
+        interactive.start();
+        sleepNanos(TimeUnit.SECONDS.toNanos(1)); // idle baseline
+        int beforeBacklog = psp.interactive.get();
+        for (Transaction t : stuck) txnService.reconcileOnce(t, Duration.ofHours(1), 100);
+        List<PaymentResult> results = txnService.createPayments(bulkRun);
+        for (PaymentResult r : results) if (!r.isAccepted()) throw new IllegalStateException("bulk item rejected: " + r);
+        long retryDrained = 0, bulkDrained = 0;
+        while (retryDrained == 0 || bulkDrained == 0) {
+            if (retryDrained == 0 && psp.retries.sum() == backlog) retryDrained = System.nanoTime() - start;
+            if (bulkDrained == 0 && psp.bulks.sum() == bulk) bulkDrained = System.nanoTime() - start;
+            if (System.nanoTime() - start > TimeUnit.MINUTES.toNanos(5)) throw new IllegalStateException("backlog did not drain");
+            sleepNanos(TimeUnit.MILLISECONDS.toNanos(5));
+        }
+        interactiveRunning.set(false);
+        interactive.join();
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.MINUTES);
+
+        int n = psp.interactive.get();
+        for (int i = 0; i < n; i++) {
+            if (psp.started[i] == 0) throw new IllegalStateException("interactive payment " + i + " never reached the PSP");
+        }
+        long[] idle = delays(psp, 0, beforeBacklog), loaded = delays(psp, beforeBacklog, n);
+        System.out.println(String.format("%-15s interactive call to PSP start: idle p99 %.2f ms; while draining p50 %.2f ms, p99 %.2f ms, "
+                        + "max %.1f ms (%,d payments); retry backlog drained in %.1f s, bulk run in %.1f s",
+                label + ":", percentile(idle, 0.99) / 1e6, percentile(loaded, 0.50) / 1e6, percentile(loaded, 0.99) / 1e6,
+                loaded[loaded.length - 1] / 1e6, n, retryDrained / 1e9, bulkDrained / 1e9));
+        if (executor instanceof PriorityLaneExecutor) {
+            PriorityLaneExecutor lanes = (PriorityLaneExecutor) executor;
+            for (ExecutionLane lane : ExecutionLane.values()) {
+                System.out.println(String.format("  lane %-11s %,7d tasks, queue wait mean %.2f ms, p99 (recent) %.2f ms, max %.1f ms",
+                        lane, lanes.getCompleted(lane), lanes.getMeanQueueWaitMillis(lane), lanes.getQueueWaitMillis(lane, 0.99),
+                        lanes.getMaxQueueWaitMillis(lane)));
+            }
+            if (lanes.getTaskErrors() != 0) throw new IllegalStateException(lanes.getTaskErrors() + " tasks failed");
+        }
+    }
+
+    private static long[] delays(Tracking psp, int from, int to) {
+        long[] d = new long[to - from];
+        for (int i = from; i < to; i++) d[i - from] = psp.started[i] - psp.issued[i];
+        Arrays.sort(d);
+        return d;
+    }
+
+    private static long percentile(long[] sorted, double p) {
+        return sorted[Math.min(sorted.length - 1, (int) (sorted.length * p))];
+    }
+
+    private static void sleepNanos(long nanos) {
+        if (nanos > 0) LockSupport.parkNanos(nanos);
+    }
+
+    // notes when each interactive payment's PSP call starts and counts the background ones
+    private static final class Tracking implements PspClient {
+        final PspClient delegate;
+        final long[] issued = new long[1 << 16];
+        final long[] started = new long[1 << 16];
+        final AtomicInteger interactive = new AtomicInteger();
+        final LongAdder retries = new LongAdder();
+        final LongAdder bulks = new LongAdder();
+
+        Tracking(PspClient delegate) { this.delegate = delegate; }
+
+        @Override public PspResponse initiateTransfer(String fromMasked, String toIdentifier, BigDecimal amount) {
+            if (toIdentifier.startsWith("i:")) started[Integer.parseInt(toIdentifier.substring(2))] = System.nanoTime();
+            PspResponse r = delegate.initiateTransfer(fromMasked, toIdentifier, amount);
+            if (toIdentifier.equals("retry")) retries.increment();
+            else if (toIdentifier.equals("bulk")) bulks.increment();
+            return r;
+        }
+
+        @Override public PspResponse queryStatus(String pspTxnId) { return delegate.queryStatus(pspTxnId); }
+    }
+}
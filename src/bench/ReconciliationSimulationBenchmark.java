@@ -0,0 +1,175 @@
+package bench;
+
+import enums.TransactionStatus;
+import lock.LockManager;
+import models.Bank;
+import models.BankAccount;
+import models.Transaction;
+import models.User;
+import psp.LatencyDistribution;
+import psp.PspClient;
+import psp.SimulatedPspClient;
+import repositoryimpl.InMemoryBankAccountRepository;
+import repositoryimpl.InMemoryBankRepository;
+import repositoryimpl.InMemoryTransactionRepository;
+import repositoryimpl.InMemoryUserRepository;
+import scheduling.SimulatedScheduler;
+import service.*;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Reconciliation policies compared in simulated time. Payments arrive at a steady rate for an
+ * hour of simulated time; the PSP (seeded SimulatedPspClient on the simulated clock) answers
+ * half of them PENDING, resolving each after a log-normal delay (median 30 s, heavy tail), and a
+ * ReconciliationService on the same SimulatedScheduler queries / times them out. Reports per
+ * policy the PSP status queries spent, how long PENDING payments took to become final and how
+ * many were failed by timeout, plus the simulated-to-wall time ratio. The first policy is run
+ * twice and must give identical results.
+ *
+ * Usage: ReconciliationSimulationBenchmark [payments] [simulated arrival minutes]
+ */
+public class ReconciliationSimulationBenchmark {
+    private static final Instant START = Instant.parse("2026-01-01T00:00:00Z");
+    private static final Duration DRAIN = Duration.ofMinutes(10); // after the last arrival
+    private static final int ACCOUNTS = 1_000;
+
+    private static final class Policy {
+        final String label;
+        final Duration interval;
+        final Duration maxPending;
+        final int maxAttempts;
+        final Duration backoff;
+
+        Policy(String label, Duration interval, Duration maxPending, int maxAttempts, Duration backoff) {
+            this.label = label; this.interval = interval; this.maxPending = maxPending;
+            this.maxAttempts = maxAttempts; this.backoff = backoff;
+        }
+    }
+
+    private static final class Result {
+        long queries, success, failed, timedOut, stillPending, digest;
+        long[] resolveMillis;
+        long wallNanos;
+    }
+
+    public static void main(String[] args) {
+        int payments = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        int minutes = args.length > 1 ? Integer.parseInt(args[1]) : 60;
+        System.out.println(String.format("payments=%,d over %d simulated minutes (+%d to drain), cores=%d",
+                payments, minutes, DRAIN.toMinutes(), Runtime.getRuntime().availableProcessors()));
+
+        Policy[] policies = {
+                new Policy("every 10 s, 5 attempts (default)", Duration.ofSeconds(10), Duration.ofSeconds(120), 5, Duration.ZERO),
+                new Policy("every 10 s, backoff 5 s, 5 attempts", Duration.ofSeconds(10), Duration.ofSeconds(120), 5, Duration.ofSeconds(5)),
+                new Policy("every 5 s, backoff 2 s, 12 attempts", Duration.ofSeconds(5), Duration.ofSeconds(120), 12, Duration.ofSeconds(2)),
+        };
+        Result first = null;
+        for (Policy p : policies) {
+            Result r = run(p, payments, minutes);
+            if (first == null) first = r;
+            Arrays.sort(r.resolveMillis);
+            double simulated = Duration.ofMinutes(minutes).plus(DRAIN).toNanos();
+            System.out.println(String.format("%-38s %,9d status queries, PENDING final after p50 %5.1f s / p99 %5.1f s, "
+                            + "%,d timed out, %,d success / %,d failed; %.1f s wall (%,.0fx)",
+                    p.label, r.queries, percentile(r.resolveMillis, 0.50) / 1e3, percentile(r.resolveMillis, 0.99) / 1e3,
+                    r.timedOut, r.success, r.failed, r.wallNanos / 1e9, simulated / r.wallNanos));
+            if (r.stillPending != 0) throw new IllegalStateException(r.stillPending + " payments still PENDING");
+        }
+        Result again = run(policies[0], payments, minutes);
+        if (again.digest != first.digest || again.queries != first.queries) {
+            throw new IllegalStateException("simulation is not reproducible");
+        }
+        System.out.println("re-run of the first policy: identical outcomes and query count");
+    }
+
+    private static Result run(Policy policy, int payments, int minutes) {
+        long wallStart = System.nanoTime();
+        SimulatedScheduler sim = new SimulatedScheduler(START);
+        LockManager lockManager = new LockManager();
+        InMemoryUserRepository userRepo = new InMemoryUserRepository();
+        InMemoryBankAccountRepository acctRepo = new InMemoryBankAccountRepository(userRepo, lockManager);
+        InMemoryTransactionRepository txnRepo = new InMemoryTransactionRepository();
+        BankAccountService acctService = new BankAccountService(acctRepo, userRepo, lockManager);
+        LongAdder queries = new LongAdder();
+        PspClient psp = counting(new SimulatedPspClient(0.5, 0.45, 0.9, LatencyDistribution.none(), LatencyDistribution.none(),
+                Integer.MAX_VALUE, LatencyDistribution.logNormal(30_000, 1.0), Duration.ofDays(1), 10_000_000, 42, sim.clock()), queries);
+        TransactionService txnService = new TransactionService(txnRepo, acctRepo, acctService, psp, sim.executor(), lockManager,
+                new InMemoryBankHealthRegistry(), new TransactionService.Options().clock(sim.clock()));
+        ReconciliationService reconciler = new ReconciliationService(txnService, txnRepo, sim, Duration.ofSeconds(5),
+                policy.interval, policy.maxPending, policy.maxAttempts, policy.backoff);
+
+        Bank bank = new InMemoryBankRepository().createBank("Sim Bank", "SIM");
+        BankAccount[] accounts = new BankAccount[ACCOUNTS];
+        for (int i = 0; i < ACCOUNTS; i++) {
+            User u = userRepo.createUser("u" + i, "9" + String.format("%09d", i));
+            accounts[i] = acctService.linkBankAccount(u.id, bank.id, "A" + i, new BigDecimal("1000000000.00"));
+        }
+
+        // arrivals every 100 ms of simulated time
+        long ticks = minutes * 600L;
+        long[] tick = new long[1];
+        int[] created = new int[1];
+        BigDecimal amount = new BigDecimal("10.00");
+        sim.scheduleWithFixedDelay(() -> {
+            int until = (int) Math.min(payments, ++tick[0] * payments / ticks);
+            for (; created[0] < until; created[0]++) {
+                int i = created[0];
+                BankAccount from = accounts[i % ACCOUNTS];
+                try {
+                    txnService.createPayment("p-" + i, from.id, null, "merchant@upi", amount);
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        }, Duration.ZERO, Duration.ofMillis(100));
+        reconciler.start();
+        sim.runFor(Duration.ofMinutes(minutes).plus(DRAIN));
+        reconciler.stop();
+        sim.shutdown();
+
+        Result r = new Result();
+        r.queries = queries.sum();
+        int n = 0;
+        long[] resolve = new long[payments];
+        long digest = 0;
+        for (Transaction t : (Iterable<Transaction>) txnRepo.streamAll()::iterator) {
+            long took = t.updatedAt.toEpochMilli() - t.createdAt.toEpochMilli();
+            if (t.status == TransactionStatus.SUCCESS) r.success++;
+            else if (t.status == TransactionStatus.FAILED) r.failed++;
+            else r.stillPending++;
+            if ("RECONCILE_TIMEOUT".equals(t.getErrorCode())) r.timedOut++;
+            if (t.pspTxnId != null && took > 0) resolve[n++] = took;
+            // order-independent: each payment's key, outcome and timing
+            long h = t.idempotencyKey.hashCode() * 0x9E3779B97F4A7C15L ^ (t.status.ordinal() + 31L * took);
+            digest += h * 0xC2B2AE3D27D4EB4FL ^ (h >>> 29);
+        }
+        r.resolveMillis = Arrays.copyOf(resolve, n);
+        r.digest = digest;
+        if (r.success + r.failed + r.stillPending != payments) {
+            throw new IllegalStateException((r.success + r.failed + r.stillPending) + " transactions for " + payments + " payments");
+        }
+        r.wallNanos = System.nanoTime() - wallStart;
+        return r;
+    }
+
+    private static long percentile(long[] sorted, double p) {
+        return sorted.length == 0 ? 0 : sorted[Math.min(sorted.length - 1, (int) (sorted.length * p))];
+    }
+
+    private static PspClient counting(PspClient delegate, LongAdder queries) {
+        return new PspClient() {
+            @Override public PspResponse initiateTransfer(String fromMasked, String toIdentifier, BigDecimal amount) {
+                return delegate.initiateTransfer(fromMasked, toIdentifier, amount);
+            }
+            @Override public PspResponse queryStatus(String pspTxnId) {
+                queries.increment();
+                return delegate.queryStatus(pspTxnId);
+            }
+        };
+    }
+}
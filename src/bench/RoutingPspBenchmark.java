@@ -0,0 +1,182 @@
+package bench;
+
+import psp.LatencyDistribution;
+import psp.PspClient;
+import psp.RoutingPspClient;
+import psp.SimulatedPspClient;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * RoutingPspClient against three simulated PSPs of different speed (median initiate 5 / 10 / 40
+ * ms, 32 concurrent calls each) plus one that throws on every call:
+ * - initiate: threads initiate transfers through the router and through plain round-robin;
+ *   reports latency percentiles, each backend's share and that the broken one was ejected, and
+ *   checks every initiate reached exactly one backend
+ * - status: PENDING transfers are queried once each with and without hedging, query latency
+ *   being 3 ms with a 2% tail of 150 ms
+ *
+ * Usage: RoutingPspBenchmark [initiates per thread] [threads] [queries]
+ */
+public class RoutingPspBenchmark {
+    public static void main(String[] args) throws Exception {
+        int perThread = args.length > 0 ? Integer.parseInt(args[0]) : 300;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : 48;
+        int queries = args.length > 2 ? Integer.parseInt(args[2]) : 4_000;
+        System.out.println(String.format("initiates=%,d x %d threads, queries=%,d, cores=%d",
+                perThread, threads, queries, Runtime.getRuntime().availableProcessors()));
+
+        initiate(perThread, threads);
+        status(queries);
+    }
+
+    private static void initiate(int perThread, int threads) throws Exception {
+        for (boolean routed : new boolean[]{true, false}) {
+            List<CountingPsp> backends = List.of(
+                    new CountingPsp("fast", simulated(1.0, 5, 1)),
+                    new CountingPsp("medium", simulated(1.0, 10, 2)),
+                    new CountingPsp("slow", simulated(1.0, 40, 3)),
+                    new CountingPsp("broken", null));
+            RoutingPspClient router = new RoutingPspClient(new ArrayList<>(backends), null, 0.1, 3,
+                    Duration.ofMinutes(1), Duration.ofHours(1), 1_000_000);
+            AtomicInteger next = new AtomicInteger();
+            PspClient roundRobin = new PspClient() {
+                @Override public PspResponse initiateTransfer(String fromMasked, String toIdentifier, BigDecimal amount) {
+                    return backends.get(Math.floorMod(next.getAndIncrement(), backends.size())).initiateTransfer(fromMasked, toIdentifier, amount);
+                }
+                @Override public PspResponse queryStatus(String pspTxnId) { throw new UnsupportedOperationException(); }
+            };
+            PspClient psp = routed ? router : roundRobin;
+
+            long[] latencies = new long[perThread * threads];
+            LongAdder failed = new LongAdder();
+            List<Thread> workers = new ArrayList<>();
+            long start = System.nanoTime();
+            for (int w = 0; w < threads; w++) {
+                int base = w * perThread;
+                Thread t = new Thread(() -> {
+                    BigDecimal amount = new BigDecimal("10.00");
+                    for (int i = 0; i < perThread; i++) {
+                        long s = System.nanoTime();
+                        try {
+                            psp.initiateTransfer("XXXX1234", "merchant@upi", amount);
+                        } catch (RuntimeException e) {
+                            failed.increment();
+                        }
+                        latencies[base + i] = System.nanoTime() - s;
+                    }
+                });
+                workers.add(t);
+                t.start();
+            }
+            for (Thread t : workers) t.join();
+            long elapsed = System.nanoTime() - start;
+
+            long calls = backends.stream().mapToLong(b -> b.initiates.sum()).sum();
+            if (calls != latencies.length) throw new IllegalStateException(calls + " backend initiates for " + latencies.length + " transfers");
+            Arrays.sort(latencies);
+            StringBuilder share = new StringBuilder();
+            for (CountingPsp b : backends) {
+                share.append(String.format(" %s %.1f%%", b.label, 100.0 * b.initiates.sum() / calls));
+            }
+            System.out.println(String.format("initiate %-11s %,.0f/s, p50 %.1f ms, p99 %.1f ms, %,d failed; share:%s%s",
+                    routed ? "(routed):" : "(round-robin):", latencies.length / (elapsed / 1e9),
+                    latencies[latencies.length / 2] / 1e6, latencies[(int) (latencies.length * 0.99)] / 1e6,
+                    failed.sum(), share, routed ? (router.isEjected(3) ? "; broken backend ejected" : "; broken backend NOT ejected") : ""));
+            if (routed && !router.isEjected(3)) throw new IllegalStateException("broken backend was not ejected");
+        }
+    }
+
+    private static void status(int queries) throws Exception {
+        ExecutorService queryExecutor = Executors.newCachedThreadPool();
+        try {
+            for (boolean hedged : new boolean[]{false, true}) {
+                List<PspClient> backends = List.of(pending(11), pending(12));
+                RoutingPspClient router = new RoutingPspClient(backends, hedged ? queryExecutor : null, 0.1, 5,
+                        Duration.ofSeconds(10), Duration.ofHours(1), 1_000_000);
+                String[] ids = new String[queries];
+                for (int i = 0; i < queries; i++) ids[i] = router.initiateTransfer("XXXX1234", "merchant@upi", BigDecimal.ONE).pspTxnId;
+                // warm the p95 estimate, then measure
+                for (int i = 0; i < 600; i++) router.queryStatus(ids[i]);
+
+                int threads = 16;
+                long[] latencies = new long[queries - 600];
+                AtomicInteger cursor = new AtomicInteger();
+                LongAdder misrouted = new LongAdder();
+                List<Thread> workers = new ArrayList<>();
+                for (int w = 0; w < threads; w++) {
+                    Thread t = new Thread(() -> {
+                        int i;
+                        while ((i = cursor.getAndIncrement()) < latencies.length) {
+                            long s = System.nanoTime();
+                            PspClient.PspResponse r = router.queryStatus(ids[600 + i]);
+                            latencies[i] = System.nanoTime() - s;
+                            if ("UNKNOWN".equals(r.errorCode)) misrouted.increment();
+                        }
+                    });
+                    workers.add(t);
+                    t.start();
+                }
+                for (Thread t : workers) t.join();
+                Arrays.sort(latencies);
+                System.out.println(String.format("status %-10s p50 %.1f ms, p99 %.1f ms, p99.9 %.1f ms, max %.1f ms; "
+                                + "hedged %,d of %,d queries (%,d answered first), hedge after %.1f / %.1f ms",
+                        hedged ? "(hedged):" : "(plain):", latencies[latencies.length / 2] / 1e6,
+                        latencies[(int) (latencies.length * 0.99)] / 1e6, latencies[(int) (latencies.length * 0.999)] / 1e6,
+                        latencies[latencies.length - 1] / 1e6, router.getHedges(), router.getQueries(), router.getHedgeWins(),
+                        router.getHedgeAfterMillis(0), router.getHedgeAfterMillis(1)));
+                if (misrouted.sum() != 0) throw new IllegalStateException(misrouted.sum() + " queries went to the wrong backend");
+                if (router.getUnownedQueries() != 0) throw new IllegalStateException(router.getUnownedQueries() + " queries had no owner");
+            }
+        } finally {
+            queryExecutor.shutdownNow();
+            queryExecutor.awaitTermination(10, TimeUnit.SECONDS);
+        }
+    }
+
+    private static SimulatedPspClient simulated(double successProb, double medianMillis, long seed) {
+        return new SimulatedPspClient(successProb, 1.0 - successProb, 0.6, LatencyDistribution.logNormal(medianMillis, 0.3),
+                LatencyDistribution.none(), 32, Duration.ZERO, Duration.ofMinutes(10), 1_000_000, seed);
+    }
+
+    // every transfer PENDING and resolved at once; queries are 3 ms with a 2% tail of 150 ms
+    private static SimulatedPspClient pending(long seed) {
+        LatencyDistribution query = LatencyDistribution.bimodal(LatencyDistribution.logNormal(3, 0.2), LatencyDistribution.fixed(150), 0.02);
+        return new SimulatedPspClient(0.0, 1.0, 0.6, LatencyDistribution.none(), query,
+                Integer.MAX_VALUE, Duration.ZERO, Duration.ofMinutes(10), 1_000_000, seed);
+    }
+
+    // counts initiates reaching the backend; a null delegate throws on every call
+    private static final class CountingPsp implements PspClient {
+        final String label;
+        final PspClient delegate;
+        final LongAdder initiates = new LongAdder();
+
+        CountingPsp(String label, PspClient delegate) {
+            this.label = label;
+            this.delegate = delegate;
+        }
+
+        @Override public String name() { return label; }
+
+        @Override public PspResponse initiateTransfer(String fromMasked, String toIdentifier, BigDecimal amount) {
+            initiates.increment();
+            if (delegate == null) throw new IllegalStateException("connection refused");
+            return delegate.initiateTransfer(fromMasked, toIdentifier, amount);
+        }
+
+        @Override public PspResponse queryStatus(String pspTxnId) {
+            if (delegate == null) throw new IllegalStateException("connection refused");
+            return delegate.queryStatus(pspTxnId);
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package bench;
+
+import enums.TransactionStatus;
+import lock.LockManager;
+import models.Bank;
+import models.BankAccount;
+import models.Transaction;
+import models.User;
+import psp.MockPspClient;
+import repositoryimpl.InMemoryBankAccountRepository;
+import repositoryimpl.InMemoryBankRepository;
+import repositoryimpl.InMemoryTransactionRepository;
+import repositoryimpl.InMemoryUserRepository;
+import service.*;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/**
+ * SettlementEngine in two parts:
+ * - recording: threads report successful inter-bank payments (reused Transaction objects, so
+ *   only the engine's cost is measured) until the cycle holds the given count, then the cycle is
+ *   closed while the threads keep recording into the next one
+ * - end to end: payments between accounts of several banks through TransactionService (instant
+ *   PSP) while cycles close every 50 ms; afterwards every closed cycle is reconciled against the
+ *   transaction set and the cycles together must hold every inter-bank success
+ *
+ * Usage: SettlementBenchmark [transactions per cycle] [banks] [recording threads] [end-to-end payments]
+ */
+public class SettlementBenchmark {
+    public static void main(String[] args) throws Exception {
+        long perCycle = args.length > 0 ? Long.parseLong(args[0]) : 100_000_000L;
+        int banks = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+        int payments = args.length > 3 ? Integer.parseInt(args[3]) : 300_000;
+        System.out.println(String.format("transactions/cycle=%,d banks=%d threads=%d payments=%,d cores=%d",
+                perCycle, banks, threads, payments, Runtime.getRuntime().availableProcessors()));
+        Path dir = Files.createTempDirectory("settlement");
+        try {
+            recording(dir, perCycle, banks, threads);
+            endToEnd(dir, banks, payments);
+        } finally {
+            try (Stream<Path> files = Files.list(dir)) {
+                files.forEach(f -> f.toFile().delete());
+            }
+            Files.delete(dir);
+        }
+    }
+
+    private static void recording(Path dir, long perCycle, int bankCount, int threads) throws Exception {
+        InMemoryTransactionRepository txnRepo = new InMemoryTransactionRepository();
+        InMemoryBankAccountRepository acctRepo = new InMemoryBankAccountRepository(new InMemoryUserRepository(), new LockManager());
+        SettlementEngine engine = new SettlementEngine(txnRepo, acctRepo, dir);
+        UUID[] banks = new UUID[bankCount];
+        for (int i = 0; i < bankCount; i++) banks[i] = UUID.randomUUID();
+
+        LongAdder recorded = new LongAdder();
+        AtomicBoolean running = new AtomicBoolean(true);
+        List<Thread> workers = new ArrayList<>();
+        for (int w = 0; w < threads; w++) {
+            SplittableRandom rnd = new SplittableRandom(w);
+            Thread t = new Thread(() -> {
+                Transaction[] txns = new Transaction[256];
+                for (int i = 0; i < txns.length; i++) {
+                    txns[i] = new Transaction(UUID.randomUUID(), null, UUID.randomUUID(), UUID.randomUUID(), "x",
+                            BigDecimal.valueOf(1 + rnd.nextInt(100_000), 2));
+                }
+                int i = 0;
+                while (running.get()) {
+                    Transaction txn = txns[i++ & 255];
+                    UUID from = banks[rnd.nextInt(banks.length)], to = banks[rnd.nextInt(banks.length)];
+                    SettlementEngine.Cycle c = engine.enter();
+                    try {
+                        txn.markSuccess("psp", engine.stamp(c));
+                        engine.record(c, txn, from, to);
+                    } finally {
+                        engine.exit(c);
+                    }
+                    recorded.increment();
+                }
+            });
+            workers.add(t);
+            t.start();
+        }
+        long start = System.nanoTime();
+        while (recorded.sum() < perCycle) Thread.sleep(10);
+        long fillNanos = System.nanoTime() - start;
+        long before = recorded.sum();
+        SettlementEngine.CycleReport report = engine.closeCycle();
+        long duringClose = recorded.sum() - before;
+        Thread.sleep(500);
+        running.set(false);
+        for (Thread t : workers) t.join();
+        SettlementEngine.CycleReport next = engine.closeCycle();
+
+        long net = report.net.values().stream().mapToLong(Long::longValue).sum();
+        if (net != 0) throw new IllegalStateException("net positions do not sum to zero: " + net);
+        if (report.transactions + next.transactions > recorded.sum()) {
+            throw new IllegalStateException("cycles hold more payments than were recorded");
+        }
+        System.out.println(String.format("recording: %,.0f payments/s into striped positions", before / (fillNanos / 1e9)));
+        System.out.println(String.format("close: cycle of %,d inter-bank payments, %d bank pairs, closed in %.2f ms "
+                        + "(%,d payments recorded meanwhile), file %,d bytes",
+                report.transactions, report.gross.size(), report.closeNanos / 1e6, duringClose, Files.size(report.file)));
+    }
+
+    private static void endToEnd(Path dir, int bankCount, int payments) throws Exception {
+        LockManager lockManager = new LockManager();
+        InMemoryUserRepository userRepo = new InMemoryUserRepository();
+        InMemoryBankAccountRepository acctRepo = new InMemoryBankAccountRepository(userRepo, lockManager);
+        InMemoryTransactionRepository txnRepo = new InMemoryTransactionRepository();
+        BankAccountService acctService = new BankAccountService(acctRepo, userRepo, lockManager);
+        SettlementEngine engine = new SettlementEngine(txnRepo, acctRepo, dir);
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(2, Runtime.getRuntime().availableProcessors()));
+        TransactionService txnService = new TransactionService(txnRepo, acctRepo, acctService, new MockPspClient(0.95, 0.0),
+                executor, lockManager, new InMemoryBankHealthRegistry(), new TransactionService.Options().settlement(engine));
+
+        InMemoryBankRepository bankRepo = new InMemoryBankRepository();
+        int accountCount = 10_000;
+        BankAccount[] accounts = new BankAccount[accountCount];
+        for (int i = 0; i < accountCount; i++) {
+            Bank bank = i < bankCount ? bankRepo.createBank("Bank " + i, "BK" + i) : null;
+            UUID bankId = bank != null ? bank.id : accounts[i % bankCount].bankId;
+            User u = userRepo.createUser("u" + i, "8" + String.format("%09d", i));
+            accounts[i] = acctService.linkBankAccount(u.id, bankId, "A" + i, new BigDecimal("1000000.00"));
+        }
+
+        SplittableRandom rnd = new SplittableRandom(11);
+        List<PaymentRequest> requests = new ArrayList<>(payments);
+        for (int i = 0; i < payments; i++) {
+            BankAccount from = accounts[rnd.nextInt(accountCount)], to = accounts[rnd.nextInt(accountCount)];
+            requests.add(new PaymentRequest("s-" + i, from.id, to.id, to.accountNumber, BigDecimal.valueOf(1 + rnd.nextInt(50_000), 2)));
+        }
+        engine.start(Duration.ofMillis(50));
+        long start = System.nanoTime();
+        for (int from = 0; from < payments; from += 10_000) {
+            txnService.createPayments(requests.subList(from, Math.min(payments, from + 10_000)));
+        }
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.MINUTES);
+        long elapsed = System.nanoTime() - start;
+        engine.stop();
+        long last = engine.closeCycle().cycle;
+
+        long inCycles = 0, closeNanosMax = 0;
+        int cycles = 0;
+        for (long c = 1; c <= last; c++) {
+            SettlementEngine.CycleReport r = engine.findClosed(c).orElseThrow();
+            SettlementEngine.Reconciliation rec = engine.reconcile(c);
+            if (!rec.isBalanced() || rec.transactions != r.transactions) throw new IllegalStateException(rec.toString());
+            inCycles += r.transactions;
+            closeNanosMax = Math.max(closeNanosMax, r.closeNanos);
+            cycles++;
+        }
+        long interBank = txnRepo.streamAll().filter(t -> t.status == TransactionStatus.SUCCESS)
+                .filter(t -> !acctRepo.findById(t.fromAccountId).orElseThrow().bankId.equals(acctRepo.findById(t.toAccountId).orElseThrow().bankId))
+                .count();
+        if (inCycles != interBank) throw new IllegalStateException("cycles hold " + inCycles + " of " + interBank + " inter-bank successes");
+        System.out.println(String.format("end to end: %,d payments in %,d ms, %d cycles closed meanwhile (slowest close %.2f ms), "
+                + "%,d inter-bank successes, every cycle reconciled", payments, elapsed / 1_000_000, cycles, closeNanosMax / 1e6, interBank));
+    }
+}
@@ -0,0 +1,113 @@
+package bench;
+
+import cluster.InProcessTransport;
+import cluster.ShardNode;
+import cluster.ShardRouter;
+import enums.TransferState;
+import models.Bank;
+import models.BankAccount;
+import models.User;
+import repositoryimpl.InMemoryBankRepository;
+import repositoryimpl.ShardIds;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.UUID;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Transfers between random accounts through ShardRouter over 1, 2, 4 and 8 shard nodes (one
+ * inbox thread each), with clients pipelining up to 256 transfers each. With N nodes about
+ * (N-1)/N of the transfers cross shards (reserve, remote credit, settle). Optionally loses a
+ * share of the messages, so requests and credits are resent (transfers that still got no answer
+ * are resubmitted under the same id) and the recovery pass finishes the rest.
+ * Checks afterwards that money was conserved, nothing is left reserved and every transfer
+ * committed.
+ *
+ * Usage: ShardedTransferBenchmark [transfers per client] [clients] [accounts] [message loss rate]
+ */
+public class ShardedTransferBenchmark {
+    private static final BigDecimal AMOUNT = new BigDecimal("1.00");
+    private static final BigDecimal INITIAL = new BigDecimal("1000000.00");
+
+    public static void main(String[] args) throws Exception {
+        int perClient = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int clients = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        int accounts = args.length > 2 ? Integer.parseInt(args[2]) : 10_000;
+        double loss = args.length > 3 ? Double.parseDouble(args[3]) : 0;
+        System.out.println(String.format("clients=%d transfers/client=%,d accounts=%,d loss=%.3f cores=%d",
+                clients, perClient, accounts, loss, Runtime.getRuntime().availableProcessors()));
+        run(2, perClient / 4, clients, accounts, loss, false); // warm-up
+        for (int nodes = 1; nodes <= 8; nodes *= 2) run(nodes, perClient, clients, accounts, loss, true);
+    }
+
+    private static void run(int nodeCount, int perClient, int clients, int accountCount, double loss, boolean print) throws Exception {
+        List<ShardNode> nodes = new ArrayList<>();
+        for (int i = 0; i < nodeCount; i++) nodes.add(new ShardNode(i, 1, Duration.ofMillis(200)));
+        // set-up and checks over a reliable transport, transfers over the lossy one
+        ShardRouter reliable = new ShardRouter(nodes, new InProcessTransport(nodes));
+        nodes.forEach(ShardNode::start);
+
+        Bank bank = new InMemoryBankRepository().createBank("Bench Bank", "BNB");
+        UUID[] ids = new UUID[accountCount];
+        for (int i = 0; i < accountCount; i++) {
+            User u = reliable.onboardUser("u" + i, "8" + String.format("%09d", i));
+            ids[i] = reliable.linkBankAccount(u.id, bank.id, "ACC" + i, INITIAL).id;
+        }
+        ShardRouter router = new ShardRouter(nodes, new InProcessTransport(nodes, loss));
+
+        LongAdder committed = new LongAdder(), crossShard = new LongAdder();
+        List<Thread> threads = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int c = 0; c < clients; c++) {
+            SplittableRandom rnd = new SplittableRandom(c);
+            Thread t = new Thread(() -> {
+                Semaphore inFlight = new Semaphore(256);
+                for (int i = 0; i < perClient; i++) {
+                    UUID from = ids[rnd.nextInt(ids.length)], to = ids[rnd.nextInt(ids.length)];
+                    if (ShardIds.shardOf(from) != ShardIds.shardOf(to)) crossShard.increment();
+                    inFlight.acquireUninterruptibly();
+                    submit(router, UUID.randomUUID(), from, to, committed, inFlight);
+                }
+                inFlight.acquireUninterruptibly(256); // drain
+            });
+            threads.add(t);
+            t.start();
+        }
+        for (Thread t : threads) t.join();
+        long elapsed = System.nanoTime() - start;
+
+        BigDecimal total = BigDecimal.ZERO;
+        boolean reservedLeft = false;
+        for (UUID id : ids) {
+            BankAccount a = reliable.findAccount(id).orElseThrow();
+            total = total.add(a.getBalance());
+            reservedLeft |= a.getReserved().signum() != 0;
+        }
+        long resends = nodes.stream().mapToLong(ShardNode::getCreditResends).sum();
+        nodes.forEach(ShardNode::stop);
+        long transfers = (long) perClient * clients;
+        if (total.compareTo(INITIAL.multiply(BigDecimal.valueOf(accountCount))) != 0 || reservedLeft || committed.sum() != transfers) {
+            throw new IllegalStateException(nodeCount + " nodes: total " + total + ", reserved left " + reservedLeft
+                    + ", committed " + committed.sum() + " of " + transfers);
+        }
+        if (print) System.out.println(String.format("  %d node(s) %,10.0f transfers/s  (%,d ms) cross-shard %.0f%%  credit resends %,d",
+                nodeCount, transfers / (elapsed / 1e9), elapsed / 1_000_000, 100.0 * crossShard.sum() / transfers, resends));
+    }
+
+    // a transfer whose payer node could not be reached is resubmitted under the same id
+    private static void submit(ShardRouter router, UUID transferId, UUID from, UUID to, LongAdder committed, Semaphore inFlight) {
+        router.transfer(transferId, from, to, AMOUNT).whenComplete((state, e) -> {
+            if (e != null) {
+                submit(router, transferId, from, to, committed, inFlight);
+                return;
+            }
+            if (state == TransferState.COMMITTED) committed.increment();
+            inFlight.release();
+        });
+    }
+}
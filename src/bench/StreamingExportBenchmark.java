@@ -0,0 +1,86 @@
+package bench;
+
+import enums.TransactionStatus;
+import exception.IdempotencyException;
+import models.Transaction;
+import repositoryimpl.InMemoryTransactionRepository;
+
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.function.LongSupplier;
+
+/**
+ * Full-table export over a repository with half its transactions hot and half in the columnar
+ * archive: List-returning search vs the Stream API (sequential, parallel, early termination).
+ * Reports wall time and bytes allocated by the calling thread.
+ *
+ * Usage: StreamingExportBenchmark [transactions] [accounts]
+ */
+public class StreamingExportBenchmark {
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    public static void main(String[] args) throws Exception {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int accountCount = args.length > 1 ? Integer.parseInt(args[1]) : 10_000;
+        Random rnd = new Random(7);
+        UUID[] accounts = new UUID[accountCount];
+        for (int i = 0; i < accountCount; i++) accounts[i] = UUID.randomUUID();
+
+        InMemoryTransactionRepository repo = new InMemoryTransactionRepository();
+        for (int i = 0; i < n; i++) {
+            int to = rnd.nextInt(accountCount);
+            Transaction t = new Transaction(UUID.randomUUID(), "idem-" + i, accounts[rnd.nextInt(accountCount)],
+                    accounts[to], "9" + String.format("%09d", to), BigDecimal.valueOf(100 + rnd.nextInt(100_000), 2));
+            try {
+                repo.saveNew(t);
+            } catch (IdempotencyException e) {
+                throw new IllegalStateException(e);
+            }
+            if (rnd.nextInt(10) == 0) t.markFailed("PSP_FAILURE");
+            else t.markSuccess(UUID.randomUUID().toString());
+            if (i == n / 2) {
+                Thread.sleep(2);
+                repo.compactFinalized(Duration.ZERO);
+            }
+        }
+        System.out.println(String.format("transactions=%,d hot=%,d archived=%,d cores=%d",
+                n, repo.hotSize(), repo.archivedSize(), Runtime.getRuntime().availableProcessors()));
+
+        // export = sum of amounts in minor units over every SUCCESS transaction
+        long viaList = run("list   findByStatus", () -> {
+            List<Transaction> all = repo.findByStatus(TransactionStatus.SUCCESS);
+            long sum = 0;
+            for (Transaction t : all) sum += t.amount.unscaledValue().longValue();
+            return sum;
+        });
+        long viaStream = run("stream sequential ", () -> repo.streamByStatus(TransactionStatus.SUCCESS)
+                .mapToLong(t -> t.amount.unscaledValue().longValue()).sum());
+        long viaParallel = run("stream parallel   ", () -> repo.streamByStatus(TransactionStatus.SUCCESS).parallel()
+                .mapToLong(t -> t.amount.unscaledValue().longValue()).sum());
+        if (viaList != viaStream || viaList != viaParallel) {
+            throw new IllegalStateException("export totals differ: " + viaList + " / " + viaStream + " / " + viaParallel);
+        }
+        long firstList = run("list   first FAILED", () -> repo.findByStatus(TransactionStatus.FAILED).get(0).amount.scale());
+        long firstStream = run("stream first FAILED", () -> repo.streamByStatus(TransactionStatus.FAILED).findFirst().get().amount.scale());
+        if (firstList != firstStream) throw new IllegalStateException("findFirst differs");
+        if (repo.streamAll().count() != n) throw new IllegalStateException("streamAll lost rows");
+    }
+
+    private static long run(String label, LongSupplier export) {
+        long result = 0;
+        for (int i = 0; i < 3; i++) result = export.getAsLong();
+        long tid = Thread.currentThread().getId();
+        long bytes = THREADS.getThreadAllocatedBytes(tid);
+        long start = System.nanoTime();
+        export.getAsLong();
+        long elapsed = System.nanoTime() - start;
+        bytes = THREADS.getThreadAllocatedBytes(tid) - bytes;
+        System.out.println(String.format("%s: %8.1f ms, %,15d bytes allocated by caller", label, elapsed / 1e6, bytes));
+        return result;
+    }
+}
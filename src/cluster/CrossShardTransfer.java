@@ -0,0 +1,37 @@
+package cluster;
+
+import enums.TransferState;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+/** Payer-side journal entry of a transfer; outcome completes once it is COMMITTED or ABORTED. */
+public class CrossShardTransfer {
+    public final UUID id;
+    public final UUID fromAccountId;
+    public final UUID toAccountId;
+    public final BigDecimal amount;
+    volatile TransferState state = TransferState.RESERVED;
+    volatile String error;
+    volatile int creditAttempts;
+    volatile boolean creditInFlight;  // a credit request is out or a resend is scheduled
+    volatile boolean creditSent;      // a credit request was handed to the transport, so it may have been applied
+    final CompletableFuture<TransferState> outcome = new CompletableFuture<>();
+
+    CrossShardTransfer(UUID id, UUID fromAccountId, UUID toAccountId, BigDecimal amount) {
+        this.id = id;
+        this.fromAccountId = fromAccountId;
+        this.toAccountId = toAccountId;
+        this.amount = amount;
+    }
+
+    public TransferState getState() { return state; }
+    public String getError() { return error; }
+    public int getCreditAttempts() { return creditAttempts; }
+
+    @Override public String toString() {
+        return "CrossShardTransfer{" + id + ",from=" + fromAccountId + ",to=" + toAccountId + ",amt=" + amount
+                + ",state=" + state + ",attempts=" + creditAttempts + (error == null ? "" : ",error=" + error) + "}";
+    }
+}
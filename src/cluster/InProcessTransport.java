@@ -0,0 +1,59 @@
+package cluster;
+
+import exception.ShardUnavailableException;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Function;
+
+/**
+ * Local stand-in for the network: requests are handed to the target node's inbox in the same
+ * JVM. Optionally loses a share of the messages, half of them before the request is handled and
+ * half after (the reply is lost), to exercise retries; a lost message fails the call right away
+ * instead of after a timeout.
+ */
+public class InProcessTransport implements ShardTransport {
+
+    private final List<ShardNode> nodes;
+    private final double lossRate;
+
+    public InProcessTransport(List<ShardNode> nodes) {
+        this(nodes, 0);
+    }
+
+    public InProcessTransport(List<ShardNode> nodes, double lossRate) {
+        for (int i = 0; i < nodes.size(); i++) {
+            if (nodes.get(i).shard != i) throw new IllegalArgumentException("node " + i + " has shard " + nodes.get(i).shard);
+        }
+        this.nodes = List.copyOf(nodes);
+        this.lossRate = lossRate;
+    }
+
+    @Override
+    public <T> CompletableFuture<T> send(int shard, Function<ShardNode, T> request) {
+        ShardNode node = nodes.get(shard);
+        CompletableFuture<T> reply = new CompletableFuture<>();
+        if (lost()) {
+            reply.completeExceptionally(new ShardUnavailableException("request to shard " + shard + " lost"));
+            return reply;
+        }
+        node.inbox().execute(() -> {
+            try {
+                T result = request.apply(node);
+                if (lost()) reply.completeExceptionally(new ShardUnavailableException("reply from shard " + shard + " lost"));
+                else reply.complete(result);
+            } catch (Throwable t) {
+                reply.completeExceptionally(t);
+            }
+        });
+        return reply;
+    }
+
+    @Override
+    public int shardCount() { return nodes.size(); }
+
+    private boolean lost() {
+        return lossRate > 0 && ThreadLocalRandom.current().nextDouble() < lossRate / 2;
+    }
+}
@@ -0,0 +1,236 @@
+package cluster;
+
+import enums.TransferState;
+import exception.ShardUnavailableException;
+import lock.LockManager;
+import repositoryimpl.InMemoryBankAccountRepository;
+import repositoryimpl.InMemoryUserRepository;
+import repositoryimpl.ShardIds;
+import service.BankAccountService;
+import service.UserService;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * One shard: the users routed to it (by phone, see ShardRouter), their accounts (ids carry the
+ * shard, see ShardIds) and the services over them. Requests arrive through the transport and run
+ * on the node's inbox threads, the way a separate process would serve them.
+ *
+ * Transfers are started on the payer's node, which journals them by id:
+ *   reserve on the payer -> credit request to the payee's node -> settle the reservation if the
+ *   payee was credited, release it if the credit was rejected (account missing / not active).
+ * A credit request without an answer is resent with backoff; the payee's node remembers each
+ * transfer id's answer, so a resent credit is answered again, never applied twice. After
+ * MAX_CREDIT_ATTEMPTS the transfer stays RESERVED (funds held) until recover() resends it, which
+ * the node does every recoveryInterval once started. Journals are in memory and kept for the
+ * node's lifetime.
+ * Money is counted on both sides while a transfer is between credit and settle.
+ *
+ * These are ledger-level transfers, not payments: they do not go through TransactionService, so
+ * there is no Transaction record, and no payment limits, admission control or bank health
+ * checks. The transfer id is the idempotency key. A sharded payment service would run
+ * TransactionService on the payer's node and complete payments with these transfers.
+ */
+public class ShardNode {
+    private static final int MAX_CREDIT_ATTEMPTS = 8;
+    private static final long RESEND_BACKOFF_MILLIS = 5;
+
+    public final int shard;
+    final InMemoryUserRepository userRepo;
+    final InMemoryBankAccountRepository acctRepo;
+    final UserService users;
+    final BankAccountService accounts;
+    private final ExecutorService inbox;
+    private final ScheduledExecutorService recovery;
+    private final Duration recoveryInterval;
+    private volatile ShardTransport transport;
+
+    // payer side: transfers started on this node
+    private final ConcurrentMap<UUID, CrossShardTransfer> journal = new ConcurrentHashMap<>();
+    // payee side: transfer id -> credited (true) or rejected (false)
+    private final ConcurrentMap<UUID, Boolean> credits = new ConcurrentHashMap<>();
+    private final LongAdder creditResends = new LongAdder();
+    private final LongAdder crossShardTransfers = new LongAdder();
+
+    public ShardNode(int shard) {
+        this(shard, 1, Duration.ofSeconds(1));
+    }
+
+    public ShardNode(int shard, int inboxThreads, Duration recoveryInterval) {
+        if (shard < 0 || shard >= ShardIds.MAX_SHARDS) throw new IllegalArgumentException("shard out of range: " + shard);
+        this.shard = shard;
+        LockManager lockManager = new LockManager();
+        this.userRepo = new InMemoryUserRepository(shard);
+        this.acctRepo = new InMemoryBankAccountRepository(userRepo, lockManager);
+        this.users = new UserService(userRepo);
+        this.accounts = new BankAccountService(acctRepo, userRepo, lockManager);
+        AtomicInteger n = new AtomicInteger();
+        this.inbox = Executors.newFixedThreadPool(inboxThreads, r -> {
+            Thread t = new Thread(r, "shard-" + shard + "-inbox-" + n.getAndIncrement());
+            t.setDaemon(true);
+            return t;
+        });
+        this.recovery = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "shard-" + shard + "-recovery");
+            t.setDaemon(true);
+            return t;
+        });
+        this.recoveryInterval = recoveryInterval;
+    }
+
+    void connect(ShardTransport transport) { this.transport = transport; }
+
+    ExecutorService inbox() { return inbox; }
+
+    public void start() {
+        long ms = recoveryInterval.toMillis();
+        recovery.scheduleWithFixedDelay(() -> inbox.execute(this::recover), ms, ms, TimeUnit.MILLISECONDS);
+    }
+
+    public void stop() {
+        recovery.shutdownNow();
+        inbox.shutdown();
+        try {
+            inbox.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // payer side; a transfer id seen before returns the first attempt's outcome
+    CompletableFuture<TransferState> startTransfer(UUID transferId, UUID fromAccountId, UUID toAccountId, BigDecimal amount) {
+        CrossShardTransfer t = new CrossShardTransfer(transferId, fromAccountId, toAccountId, amount);
+        CrossShardTransfer prior = journal.putIfAbsent(transferId, t);
+        if (prior != null) return prior.outcome;
+        int payeeShard = ShardIds.shardOf(toAccountId);
+        boolean local = payeeShard == shard;
+        try {
+            // everything checkable here is checked before funds are held; a remote payee's account is checked by its node
+            if (!local && payeeShard >= transport.shardCount()) {
+                throw new IllegalArgumentException("payee account " + toAccountId + " is on unknown shard " + payeeShard);
+            }
+            accounts.validateActive(fromAccountId);
+            if (local) accounts.validateActive(toAccountId);
+            accounts.reserve(fromAccountId, amount);
+        } catch (RuntimeException e) {
+            // nothing reserved
+            t.error = e.getMessage();
+            t.state = TransferState.ABORTED;
+            t.outcome.complete(TransferState.ABORTED);
+            return t.outcome;
+        }
+        if (local) {
+            TransferState outcome = TransferState.COMMITTED;
+            synchronized (t) {
+                try {
+                    accounts.settleAndCredit(fromAccountId, toAccountId, amount);
+                } catch (RuntimeException e) {
+                    // settleAndCredit moved nothing: give the reservation back
+                    accounts.release(fromAccountId, amount);
+                    t.error = e.getMessage();
+                    outcome = TransferState.ABORTED;
+                }
+                t.state = outcome;
+            }
+            t.outcome.complete(outcome);
+        } else {
+            crossShardTransfers.increment();
+            t.creditInFlight = true;
+            sendCredit(t);
+        }
+        return t.outcome;
+    }
+
+    // payee side: applies a transfer's credit at most once, answering resends from memory
+    boolean applyCredit(UUID transferId, UUID toAccountId, BigDecimal amount) {
+        return credits.computeIfAbsent(transferId, id -> {
+            try {
+                accounts.validateActive(toAccountId);
+                accounts.credit(toAccountId, amount);
+                return true;
+            } catch (IllegalArgumentException | IllegalStateException e) {
+                return false;
+            }
+        });
+    }
+
+    private void sendCredit(CrossShardTransfer t) {
+        t.creditAttempts++;
+        UUID id = t.id, to = t.toAccountId;
+        BigDecimal amount = t.amount;
+        CompletableFuture<Boolean> reply;
+        try {
+            reply = transport.send(ShardIds.shardOf(to), payee -> payee.applyCredit(id, to, amount));
+        } catch (RuntimeException e) {
+            // not handed over; if no earlier request was either, the payee cannot have been credited
+            t.error = e.toString();
+            if (!t.creditSent) finish(t, TransferState.ABORTED);
+            t.creditInFlight = false; // otherwise in doubt: recover() resends
+            return;
+        }
+        t.creditSent = true;
+        reply.whenCompleteAsync((credited, err) -> {
+            if (err == null) {
+                if (!credited) t.error = "credit rejected by shard " + ShardIds.shardOf(to);
+                finish(t, credited ? TransferState.COMMITTED : TransferState.ABORTED);
+                t.creditInFlight = false;
+                return;
+            }
+            Throwable cause = err instanceof CompletionException && err.getCause() != null ? err.getCause() : err;
+            if (!(cause instanceof ShardUnavailableException) || t.creditAttempts >= MAX_CREDIT_ATTEMPTS) {
+                // in doubt: keep the reservation, recover() resends
+                t.error = cause.toString();
+                t.creditInFlight = false;
+                return;
+            }
+            creditResends.increment();
+            long delay = RESEND_BACKOFF_MILLIS << Math.min(t.creditAttempts - 1, 6);
+            CompletableFuture.runAsync(() -> sendCredit(t), CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS, inbox));
+        }, inbox);
+    }
+
+    // settle or release the payer's reservation, once
+    private void finish(CrossShardTransfer t, TransferState outcome) {
+        synchronized (t) {
+            if (t.state != TransferState.RESERVED) return;
+            if (outcome == TransferState.COMMITTED) accounts.settle(t.fromAccountId, t.amount);
+            else accounts.release(t.fromAccountId, t.amount);
+            t.state = outcome;
+        }
+        t.outcome.complete(outcome);
+    }
+
+    /** Resend the credit of every transfer still RESERVED with no request out. */
+    public void recover() {
+        for (CrossShardTransfer t : journal.values()) {
+            if (t.state != TransferState.RESERVED || t.creditInFlight) continue;
+            synchronized (t) {
+                if (t.state != TransferState.RESERVED || t.creditInFlight || t.creditAttempts == 0) continue;
+                t.creditInFlight = true;
+            }
+            creditResends.increment();
+            t.creditAttempts = 0;
+            sendCredit(t);
+        }
+    }
+
+    public Optional<CrossShardTransfer> findTransfer(UUID transferId) { return Optional.ofNullable(journal.get(transferId)); }
+
+    /** Transfers started here whose payee was on another shard; credit requests resent; transfers still RESERVED. */
+    public long getCrossShardTransfers() { return crossShardTransfers.sum(); }
+    public long getCreditResends() { return creditResends.sum(); }
+    public long getPendingTransfers() { return journal.values().stream().filter(t -> t.state == TransferState.RESERVED).count(); }
+}
@@ -0,0 +1,105 @@
+package cluster;
+
+import enums.TransferState;
+import exception.ShardUnavailableException;
+import models.BankAccount;
+import models.User;
+import repositoryimpl.PhoneCodec;
+import repositoryimpl.ShardIds;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
+
+/**
+ * Client-side entry point of a sharded deployment. A user lives on the shard its phone hashes
+ * to, and its accounts with it; user and account ids carry their shard (ShardIds), so a request
+ * for an id goes straight to its node. Requests that got no answer are resent up to
+ * MAX_ATTEMPTS times: onboarding and linking return the existing user/account when repeated,
+ * and a transfer is deduplicated by its id on the payer's node.
+ * With the in-process transport, the User and BankAccount returned are the node's own objects.
+ */
+public class ShardRouter {
+    private static final int MAX_ATTEMPTS = 8;
+
+    private final ShardTransport transport;
+
+    public ShardRouter(List<ShardNode> nodes, ShardTransport transport) {
+        if (nodes.size() != transport.shardCount()) throw new IllegalArgumentException("transport does not cover every node");
+        this.transport = transport;
+        for (ShardNode n : nodes) n.connect(transport);
+    }
+
+    public int shardCount() { return transport.shardCount(); }
+
+    public int shardForPhone(String phone) {
+        long code = PhoneCodec.encode(phone);
+        long h = (code != PhoneCodec.NOT_ENCODABLE ? code : phone.hashCode()) * 0x9E3779B97F4A7C15L;
+        return Math.floorMod((int) (h >>> 32), transport.shardCount());
+    }
+
+    public User onboardUser(String name, String phone) {
+        return call(shardForPhone(phone), n -> n.users.onboardUser(name, phone));
+    }
+
+    public Optional<User> findByPhone(String phone) {
+        return call(shardForPhone(phone), n -> n.users.findByPhone(phone));
+    }
+
+    public BankAccount linkBankAccount(UUID userId, UUID bankId, String accountNumber, BigDecimal initialBalance) {
+        return call(ShardIds.shardOf(userId), n -> n.accounts.linkBankAccount(userId, bankId, accountNumber, initialBalance));
+    }
+
+    public Optional<BankAccount> findAccount(UUID accountId) {
+        return call(ShardIds.shardOf(accountId), n -> n.acctRepo.findById(accountId));
+    }
+
+    public List<BankAccount> getAccountsForUser(UUID userId) {
+        return call(ShardIds.shardOf(userId), n -> n.accounts.getAccountsForUser(userId));
+    }
+
+    /**
+     * Move amount between two accounts of any shards. Completes with COMMITTED or ABORTED
+     * (see CrossShardTransfer.getError on the payer's node), or exceptionally if the payer's node
+     * could not be reached; resubmitting the same transferId is safe and yields the same outcome.
+     */
+    public CompletableFuture<TransferState> transfer(UUID transferId, UUID fromAccountId, UUID toAccountId, BigDecimal amount) {
+        return send(ShardIds.shardOf(fromAccountId), n -> n.startTransfer(transferId, fromAccountId, toAccountId, amount))
+                .thenCompose(outcome -> outcome);
+    }
+
+    public Optional<CrossShardTransfer> findTransfer(UUID transferId, UUID fromAccountId) {
+        return call(ShardIds.shardOf(fromAccountId), n -> n.findTransfer(transferId));
+    }
+
+    private <T> T call(int shard, Function<ShardNode, T> request) {
+        try {
+            return send(shard, request).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            throw e;
+        }
+    }
+
+    private <T> CompletableFuture<T> send(int shard, Function<ShardNode, T> request) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        attempt(shard, request, 1, result);
+        return result;
+    }
+
+    private <T> void attempt(int shard, Function<ShardNode, T> request, int attempt, CompletableFuture<T> result) {
+        transport.send(shard, request).whenComplete((r, err) -> {
+            if (err == null) {
+                result.complete(r);
+                return;
+            }
+            Throwable cause = err instanceof CompletionException && err.getCause() != null ? err.getCause() : err;
+            if (cause instanceof ShardUnavailableException && attempt < MAX_ATTEMPTS) attempt(shard, request, attempt + 1, result);
+            else result.completeExceptionally(cause);
+        });
+    }
+}
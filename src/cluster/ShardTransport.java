@@ -0,0 +1,16 @@
+package cluster;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * Request/response messaging between shard nodes (and from the router to them). The request runs
+ * on the target node's inbox; the reply completes the future. A request that gets no reply
+ * completes exceptionally with ShardUnavailableException, and may still have been applied, so
+ * requests that change state must be safe to resend.
+ */
+public interface ShardTransport {
+    <T> CompletableFuture<T> send(int shard, Function<ShardNode, T> request);
+
+    int shardCount();
+}
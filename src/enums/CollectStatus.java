@@ -0,0 +1,3 @@
+package enums;
+
+public enum CollectStatus { PENDING, APPROVED, DECLINED, EXPIRED }
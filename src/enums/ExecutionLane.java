@@ -0,0 +1,4 @@
+package enums;
+
+// which queue of a PriorityLaneExecutor a task waits in: a user at checkout, reconciler re-initiations, bulk runs
+public enum ExecutionLane { INTERACTIVE, RETRY, BULK }
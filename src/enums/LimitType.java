@@ -0,0 +1,3 @@
+package enums;
+
+public enum LimitType { USER_DAILY_AMOUNT, USER_DAILY_COUNT, USER_VELOCITY, ACCOUNT_DAILY_AMOUNT, ACCOUNT_DAILY_COUNT, ACCOUNT_VELOCITY }
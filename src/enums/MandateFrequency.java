@@ -0,0 +1,3 @@
+package enums;
+
+public enum MandateFrequency { DAILY, WEEKLY, MONTHLY }
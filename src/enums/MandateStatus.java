@@ -0,0 +1,3 @@
+package enums;
+
+public enum MandateStatus { ACTIVE, PAUSED, REVOKED }
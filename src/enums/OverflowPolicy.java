@@ -0,0 +1,4 @@
+package enums;
+
+// what a publisher does when the slowest consumer is a full ring behind
+public enum OverflowPolicy { BLOCK, DROP }
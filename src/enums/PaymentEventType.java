@@ -0,0 +1,6 @@
+package enums;
+
+public enum PaymentEventType {
+    TXN_CREATED, TXN_PENDING, TXN_SUCCESS, TXN_FAILED,   // transaction state changes
+    FUNDS_RESERVED, FUNDS_RELEASED, FUNDS_SETTLED, FUNDS_CREDITED  // balance mutations
+}
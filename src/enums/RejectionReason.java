@@ -0,0 +1,3 @@
+package enums;
+
+public enum RejectionReason { IN_FLIGHT_LIMIT, PAYER_RATE_LIMIT, BANK_RATE_LIMIT, LOAD_SHED }
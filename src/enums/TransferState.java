@@ -0,0 +1,4 @@
+package enums;
+
+// cross-shard transfer: RESERVED until the payee's shard answered, then settled (COMMITTED) or released (ABORTED)
+public enum TransferState { RESERVED, COMMITTED, ABORTED }
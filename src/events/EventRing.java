@@ -0,0 +1,127 @@
+package events;
+
+import enums.OverflowPolicy;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * One shard of the event bus: a fixed ring of pre-allocated PaymentEvent slots.
+ * - publishers claim a sequence with a CAS on {@code claimed}, fill the slot, then mark it
+ *   available by storing the sequence's lap number in {@code available}
+ * - each consumer owns a cursor (last sequence it handled); a publisher never claims a slot
+ *   more than one lap ahead of the slowest cursor
+ * Sequences are dense: a dropped event is dropped before it claims one, so consumers never see gaps.
+ * claimNoWait() lets a publisher take its place in the order now and wait for the slot later;
+ * every sequence claimed that way must still be published, in claim order per publisher.
+ */
+final class EventRing {
+    private final PaymentEvent[] slots;
+    private final int mask, shift;
+    private final AtomicIntegerArray available; // lap (seq >>> shift) last published into each slot
+    private final AtomicLong claimed = new AtomicLong(-1);
+    private final AtomicLong dropped = new AtomicLong();
+    private volatile AtomicLong[] cursors = new AtomicLong[0];
+    private volatile long cachedMinCursor = -1; // lags the real minimum; only ever too low, never too high
+
+    EventRing(int size) {
+        if (Integer.bitCount(size) != 1) throw new IllegalArgumentException("ring size must be a power of two");
+        slots = new PaymentEvent[size];
+        for (int i = 0; i < size; i++) slots[i] = new PaymentEvent();
+        mask = size - 1;
+        shift = Integer.numberOfTrailingZeros(size);
+        available = new AtomicIntegerArray(size);
+        for (int i = 0; i < size; i++) available.set(i, -1);
+    }
+
+    /** Register a consumer; it sees events published from now on. */
+    synchronized AtomicLong addCursor() {
+        AtomicLong cursor = new AtomicLong(claimed.get());
+        AtomicLong[] next = Arrays.copyOf(cursors, cursors.length + 1);
+        next[cursors.length] = cursor;
+        cursors = next;
+        return cursor;
+    }
+
+    synchronized void removeCursor(AtomicLong cursor) {
+        AtomicLong[] cur = cursors;
+        AtomicLong[] next = Arrays.stream(cur).filter(c -> c != cursor).toArray(AtomicLong[]::new);
+        cursors = next;
+    }
+
+    /**
+     * Claim the next sequence, waiting or dropping if that would overwrite a slot some consumer
+     * has not handled yet. Returns -1 if the event was dropped.
+     */
+    long claim(OverflowPolicy policy) {
+        while (true) {
+            long cur = claimed.get();
+            long next = cur + 1;
+            long wrapPoint = next - slots.length;
+            if (wrapPoint > cachedMinCursor) {
+                long min = minCursor(cur);
+                cachedMinCursor = min;
+                if (wrapPoint > min) {
+                    if (policy == OverflowPolicy.DROP) {
+                        dropped.incrementAndGet();
+                        return -1;
+                    }
+                    LockSupport.parkNanos(1_000); // backpressure: wait for the slowest consumer
+                    continue;
+                }
+            }
+            if (claimed.compareAndSet(cur, next)) return next;
+        }
+    }
+
+    /**
+     * Claim the next sequence without waiting for consumers: under BLOCK the wait for its slot is
+     * left to awaitSlot(), under DROP a full ring drops as in claim(). Returns -1 if dropped.
+     */
+    long claimNoWait(OverflowPolicy policy) {
+        if (policy == OverflowPolicy.DROP) return claim(policy);
+        return claimed.incrementAndGet();
+    }
+
+    /** Wait until every consumer is past the event a lap before seq, i.e. seq's slot may be filled. */
+    void awaitSlot(long seq) {
+        long wrapPoint = seq - slots.length;
+        while (wrapPoint > cachedMinCursor) {
+            long min = minCursor(claimed.get());
+            cachedMinCursor = min;
+            if (wrapPoint > min) LockSupport.parkNanos(1_000); // backpressure: wait for the slowest consumer
+        }
+    }
+
+    PaymentEvent slot(long seq) { return slots[(int) seq & mask]; }
+
+    void publish(long seq) { available.lazySet((int) seq & mask, (int) (seq >>> shift)); }
+
+    /** Hand every available event after the cursor to the handler; returns how many. */
+    int drain(AtomicLong cursor, PaymentEventHandler handler) {
+        long last = cursor.get();
+        long hi = last;
+        // find the contiguous run of published sequences, at most one lap
+        while (hi - last < slots.length && available.get((int) (hi + 1) & mask) == (int) ((hi + 1) >>> shift)) hi++;
+        if (hi == last) return 0;
+        for (long seq = last + 1; seq <= hi; seq++) {
+            handler.onEvent(slots[(int) seq & mask], seq, seq == hi);
+        }
+        cursor.lazySet(hi); // frees the slots for publishers
+        return (int) (hi - last);
+    }
+
+    long published() { return claimed.get() + 1; }
+
+    long dropped() { return dropped.get(); }
+
+    private long minCursor(long fallback) {
+        long min = fallback; // no consumers: nothing to protect
+        AtomicLong[] cs = cursors;
+        if (cs.length > 0) min = Long.MAX_VALUE;
+        for (AtomicLong c : cs) min = Math.min(min, c.get());
+        return min;
+    }
+}
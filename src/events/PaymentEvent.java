@@ -0,0 +1,29 @@
+package events;
+
+import enums.PaymentEventType;
+import enums.TransactionStatus;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+
+/**
+ * One pre-allocated ring slot. Publishers overwrite the fields in place, so a handler must copy
+ * what it needs before returning from onEvent; the slot is reused once every consumer has
+ * moved past it.
+ */
+public final class PaymentEvent {
+    public PaymentEventType type;
+    public UUID txnId;            // null for balance events outside a transaction context
+    public UUID accountId;        // payer for txn events, mutated account for balance events
+    public UUID counterpartyId;   // payee account for txn events (null if external)
+    public BigDecimal amount;
+    public TransactionStatus status;  // txn events only
+    public BigDecimal balanceAfter;   // balance events only
+    public BigDecimal reservedAfter;  // balance events only
+    public long timestampMillis;
+    public long publishNanos;     // System.nanoTime() at publish, for latency measurement
+
+    @Override public String toString() {
+        return "PaymentEvent{" + type + ",txn=" + txnId + ",acct=" + accountId + ",amt=" + amount + "}";
+    }
+}
@@ -0,0 +1,205 @@
+package events;
+
+import enums.OverflowPolicy;
+import enums.PaymentEventType;
+import models.Transaction;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process stream of transaction state changes and balance mutations for downstream
+ * consumers (notifications, analytics, ledger export).
+ * - events are sharded over {@code shards} rings by transaction id (txn events) or account id
+ *   (balance events), so the events of one transaction / one account stay in publish order
+ * - publishing fills a pre-allocated slot and allocates nothing
+ * - each subscriber runs on its own thread, keeps its own cursor per shard and waits with its
+ *   own WaitStrategy; with OverflowPolicy.BLOCK the slowest subscriber throttles publishers,
+ *   with DROP publishers discard events it has no room for (counted in dropped())
+ */
+public class PaymentEventBus {
+
+    private final EventRing[] rings;
+    private final OverflowPolicy policy;
+    private final List<Subscriber> subscribers = new ArrayList<>();
+    private volatile boolean started;
+
+    public PaymentEventBus(int shards, int ringSize, OverflowPolicy policy) {
+        if (Integer.bitCount(shards) != 1) throw new IllegalArgumentException("shards must be a power of two");
+        this.rings = new EventRing[shards];
+        for (int i = 0; i < shards; i++) rings[i] = new EventRing(ringSize);
+        this.policy = policy;
+    }
+
+    /** Register a consumer; must be called before start(). */
+    public synchronized void subscribe(String name, PaymentEventHandler handler, WaitStrategy waitStrategy) {
+        if (started) throw new IllegalStateException("subscribe before start()");
+        AtomicLong[] cursors = new AtomicLong[rings.length];
+        for (int i = 0; i < rings.length; i++) cursors[i] = rings[i].addCursor();
+        subscribers.add(new Subscriber(name, handler, waitStrategy, cursors));
+    }
+
+    public synchronized void start() {
+        if (started) return;
+        started = true;
+        for (Subscriber s : subscribers) s.thread.start();
+    }
+
+    /** Stop the consumer threads after they have handled everything already published. */
+    public synchronized void stop() {
+        for (Subscriber s : subscribers) s.running = false;
+        for (Subscriber s : subscribers) {
+            try {
+                s.thread.join(5_000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        // a stopped subscriber must not hold back BLOCK publishers
+        for (Subscriber s : subscribers) {
+            for (int i = 0; i < rings.length; i++) rings[i].removeCursor(s.cursors[i]);
+        }
+    }
+
+    /** Publish a transaction event carrying the transaction's current status. */
+    public boolean publishTransaction(PaymentEventType type, Transaction txn) {
+        EventRing ring = rings[shard(txn.id)];
+        long seq = ring.claim(policy);
+        if (seq < 0) return false;
+        PaymentEvent e = ring.slot(seq);
+        e.type = type;
+        e.txnId = txn.id;
+        e.accountId = txn.fromAccountId;
+        e.counterpartyId = txn.toAccountId;
+        e.amount = txn.amount;
+        e.status = txn.status;
+        e.balanceAfter = null;
+        e.reservedAfter = null;
+        stamp(e);
+        ring.publish(seq);
+        return true;
+    }
+
+    /** Publish a balance mutation with the account's balance and reserved amount after it. */
+    public boolean publishBalance(PaymentEventType type, UUID accountId, BigDecimal amount, BigDecimal balanceAfter, BigDecimal reservedAfter) {
+        long seq = rings[shard(accountId)].claim(policy);
+        if (seq < 0) return false;
+        publishBalance(seq, type, accountId, amount, balanceAfter, reservedAfter);
+        return true;
+    }
+
+    /**
+     * Take the next place in accountId's shard for a balance event without ever waiting (under
+     * DROP the event may be dropped: -1). Lets a caller holding an account fix its events' order
+     * and publish them with publishBalance(seq, ...) once it has let go of the account; every
+     * claimed sequence must be published, in claim order.
+     */
+    public long claimBalance(UUID accountId) {
+        return rings[shard(accountId)].claimNoWait(policy);
+    }
+
+    /** Publish a balance event into a place taken by claimBalance(); under BLOCK waits for its slot. */
+    public void publishBalance(long seq, PaymentEventType type, UUID accountId, BigDecimal amount, BigDecimal balanceAfter, BigDecimal reservedAfter) {
+        if (seq < 0) return;
+        EventRing ring = rings[shard(accountId)];
+        ring.awaitSlot(seq);
+        PaymentEvent e = ring.slot(seq);
+        e.type = type;
+        e.txnId = null;
+        e.accountId = accountId;
+        e.counterpartyId = null;
+        e.amount = amount;
+        e.status = null;
+        e.balanceAfter = balanceAfter;
+        e.reservedAfter = reservedAfter;
+        stamp(e);
+        ring.publish(seq);
+    }
+
+    public long published() {
+        long n = 0;
+        for (EventRing r : rings) n += r.published();
+        return n;
+    }
+
+    public long dropped() {
+        long n = 0;
+        for (EventRing r : rings) n += r.dropped();
+        return n;
+    }
+
+    /** Events published but not yet handled by the named subscriber (-1 if unknown). */
+    public synchronized long lag(String subscriber) {
+        for (Subscriber s : subscribers) {
+            if (!s.name.equals(subscriber)) continue;
+            long lag = 0;
+            for (int i = 0; i < rings.length; i++) lag += rings[i].published() - 1 - s.cursors[i].get();
+            return lag;
+        }
+        return -1;
+    }
+
+    /** Handler exceptions seen by the named subscriber (-1 if unknown). */
+    public synchronized long errors(String subscriber) {
+        for (Subscriber s : subscribers) if (s.name.equals(subscriber)) return s.errors;
+        return -1;
+    }
+
+    private int shard(UUID key) {
+        int h = key.hashCode();
+        return (h ^ (h >>> 16)) & (rings.length - 1);
+    }
+
+    private static void stamp(PaymentEvent e) {
+        e.timestampMillis = System.currentTimeMillis();
+        e.publishNanos = System.nanoTime();
+    }
+
+    private final class Subscriber implements Runnable, PaymentEventHandler {
+        final String name;
+        final PaymentEventHandler handler;
+        final WaitStrategy waitStrategy;
+        final AtomicLong[] cursors;
+        final Thread thread;
+        volatile boolean running = true;
+        volatile long errors;
+
+        Subscriber(String name, PaymentEventHandler handler, WaitStrategy waitStrategy, AtomicLong[] cursors) {
+            this.name = name;
+            this.handler = handler;
+            this.waitStrategy = waitStrategy;
+            this.cursors = cursors;
+            this.thread = new Thread(this, "event-" + name);
+            thread.setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            int emptyPolls = 0;
+            while (running) {
+                if (drainAll() > 0) emptyPolls = 0;
+                else emptyPolls = waitStrategy.idle(emptyPolls);
+            }
+            drainAll(); // whatever was published before stop()
+        }
+
+        private int drainAll() {
+            int n = 0;
+            for (int i = 0; i < rings.length; i++) n += rings[i].drain(cursors[i], this);
+            return n;
+        }
+
+        // a failing handler must not stall the cursor (and, under BLOCK, every publisher)
+        @Override
+        public void onEvent(PaymentEvent event, long sequence, boolean endOfBatch) {
+            try {
+                handler.onEvent(event, sequence, endOfBatch);
+            } catch (RuntimeException e) {
+                errors++;
+            }
+        }
+    }
+}
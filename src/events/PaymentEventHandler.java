@@ -0,0 +1,7 @@
+package events;
+
+public interface PaymentEventHandler {
+
+    // endOfBatch is true for the last event currently available, e.g. to flush buffered output
+    void onEvent(PaymentEvent event, long sequence, boolean endOfBatch);
+}
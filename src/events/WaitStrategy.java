@@ -0,0 +1,42 @@
+package events;
+
+import java.time.Duration;
+import java.util.concurrent.locks.LockSupport;
+
+/*
+  How an idle consumer waits for the next event. idle() is called with the number of
+  consecutive empty polls and returns the value to pass next time.
+*/
+public interface WaitStrategy {
+
+    int idle(int emptyPolls);
+
+    // lowest latency, burns a core per consumer
+    static WaitStrategy busySpin() {
+        return n -> {
+            Thread.onSpinWait();
+            return n + 1;
+        };
+    }
+
+    // spin briefly, then give the core to other runnable threads
+    static WaitStrategy yielding() {
+        return n -> {
+            if (n < 100) Thread.onSpinWait();
+            else Thread.yield();
+            return n + 1;
+        };
+    }
+
+    // spin, yield, then sleep up to maxPark; cheapest on CPU, adds up to maxPark latency when idle
+    static WaitStrategy parking(Duration maxPark) {
+        long maxNanos = maxPark.toNanos();
+        if (maxNanos <= 0) throw new IllegalArgumentException("maxPark must be > 0");
+        return n -> {
+            if (n < 100) Thread.onSpinWait();
+            else if (n < 200) Thread.yield();
+            else LockSupport.parkNanos(Math.min(maxNanos, 1_000L << Math.min(n - 200, 20)));
+            return n + 1;
+        };
+    }
+}
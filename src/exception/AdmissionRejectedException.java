@@ -0,0 +1,15 @@
+package exception;
+
+import enums.RejectionReason;
+
+/** Thrown when a payment is turned away by admission control before any funds are reserved. */
+public class AdmissionRejectedException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public final RejectionReason reason;
+
+    public AdmissionRejectedException(RejectionReason reason, String message) {
+        super(message);
+        this.reason = reason;
+    }
+}
@@ -0,0 +1,15 @@
+package exception;
+
+import enums.LimitType;
+
+/** Thrown when a payment would take the payer or the source account over a limit; no funds are reserved. */
+public class LimitExceededException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public final LimitType limit;
+
+    public LimitExceededException(LimitType limit, String message) {
+        super(message);
+        this.limit = limit;
+    }
+}
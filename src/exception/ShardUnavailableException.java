@@ -0,0 +1,8 @@
+package exception;
+
+/** Thrown when a request to another shard got no answer (lost, timed out, node down); it may or may not have been applied. */
+public class ShardUnavailableException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public ShardUnavailableException(String message) { super(message); }
+}
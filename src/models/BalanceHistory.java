@@ -0,0 +1,16 @@
+package models;
+
+import java.math.BigDecimal;
+
+/**
+ * Where an account's committed (balance, reserved) versions are kept for point-in-time
+ * snapshots; supplied by the repository that creates the account. BankAccount records every
+ * mutation into it while it holds the account's write.
+ */
+public interface BalanceHistory {
+    /** The commit token for a version that is a commit of its own. */
+    long OWN_COMMIT = -1;
+
+    // commit: OWN_COMMIT, or the repository's token when the version is part of a wider commit
+    void record(long commit, BigDecimal balance, BigDecimal reserved);
+}
@@ -0,0 +1,57 @@
+package models;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+/**
+ * Point-in-time view of every account balance, read from the accounts' committed versions
+ * without locks and without blocking writers: all balance commits up to sequence() and none
+ * after. Money settled by a payer but not yet credited to an internal payee is in inTransit(),
+ * so totalBalance() + inTransit() only changes by money entering or leaving the system.
+ * Must be closed; while open, writers keep the history it reads.
+ */
+public interface BalanceSnapshot extends AutoCloseable {
+
+    final class AccountBalance {
+        public final UUID accountId;
+        public final UUID userId;
+        public final UUID bankId;
+        public final BigDecimal balance;
+        public final BigDecimal reserved;
+
+        public AccountBalance(BankAccount acct, BigDecimal balance, BigDecimal reserved) {
+            this.accountId = acct.id;
+            this.userId = acct.userId;
+            this.bankId = acct.bankId;
+            this.balance = balance;
+            this.reserved = reserved;
+        }
+    }
+
+    long sequence();
+
+    /** Accounts as of the snapshot (accounts created after it are left out). */
+    Stream<AccountBalance> balances();
+
+    BigDecimal inTransit();
+
+    default BigDecimal totalBalance() {
+        return balances().map(b -> b.balance).reduce(BigDecimal.ZERO, BigDecimal::add);
+    }
+
+    default BigDecimal totalReserved() {
+        return balances().map(b -> b.reserved).reduce(BigDecimal.ZERO, BigDecimal::add);
+    }
+
+    default Map<UUID, BigDecimal> totalsByBank() {
+        Map<UUID, BigDecimal> totals = new HashMap<>();
+        balances().forEach(b -> totals.merge(b.bankId, b.balance, BigDecimal::add));
+        return totals;
+    }
+
+    @Override
+    void close();
+}
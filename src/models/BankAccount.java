@@ -4,6 +4,9 @@ import enums.AccountStatus;
 
 import java.math.BigDecimal;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
 
 public class BankAccount {
     public final UUID id;
@@ -11,13 +14,26 @@ public class BankAccount {
     public final UUID bankId;
     public final String accountNumber;
     public String maskedAccount;
-    private BigDecimal balance;        // available balance (not including reserved)
-    private BigDecimal reserved;       // reserved amount for pending transactions
-    public boolean isPrimary;
-    public AccountStatus status;
-    long version;
+    // volatile so the *Owned mutators (single writer, no monitor) publish safely to readers
+    private volatile BigDecimal balance;        // available balance (not including reserved)
+    private volatile BigDecimal reserved;       // reserved amount for pending transactions
+    public volatile boolean isPrimary;
+    public volatile AccountStatus status;
+    // bumped by every mutation: even when stable, odd while a writer is in the middle of one
+    private volatile long version;
+    private static final AtomicLongFieldUpdater<BankAccount> VERSION =
+            AtomicLongFieldUpdater.newUpdater(BankAccount.class, "version");
+    private static final int SPINS = 64, YIELDS = 16;
+    private static final long MAX_PARK_NANOS = 1_000_000;
+    // committed balance history for snapshots; null = account not part of any snapshot
+    private final BalanceHistory history;
 
     public BankAccount(UUID id, UUID userId, UUID bankId, String accountNumber, BigDecimal initialBalance) {
+        this(id, userId, bankId, accountNumber, initialBalance, null);
+    }
+
+    // history must start at initialBalance (and zero reserved)
+    public BankAccount(UUID id, UUID userId, UUID bankId, String accountNumber, BigDecimal initialBalance, BalanceHistory history) {
         this.id = id;
         this.userId = userId;
         this.bankId = bankId;
@@ -27,7 +43,7 @@ public class BankAccount {
         this.reserved = BigDecimal.ZERO;
         this.isPrimary = false;
         this.status = AccountStatus.ACTIVE;
-        this.version = 0L;
+        this.history = history;
     }
 
     private String mask(String acct) {
@@ -37,44 +53,136 @@ public class BankAccount {
         return "****" + acct.substring(n - 4);
     }
 
-    public synchronized BigDecimal getAvailable() {
-        return balance.subtract(reserved);
+    public BigDecimal getAvailable() {
+        return readConsistent(a -> a.balance.subtract(a.reserved));
     }
 
-    public synchronized BigDecimal getBalance() { return balance; }
-    public synchronized BigDecimal getReserved() { return reserved; }
+    // each is the latest value of its own field; to read both as of one mutation use readConsistent
+    public BigDecimal getBalance() { return balance; }
+    public BigDecimal getReserved() { return reserved; }
+
+    // Reserve amount - throws if the available balance is short
+    public void reserve(BigDecimal amt) { reserveOwned(amt); }
+
+    public void releaseReserved(BigDecimal amt) { releaseReservedOwned(amt); }
 
-    // Reserve amount - returns true if reserved
-    public synchronized void reserve(BigDecimal amt) {
-        // assumes caller validated status and amounts
-        if (this.status != AccountStatus.ACTIVE) throw new IllegalStateException("Account not active");
+    // Settle: reduce reserved and reduce balance (finalize)
+    public void settle(BigDecimal amt) { settleOwned(amt); }
+
+    // Credit account (for internal transfers)
+    public void credit(BigDecimal amt) { creditOwned(amt); }
+
+    /*
+      The mutators. Each claims the version (beginWrite), so concurrent writers exclude each other
+      and a reader using readConsistent sees balance and reserved from one mutation. The *Owned
+      names are for callers that hold exclusive access to the account (its account lock, or the
+      partition thread that owns it) across a mutation and what goes with it (repository update,
+      balance event).
+    */
+    public void reserveOwned(BigDecimal amt) {
         if (amt.compareTo(BigDecimal.ZERO) <= 0) throw new IllegalArgumentException("Reserve amount must be > 0");
-        if (getAvailable().compareTo(amt) < 0) throw new IllegalStateException("Insufficient available balance");
-        reserved = reserved.add(amt);
-        version++;
+        beginWrite();
+        try {
+            // assumes caller validated status and amounts
+            if (this.status != AccountStatus.ACTIVE) throw new IllegalStateException("Account not active");
+            if (balance.subtract(reserved).compareTo(amt) < 0) throw new IllegalStateException("Insufficient available balance");
+            reserved = reserved.add(amt);
+            record(BalanceHistory.OWN_COMMIT);
+        } catch (RuntimeException e) {
+            abortWrite();
+            throw e;
+        }
+        endWrite();
     }
 
-    public synchronized void releaseReserved(BigDecimal amt) {
+    public void releaseReservedOwned(BigDecimal amt) {
         if (amt.compareTo(BigDecimal.ZERO) <= 0) return;
-        reserved = reserved.subtract(amt);
-        if (reserved.compareTo(BigDecimal.ZERO) < 0) reserved = BigDecimal.ZERO;
-        version++;
+        beginWrite();
+        BigDecimal r = reserved.subtract(amt);
+        reserved = r.compareTo(BigDecimal.ZERO) < 0 ? BigDecimal.ZERO : r;
+        record(BalanceHistory.OWN_COMMIT);
+        endWrite();
     }
 
-    // Settle: reduce reserved and reduce balance (finalize)
-    public synchronized void settle(BigDecimal amt) {
+    public void settleOwned(BigDecimal amt) { settleOwned(amt, BalanceHistory.OWN_COMMIT); }
+
+    // as settleOwned, with the new balance versioned as part of the repository's commit
+    public void settleOwned(BigDecimal amt, long commit) {
         if (amt.compareTo(BigDecimal.ZERO) <= 0) throw new IllegalArgumentException("amount must be >0");
-        if (reserved.compareTo(amt) < 0) throw new IllegalStateException("not enough reserved to settle");
+        beginWrite();
+        if (reserved.compareTo(amt) < 0) {
+            abortWrite();
+            throw new IllegalStateException("not enough reserved to settle");
+        }
         reserved = reserved.subtract(amt);
         balance = balance.subtract(amt);
-        version++;
+        record(commit);
+        endWrite();
     }
 
-    // Credit account (for internal transfers)
-    public synchronized void credit(BigDecimal amt) {
+    public void creditOwned(BigDecimal amt) { creditOwned(amt, BalanceHistory.OWN_COMMIT); }
+
+    public void creditOwned(BigDecimal amt, long commit) {
         if (amt.compareTo(BigDecimal.ZERO) <= 0) throw new IllegalArgumentException("credit amount must be >0");
+        beginWrite();
         balance = balance.add(amt);
-        version++;
+        record(commit);
+        endWrite();
+    }
+
+    // version the new balance/reserved (with the write still claimed)
+    private void record(long commit) {
+        if (history != null) history.record(commit, balance, reserved);
+    }
+
+    /*
+      Optimistic concurrency on the version (a sequence lock): a writer moves the version from
+      even to odd before touching fields and back to even (+2 overall) afterwards; a reader that
+      saw the same even version before and after reading saw a consistent account.
+    */
+    public long getVersion() { return version; }
+
+    // claim the write if the account is still at expectedVersion; false if someone else wrote or is writing
+    public boolean tryBeginWrite(long expectedVersion) {
+        return (expectedVersion & 1) == 0 && VERSION.compareAndSet(this, expectedVersion, expectedVersion + 1);
+    }
+
+    // claim the write, waiting out a concurrent writer (only ever held for a few field writes)
+    public void beginWrite() {
+        for (int attempt = 0; ; attempt++) {
+            long v = version;
+            if ((v & 1) == 0 && VERSION.compareAndSet(this, v, v + 1)) return;
+            backoff(attempt);
+        }
+    }
+
+    // publish the write: the version moves on to the next even value
+    public void endWrite() { VERSION.incrementAndGet(this); }
+
+    // give up a claimed write without changing anything: the version returns to its previous value
+    public void abortWrite() { VERSION.decrementAndGet(this); }
+
+    // run a read of several fields until it did not overlap a write
+    public <T> T readConsistent(Function<BankAccount, T> reader) {
+        for (int attempt = 0; ; attempt++) {
+            long v = version;
+            if ((v & 1) == 0) {
+                T result = reader.apply(this);
+                if (version == v) return result;
+            }
+            backoff(attempt);
+        }
+    }
+
+    /*
+      Wait after the attempt-th failed try on a claimed version: spin briefly (the holder is a few
+      field writes from done), then yield, then park for up to a millisecond, so a writer that
+      was descheduled mid-write (more threads than cores) gets the CPU back instead of spinners.
+    */
+    public static void backoff(int attempt) {
+        if (attempt < SPINS) Thread.onSpinWait();
+        else if (attempt < SPINS + YIELDS) Thread.yield();
+        else LockSupport.parkNanos(Math.min(MAX_PARK_NANOS, 1_000L << Math.min(10, attempt - SPINS - YIELDS)));
     }
 
     @Override public String toString() {
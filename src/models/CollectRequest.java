@@ -0,0 +1,58 @@
+package models;
+
+import enums.CollectStatus;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * Collect (pull) request: the payee asks the payer for amount; the payer approves it (which makes
+ * the payment) or declines it before expiresAt, otherwise it expires.
+ */
+public class CollectRequest {
+    public final UUID id;
+    public final int slot;               // dense index in the repository, used by the expiry wheel
+    public final UUID payeeAccountId;
+    public final String payeeIdentifier; // phone/vpa the payment is made to
+    public final UUID payerUserId;
+    public final String payerPhone;
+    public final BigDecimal amount;
+    public final String note;            // nullable
+    public final Instant createdAt;
+    public final Instant expiresAt;
+    public volatile CollectStatus status;
+    public volatile UUID transactionId;  // set once approved and paid
+    public volatile Instant updatedAt;
+
+    public CollectRequest(UUID id, int slot, UUID payeeAccountId, String payeeIdentifier, UUID payerUserId, String payerPhone,
+                          BigDecimal amount, String note, Instant createdAt, Instant expiresAt) {
+        this.id = id;
+        this.slot = slot;
+        this.payeeAccountId = payeeAccountId;
+        this.payeeIdentifier = payeeIdentifier;
+        this.payerUserId = payerUserId;
+        this.payerPhone = payerPhone;
+        this.amount = amount;
+        this.note = note;
+        this.createdAt = createdAt;
+        this.expiresAt = expiresAt;
+        this.status = CollectStatus.PENDING;
+        this.updatedAt = createdAt;
+    }
+
+    public boolean transition(CollectStatus from, CollectStatus to) { return transition(from, to, Instant.now()); }
+
+    /** Move from one status to another at time at; false (and no change) if the request is not in from. */
+    public synchronized boolean transition(CollectStatus from, CollectStatus to, Instant at) {
+        if (status != from) return false;
+        status = to;
+        updatedAt = at;
+        return true;
+    }
+
+    @Override public String toString() {
+        return "CollectRequest{" + id + ",payee=" + payeeIdentifier + ",payer=" + payerPhone + ",amt=" + amount
+                + ",status=" + status + ",expires=" + expiresAt + ",txn=" + transactionId + "}";
+    }
+}
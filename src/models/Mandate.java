@@ -0,0 +1,47 @@
+package models;
+
+import enums.MandateFrequency;
+import enums.MandateStatus;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * Recurring debit (UPI AutoPay): amount moves from the payer's account every cycle, the first
+ * one due at firstDueAt. A snapshot read from the MandateRepository; the repository holds the
+ * current state.
+ */
+public class Mandate {
+    public final UUID id;
+    public final int slot;              // dense index in the repository, used by schedules
+    public final UUID fromAccountId;
+    public final UUID toAccountId;      // nullable (if external)
+    public final String toIdentifier;
+    public final BigDecimal amount;
+    public final MandateFrequency frequency;
+    public final Instant firstDueAt;
+    public final MandateStatus status;
+    public final int cycle;             // cycles completed so far; the next debit is for this cycle
+    public final Instant nextDueAt;
+
+    public Mandate(UUID id, int slot, UUID fromAccountId, UUID toAccountId, String toIdentifier, BigDecimal amount,
+                   MandateFrequency frequency, Instant firstDueAt, MandateStatus status, int cycle, Instant nextDueAt) {
+        this.id = id;
+        this.slot = slot;
+        this.fromAccountId = fromAccountId;
+        this.toAccountId = toAccountId;
+        this.toIdentifier = toIdentifier;
+        this.amount = amount;
+        this.frequency = frequency;
+        this.firstDueAt = firstDueAt;
+        this.status = status;
+        this.cycle = cycle;
+        this.nextDueAt = nextDueAt;
+    }
+
+    @Override public String toString() {
+        return "Mandate{" + id + ",from=" + fromAccountId + ",to=" + toAccountId + ",toIdent=" + toIdentifier + ",amt=" + amount
+                + "," + frequency + ",status=" + status + ",cycle=" + cycle + ",next=" + nextDueAt + "}";
+    }
+}
@@ -23,6 +23,12 @@ public class Transaction {
 
     public Transaction(UUID id, String idempotencyKey, UUID fromAccountId,
                        UUID toAccountId, String toIdentifier, BigDecimal amount) {
+        this(id, idempotencyKey, fromAccountId, toAccountId, toIdentifier, amount, Instant.now());
+    }
+
+    // createdAt from the caller's clock (simulated time in simulations)
+    public Transaction(UUID id, String idempotencyKey, UUID fromAccountId,
+                       UUID toAccountId, String toIdentifier, BigDecimal amount, Instant createdAt) {
         this.id = id;
         this.idempotencyKey = idempotencyKey;
         this.fromAccountId = fromAccountId;
@@ -30,28 +36,51 @@ public class Transaction {
         this.toIdentifier = toIdentifier;
         this.amount = amount;
         this.status = TransactionStatus.PENDING;
-        this.createdAt = Instant.now();
-        this.updatedAt = Instant.now();
+        this.createdAt = createdAt;
+        this.updatedAt = createdAt;
         this.reconciliationAttempts = 0;
     }
 
-    public synchronized void markSuccess(String pspTxnId) {
+    /** Rebuild a transaction read back from an archive tier, with its recorded state and timestamps. */
+    public static Transaction restore(UUID id, String idempotencyKey, UUID fromAccountId, UUID toAccountId,
+                                      String toIdentifier, BigDecimal amount, TransactionStatus status,
+                                      String pspTxnId, String errorCode, Instant createdAt, Instant updatedAt,
+                                      int reconciliationAttempts) {
+        Transaction t = new Transaction(id, idempotencyKey, fromAccountId, toAccountId, toIdentifier, amount);
+        t.status = status;
+        t.pspTxnId = pspTxnId;
+        t.errorCode = errorCode;
+        t.createdAt = createdAt;
+        t.updatedAt = updatedAt;
+        t.reconciliationAttempts = reconciliationAttempts;
+        return t;
+    }
+
+    public String getErrorCode() { return errorCode; }
+
+    public boolean isFinal() { return status != TransactionStatus.PENDING; }
+
+    public void markSuccess(String pspTxnId) { markSuccess(pspTxnId, Instant.now()); }
+    public void markFailed(String error) { markFailed(error, Instant.now()); }
+    public void markPending(String pspTxnId) { markPending(pspTxnId, Instant.now()); }
+
+    public synchronized void markSuccess(String pspTxnId, Instant at) {
         this.status = TransactionStatus.SUCCESS;
         this.pspTxnId = pspTxnId;
         this.errorCode = null;
-        this.updatedAt = Instant.now();
+        this.updatedAt = at;
     }
 
-    public synchronized void markFailed(String error) {
+    public synchronized void markFailed(String error, Instant at) {
         this.status = TransactionStatus.FAILED;
         this.errorCode = error;
-        this.updatedAt = Instant.now();
+        this.updatedAt = at;
     }
 
-    public synchronized void markPending(String pspTxnId) {
+    public synchronized void markPending(String pspTxnId, Instant at) {
         this.status = TransactionStatus.PENDING;
         this.pspTxnId = pspTxnId;
-        this.updatedAt = Instant.now();
+        this.updatedAt = at;
     }
 
     @Override public String toString() {
@@ -0,0 +1,50 @@
+package psp;
+
+import java.util.SplittableRandom;
+
+/*
+  Latency model used by SimulatedPspClient. Samples are drawn from the caller's own
+  SplittableRandom so no RNG state is shared between threads.
+*/
+public interface LatencyDistribution {
+
+    // sample a latency in nanoseconds
+    long sampleNanos(SplittableRandom rng);
+
+    static LatencyDistribution none() {
+        return rng -> 0L;
+    }
+
+    static LatencyDistribution fixed(long millis) {
+        if (millis < 0) throw new IllegalArgumentException("latency must be >= 0");
+        long nanos = millis * 1_000_000L;
+        return rng -> nanos;
+    }
+
+    /**
+     * Log-normal latency with the given median; sigma controls the spread of the tail
+     * (0.25 is tight, 1.0 is very heavy).
+     */
+    static LatencyDistribution logNormal(double medianMillis, double sigma) {
+        if (medianMillis <= 0 || sigma < 0) throw new IllegalArgumentException("invalid log-normal parameters");
+        double mu = Math.log(medianMillis);
+        return rng -> (long) (Math.exp(mu + sigma * gaussian(rng)) * 1_000_000d);
+    }
+
+    /**
+     * Mostly-fast latency with a slow tail: with probability tailProb the sample comes from
+     * the tail distribution, otherwise from the fast one.
+     */
+    static LatencyDistribution bimodal(LatencyDistribution fast, LatencyDistribution tail, double tailProb) {
+        if (tailProb < 0 || tailProb > 1.0) throw new IllegalArgumentException("tailProb must be in [0,1]");
+        return rng -> rng.nextDouble() < tailProb ? tail.sampleNanos(rng) : fast.sampleNanos(rng);
+    }
+
+    // Box-Muller; SplittableRandom has no nextGaussian on older JDKs
+    private static double gaussian(SplittableRandom rng) {
+        double u1 = rng.nextDouble();
+        double u2 = rng.nextDouble();
+        if (u1 < 1e-300) u1 = 1e-300;
+        return Math.sqrt(-2.0 * Math.log(u1)) * Math.cos(2.0 * Math.PI * u2);
+    }
+}
@@ -1,31 +1,40 @@
 package psp;
 
 import java.math.BigDecimal;
-import java.util.Random;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
 
 /*
   MockPSP: keeps internal map pspTxnId -> state so queryStatus can return transitions.
   Behavior: on initiate, randomly return SUCCESS/PENDING/FAILED (configurable probabilities).
   If PENDING, the reconciler can query to get eventual result.
+  For latency / load simulation use SimulatedPspClient instead.
 */
 public class MockPspClient implements PspClient {
-    private final Random rng = new Random();
     private final ConcurrentMap<String, PspStatus> store = new ConcurrentHashMap<>();
     private final double successProb;
     private final double pendingProb;
+    private final String name;
     // pending may later become success or failed
     public MockPspClient(double successProb, double pendingProb) {
+        this("MockPspClient", successProb, pendingProb);
+    }
+
+    public MockPspClient(String name, double successProb, double pendingProb) {
         if (successProb + pendingProb > 1.0) throw new IllegalArgumentException("probabilities invalid");
+        this.name = name;
         this.successProb = successProb;
         this.pendingProb = pendingProb;
     }
 
+    @Override
+    public String name() { return name; }
+
     @Override
     public PspResponse initiateTransfer(String fromMasked, String toIdentifier, BigDecimal amount) {
-        int v = rng.nextInt(100);
+        int v = ThreadLocalRandom.current().nextInt(100);
         String pspId = UUID.randomUUID().toString();
         if (v < (int)(successProb * 100)) {
             store.put(pspId, PspStatus.SUCCESS);
@@ -45,7 +54,7 @@ public class MockPspClient implements PspClient {
         if (s == null) return new PspResponse(PspStatus.FAILED, pspTxnId, "UNKNOWN");
         // if currently PENDING, randomly finalize to SUCCESS or FAILED (simulate PSP resolving)
         if (s == PspStatus.PENDING) {
-            int v = rng.nextInt(100);
+            int v = ThreadLocalRandom.current().nextInt(100);
             if (v < 60) {
                 s = PspStatus.SUCCESS;
             } else {
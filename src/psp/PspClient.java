@@ -20,4 +20,7 @@ public interface PspClient {
 
     // query status of a previously initiated transfer (for reconciliation)
     PspResponse queryStatus(String pspTxnId);
+
+    // label for metrics and analytics
+    default String name() { return getClass().getSimpleName(); }
 }
\ No newline at end of file
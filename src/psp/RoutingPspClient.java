@@ -0,0 +1,344 @@
+package psp;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/*
+  RoutingPSP: one PspClient in front of several backends, so a single TransactionService can
+  spread initiations over all of them.
+  - initiate goes to the healthy backend with the lowest EWMA latency x (outstanding calls + 1);
+    it is sent exactly once: never retried elsewhere and never hedged, a failure surfaces as before
+  - a backend whose calls throw failureThreshold times in a row is ejected for ejectFor; after
+    that it gets traffic again and the next failure ejects it again, a success reinstates it
+  - the owner of every PENDING pspTxnId is remembered (bounded by ownershipTtl / maxOwned), so
+    queryStatus asks that backend; ids with no known owner are asked of each backend in turn
+  - queryStatus is safe to repeat, so when the owner has not answered within its observed p95
+    query latency a second identical query is sent and the first answer wins; at most
+    maxHedgeFraction of queries are hedged, so a uniformly slow backend does not get double load
+  Hedging needs an executor for the queries; without one they run on the caller, unhedged.
+*/
+public class RoutingPspClient implements PspClient {
+    private static final int LATENCY_SAMPLES = 1024;   // recent query latencies per backend
+    private static final int MIN_SAMPLES = 128;        // before this, no p95 and no hedging
+    private static final int P95_EVERY = 128;          // recompute the p95 every this many samples
+    private static final String UNKNOWN = "UNKNOWN";
+
+    private static final class Backend {
+        final PspClient client;
+        final AtomicInteger outstanding = new AtomicInteger();
+        final AtomicLong ewmaNanos = new AtomicLong();     // initiate latency, 0 = no sample yet
+        final AtomicInteger consecutiveFailures = new AtomicInteger();
+        volatile long ejectedUntilNanos;
+        final long[] queryLatencies = new long[LATENCY_SAMPLES];
+        final AtomicLong querySamples = new AtomicLong();
+        final ReentrantLock p95Lock = new ReentrantLock();
+        volatile long hedgeAfterNanos = -1;
+        final LongAdder initiated = new LongAdder();
+        final LongAdder queried = new LongAdder();
+        final LongAdder errors = new LongAdder();
+
+        Backend(PspClient client) { this.client = client; }
+
+        long score() { return (ewmaNanos.get() + 1) * (outstanding.get() + 1); }
+
+        boolean ejected(long now) { return now - ejectedUntilNanos < 0; }
+
+        void recordInitiate(long nanos) {
+            long old, next;
+            do {
+                old = ewmaNanos.get();
+                next = old == 0 ? Math.max(1, nanos) : old + (nanos - old) / 5; // alpha 0.2
+            } while (!ewmaNanos.compareAndSet(old, next));
+        }
+
+        void recordQuery(long nanos) {
+            long n = querySamples.getAndIncrement();
+            queryLatencies[(int) (n % LATENCY_SAMPLES)] = nanos;
+            if (n + 1 >= MIN_SAMPLES && (n + 1) % P95_EVERY == 0 && p95Lock.tryLock()) {
+                try {
+                    int count = (int) Math.min(n + 1, LATENCY_SAMPLES);
+                    long[] sorted = Arrays.copyOf(queryLatencies, count);
+                    Arrays.sort(sorted);
+                    hedgeAfterNanos = sorted[(int) (count * 0.95)];
+                } finally {
+                    p95Lock.unlock();
+                }
+            }
+        }
+
+        void succeeded() {
+            if (consecutiveFailures.get() != 0) consecutiveFailures.set(0);
+        }
+
+        void failed(int threshold, long ejectNanos) {
+            errors.increment();
+            if (consecutiveFailures.incrementAndGet() >= threshold) ejectedUntilNanos = System.nanoTime() + ejectNanos;
+        }
+    }
+
+    private static final class Owned {
+        final String pspTxnId;
+        final Backend backend;
+        final long expiresAtMillis;
+
+        Owned(String pspTxnId, Backend backend, long expiresAtMillis) {
+            this.pspTxnId = pspTxnId; this.backend = backend; this.expiresAtMillis = expiresAtMillis;
+        }
+    }
+
+    private final Backend[] backends;
+    private final Executor queryExecutor;
+    private final double maxHedgeFraction;
+    private final int failureThreshold;
+    private final long ejectNanos;
+    private final long ownershipTtlMillis;
+    private final int maxOwned;
+    private final String name;
+
+    private final ConcurrentMap<String, Owned> owners = new ConcurrentHashMap<>();
+    // insertion order == expiry order because the TTL is constant
+    private final ConcurrentLinkedQueue<Owned> expiryQueue = new ConcurrentLinkedQueue<>();
+    private final ReentrantLock evictLock = new ReentrantLock();
+    private final AtomicInteger rotation = new AtomicInteger();
+
+    private final AtomicLong queries = new AtomicLong();
+    private final AtomicLong hedges = new AtomicLong();
+    private final LongAdder hedgeWins = new LongAdder();
+    private final LongAdder unownedQueries = new LongAdder();
+
+    public RoutingPspClient(List<PspClient> backends, Executor queryExecutor) {
+        this(backends, queryExecutor, 0.1, 5, Duration.ofSeconds(10), Duration.ofHours(1), 1_000_000);
+    }
+
+    public RoutingPspClient(List<PspClient> backends,
+                            Executor queryExecutor,
+                            double maxHedgeFraction,
+                            int failureThreshold,
+                            Duration ejectFor,
+                            Duration ownershipTtl,
+                            int maxOwned) {
+        if (backends.isEmpty()) throw new IllegalArgumentException("at least one backend required");
+        if (maxHedgeFraction < 0 || maxHedgeFraction > 1.0) throw new IllegalArgumentException("maxHedgeFraction must be in [0,1]");
+        if (failureThreshold <= 0 || maxOwned <= 0) throw new IllegalArgumentException("limits must be > 0");
+        this.backends = new Backend[backends.size()];
+        StringBuilder label = new StringBuilder("routing[");
+        for (int i = 0; i < this.backends.length; i++) {
+            this.backends[i] = new Backend(backends.get(i));
+            label.append(i == 0 ? "" : ",").append(backends.get(i).name());
+        }
+        this.name = label.append(']').toString();
+        this.queryExecutor = queryExecutor;
+        this.maxHedgeFraction = maxHedgeFraction;
+        this.failureThreshold = failureThreshold;
+        this.ejectNanos = ejectFor.toNanos();
+        this.ownershipTtlMillis = ownershipTtl.toMillis();
+        this.maxOwned = maxOwned;
+    }
+
+    @Override
+    public String name() { return name; }
+
+    @Override
+    public PspResponse initiateTransfer(String fromMasked, String toIdentifier, BigDecimal amount) {
+        Backend b = pick();
+        b.outstanding.incrementAndGet();
+        long start = System.nanoTime();
+        PspResponse resp;
+        try {
+            resp = b.client.initiateTransfer(fromMasked, toIdentifier, amount);
+        } catch (RuntimeException e) {
+            b.failed(failureThreshold, ejectNanos);
+            throw e; // not retried: the transfer may have reached the backend
+        } finally {
+            b.outstanding.decrementAndGet();
+        }
+        b.recordInitiate(System.nanoTime() - start);
+        b.succeeded();
+        b.initiated.increment();
+        if (resp.status == PspStatus.PENDING && resp.pspTxnId != null) own(resp.pspTxnId, b);
+        return resp;
+    }
+
+    @Override
+    public PspResponse queryStatus(String pspTxnId) {
+        queries.incrementAndGet();
+        Owned owned = pspTxnId == null ? null : owners.get(pspTxnId);
+        if (owned == null) return queryUnowned(pspTxnId);
+        PspResponse resp = hedgedQuery(owned.backend, pspTxnId);
+        if (resp.status != PspStatus.PENDING) owners.remove(pspTxnId, owned);
+        return resp;
+    }
+
+    // lowest score among healthy backends; ties broken by a rotating start so equal backends share load
+    private Backend pick() {
+        long now = System.nanoTime();
+        int start = Math.floorMod(rotation.getAndIncrement(), backends.length);
+        Backend best = null, fallback = null;
+        long bestScore = Long.MAX_VALUE;
+        for (int i = 0; i < backends.length; i++) {
+            Backend b = backends[(start + i) % backends.length];
+            if (b.ejected(now)) {
+                // all ejected: the one back soonest
+                if (fallback == null || b.ejectedUntilNanos - fallback.ejectedUntilNanos < 0) fallback = b;
+                continue;
+            }
+            long score = b.score();
+            if (score < bestScore) {
+                best = b;
+                bestScore = score;
+            }
+        }
+        return best != null ? best : fallback;
+    }
+
+    private PspResponse hedgedQuery(Backend b, String pspTxnId) {
+        long hedgeAfter = b.hedgeAfterNanos;
+        if (queryExecutor == null || hedgeAfter < 0) return timedQuery(b, pspTxnId);
+
+        CompletableFuture<PspResponse> answer = new CompletableFuture<>();
+        AtomicInteger attempts = new AtomicInteger(1);
+        launch(b, pspTxnId, answer, attempts, false);
+        try {
+            return answer.get(hedgeAfter, TimeUnit.NANOSECONDS);
+        } catch (TimeoutException slow) {
+            if (hedges.get() < queries.get() * maxHedgeFraction) {
+                hedges.incrementAndGet();
+                attempts.incrementAndGet();
+                launch(b, pspTxnId, answer, attempts, true);
+            }
+            return await(answer);
+        } catch (InterruptedException | ExecutionException e) {
+            return rethrow(e);
+        }
+    }
+
+    private void launch(Backend b, String pspTxnId, CompletableFuture<PspResponse> answer, AtomicInteger attempts, boolean hedge) {
+        Runnable attempt = () -> {
+            try {
+                if (answer.complete(timedQuery(b, pspTxnId)) && hedge) hedgeWins.increment();
+            } catch (RuntimeException e) {
+                // an attempt still running may yet answer
+                if (attempts.decrementAndGet() == 0) answer.completeExceptionally(e);
+            }
+        };
+        try {
+            queryExecutor.execute(attempt);
+        } catch (RejectedExecutionException e) {
+            attempt.run();
+        }
+    }
+
+    private PspResponse timedQuery(Backend b, String pspTxnId) {
+        b.outstanding.incrementAndGet();
+        long start = System.nanoTime();
+        try {
+            PspResponse resp = b.client.queryStatus(pspTxnId);
+            b.recordQuery(System.nanoTime() - start);
+            b.succeeded();
+            b.queried.increment();
+            return resp;
+        } catch (RuntimeException e) {
+            b.failed(failureThreshold, ejectNanos);
+            throw e;
+        } finally {
+            b.outstanding.decrementAndGet();
+        }
+    }
+
+    // owner forgotten (expired, evicted, restarted): ask each backend until one knows the id
+    private PspResponse queryUnowned(String pspTxnId) {
+        unownedQueries.increment();
+        PspResponse last = null;
+        RuntimeException error = null;
+        for (Backend b : backends) {
+            try {
+                last = timedQuery(b, pspTxnId);
+            } catch (RuntimeException e) {
+                error = e;
+                continue;
+            }
+            if (!UNKNOWN.equals(last.errorCode)) {
+                if (last.status == PspStatus.PENDING) own(pspTxnId, b);
+                return last;
+            }
+        }
+        // a backend that could not be asked may be the owner: do not report the id as unknown
+        if (error != null) throw error;
+        return last;
+    }
+
+    private void own(String pspTxnId, Backend b) {
+        long now = System.currentTimeMillis();
+        evictExpired(now);
+        Owned o = new Owned(pspTxnId, b, now + ownershipTtlMillis);
+        owners.put(pspTxnId, o);
+        expiryQueue.add(o);
+    }
+
+    // one evictor at a time; others skip rather than wait
+    private void evictExpired(long now) {
+        if (!evictLock.tryLock()) return;
+        try {
+            Owned head;
+            while ((head = expiryQueue.peek()) != null
+                    && (head.expiresAtMillis <= now || owners.get(head.pspTxnId) != head || owners.size() > maxOwned)) {
+                expiryQueue.poll();
+                owners.remove(head.pspTxnId, head);
+            }
+        } finally {
+            evictLock.unlock();
+        }
+    }
+
+    private static PspResponse await(CompletableFuture<PspResponse> answer) {
+        try {
+            return answer.get();
+        } catch (InterruptedException | ExecutionException e) {
+            return rethrow(e);
+        }
+    }
+
+    private static PspResponse rethrow(Exception e) {
+        if (e instanceof InterruptedException) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while waiting for PSP status", e);
+        }
+        Throwable cause = e.getCause();
+        if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+        throw new IllegalStateException(cause);
+    }
+
+    /** Per backend: transfers initiated / status queries / calls that threw / calls in progress / initiate EWMA / hedge delay (-1 = none yet) / ejected now. */
+    public long getInitiated(int backend) { return backends[backend].initiated.sum(); }
+    public long getQueried(int backend) { return backends[backend].queried.sum(); }
+    public long getErrors(int backend) { return backends[backend].errors.sum(); }
+    public int getOutstanding(int backend) { return backends[backend].outstanding.get(); }
+    public double getEwmaMillis(int backend) { return backends[backend].ewmaNanos.get() / 1e6; }
+    public double getHedgeAfterMillis(int backend) {
+        long h = backends[backend].hedgeAfterNanos;
+        return h < 0 ? -1 : h / 1e6;
+    }
+    public boolean isEjected(int backend) { return backends[backend].ejected(System.nanoTime()); }
+
+    /** Status queries / hedged queries / hedges that answered first / queries with no known owner / owned PENDING ids. */
+    public long getQueries() { return queries.get(); }
+    public long getHedges() { return hedges.get(); }
+    public long getHedgeWins() { return hedgeWins.sum(); }
+    public long getUnownedQueries() { return unownedQueries.sum(); }
+    public int getOwned() { return owners.size(); }
+}
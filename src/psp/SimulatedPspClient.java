@@ -0,0 +1,195 @@
+package psp;
+
+import java.math.BigDecimal;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.SplittableRandom;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/*
+  SimulatedPSP: a benchmarking stand-in for a real PSP.
+  - randomness is per calling thread (SplittableRandom seeded from seed + thread ordinal), so runs
+    are reproducible for a fixed thread pool and no RNG state is shared between threads
+  - initiate / query calls sleep for a latency sampled from a LatencyDistribution
+  - at most maxConcurrent calls are in progress at once; excess callers queue (fair semaphore)
+  - a PENDING transfer's final outcome is decided at initiate time and becomes visible to
+    queryStatus once pendingResolveAfter (fixed or sampled per transfer) has elapsed; a transfer
+    that succeeded at once answers SUCCESS to queryStatus
+  - time is read from the given Clock, so with a simulated clock transfers resolve in simulated time
+  - state is bounded: entries expire after stateTtl and the oldest are evicted beyond maxEntries
+*/
+public class SimulatedPspClient implements PspClient {
+
+    private static final class Entry {
+        final String pspId;
+        final PspStatus finalStatus;     // SUCCESS or FAILED
+        final long resolveAtMillis;      // PENDING until then
+        final long expiresAtMillis;
+
+        Entry(String pspId, PspStatus finalStatus, long resolveAtMillis, long expiresAtMillis) {
+            this.pspId = pspId; this.finalStatus = finalStatus;
+            this.resolveAtMillis = resolveAtMillis; this.expiresAtMillis = expiresAtMillis;
+        }
+    }
+
+    private final double successProb;
+    private final double pendingProb;
+    private final double pendingSuccessProb;
+    private final LatencyDistribution initiateLatency;
+    private final LatencyDistribution queryLatency;
+    private final Semaphore permits;
+    private final LatencyDistribution pendingResolveAfter;
+    private final Clock clock;
+    private final long stateTtlMillis;
+    private final int maxEntries;
+
+    private final ConcurrentMap<String, Entry> store = new ConcurrentHashMap<>();
+    // insertion order == expiry order because the TTL is constant
+    private final ConcurrentLinkedQueue<Entry> expiryQueue = new ConcurrentLinkedQueue<>();
+    private final ReentrantLock evictLock = new ReentrantLock();
+
+    private final long seed;
+    private final AtomicLong threadOrdinal = new AtomicLong();
+    private final ThreadLocal<SplittableRandom> rng;
+
+    public SimulatedPspClient(double successProb, double pendingProb, long seed) {
+        this(successProb, pendingProb, 0.6, LatencyDistribution.none(), LatencyDistribution.none(),
+                Integer.MAX_VALUE, Duration.ofSeconds(5), Duration.ofMinutes(10), 1_000_000, seed);
+    }
+
+    public SimulatedPspClient(double successProb,
+                              double pendingProb,
+                              double pendingSuccessProb,
+                              LatencyDistribution initiateLatency,
+                              LatencyDistribution queryLatency,
+                              int maxConcurrent,
+                              Duration pendingResolveAfter,
+                              Duration stateTtl,
+                              int maxEntries,
+                              long seed) {
+        this(successProb, pendingProb, pendingSuccessProb, initiateLatency, queryLatency, maxConcurrent,
+                LatencyDistribution.fixed(pendingResolveAfter.toMillis()), stateTtl, maxEntries, seed, Clock.systemUTC());
+    }
+
+    public SimulatedPspClient(double successProb,
+                              double pendingProb,
+                              double pendingSuccessProb,
+                              LatencyDistribution initiateLatency,
+                              LatencyDistribution queryLatency,
+                              int maxConcurrent,
+                              LatencyDistribution pendingResolveAfter,
+                              Duration stateTtl,
+                              int maxEntries,
+                              long seed,
+                              Clock clock) {
+        if (successProb < 0 || pendingProb < 0 || successProb + pendingProb > 1.0) throw new IllegalArgumentException("probabilities invalid");
+        if (pendingSuccessProb < 0 || pendingSuccessProb > 1.0) throw new IllegalArgumentException("pendingSuccessProb invalid");
+        if (maxConcurrent <= 0 || maxEntries <= 0) throw new IllegalArgumentException("limits must be > 0");
+        this.successProb = successProb;
+        this.pendingProb = pendingProb;
+        this.pendingSuccessProb = pendingSuccessProb;
+        this.initiateLatency = initiateLatency;
+        this.queryLatency = queryLatency;
+        this.permits = new Semaphore(maxConcurrent, true);
+        this.pendingResolveAfter = pendingResolveAfter;
+        this.clock = clock;
+        this.stateTtlMillis = stateTtl.toMillis();
+        this.maxEntries = maxEntries;
+        this.seed = seed;
+        this.rng = ThreadLocal.withInitial(() ->
+                new SplittableRandom(this.seed + threadOrdinal.getAndIncrement() * 0x9E3779B97F4A7C15L));
+    }
+
+    @Override
+    public PspResponse initiateTransfer(String fromMasked, String toIdentifier, BigDecimal amount) {
+        SplittableRandom r = rng.get();
+        enter(initiateLatency.sampleNanos(r));
+        try {
+            long now = clock.millis();
+            evictExpired(now);
+            double v = r.nextDouble();
+            if (v < successProb) {
+                // resolved at once, but kept so a later queryStatus on the id still answers SUCCESS
+                String pspId = newPspId(r);
+                track(new Entry(pspId, PspStatus.SUCCESS, now, now + stateTtlMillis));
+                return new PspResponse(PspStatus.SUCCESS, pspId, null);
+            } else if (v < successProb + pendingProb) {
+                String pspId = newPspId(r);
+                PspStatus eventual = r.nextDouble() < pendingSuccessProb ? PspStatus.SUCCESS : PspStatus.FAILED;
+                long resolveAt = now + pendingResolveAfter.sampleNanos(r) / 1_000_000L;
+                track(new Entry(pspId, eventual, resolveAt, now + stateTtlMillis));
+                return new PspResponse(PspStatus.PENDING, pspId, null);
+            } else {
+                return new PspResponse(PspStatus.FAILED, null, "PSP_FAILURE");
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    @Override
+    public PspResponse queryStatus(String pspTxnId) {
+        enter(queryLatency.sampleNanos(rng.get()));
+        try {
+            long now = clock.millis();
+            Entry e = pspTxnId == null ? null : store.get(pspTxnId);
+            // anything unknown, expired or evicted is reported as such
+            if (e == null || e.expiresAtMillis <= now) return new PspResponse(PspStatus.FAILED, pspTxnId, "UNKNOWN");
+            if (now < e.resolveAtMillis) return new PspResponse(PspStatus.PENDING, pspTxnId, null);
+            return e.finalStatus == PspStatus.SUCCESS ? new PspResponse(PspStatus.SUCCESS, pspTxnId, null)
+                    : new PspResponse(PspStatus.FAILED, pspTxnId, "PSP_RECONCILED_FAILED");
+        } finally {
+            permits.release();
+        }
+    }
+
+    public int getTrackedEntries() { return store.size(); }
+    public int getQueuedCalls() { return permits.getQueueLength(); }
+
+    // take a concurrency permit (queueing if saturated), then simulate the network/PSP latency
+    private void enter(long latencyNanos) {
+        try {
+            permits.acquire();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while waiting for PSP capacity", ie);
+        }
+        long deadline = System.nanoTime() + latencyNanos;
+        long remaining = latencyNanos;
+        while (remaining > 0 && !Thread.currentThread().isInterrupted()) {
+            LockSupport.parkNanos(remaining);
+            remaining = deadline - System.nanoTime();
+        }
+    }
+
+    private void track(Entry e) {
+        store.put(e.pspId, e);
+        expiryQueue.add(e);
+    }
+
+    // one evictor at a time; others skip rather than wait
+    private void evictExpired(long now) {
+        if (!evictLock.tryLock()) return;
+        try {
+            Entry head;
+            while ((head = expiryQueue.peek()) != null
+                    && (head.expiresAtMillis <= now || store.size() > maxEntries)) {
+                expiryQueue.poll();
+                store.remove(head.pspId, head);
+            }
+        } finally {
+            evictLock.unlock();
+        }
+    }
+
+    private static String newPspId(SplittableRandom r) {
+        return new UUID(r.nextLong(), r.nextLong()).toString();
+    }
+}
@@ -1,11 +1,14 @@
 package repository;
 
+import models.BalanceSnapshot;
 import models.BankAccount;
 
 import java.math.BigDecimal;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 public interface BankAccountRepository {
 
@@ -14,6 +17,19 @@ public interface BankAccountRepository {
     Optional<BankAccount> findByBankAndAccountNumber(UUID bankId, String accountNumber);
     List<BankAccount> findByUserId(UUID userId);
     List<BankAccount> listAll();
+    // weakly consistent view of the live map: no copy, splits for parallel streams
+    Stream<BankAccount> streamAll();
     void update(BankAccount acct);
+    // optimistic write: applies the mutation only if the account is still at expectedVersion
+    // (see BankAccount.getVersion); false on a conflict, in which case the caller re-reads and retries
+    boolean compareAndUpdate(UUID accountId, long expectedVersion, Consumer<BankAccount> mutation);
     void setPrimary(UUID userId, UUID accountId); // ensures only one primary
+    // consistent point-in-time balances of all accounts, read without locking them; close when done
+    BalanceSnapshot snapshot();
+    // first half of an internal transfer: settle the payer's reserved amount into transit, as one commit
+    // (caller has exclusive access to the payer)
+    void settleToTransit(BankAccount payer, BigDecimal amount);
+    // second half: credit the payee out of the payer's transit amount, as one commit
+    // (caller has exclusive access to the payee)
+    void creditFromTransit(BankAccount payee, UUID payerId, BigDecimal amount);
 }
@@ -5,9 +5,12 @@ import models.Bank;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.stream.Stream;
 
 public interface BankRepository {
     Bank createBank(String name, String code);
     Optional<Bank> findById(UUID id);
     List<Bank> listAll();
+    // weakly consistent view of the live map: no copy, splits for parallel streams
+    Stream<Bank> streamAll();
 }
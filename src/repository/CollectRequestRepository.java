@@ -0,0 +1,25 @@
+package repository;
+
+import enums.CollectStatus;
+import models.CollectRequest;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+public interface CollectRequestRepository {
+
+    CollectRequest create(UUID payeeAccountId, String payeeIdentifier, UUID payerUserId, String payerPhone,
+                          BigDecimal amount, String note, Instant createdAt, Instant expiresAt);
+    Optional<CollectRequest> findById(UUID id);
+    // requests are also addressed by a dense slot (0 .. slotCount()-1), so expiry schedules can hold ints
+    CollectRequest get(int slot);
+    int slotCount();
+    // the payer's PENDING requests, oldest first; an immutable snapshot
+    List<CollectRequest> findPendingByPayer(UUID payerUserId);
+    // change status (updatedAt = at) and keep the payer's pending list in step; false if the request was not in from
+    boolean transition(UUID id, CollectStatus from, CollectStatus to, Instant at);
+    long countPending();
+}
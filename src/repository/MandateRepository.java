@@ -0,0 +1,26 @@
+package repository;
+
+import enums.MandateFrequency;
+import enums.MandateStatus;
+import models.Mandate;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.UUID;
+
+public interface MandateRepository {
+
+    Mandate create(UUID fromAccountId, UUID toAccountId, String toIdentifier, BigDecimal amount,
+                   MandateFrequency frequency, Instant firstDueAt);
+    Optional<Mandate> findById(UUID id);
+    // mandates are also addressed by a dense slot (0 .. slotCount()-1), so schedules can hold ints
+    Mandate get(int slot);
+    int slotCount();
+    // next due time of a slot in epoch millis, without building the Mandate
+    long nextDueMillis(int slot);
+    void updateStatus(UUID id, MandateStatus status);
+    // move the mandate past cycle (only if it is still at it) and set the next due time; false if
+    // another run already did
+    boolean completeCycle(int slot, int cycle, Instant nextDueAt);
+}
@@ -8,14 +8,25 @@ import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 import java.util.function.Predicate;
+import java.util.stream.Stream;
 
 public interface TransactionRepository {
 
     Transaction saveNew(Transaction txn) throws IdempotencyException;
+    // bulk insert; returns the transactions NOT saved because their idempotency key already exists
+    List<Transaction> saveAllNew(List<Transaction> txns);
     Optional<Transaction> findById(UUID id);
     Optional<Transaction> findByIdempotencyKey(String key);
     List<Transaction> findByFromOrTo(UUID from, UUID to);
     List<Transaction> findByStatus(TransactionStatus status);
     List<Transaction> search(Predicate<Transaction> filter);
+    // streaming variants of the queries above, for exports and aggregates: rows are produced as
+    // they are consumed, parallel streams split the work. Each stream reads the storage tiers as
+    // of one instant, so a transaction moved between tiers while it runs is reported exactly once
+    Stream<Transaction> streamAll();
+    Stream<Transaction> streamByFromOrTo(UUID from, UUID to);
+    Stream<Transaction> streamByStatus(TransactionStatus status);
+    // the account's latest transactions as payer or payee, newest first, up to limit (an implementation may cap it)
+    List<Transaction> findRecentByAccount(UUID accountId, int limit);
     void update(Transaction txn);
 }
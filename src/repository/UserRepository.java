@@ -5,6 +5,7 @@ import models.User;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.stream.Stream;
 
 public interface UserRepository {
 
@@ -12,5 +13,7 @@ public interface UserRepository {
     Optional<User> findById(UUID id);
     Optional<User> findByPhone(String phone);
     List<User> listAll();
+    // weakly consistent view of the live map: no copy, splits for parallel streams
+    Stream<User> streamAll();
     void deactivateUser(UUID id);
 }
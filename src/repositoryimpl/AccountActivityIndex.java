@@ -0,0 +1,102 @@
+package repositoryimpl;
+
+import models.Transaction;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+/**
+ * Ids of each account's most recent transactions (as payer or payee), newest first, up to
+ * PER_ACCOUNT of them: an account's history is that many point reads instead of a scan of the
+ * hot tier. Per account a ring of (msb, lsb) pairs, grown on demand, under its own monitor; the
+ * transactions themselves stay wherever the tiers put them.
+ */
+final class AccountActivityIndex {
+    static final int PER_ACCOUNT = 1_000;
+
+    private static final class Ring {
+        long[] ids = new long[8]; // (msb, lsb) pairs, oldest at head once full
+        int head;                 // pair slot of the next id
+        int size;                 // pairs held
+        boolean seeded;
+    }
+
+    private final ConcurrentMap<UUID, Ring> byAccount = new ConcurrentHashMap<>();
+
+    void add(Transaction t) {
+        if (t.fromAccountId != null) add(t.fromAccountId, t.id);
+        if (t.toAccountId != null && !t.toAccountId.equals(t.fromAccountId)) add(t.toAccountId, t.id);
+    }
+
+    private void add(UUID account, UUID id) {
+        Ring r = byAccount.computeIfAbsent(account, a -> new Ring());
+        synchronized (r) {
+            if (r.size == r.ids.length / 2 && r.size < PER_ACCOUNT) grow(r, Math.min(PER_ACCOUNT, r.size * 2));
+            r.ids[r.head * 2] = id.getMostSignificantBits();
+            r.ids[r.head * 2 + 1] = id.getLeastSignificantBits();
+            r.head = (r.head + 1) % (r.ids.length / 2);
+            if (r.size < r.ids.length / 2) r.size++;
+        }
+    }
+
+    // the account's ids, newest first, up to limit
+    List<UUID> recent(UUID account, int limit) {
+        Ring r = byAccount.get(account);
+        if (r == null) return List.of();
+        synchronized (r) {
+            int n = Math.min(limit, r.size), slots = r.ids.length / 2;
+            List<UUID> out = new ArrayList<>(n);
+            for (int i = 1; i <= n; i++) {
+                int slot = (r.head - i + slots) % slots;
+                out.add(new UUID(r.ids[slot * 2], r.ids[slot * 2 + 1]));
+            }
+            return out;
+        }
+    }
+
+    /*
+      Once per account: put older ids (oldest first) behind the ones indexed so far, e.g. an
+      account's transactions in segments loaded at startup, which were never added.
+    */
+    void seedOnce(UUID account, Supplier<List<UUID>> older) {
+        Ring r = byAccount.computeIfAbsent(account, a -> new Ring());
+        synchronized (r) {
+            if (r.seeded) return;
+            r.seeded = true;
+            List<UUID> ids = older.get();
+            if (ids.isEmpty()) return;
+            List<UUID> newer = recent(account, r.size);
+            int keep = Math.min(ids.size(), PER_ACCOUNT - newer.size());
+            r.ids = new long[Math.max(8, (keep + newer.size()) * 2)];
+            r.head = 0;
+            r.size = 0;
+            for (UUID id : ids.subList(ids.size() - keep, ids.size())) put(r, id);
+            for (int i = newer.size() - 1; i >= 0; i--) put(r, newer.get(i));
+            r.head %= r.ids.length / 2;
+        }
+    }
+
+    private static void put(Ring r, UUID id) {
+        r.ids[r.head * 2] = id.getMostSignificantBits();
+        r.ids[r.head * 2 + 1] = id.getLeastSignificantBits();
+        r.head++;
+        r.size++;
+    }
+
+    // full ring to a larger array, oldest first
+    private static void grow(Ring r, int slots) {
+        int old = r.ids.length / 2;
+        long[] ids = new long[slots * 2];
+        for (int i = 0; i < r.size; i++) {
+            int slot = (r.head - r.size + i + old) % old;
+            ids[i * 2] = r.ids[slot * 2];
+            ids[i * 2 + 1] = r.ids[slot * 2 + 1];
+        }
+        r.ids = ids;
+        r.head = r.size;
+    }
+}
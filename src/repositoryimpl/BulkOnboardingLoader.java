@@ -0,0 +1,292 @@
+package repositoryimpl;
+
+import enums.UserStatus;
+import models.Bank;
+import models.User;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bulk onboarding of users with their linked accounts from a CSV file, one account per line:
+ *   phone,name,bankCode,accountNumber,initialBalance
+ * (a first line starting with "phone" is taken as a header). The file is memory-mapped in chunks
+ * that are parsed and inserted in parallel on a ForkJoinPool, straight into the in-memory
+ * repositories: the account index is sized from the file up front, a user is created per new phone
+ * (later lines with the same phone link more accounts to it), a bank per new code, and a
+ * bank+account number that already exists is counted as a duplicate and skipped.
+ * Malformed lines, and lines for a deactivated user, are counted as rejected.
+ */
+public class BulkOnboardingLoader {
+
+    private static final int CHUNK_BYTES = 8 << 20;
+    private static final int MAX_LINE = 4096;    // a line must start and end within its chunk + this
+    private static final int SAMPLE_BYTES = 16 << 10, SAMPLES = 4;
+
+    private final InMemoryUserRepository userRepo;
+    private final InMemoryBankRepository bankRepo;
+    private final InMemoryBankAccountRepository acctRepo;
+    private final ForkJoinPool pool;
+    private final ConcurrentMap<String, Bank> banksByCode = new ConcurrentHashMap<>();
+
+    /** Counts of one load. */
+    public static class Report {
+        public final long rows;
+        public final long usersCreated;
+        public final long usersReused;        // phone already onboarded: the account is linked to that user
+        public final long accountsCreated;
+        public final long duplicateAccounts;  // bank+account number already linked
+        public final long rejected;
+        public final long banksCreated;
+        public final long elapsedNanos;
+
+        Report(Counters c, long elapsedNanos) {
+            this.rows = c.rows.sum();
+            this.usersCreated = c.usersCreated.sum();
+            this.usersReused = c.usersReused.sum();
+            this.accountsCreated = c.accountsCreated.sum();
+            this.duplicateAccounts = c.duplicateAccounts.sum();
+            this.rejected = c.rejected.sum();
+            this.banksCreated = c.banksCreated.sum();
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public double rowsPerSecond() { return elapsedNanos <= 0 ? 0 : rows / (elapsedNanos / 1e9); }
+
+        @Override public String toString() {
+            return String.format("Report{rows=%d users=%d reused=%d accounts=%d duplicates=%d rejected=%d banks=%d in %d ms, %.0f rows/s}",
+                    rows, usersCreated, usersReused, accountsCreated, duplicateAccounts, rejected, banksCreated,
+                    elapsedNanos / 1_000_000, rowsPerSecond());
+        }
+    }
+
+    private static final class Counters {
+        final LongAdder rows = new LongAdder(), usersCreated = new LongAdder(), usersReused = new LongAdder(),
+                accountsCreated = new LongAdder(), duplicateAccounts = new LongAdder(), rejected = new LongAdder(),
+                banksCreated = new LongAdder();
+    }
+
+    public BulkOnboardingLoader(InMemoryUserRepository userRepo, InMemoryBankRepository bankRepo, InMemoryBankAccountRepository acctRepo) {
+        this(userRepo, bankRepo, acctRepo, ForkJoinPool.commonPool());
+    }
+
+    public BulkOnboardingLoader(InMemoryUserRepository userRepo, InMemoryBankRepository bankRepo, InMemoryBankAccountRepository acctRepo,
+                                ForkJoinPool pool) {
+        this.userRepo = userRepo;
+        this.bankRepo = bankRepo;
+        this.acctRepo = acctRepo;
+        this.pool = pool;
+    }
+
+    public Report load(Path csv) throws IOException {
+        long start = System.nanoTime();
+        try (FileChannel ch = FileChannel.open(csv, StandardOpenOption.READ)) {
+            long size = ch.size();
+            long expectedRows = estimateRows(ch, size);
+            // one account per line; users are fewer by an unknown factor, so their index grows as it goes
+            acctRepo.ensureCapacity(expectedRows);
+            bankRepo.streamAll().forEach(b -> banksByCode.putIfAbsent(b.code, b));
+
+            Counters counters = new Counters();
+            int chunks = (int) ((size + CHUNK_BYTES - 1) / CHUNK_BYTES);
+            try {
+                if (chunks > 0) pool.invoke(new LoadChunks(ch, size, 0, chunks, counters));
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            return new Report(counters, System.nanoTime() - start);
+        }
+    }
+
+    // lines in the file, extrapolated from SAMPLES windows spread over it
+    private static long estimateRows(FileChannel ch, long size) throws IOException {
+        if (size == 0) return 0;
+        ByteBuffer sample = ByteBuffer.allocate((int) Math.min(size, SAMPLE_BYTES));
+        long lines = 0, sampled = 0;
+        for (int k = 0; k < SAMPLES; k++) {
+            long at = Math.min(size - sample.capacity(), size / SAMPLES * k);
+            sample.clear();
+            while (sample.hasRemaining() && ch.read(sample, at + sample.position()) > 0) { }
+            for (int i = 0; i < sample.position(); i++) if (sample.get(i) == '\n') lines++;
+            sampled += sample.position();
+        }
+        return (long) ((double) lines * size / sampled) + 1;
+    }
+
+    // splits the chunk range in halves down to single chunks
+    private final class LoadChunks extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final FileChannel ch;
+        private final long size;
+        private final int lo, hi;
+        private final Counters counters;
+
+        LoadChunks(FileChannel ch, long size, int lo, int hi, Counters counters) {
+            this.ch = ch;
+            this.size = size;
+            this.lo = lo;
+            this.hi = hi;
+            this.counters = counters;
+        }
+
+        @Override protected void compute() {
+            if (hi - lo > 1) {
+                int mid = (lo + hi) >>> 1;
+                invokeAll(new LoadChunks(ch, size, lo, mid, counters), new LoadChunks(ch, size, mid, hi, counters));
+                return;
+            }
+            try {
+                loadChunk(ch, size, lo, counters);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /*
+      A chunk owns the lines that start inside it. It maps one byte before its start (to see whether
+      it starts on a line boundary or in the middle of the previous chunk's last line) and up to
+      MAX_LINE bytes after its end (to finish its own last line).
+    */
+    private void loadChunk(FileChannel ch, long size, int chunk, Counters counters) throws IOException {
+        long from = (long) chunk * CHUNK_BYTES;
+        long to = Math.min(size, from + CHUNK_BYTES);
+        long mapFrom = chunk == 0 ? 0 : from - 1;
+        long mapTo = Math.min(size, to + MAX_LINE);
+        MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, mapFrom, mapTo - mapFrom);
+        int limit = buf.limit();
+        int end = (int) (to - mapFrom);
+
+        int pos = 0;
+        if (chunk != 0) {
+            pos = 1;
+            if (buf.get(0) != '\n') pos = next(buf, 1, limit, (byte) '\n') + 1;
+        } else if (startsWith(buf, 0, limit, "phone")) {
+            pos = next(buf, 0, limit, (byte) '\n') + 1;
+        }
+
+        Row row = new Row();
+        long rows = 0, created = 0, reused = 0, accounts = 0, duplicates = 0, rejected = 0;
+        while (pos < end) {
+            int eol = next(buf, pos, limit, (byte) '\n');
+            if (eol == limit && mapTo < size) {
+                // no line end within MAX_LINE: count it and stop, the next chunk skips the rest of it
+                rows++;
+                rejected++;
+                break;
+            }
+            int lineEnd = eol > pos && buf.get(eol - 1) == '\r' ? eol - 1 : eol;
+            if (lineEnd > pos) {
+                rows++;
+                switch (insert(buf, pos, lineEnd, row, counters)) {
+                    case CREATED: created++; accounts++; break;
+                    case USER_REUSED: reused++; accounts++; break;
+                    case DUPLICATE_ACCOUNT: duplicates++; break;
+                    default: rejected++; break;
+                }
+            }
+            pos = eol + 1;
+        }
+        counters.rows.add(rows);
+        counters.usersCreated.add(created);
+        counters.usersReused.add(reused);
+        counters.accountsCreated.add(accounts);
+        counters.duplicateAccounts.add(duplicates);
+        counters.rejected.add(rejected);
+    }
+
+    private enum Outcome { CREATED, USER_REUSED, DUPLICATE_ACCOUNT, REJECTED }
+
+    // field bounds of the line being parsed, and a scratch array for decoding strings
+    private static final class Row {
+        final int[] start = new int[5], end = new int[5];
+        byte[] scratch = new byte[256];
+    }
+
+    private Outcome insert(ByteBuffer buf, int pos, int lineEnd, Row row, Counters counters) {
+        int field = 0;
+        row.start[0] = pos;
+        for (int i = pos; i < lineEnd && field < 5; i++) {
+            if (buf.get(i) == ',') {
+                row.end[field++] = i;
+                if (field < 5) row.start[field] = i + 1;
+            }
+        }
+        if (field != 4) return Outcome.REJECTED; // five fields, no more
+        row.end[4] = lineEnd;
+        for (int f = 0; f < 5; f++) if (row.end[f] == row.start[f]) return Outcome.REJECTED;
+        BigDecimal balance = parseAmount(buf, row.start[4], row.end[4]);
+        if (balance == null) return Outcome.REJECTED;
+
+        String phone = string(buf, row, 0), name = string(buf, row, 1), accountNumber = string(buf, row, 3);
+        Bank bank = bank(string(buf, row, 2), counters);
+
+        int user = userRepo.createIfAbsent(name, phone);
+        boolean reused = user < 0;
+        if (reused) user = ~user;
+        User u = userRepo.byDenseId(user);
+        if (u.status != UserStatus.ACTIVE) return Outcome.REJECTED;
+        if (acctRepo.createIfAbsent(user, u.id, bank.id, accountNumber, balance) < 0) return Outcome.DUPLICATE_ACCOUNT;
+        return reused ? Outcome.USER_REUSED : Outcome.CREATED;
+    }
+
+    private Bank bank(String code, Counters counters) {
+        Bank b = banksByCode.get(code);
+        if (b != null) return b;
+        return banksByCode.computeIfAbsent(code, c -> {
+            counters.banksCreated.increment();
+            return bankRepo.createBank(c, c);
+        });
+    }
+
+    private static String string(ByteBuffer buf, Row row, int field) {
+        int len = row.end[field] - row.start[field];
+        if (row.scratch.length < len) row.scratch = new byte[len];
+        buf.get(row.start[field], row.scratch, 0, len);
+        return new String(row.scratch, 0, len, StandardCharsets.UTF_8);
+    }
+
+    // non-negative decimal (digits, optional '.' and fraction) without going through a String; null if malformed
+    private static BigDecimal parseAmount(ByteBuffer buf, int from, int to) {
+        long unscaled = 0;
+        int scale = -1, digits = 0;
+        for (int i = from; i < to; i++) {
+            byte b = buf.get(i);
+            if (b == '.' && scale < 0) {
+                scale = 0;
+            } else if (b >= '0' && b <= '9' && digits < 18) {
+                unscaled = unscaled * 10 + (b - '0');
+                digits++;
+                if (scale >= 0) scale++;
+            } else {
+                return null;
+            }
+        }
+        return digits == 0 ? null : BigDecimal.valueOf(unscaled, Math.max(scale, 0));
+    }
+
+    // index of the next b at or after from, or limit if there is none
+    private static int next(ByteBuffer buf, int from, int limit, byte b) {
+        int i = from;
+        while (i < limit && buf.get(i) != b) i++;
+        return i;
+    }
+
+    private static boolean startsWith(ByteBuffer buf, int from, int limit, String prefix) {
+        if (limit - from < prefix.length()) return false;
+        for (int i = 0; i < prefix.length(); i++) if (buf.get(from + i) != prefix.charAt(i)) return false;
+        return true;
+    }
+}
@@ -0,0 +1,187 @@
+package repositoryimpl;
+
+import enums.TransactionStatus;
+import models.Transaction;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Immutable, columnar block of finalized transactions, sorted by id.
+ * - ids are two longs, amounts are unscaled long + scale (minor units for INR), timestamps are
+ *   epoch millis
+ * - account ids, payee identifiers and error codes are dictionary-encoded ints
+ * - PSP ids that are canonical UUID strings are stored as two longs; anything else falls back to
+ *   a String column that is only allocated when needed
+ * - idempotency keys keep the String already referenced by the idempotency index
+ * Rows are materialized back into Transaction objects on read.
+ */
+final class ColumnarTransactionSegment {
+    private static final TransactionStatus[] STATUSES = TransactionStatus.values();
+    private static final byte PSP_NONE = 0, PSP_UUID = 1, PSP_RAW = 2;
+
+    final int size;
+    final long[] idHi, idLo;
+    final int[] fromAcct, toAcct, toIdent, errorCode, attempts;
+    final long[] amountUnscaled;
+    final byte[] amountScale;
+    final byte[] status;
+    final long[] createdMillis, updatedMillis;
+    final String[] idempotencyKey;
+    final byte[] pspKind;
+    final long[] pspHi, pspLo;
+    final String[] pspRaw; // null unless some PSP id is not a UUID
+
+    private ColumnarTransactionSegment(int n, boolean rawPsp) {
+        size = n;
+        idHi = new long[n]; idLo = new long[n];
+        fromAcct = new int[n]; toAcct = new int[n]; toIdent = new int[n]; errorCode = new int[n]; attempts = new int[n];
+        amountUnscaled = new long[n]; amountScale = new byte[n];
+        status = new byte[n];
+        createdMillis = new long[n]; updatedMillis = new long[n];
+        idempotencyKey = new String[n];
+        pspKind = new byte[n]; pspHi = new long[n]; pspLo = new long[n];
+        pspRaw = rawPsp ? new String[n] : null;
+    }
+
+    /** True if the transaction is final and its amount fits the columnar encoding. */
+    static boolean isArchivable(Transaction t) {
+        return t.isFinal() && t.amount.unscaledValue().bitLength() < 64
+                && t.amount.scale() >= Byte.MIN_VALUE && t.amount.scale() <= Byte.MAX_VALUE;
+    }
+
+    /** Build a segment from archivable transactions (sorted here). */
+    static ColumnarTransactionSegment build(List<Transaction> txns, ValueDictionary<UUID> accounts, ValueDictionary<String> strings) {
+        txns.sort((a, b) -> a.id.compareTo(b.id));
+        boolean rawPsp = false;
+        for (Transaction t : txns) if (t.pspTxnId != null && parseUuid(t.pspTxnId) == null) { rawPsp = true; break; }
+        ColumnarTransactionSegment seg = new ColumnarTransactionSegment(txns.size(), rawPsp);
+        for (int i = 0; i < txns.size(); i++) {
+            Transaction t = txns.get(i);
+            seg.idHi[i] = t.id.getMostSignificantBits();
+            seg.idLo[i] = t.id.getLeastSignificantBits();
+            seg.fromAcct[i] = accounts.encode(t.fromAccountId);
+            seg.toAcct[i] = accounts.encode(t.toAccountId);
+            seg.toIdent[i] = strings.encode(t.toIdentifier);
+            seg.errorCode[i] = strings.encode(t.getErrorCode());
+            seg.attempts[i] = t.reconciliationAttempts;
+            seg.amountUnscaled[i] = t.amount.unscaledValue().longValue();
+            seg.amountScale[i] = (byte) t.amount.scale();
+            seg.status[i] = (byte) t.status.ordinal();
+            seg.createdMillis[i] = t.createdAt.toEpochMilli();
+            seg.updatedMillis[i] = t.updatedAt.toEpochMilli();
+            seg.idempotencyKey[i] = t.idempotencyKey;
+            String psp = t.pspTxnId;
+            UUID pspUuid = psp == null ? null : parseUuid(psp);
+            if (psp == null) {
+                seg.pspKind[i] = PSP_NONE;
+            } else if (pspUuid != null) {
+                seg.pspKind[i] = PSP_UUID;
+                seg.pspHi[i] = pspUuid.getMostSignificantBits();
+                seg.pspLo[i] = pspUuid.getLeastSignificantBits();
+            } else {
+                seg.pspKind[i] = PSP_RAW;
+                seg.pspRaw[i] = psp;
+            }
+        }
+        return seg;
+    }
+
+    /** Merge two segments into one sorted segment; on duplicate ids the later update wins. */
+    static ColumnarTransactionSegment merge(ColumnarTransactionSegment a, ColumnarTransactionSegment b) {
+        ColumnarTransactionSegment out = new ColumnarTransactionSegment(a.size + b.size, a.pspRaw != null || b.pspRaw != null);
+        int i = 0, j = 0, n = 0;
+        while (i < a.size || j < b.size) {
+            int c = i >= a.size ? 1 : j >= b.size ? -1 : compare(a.idHi[i], a.idLo[i], b.idHi[j], b.idLo[j]);
+            if (c < 0) {
+                copyRow(a, i++, out, n++);
+            } else if (c > 0) {
+                copyRow(b, j++, out, n++);
+            } else {
+                if (a.updatedMillis[i] > b.updatedMillis[j]) copyRow(a, i, out, n++);
+                else copyRow(b, j, out, n++);
+                i++; j++;
+            }
+        }
+        return n == out.size ? out : out.truncate(n);
+    }
+
+    int indexOf(UUID id) {
+        long hi = id.getMostSignificantBits(), lo = id.getLeastSignificantBits();
+        int low = 0, high = size - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int c = compare(idHi[mid], idLo[mid], hi, lo);
+            if (c < 0) low = mid + 1;
+            else if (c > 0) high = mid - 1;
+            else return mid;
+        }
+        return -1;
+    }
+
+    UUID idAt(int row) { return new UUID(idHi[row], idLo[row]); }
+
+    TransactionStatus statusAt(int row) { return STATUSES[status[row]]; }
+
+    Transaction materialize(int row, ValueDictionary<UUID> accounts, ValueDictionary<String> strings) {
+        String psp;
+        switch (pspKind[row]) {
+            case PSP_UUID: psp = new UUID(pspHi[row], pspLo[row]).toString(); break;
+            case PSP_RAW: psp = pspRaw[row]; break;
+            default: psp = null;
+        }
+        return Transaction.restore(idAt(row), idempotencyKey[row],
+                accounts.decode(fromAcct[row]), accounts.decode(toAcct[row]), strings.decode(toIdent[row]),
+                BigDecimal.valueOf(amountUnscaled[row], amountScale[row]), statusAt(row),
+                psp, strings.decode(errorCode[row]),
+                Instant.ofEpochMilli(createdMillis[row]), Instant.ofEpochMilli(updatedMillis[row]), attempts[row]);
+    }
+
+    // same ordering as UUID.compareTo
+    private static int compare(long hi1, long lo1, long hi2, long lo2) {
+        int c = Long.compare(hi1, hi2);
+        return c != 0 ? c : Long.compare(lo1, lo2);
+    }
+
+    private static void copyRow(ColumnarTransactionSegment s, int i, ColumnarTransactionSegment d, int j) {
+        d.idHi[j] = s.idHi[i]; d.idLo[j] = s.idLo[i];
+        d.fromAcct[j] = s.fromAcct[i]; d.toAcct[j] = s.toAcct[i]; d.toIdent[j] = s.toIdent[i];
+        d.errorCode[j] = s.errorCode[i]; d.attempts[j] = s.attempts[i];
+        d.amountUnscaled[j] = s.amountUnscaled[i]; d.amountScale[j] = s.amountScale[i];
+        d.status[j] = s.status[i];
+        d.createdMillis[j] = s.createdMillis[i]; d.updatedMillis[j] = s.updatedMillis[i];
+        d.idempotencyKey[j] = s.idempotencyKey[i];
+        d.pspKind[j] = s.pspKind[i]; d.pspHi[j] = s.pspHi[i]; d.pspLo[j] = s.pspLo[i];
+        if (s.pspRaw != null) d.pspRaw[j] = s.pspRaw[i];
+    }
+
+    /** Copy of this segment without the rows last updated before cutoffMillis (null if none remain). */
+    ColumnarTransactionSegment withoutUpdatedBefore(long cutoffMillis) {
+        int keep = 0;
+        for (int i = 0; i < size; i++) if (updatedMillis[i] >= cutoffMillis) keep++;
+        if (keep == size) return this;
+        if (keep == 0) return null;
+        ColumnarTransactionSegment out = new ColumnarTransactionSegment(keep, pspRaw != null);
+        for (int i = 0, j = 0; i < size; i++) if (updatedMillis[i] >= cutoffMillis) copyRow(this, i, out, j++);
+        return out;
+    }
+
+    private ColumnarTransactionSegment truncate(int n) {
+        ColumnarTransactionSegment out = new ColumnarTransactionSegment(n, pspRaw != null);
+        for (int i = 0; i < n; i++) copyRow(this, i, out, i);
+        return out;
+    }
+
+    // canonical lower-case UUID strings only, so toString() round-trips exactly
+    private static UUID parseUuid(String s) {
+        if (s.length() != 36) return null;
+        try {
+            UUID u = UUID.fromString(s);
+            return u.toString().equals(s) ? u : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
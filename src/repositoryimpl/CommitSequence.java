@@ -0,0 +1,87 @@
+package repositoryimpl;
+
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Commit order for balance versions (see VersionChain), in epochs rather than one sequence
+ * number per commit. A write enters the current epoch, stamps every version it pushes with it
+ * (so a commit can span several chains, e.g. payer and in-transit amount) and exits. Writers
+ * only read the epoch; they register on a counter striped by thread, so commits do not contend
+ * on one shared word. Only a snapshot moves the epoch on: it pins the current epoch as its
+ * sequence, advances it, and waits until the writers still in its epoch have exited (the
+ * watermark), after which every commit stamped at or before its sequence is complete and every
+ * later one is stamped after it. Pins tell writers how much history to keep.
+ */
+public class CommitSequence {
+    private static final int STRIPES = 64;
+    private static final int PAD = 16; // longs per stripe, one cache line apart at least; [0] even epochs, [1] odd
+
+    private volatile long epoch;
+    private final AtomicLongArray writers = new AtomicLongArray(STRIPES * PAD);
+    private final TreeMap<Long, Integer> pins = new TreeMap<>();
+    private volatile long pinFloor = Long.MAX_VALUE; // oldest pinned sequence, MAX_VALUE when none
+
+    /** A new account's history, starting at the current epoch. */
+    public VersionChain newChain(BigDecimal balance) {
+        return new VersionChain(this, epoch, balance, BigDecimal.ZERO);
+    }
+
+    /*
+      Enter the current epoch; the returned epoch stamps this write's versions and must be passed
+      to exit on the same thread. Re-checked after registering, so a snapshot that advanced the
+      epoch in between either sees this writer or is not waited on by it.
+    */
+    public long enter() {
+        int slot = stripe();
+        while (true) {
+            long e = epoch;
+            int i = slot + (int) (e & 1);
+            writers.getAndIncrement(i);
+            if (epoch == e) return e;
+            writers.getAndDecrement(i);
+        }
+    }
+
+    public void exit(long e) {
+        writers.getAndDecrement(stripe() + (int) (e & 1));
+    }
+
+    private static int stripe() {
+        return (int) (Thread.currentThread().getId() & (STRIPES - 1)) * PAD;
+    }
+
+    /*
+      Pin the current epoch as a snapshot's sequence and close it: the pin is published before
+      the epoch moves, so writers of later epochs keep the history it needs, and the writers
+      still in it are waited out (each is a few field writes away from exiting).
+    */
+    public long pin() {
+        synchronized (pins) {
+            long seq = epoch;
+            pins.merge(seq, 1, Integer::sum);
+            pinFloor = pins.firstKey();
+            epoch = seq + 1;
+            int parity = (int) (seq & 1), spins = 0;
+            for (int s = 0; s < STRIPES; s++) {
+                while (writers.get(s * PAD + parity) != 0) {
+                    if (++spins < 100) Thread.onSpinWait();
+                    else Thread.yield();
+                }
+            }
+            return seq;
+        }
+    }
+
+    public void unpin(long seq) {
+        synchronized (pins) {
+            pins.computeIfPresent(seq, (k, n) -> n == 1 ? null : n - 1);
+            Map.Entry<Long, Integer> first = pins.firstEntry();
+            pinFloor = first == null ? Long.MAX_VALUE : first.getKey();
+        }
+    }
+
+    long pinFloor() { return pinFloor; }
+}
@@ -0,0 +1,163 @@
+package repositoryimpl;
+
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Open-addressing long -> int hash map for indexes with hundreds of millions of entries: keys and
+ * values live in two primitive arrays per segment (no node, no boxing), linear probing, load
+ * factor <= 1/2. Keys must be non-zero (0 marks an empty slot), values non-negative. No removal.
+ * Segments are guarded by a StampedLock: writers lock their segment, readers probe under an
+ * optimistic stamp and only fall back to the read lock if a writer (or resize) overlapped them.
+ */
+final class ConcurrentLongIntMap {
+    static final int NO_VALUE = -1;
+
+    private static final class Segment {
+        final StampedLock lock = new StampedLock();
+        long[] keys;
+        int[] values;
+        int size;
+
+        Segment(int capacity) {
+            keys = new long[capacity];
+            values = new int[capacity];
+        }
+    }
+
+    private final Segment[] segments;
+    private final int segmentShift;
+
+    ConcurrentLongIntMap(int segmentCount, int initialCapacityPerSegment) {
+        if (Integer.bitCount(segmentCount) != 1) throw new IllegalArgumentException("segmentCount must be a power of two");
+        int cap = Math.max(4, Integer.highestOneBit(Math.max(1, initialCapacityPerSegment) * 2 - 1));
+        segments = new Segment[segmentCount];
+        for (int i = 0; i < segmentCount; i++) segments[i] = new Segment(cap);
+        segmentShift = 64 - Integer.numberOfTrailingZeros(segmentCount);
+    }
+
+    int get(long key) {
+        long h = mix(key);
+        Segment s = segmentFor(h);
+        long stamp = s.lock.tryOptimisticRead();
+        if (stamp != 0) {
+            int v = probe(s.keys, s.values, key, h);
+            if (s.lock.validate(stamp)) return v;
+        }
+        stamp = s.lock.readLock();
+        try {
+            return probe(s.keys, s.values, key, h);
+        } finally {
+            s.lock.unlockRead(stamp);
+        }
+    }
+
+    /** Map key to value unless it is already mapped; returns the existing value, or NO_VALUE if value was stored. */
+    int putIfAbsent(long key, int value) {
+        if (key == 0) throw new IllegalArgumentException("key 0 is reserved");
+        if (value < 0) throw new IllegalArgumentException("value must be >= 0");
+        long h = mix(key);
+        Segment s = segmentFor(h);
+        long stamp = s.lock.writeLock();
+        try {
+            long[] keys = s.keys;
+            int mask = keys.length - 1;
+            for (int i = (int) h & mask; ; i = (i + 1) & mask) {
+                long k = keys[i];
+                if (k == key) return s.values[i];
+                if (k == 0) {
+                    s.values[i] = value;
+                    keys[i] = key;
+                    if (++s.size * 2 > keys.length) resize(s, keys.length * 2);
+                    return NO_VALUE;
+                }
+            }
+        } finally {
+            s.lock.unlockWrite(stamp);
+        }
+    }
+
+    /** Grow segments up front so that about expectedSize keys (spread evenly) fit without a resize. */
+    void ensureCapacity(long expectedSize) {
+        long perSegment = expectedSize / segments.length + 1;
+        for (Segment s : segments) {
+            long stamp = s.lock.writeLock();
+            try {
+                int target = (int) Math.min(1 << 30, Long.highestOneBit(perSegment * 2 - 1) << 1); // load <= 1/2
+                if (s.keys.length < target) resize(s, target);
+            } finally {
+                s.lock.unlockWrite(stamp);
+            }
+        }
+    }
+
+    long size() {
+        long n = 0;
+        for (Segment s : segments) {
+            long stamp = s.lock.readLock();
+            try {
+                n += s.size;
+            } finally {
+                s.lock.unlockRead(stamp);
+            }
+        }
+        return n;
+    }
+
+    // bytes held by the key/value arrays (for capacity planning)
+    long footprintBytes() {
+        long n = 0;
+        for (Segment s : segments) {
+            long stamp = s.lock.readLock();
+            try {
+                n += (long) s.keys.length * (Long.BYTES + Integer.BYTES);
+            } finally {
+                s.lock.unlockRead(stamp);
+            }
+        }
+        return n;
+    }
+
+    // arrays may be mid-update under an optimistic read: the probe is bounded and the result is discarded if the stamp fails
+    private static int probe(long[] keys, int[] values, long key, long h) {
+        int mask = keys.length - 1;
+        if (values.length != keys.length) return NO_VALUE; // torn view of a resize
+        for (int i = (int) h & mask, n = 0; n <= mask; i = (i + 1) & mask, n++) {
+            long k = keys[i];
+            if (k == key) return values[i];
+            if (k == 0) return NO_VALUE;
+        }
+        return NO_VALUE;
+    }
+
+    private static void resize(Segment s, int capacity) {
+        long[] oldKeys = s.keys;
+        int[] oldValues = s.values;
+        long[] keys = new long[capacity];
+        int[] values = new int[keys.length];
+        int mask = keys.length - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            long k = oldKeys[j];
+            if (k == 0) continue;
+            int i = (int) mix(k) & mask;
+            while (keys[i] != 0) i = (i + 1) & mask;
+            keys[i] = k;
+            values[i] = oldValues[j];
+        }
+        s.values = values;
+        s.keys = keys;
+    }
+
+    private Segment segmentFor(long h) {
+        return segments[(int) (h >>> segmentShift) & (segments.length - 1)]; // shift is 64 (a no-op) with one segment
+    }
+
+    // 64-bit finalizer (murmur3 fmix64): top bits pick the segment, low bits the slot
+    private static long mix(long k) {
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+        return k;
+    }
+}
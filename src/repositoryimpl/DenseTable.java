@@ -0,0 +1,130 @@
+package repositoryimpl;
+
+import models.BankAccount;
+
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Entities of one kind under dense int ids (0, 1, 2, ... in creation order), stored in chunked
+ * arrays instead of a UUID-keyed hash map. The external UUID is minted from the dense id: a
+ * version-4 layout whose low half holds the id in its low 32 bits and a tag for the entity kind
+ * in bits 48..61, so find(UUID) decodes the slot and compares the id, without hashing. The low
+ * 8 bits of the high half carry the shard the table belongs to (see ShardIds). Only 68 bits are
+ * random (52 in the high half, 16 in the low half); the sequential id makes minted UUIDs partly
+ * predictable, so they must not be relied on as unguessable.
+ * UUIDs not minted by this table (other kinds, foreign ids) simply are not found.
+ * Ids are never reused; an id allocated and not filled (a lost creation race) stays empty.
+ */
+final class DenseTable<T> {
+    static final int USER_TAG = 1, BANK_TAG = 2, ACCOUNT_TAG = 3, MANDATE_TAG = 4, COLLECT_TAG = 5;
+    static final int NO_ID = -1;
+
+    private static final int CHUNK_BITS = 14;
+    private static final int CHUNK_MASK = (1 << CHUNK_BITS) - 1;
+    private static final long VARIANT = 2L << 62;
+    private static final long FILL_WAIT_NANOS = 1_000_000_000L;
+
+    private final int tag;
+    private final int shard;
+    private final Function<T, UUID> idOf;
+    private final AtomicReferenceArray<AtomicReferenceArray<T>> chunks = new AtomicReferenceArray<>(1 << (31 - CHUNK_BITS));
+    private final AtomicInteger next = new AtomicInteger();
+
+    DenseTable(int tag, Function<T, UUID> idOf) {
+        this(tag, 0, idOf);
+    }
+
+    DenseTable(int tag, int shard, Function<T, UUID> idOf) {
+        if (shard < 0 || shard >= ShardIds.MAX_SHARDS) throw new IllegalArgumentException("shard out of range: " + shard);
+        this.tag = tag;
+        this.shard = shard;
+        this.idOf = idOf;
+    }
+
+    // plain id-indexed storage for a secondary index over another table's ids (set/get only)
+    DenseTable() {
+        this(0, null);
+    }
+
+    int allocate() {
+        int id = next.getAndIncrement();
+        if (id < 0) throw new IllegalStateException("dense id space exhausted");
+        return id;
+    }
+
+    UUID mint(int id) { return mint(tag, shard, id); }
+
+    /** The dense id a UUID was minted with by this table, or NO_ID. */
+    int idOf(UUID uuid) {
+        int id = decode(uuid, tag);
+        return id >= next.get() ? NO_ID : id;
+    }
+
+    // the id layout, for stores that keep their own columns instead of a DenseTable
+    static UUID mint(int tag, int shard, int id) {
+        ThreadLocalRandom rnd = ThreadLocalRandom.current();
+        long msb = (rnd.nextLong() & ~0xF0FFL) | 0x4000L | shard; // version 4
+        long lsb = VARIANT | ((long) tag << 48) | ((rnd.nextLong() & 0xFFFFL) << 32) | (id & 0xFFFFFFFFL);
+        return new UUID(msb, lsb);
+    }
+
+    // id encoded in a UUID minted with this tag (not checked against any table), or NO_ID
+    static int decode(UUID uuid, int tag) {
+        if (uuid == null) return NO_ID;
+        long lsb = uuid.getLeastSignificantBits();
+        if ((lsb >>> 62) != 2 || ((lsb >>> 48) & 0x3FFF) != tag) return NO_ID;
+        int id = (int) lsb;
+        return id < 0 ? NO_ID : id;
+    }
+
+    void set(int id, T value) {
+        AtomicReferenceArray<T> chunk = chunks.get(id >>> CHUNK_BITS);
+        if (chunk == null) {
+            chunks.compareAndSet(id >>> CHUNK_BITS, null, new AtomicReferenceArray<>(1 << CHUNK_BITS));
+            chunk = chunks.get(id >>> CHUNK_BITS);
+        }
+        chunk.set(id & CHUNK_MASK, value);
+    }
+
+    T get(int id) {
+        if (id < 0) return null;
+        AtomicReferenceArray<T> chunk = chunks.get(id >>> CHUNK_BITS);
+        return chunk == null ? null : chunk.get(id & CHUNK_MASK);
+    }
+
+    T find(UUID uuid) {
+        T v = get(idOf(uuid));
+        return v != null && Objects.equals(idOf.apply(v), uuid) ? v : null;
+    }
+
+    /**
+     * The entity at an id whose creator has claimed it in an index and fills it right after, waiting
+     * (spin, yield, park: BankAccount.backoff) at most a second for that. A creator that died in
+     * between, or a starved one, fails the caller instead of hanging it.
+     */
+    T awaitFilled(int id) {
+        T v;
+        long deadline = 0;
+        for (int attempt = 0; (v = get(id)) == null; attempt++) {
+            if (deadline == 0) deadline = System.nanoTime() + FILL_WAIT_NANOS;
+            else if (System.nanoTime() - deadline > 0) throw new IllegalStateException("id " + id + " was indexed but never filled");
+            BankAccount.backoff(attempt);
+        }
+        return v;
+    }
+
+    /** Highest id handed out + 1 (including empty ids). */
+    int capacity() { return next.get(); }
+
+    /** Weakly consistent: entities present when their chunk is visited; splits by id range for parallel streams. */
+    Stream<T> stream() {
+        return IntStream.range(0, next.get()).mapToObj(this::get).filter(Objects::nonNull);
+    }
+}
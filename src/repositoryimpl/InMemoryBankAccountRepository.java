@@ -1,6 +1,7 @@
 package repositoryimpl;
 
 import lock.LockManager;
+import models.BalanceSnapshot;
 import models.BankAccount;
 import repository.BankAccountRepository;
 
@@ -8,49 +9,186 @@ import java.math.BigDecimal;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.concurrent.locks.Lock;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public class InMemoryBankAccountRepository implements BankAccountRepository {
-    private final ConcurrentMap<UUID, BankAccount> byId = new ConcurrentHashMap<>();
-    // uniqueness for bankId+accountNumber
-    private final ConcurrentMap<String, UUID> bankAcctIndex = new ConcurrentHashMap<>();
+    // accounts by dense id; the UUID handed out encodes it, and the shard of the user repository (see DenseTable)
+    private final DenseTable<BankAccount> byId;
+    // user dense id -> dense ids of the user's accounts (copy-on-write, appended under the user's stripe monitor)
+    private final DenseTable<int[]> accountsByUser = new DenseTable<>();
+    private final Object[] userIndexStripes = new Object[64];
+    /*
+      Uniqueness for bankId+accountNumber: 64-bit hash of the pair -> dense id, in primitive arrays
+      (no key String or map node per account). A hit is checked against the account it names; a
+      pair whose hash is already taken by a different pair is indexed by exact key instead.
+    */
+    private final ConcurrentLongIntMap bankAcctIndex = new ConcurrentLongIntMap(64, 1024);
+    private final ConcurrentMap<String, Integer> bankAcctCollisions = new ConcurrentHashMap<>();
     private final InMemoryUserRepository userRepo;
     private final LockManager lockManager;
+    // setPrimary via version checks (true) or LockManager locks (false)
+    private final boolean optimistic;
+    private final LongAdder optimisticCommits = new LongAdder();
+    private final LongAdder optimisticConflicts = new LongAdder();
+    private static final int MAX_OPTIMISTIC_ATTEMPTS = 64;
+    // balance commits for snapshots: each account's version chain by dense id; money between settle and
+    // credit of an internal transfer sits in a transit stripe (by payer), a versioned amount written
+    // under its own monitor
+    private final CommitSequence commits = new CommitSequence();
+    private final DenseTable<VersionChain> versions = new DenseTable<>();
+    private final VersionChain[] inTransit = new VersionChain[64];
 
     public InMemoryBankAccountRepository(InMemoryUserRepository userRepo, LockManager lockManager) {
+        this(userRepo, lockManager, true);
+    }
+
+    public InMemoryBankAccountRepository(InMemoryUserRepository userRepo, LockManager lockManager, boolean optimistic) {
         this.userRepo = userRepo;
+        this.byId = new DenseTable<>(DenseTable.ACCOUNT_TAG, userRepo.shard(), a -> a.id);
         this.lockManager = lockManager;
+        this.optimistic = optimistic;
+        for (int i = 0; i < inTransit.length; i++) inTransit[i] = new VersionChain(commits);
+        for (int i = 0; i < userIndexStripes.length; i++) userIndexStripes[i] = new Object();
     }
 
     private String key(UUID bankId, String acct) {
         return bankId.toString() + ":" + acct; }
 
     public BankAccount createAccount(UUID userId, UUID bankId, String accountNumber, BigDecimal initialBalance) {
-        Objects.requireNonNull(userRepo.findById(userId).orElseThrow(() -> new IllegalArgumentException("user not found")));
-        String k = key(bankId, accountNumber);
-        UUID id = bankAcctIndex.compute(k, (kk, old) -> {
-            if (old != null) return old; // existing account -> reuse id
-            return UUID.randomUUID();
-        });
-        BankAccount acct = byId.computeIfAbsent(id, uuid -> new BankAccount(uuid, userId, bankId, accountNumber, initialBalance));
-        return acct;
+        int user = userRepo.denseIdOf(userId);
+        if (user == DenseTable.NO_ID) throw new IllegalArgumentException("user not found");
+        int id = createIfAbsent(user, userId, bankId, accountNumber, initialBalance);
+        return byId.get(id < 0 ? ~id : id);
+    }
+
+    /*
+      Dense id of the account created for bankId+accountNumber, or ~id (negative) of the account
+      that already had it (reused whatever its user). userDenseId must be userId's dense id in the
+      user repository; the caller has checked the user exists.
+    */
+    int createIfAbsent(int userDenseId, UUID userId, UUID bankId, String accountNumber, BigDecimal initialBalance) {
+        int id = byId.allocate();
+        int existing = bankAcctIndex.putIfAbsent(accountKeyHash(bankId, accountNumber), id);
+        // the winner of an index entry fills its slot right after indexing it
+        if (existing != ConcurrentLongIntMap.NO_VALUE && !sameKey(byId.awaitFilled(existing), bankId, accountNumber)) {
+            existing = bankAcctCollisions.computeIfAbsent(key(bankId, accountNumber), k -> id);
+            if (existing == id) existing = ConcurrentLongIntMap.NO_VALUE;
+        }
+        if (existing != ConcurrentLongIntMap.NO_VALUE) {
+            // lost the race (the id stays empty)
+            byId.awaitFilled(existing);
+            return ~existing;
+        }
+        BigDecimal balance = initialBalance == null ? BigDecimal.ZERO : initialBalance;
+        VersionChain history = commits.newChain(balance);
+        versions.set(id, history); // before the account, so a snapshot that finds the account finds its chain
+        byId.set(id, new BankAccount(byId.mint(id), userId, bankId, accountNumber, balance, history));
+        indexByUser(userDenseId, id);
+        return id;
+    }
+
+    private void indexByUser(int user, int accountDenseId) {
+        synchronized (userIndexStripes[user & (userIndexStripes.length - 1)]) {
+            int[] old = accountsByUser.get(user);
+            int[] ids = old == null ? new int[1] : Arrays.copyOf(old, old.length + 1);
+            ids[ids.length - 1] = accountDenseId;
+            accountsByUser.set(user, ids);
+        }
+    }
+
+    private static boolean sameKey(BankAccount a, UUID bankId, String accountNumber) {
+        return a != null && a.bankId.equals(bankId) && Objects.equals(a.accountNumber, accountNumber);
     }
 
-    public Optional<BankAccount> findById(UUID id) { return Optional.ofNullable(byId.get(id)); }
+    // FNV-1a over the bank id and the account number; 0 is reserved by the index
+    private static long accountKeyHash(UUID bankId, String accountNumber) {
+        long h = 0xcbf29ce484222325L ^ bankId.getMostSignificantBits();
+        h = (h ^ bankId.getLeastSignificantBits()) * 0x100000001b3L;
+        for (int i = 0, n = accountNumber == null ? 0 : accountNumber.length(); i < n; i++) {
+            h = (h ^ accountNumber.charAt(i)) * 0x100000001b3L;
+        }
+        return h == 0 ? 1 : h;
+    }
+
+    // size the bank+account index for about expectedAccounts more accounts before a bulk load
+    void ensureCapacity(long expectedAccounts) { bankAcctIndex.ensureCapacity(bankAcctIndex.size() + expectedAccounts); }
+
+    public Optional<BankAccount> findById(UUID id) { return Optional.ofNullable(byId.find(id)); }
     public Optional<BankAccount> findByBankAndAccountNumber(UUID bankId, String accountNumber) {
-        UUID id = bankAcctIndex.get(key(bankId, accountNumber));
-        return id == null ? Optional.empty() : findById(id);
+        BankAccount a = byId.get(bankAcctIndex.get(accountKeyHash(bankId, accountNumber)));
+        if (sameKey(a, bankId, accountNumber)) return Optional.of(a);
+        Integer id = bankAcctCollisions.isEmpty() ? null : bankAcctCollisions.get(key(bankId, accountNumber));
+        return Optional.ofNullable(id == null ? null : byId.get(id));
     }
     public List<BankAccount> findByUserId(UUID userId) {
-        return byId.values().stream().filter(a -> a.userId.equals(userId)).collect(Collectors.toList());
+        int[] ids = accountsByUser.get(userRepo.denseIdOf(userId));
+        if (ids == null) return new ArrayList<>();
+        List<BankAccount> out = new ArrayList<>(ids.length);
+        for (int id : ids) out.add(byId.get(id));
+        return out;
+    }
+    public List<BankAccount> listAll() { return byId.stream().collect(Collectors.toList()); }
+    public Stream<BankAccount> streamAll() { return byId.stream(); }
+    public void update(BankAccount acct) {
+        // accounts are mutated in place; nothing to re-index
     }
-    public List<BankAccount> listAll() { return new ArrayList<>(byId.values()); }
-    public void update(BankAccount acct)
-    { byId.put(acct.id, acct);
+
+    public boolean compareAndUpdate(UUID accountId, long expectedVersion, Consumer<BankAccount> mutation) {
+        BankAccount acct = byId.find(accountId);
+        if (acct == null) throw new IllegalArgumentException("account not found");
+        if (!acct.tryBeginWrite(expectedVersion)) {
+            optimisticConflicts.increment();
+            return false;
+        }
+        try {
+            mutation.accept(acct);
+        } finally {
+            acct.endWrite();
+        }
+        optimisticCommits.increment();
+        return true;
     }
 
     public void setPrimary(UUID userId, UUID accountId) {
+        if (optimistic) setPrimaryOptimistic(userId, accountId);
+        else setPrimaryLocked(userId, accountId);
+    }
+
+    /*
+      No LockManager locks: read the user's accounts and their versions, then claim every
+      account's write in id order at exactly the version read. If any account moved on, undo the
+      claims made so far and start over from the read. Claims are never waited on, so
+      concurrent setPrimary calls cannot deadlock. After MAX_OPTIMISTIC_ATTEMPTS conflicts
+      (accounts under constant balance traffic) it falls back to the locked path.
+    */
+    private void setPrimaryOptimistic(UUID userId, UUID accountId) {
+        for (int attempt = 0; attempt < MAX_OPTIMISTIC_ATTEMPTS; attempt++) {
+            List<BankAccount> accounts = findByUserId(userId);
+            accounts.sort(Comparator.comparing(a -> a.id));
+            long[] versions = new long[accounts.size()];
+            for (int i = 0; i < versions.length; i++) versions[i] = accounts.get(i).getVersion();
+            int claimed = 0;
+            while (claimed < versions.length && accounts.get(claimed).tryBeginWrite(versions[claimed])) claimed++;
+            if (claimed < versions.length) {
+                for (int i = 0; i < claimed; i++) accounts.get(i).abortWrite();
+                optimisticConflicts.increment();
+                Thread.yield();
+                continue;
+            }
+            // unset other primaries, set desired
+            for (BankAccount a : accounts) a.isPrimary = a.id.equals(accountId);
+            for (BankAccount a : accounts) a.endWrite();
+            optimisticCommits.increment();
+            return;
+        }
+        setPrimaryLocked(userId, accountId);
+    }
+
+    private void setPrimaryLocked(UUID userId, UUID accountId) {
         // Acquire locks for all user's accounts to avoid race; lock ordering by account id string ensures no deadlocks
         List<BankAccount> accounts = findByUserId(userId);
         List<UUID> ids = accounts.stream().map(a -> a.id).sorted().collect(Collectors.toList());
@@ -62,17 +200,54 @@ public class InMemoryBankAccountRepository implements BankAccountRepository {
                 l.lock();
                 locks.add(l);
             }
-            // unset other primaries, set desired
+            // unset other primaries, set desired (still versioned, so optimistic readers see a consistent flag)
             for (BankAccount a: accounts) {
-                if (a.id.equals(accountId)) {
-                    a.isPrimary = true;
-                } else {
-                    a.isPrimary = false;
-                }
+                a.beginWrite();
+                a.isPrimary = a.id.equals(accountId);
+                a.endWrite();
                 update(a);
             }
         } finally {
             for (Lock l: locks) l.unlock();
         }
     }
+
+    public BalanceSnapshot snapshot() {
+        return new VersionedBalanceSnapshot(commits, this::streamAll, a -> versions.get(byId.idOf(a.id)), Arrays.asList(inTransit));
+    }
+
+    public void settleToTransit(BankAccount payer, BigDecimal amount) {
+        VersionChain stripe = transitStripe(payer.id);
+        synchronized (stripe) {
+            long e = commits.enter();
+            try {
+                payer.settleOwned(amount, e);
+                stripe.add(e, amount);
+            } finally {
+                commits.exit(e);
+            }
+        }
+    }
+
+    public void creditFromTransit(BankAccount payee, UUID payerId, BigDecimal amount) {
+        VersionChain stripe = transitStripe(payerId);
+        synchronized (stripe) {
+            long e = commits.enter();
+            try {
+                payee.creditOwned(amount, e);
+                stripe.add(e, amount.negate());
+            } finally {
+                commits.exit(e);
+            }
+        }
+    }
+
+    private VersionChain transitStripe(UUID payerId) {
+        int h = payerId.hashCode();
+        return inTransit[(h ^ (h >>> 16)) & (inTransit.length - 1)];
+    }
+
+    /** Optimistic writes that committed / that found the account at another version and were retried. */
+    public long getOptimisticCommits() { return optimisticCommits.sum(); }
+    public long getOptimisticConflicts() { return optimisticConflicts.sum(); }
 }
\ No newline at end of file
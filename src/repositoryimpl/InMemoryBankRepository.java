@@ -3,22 +3,22 @@ package repositoryimpl;
 import models.Bank;
 import repository.BankRepository;
 
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public class InMemoryBankRepository implements BankRepository {
-    private final ConcurrentMap<UUID, Bank> byId = new ConcurrentHashMap<>();
+    private final DenseTable<Bank> byId = new DenseTable<>(DenseTable.BANK_TAG, b -> b.id);
 
     public Bank createBank(String name, String code) {
-        UUID id = UUID.randomUUID();
-        Bank b = new Bank(id, name, code);
-        byId.put(id, b);
+        int id = byId.allocate();
+        Bank b = new Bank(byId.mint(id), name, code);
+        byId.set(id, b);
         return b;
     }
-    public Optional<Bank> findById(UUID id) { return Optional.ofNullable(byId.get(id)); }
-    public List<Bank> listAll() { return new ArrayList<>(byId.values()); }
-}
\ No newline at end of file
+    public Optional<Bank> findById(UUID id) { return Optional.ofNullable(byId.find(id)); }
+    public List<Bank> listAll() { return byId.stream().collect(Collectors.toList()); }
+    public Stream<Bank> streamAll() { return byId.stream(); }
+}
@@ -0,0 +1,86 @@
+package repositoryimpl;
+
+import enums.CollectStatus;
+import models.CollectRequest;
+import repository.CollectRequestRepository;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collect requests under dense ids (see DenseTable), plus the pending requests of each payer.
+ * A payer's pending list is replaced, never changed in place (payers have a handful of pending
+ * requests at a time), so reads are a single map lookup with no copy or lock; payers with
+ * nothing pending have no entry. Status changes run inside the payer's map entry update, so a
+ * request's status and its payer's pending list change together.
+ */
+public class InMemoryCollectRequestRepository implements CollectRequestRepository {
+    private final DenseTable<CollectRequest> requests = new DenseTable<>(DenseTable.COLLECT_TAG, r -> r.id);
+    private final ConcurrentMap<UUID, List<CollectRequest>> pendingByPayer = new ConcurrentHashMap<>();
+    private final LongAdder pending = new LongAdder();
+
+    public CollectRequest create(UUID payeeAccountId, String payeeIdentifier, UUID payerUserId, String payerPhone,
+                                 BigDecimal amount, String note, Instant createdAt, Instant expiresAt) {
+        int slot = requests.allocate();
+        CollectRequest r = new CollectRequest(requests.mint(slot), slot, payeeAccountId, payeeIdentifier, payerUserId, payerPhone,
+                amount, note, createdAt, expiresAt);
+        requests.set(slot, r);
+        pendingByPayer.compute(payerUserId, (k, list) -> withPending(list, r));
+        pending.increment();
+        return r;
+    }
+
+    public Optional<CollectRequest> findById(UUID id) { return Optional.ofNullable(requests.find(id)); }
+
+    public CollectRequest get(int slot) { return requests.get(slot); }
+
+    public int slotCount() { return requests.capacity(); }
+
+    public List<CollectRequest> findPendingByPayer(UUID payerUserId) {
+        return pendingByPayer.getOrDefault(payerUserId, Collections.emptyList());
+    }
+
+    public boolean transition(UUID id, CollectStatus from, CollectStatus to, Instant at) {
+        CollectRequest r = requests.find(id);
+        if (r == null) throw new IllegalArgumentException("collect request not found");
+        boolean[] changed = new boolean[1];
+        // under the payer's entry lock: no one sees or makes a status change without the list change
+        pendingByPayer.compute(r.payerUserId, (k, list) -> {
+            if (!r.transition(from, to, at)) return list;
+            changed[0] = true;
+            if (from == CollectStatus.PENDING && to != CollectStatus.PENDING) return withoutPending(list, r);
+            if (from != CollectStatus.PENDING && to == CollectStatus.PENDING) return withPending(list, r);
+            return list;
+        });
+        if (changed[0] && from == CollectStatus.PENDING && to != CollectStatus.PENDING) pending.decrement();
+        else if (changed[0] && from != CollectStatus.PENDING && to == CollectStatus.PENDING) pending.increment();
+        return changed[0];
+    }
+
+    public long countPending() { return pending.sum(); }
+
+    private static List<CollectRequest> withPending(List<CollectRequest> list, CollectRequest r) {
+        List<CollectRequest> copy = list == null ? new ArrayList<>(1) : new ArrayList<>(list);
+        copy.add(r);
+        if (copy.size() > 1 && copy.get(copy.size() - 2).createdAt.isAfter(r.createdAt)) {
+            copy.sort((a, b) -> a.createdAt.compareTo(b.createdAt)); // reopened after a failed approval
+        }
+        return Collections.unmodifiableList(copy);
+    }
+
+    private static List<CollectRequest> withoutPending(List<CollectRequest> list, CollectRequest r) {
+        if (list == null) return null;
+        if (list.size() == 1) return list.get(0) == r ? null : list;
+        List<CollectRequest> copy = new ArrayList<>(list);
+        copy.remove(r);
+        return Collections.unmodifiableList(copy);
+    }
+}
@@ -0,0 +1,135 @@
+package repositoryimpl;
+
+import enums.MandateFrequency;
+import enums.MandateStatus;
+import models.Mandate;
+import repository.MandateRepository;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Mandates in columns: chunks of CHUNK rows, each column a primitive array (amount in paise, times
+ * in epoch millis, enums as bytes) or a reference array holding the caller's own account id /
+ * identifier objects, so millions of mandates cost about 60 bytes each and no object per
+ * mandate. A Mandate object is only built when one is read. The slot is the row number; the
+ * mandate's UUID encodes it (see DenseTable). Rows are read and written under their chunk's
+ * monitor.
+ */
+public class InMemoryMandateRepository implements MandateRepository {
+    private static final int CHUNK_BITS = 14;
+    private static final int CHUNK = 1 << CHUNK_BITS;
+    private static final MandateFrequency[] FREQUENCIES = MandateFrequency.values();
+    private static final MandateStatus[] STATUSES = MandateStatus.values();
+
+    private static final class Chunk {
+        final long[] idHi = new long[CHUNK], idLo = new long[CHUNK];  // idHi 0 = row not written yet
+        final UUID[] from = new UUID[CHUNK], to = new UUID[CHUNK];
+        final String[] toIdentifier = new String[CHUNK];
+        final long[] amountPaise = new long[CHUNK], firstDue = new long[CHUNK], nextDue = new long[CHUNK];
+        final int[] cycle = new int[CHUNK];
+        final byte[] frequency = new byte[CHUNK], status = new byte[CHUNK];
+    }
+
+    private final AtomicReferenceArray<Chunk> chunks = new AtomicReferenceArray<>(1 << (31 - CHUNK_BITS));
+    private final AtomicInteger next = new AtomicInteger();
+
+    public Mandate create(UUID fromAccountId, UUID toAccountId, String toIdentifier, BigDecimal amount,
+                          MandateFrequency frequency, Instant firstDueAt) {
+        long paise;
+        try {
+            paise = amount.movePointRight(2).longValueExact();
+        } catch (ArithmeticException e) {
+            throw new IllegalArgumentException("amount must have at most 2 decimals: " + amount);
+        }
+        if (paise <= 0) throw new IllegalArgumentException("amount must be > 0");
+        int slot = next.getAndIncrement();
+        if (slot < 0) throw new IllegalStateException("mandate slots exhausted");
+        UUID id = DenseTable.mint(DenseTable.MANDATE_TAG, 0, slot);
+        Chunk c = chunk(slot);
+        int i = slot & (CHUNK - 1);
+        synchronized (c) {
+            c.from[i] = fromAccountId;
+            c.to[i] = toAccountId;
+            c.toIdentifier[i] = toIdentifier;
+            c.amountPaise[i] = paise;
+            c.firstDue[i] = firstDueAt.toEpochMilli();
+            c.nextDue[i] = c.firstDue[i];
+            c.frequency[i] = (byte) frequency.ordinal();
+            c.status[i] = (byte) MandateStatus.ACTIVE.ordinal();
+            c.idLo[i] = id.getLeastSignificantBits();
+            c.idHi[i] = id.getMostSignificantBits();
+            return read(c, i, slot);
+        }
+    }
+
+    public Optional<Mandate> findById(UUID id) {
+        int slot = DenseTable.decode(id, DenseTable.MANDATE_TAG);
+        if (slot == DenseTable.NO_ID || slot >= next.get()) return Optional.empty();
+        Mandate m = get(slot);
+        return m != null && m.id.equals(id) ? Optional.of(m) : Optional.empty();
+    }
+
+    public Mandate get(int slot) {
+        Chunk c = slot < 0 ? null : chunks.get(slot >>> CHUNK_BITS);
+        if (c == null) return null;
+        int i = slot & (CHUNK - 1);
+        synchronized (c) {
+            return c.idHi[i] == 0 ? null : read(c, i, slot);
+        }
+    }
+
+    public int slotCount() { return next.get(); }
+
+    public long nextDueMillis(int slot) {
+        Chunk c = chunks.get(slot >>> CHUNK_BITS);
+        synchronized (c) {
+            return c.nextDue[slot & (CHUNK - 1)];
+        }
+    }
+
+    public void updateStatus(UUID id, MandateStatus status) {
+        int slot = findById(id).orElseThrow(() -> new IllegalArgumentException("mandate not found")).slot;
+        Chunk c = chunks.get(slot >>> CHUNK_BITS);
+        synchronized (c) {
+            c.status[slot & (CHUNK - 1)] = (byte) status.ordinal();
+        }
+    }
+
+    public boolean completeCycle(int slot, int cycle, Instant nextDueAt) {
+        Chunk c = chunks.get(slot >>> CHUNK_BITS);
+        int i = slot & (CHUNK - 1);
+        synchronized (c) {
+            if (c.cycle[i] != cycle) return false;
+            c.cycle[i] = cycle + 1;
+            c.nextDue[i] = nextDueAt.toEpochMilli();
+            return true;
+        }
+    }
+
+    /** Bytes held by the column arrays (the account ids and identifiers they point to are shared with their owners). */
+    public long footprintBytes() {
+        int used = (next.get() + CHUNK - 1) >>> CHUNK_BITS;
+        // 5 longs, 3 refs (compressed oops), an int and 2 bytes per row
+        return (long) used * CHUNK * (5 * Long.BYTES + 3 * Integer.BYTES + Integer.BYTES + 2);
+    }
+
+    private Chunk chunk(int slot) {
+        Chunk c = chunks.get(slot >>> CHUNK_BITS);
+        if (c == null) {
+            chunks.compareAndSet(slot >>> CHUNK_BITS, null, new Chunk());
+            c = chunks.get(slot >>> CHUNK_BITS);
+        }
+        return c;
+    }
+
+    private static Mandate read(Chunk c, int i, int slot) {
+        return new Mandate(new UUID(c.idHi[i], c.idLo[i]), slot, c.from[i], c.to[i], c.toIdentifier[i],
+                BigDecimal.valueOf(c.amountPaise[i], 2), FREQUENCIES[c.frequency[i]], Instant.ofEpochMilli(c.firstDue[i]),
+                STATUSES[c.status[i]], c.cycle[i], Instant.ofEpochMilli(c.nextDue[i]));
+    }
+}
@@ -5,47 +5,244 @@ import exception.IdempotencyException;
 import models.Transaction;
 import repository.TransactionRepository;
 
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Function;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
+/**
+ * Transactions live in up to three tiers, newest first:
+ * - hot: mutable objects in byId (everything PENDING, plus recently finalized)
+ * - archive: finalized transactions in compact on-heap columns (compactFinalized)
+ * - cold (optional): finalized transactions older than a given age in memory-mapped segment
+ *   files on disk (spillOlderThan); survives restarts
+ * Point reads consult the tiers in that order; a txn is published to the colder tier before it
+ * leaves the hotter one, so it is never missed.
+ * Streams read a cut: the matching hot txns and the archive and cold segments as of one instant
+ * between moves (moves hold the write side of a StampedLock, a cut is an optimistic read that
+ * falls back to the read lock). Each txn is reported once, even if it moves while the stream runs.
+ */
 public class InMemoryTransactionRepository implements TransactionRepository {
     private final ConcurrentMap<UUID, Transaction> byId = new ConcurrentHashMap<>();
     private final ConcurrentMap<String, UUID> idempotencyIndex = new ConcurrentHashMap<>();
+    // finalized transactions moved out of byId by compactFinalized
+    private final TransactionArchive archive = new TransactionArchive();
+    // null when running purely in memory
+    private final TransactionSegmentStore cold;
+    // write-locked while txns move between tiers, so streams can take a consistent cut
+    private final StampedLock moves = new StampedLock();
+    // each account's latest transaction ids, newest first, whatever tier they are in
+    private final AccountActivityIndex activity = new AccountActivityIndex();
+    // segments found on disk at startup; their txns were never added to the activity index
+    private final TransactionSegmentFile[] restored;
+
+    public InMemoryTransactionRepository() {
+        this.cold = null;
+        this.restored = new TransactionSegmentFile[0];
+    }
+
+    /** Repository with a cold tier in {@code segmentDir}; existing segments there are loaded. */
+    public InMemoryTransactionRepository(Path segmentDir) {
+        this.cold = new TransactionSegmentStore(segmentDir);
+        this.restored = cold.segments();
+    }
 
     public Transaction saveNew(Transaction txn) throws IdempotencyException {
         if (txn.idempotencyKey != null) {
             UUID existing = idempotencyIndex.putIfAbsent(txn.idempotencyKey, txn.id);
-            if (existing != null) {
+            if (existing != null || spilledKey(txn)) {
                 // return existing transaction (prevent duplicate)
                 throw new IdempotencyException("Idempotency key already exists: " + txn.idempotencyKey);
             }
         }
         byId.put(txn.id, txn);
+        activity.add(txn);
         return txn;
     }
 
-    public Optional<Transaction> findById(UUID id) { return Optional.ofNullable(byId.get(id)); }
+    public List<Transaction> saveAllNew(List<Transaction> txns) {
+        List<Transaction> duplicates = new ArrayList<>();
+        for (Transaction txn : txns) {
+            if (txn.idempotencyKey != null
+                    && (idempotencyIndex.putIfAbsent(txn.idempotencyKey, txn.id) != null || spilledKey(txn))) {
+                duplicates.add(txn);
+                continue;
+            }
+            byId.put(txn.id, txn);
+            activity.add(txn);
+        }
+        return duplicates;
+    }
+
+    // keys of spilled transactions leave the on-heap index; undo our claim if the key is on disk
+    private boolean spilledKey(Transaction txn) {
+        if (cold == null || !cold.containsIdempotencyKey(txn.idempotencyKey)) return false;
+        idempotencyIndex.remove(txn.idempotencyKey, txn.id);
+        return true;
+    }
+
+    public Optional<Transaction> findById(UUID id) {
+        Transaction t = byId.get(id);
+        if (t == null) t = archive.find(id);
+        if (t == null && cold != null) t = cold.findById(id);
+        return Optional.ofNullable(t);
+    }
     public Optional<Transaction> findByIdempotencyKey(String key) {
         if (key == null) return Optional.empty();
         UUID id = idempotencyIndex.get(key);
-        return id == null ? Optional.empty() : findById(id);
+        if (id != null) return findById(id);
+        return cold == null ? Optional.empty() : Optional.ofNullable(cold.findByIdempotencyKey(key));
     }
     public List<Transaction> findByFromOrTo(UUID from, UUID to) {
-        return byId.values().stream()
-                .filter(t -> (t.fromAccountId != null && t.fromAccountId.equals(from)) ||
-                        (t.toAccountId != null && t.toAccountId.equals(to)))
-                .collect(Collectors.toList());
+        return streamByFromOrTo(from, to).collect(Collectors.toList());
     }
     public List<Transaction> findByStatus(TransactionStatus status) {
-        return byId.values().stream().filter(t -> t.status == status).collect(Collectors.toList());
+        return streamByStatus(status).collect(Collectors.toList());
+    }
+    // point reads through the activity index; an account's restored txns are read from their segments once
+    public List<Transaction> findRecentByAccount(UUID accountId, int limit) {
+        if (restored.length > 0) {
+            activity.seedOnce(accountId, () -> cold.streamByFromOrTo(restored, accountId, accountId)
+                    .sorted(Comparator.comparing((Transaction t) -> t.createdAt))
+                    .map(t -> t.id).collect(Collectors.toList()));
+        }
+        List<Transaction> out = new ArrayList<>();
+        for (UUID id : activity.recent(accountId, Math.min(limit, AccountActivityIndex.PER_ACCOUNT))) findById(id).ifPresent(out::add);
+        return out;
     }
     public List<Transaction> search(Predicate<Transaction> filter) {
-        return byId.values().stream().filter(filter).collect(Collectors.toList());
+        return streamAll().filter(filter).collect(Collectors.toList());
+    }
+
+    public Stream<Transaction> streamAll() {
+        return tiers(null, archive::stream, segs -> cold.stream(segs));
+    }
+    public Stream<Transaction> streamByFromOrTo(UUID from, UUID to) {
+        return tiers(t -> (t.fromAccountId != null && t.fromAccountId.equals(from)) ||
+                        (t.toAccountId != null && t.toAccountId.equals(to)),
+                segs -> archive.streamByFromOrTo(segs, from, to), segs -> cold.streamByFromOrTo(segs, from, to));
+    }
+    public Stream<Transaction> streamByStatus(TransactionStatus status) {
+        // the archive and cold tiers only hold final transactions, so PENDING (the reconciler's query) never scans them
+        if (status == TransactionStatus.PENDING) return byId.values().stream().filter(t -> t.status == status);
+        return tiers(t -> t.status == status, segs -> archive.streamWithStatus(segs, (byte) status.ordinal()),
+                segs -> cold.streamWithStatus(segs, status));
+    }
+
+    // hot, then archive, then cold, as of one cut: the hot txns are copied (references only), the
+    // segments are immutable; all three are filtered and decoded lazily. Concatenation keeps each tier's
+    // spliterator, so parallel streams split across tiers and within them
+    private Stream<Transaction> tiers(Predicate<Transaction> hotFilter,
+                                      Function<ColumnarTransactionSegment[], Stream<Transaction>> archived,
+                                      Function<TransactionSegmentFile[], Stream<Transaction>> spilled) {
+        long stamp = moves.tryOptimisticRead();
+        Cut cut = stamp == 0 ? null : new Cut();
+        if (cut == null || !moves.validate(stamp)) {
+            stamp = moves.readLock();
+            try {
+                cut = new Cut();
+            } finally {
+                moves.unlockRead(stamp);
+            }
+        }
+        Stream<Transaction> hot = Arrays.stream(cut.hot);
+        Stream<Transaction> out = Stream.concat(hotFilter == null ? hot : hot.filter(hotFilter), archived.apply(cut.archived));
+        return cut.spilled == null ? out : Stream.concat(out, spilled.apply(cut.spilled));
     }
-    public void update(Transaction txn) { byId.put(txn.id, txn); }
-}
\ No newline at end of file
+
+    private final class Cut {
+        final Transaction[] hot;
+        final ColumnarTransactionSegment[] archived;
+        final TransactionSegmentFile[] spilled;
+
+        Cut() {
+            hot = byId.values().toArray(new Transaction[0]);
+            archived = archive.segments();
+            spilled = cold == null ? null : cold.segments();
+        }
+    }
+    public void update(Transaction txn) {
+        // archived rows are immutable; a late update of a final txn that was already moved is dropped
+        if (txn.isFinal() && !byId.containsKey(txn.id)
+                && (archive.contains(txn.id) || (cold != null && cold.contains(txn.id)))) return;
+        byId.put(txn.id, txn);
+    }
+
+    /**
+     * Move final transactions last updated more than minAge ago from the hot map into the
+     * columnar archive. Returns the number moved.
+     */
+    public int compactFinalized(Duration minAge) {
+        return compactFinalized(minAge, Instant.now());
+    }
+
+    // now: on the clock the transactions were stamped with (updatedAt)
+    public int compactFinalized(Duration minAge, Instant now) {
+        Instant cutoff = now.minus(minAge);
+        List<Transaction> batch = new ArrayList<>();
+        for (Transaction t : byId.values()) {
+            if (ColumnarTransactionSegment.isArchivable(t) && t.updatedAt.isBefore(cutoff)) batch.add(t);
+        }
+        if (batch.isEmpty()) return 0;
+        // publish to the archive first so the txn is never invisible, then drop the hot copy
+        long stamp = moves.writeLock();
+        try {
+            archive.append(batch);
+            for (Transaction t : batch) byId.remove(t.id, t);
+        } finally {
+            moves.unlockWrite(stamp);
+        }
+        return batch.size();
+    }
+
+    /**
+     * Spill final transactions last updated more than {@code age} ago to segment files on disk
+     * (both still-hot and archived ones). Their idempotency keys move to the segments' key
+     * index. Returns the number spilled; 0 if the repository has no cold tier.
+     */
+    public int spillOlderThan(Duration age) {
+        return spillOlderThan(age, Instant.now());
+    }
+
+    // now: on the clock the transactions were stamped with (updatedAt)
+    public int spillOlderThan(Duration age, Instant now) {
+        if (cold == null) return 0;
+        compactFinalized(age, now);
+        long cutoff = now.minus(age).toEpochMilli();
+        // written to disk before the archive drops them, so they never disappear from reads
+        List<Transaction> spilled;
+        long stamp = moves.writeLock();
+        try {
+            spilled = archive.evictUpdatedBefore(cutoff, cold::append);
+        } finally {
+            moves.unlockWrite(stamp);
+        }
+        for (Transaction t : spilled) {
+            if (t.idempotencyKey != null) idempotencyIndex.remove(t.idempotencyKey, t.id);
+        }
+        return spilled.size();
+    }
+
+    /** Merge small cold segments; returns the number of segment files removed. */
+    public int compactSegments(int smallSegmentRows) {
+        return cold == null ? 0 : cold.compact(smallSegmentRows);
+    }
+
+    public boolean hasColdTier() { return cold != null; }
+    public int hotSize() { return byId.size(); }
+    public long archivedSize() { return archive.size(); }
+    public long coldSize() { return cold == null ? 0 : cold.size(); }
+    public int coldSegmentCount() { return cold == null ? 0 : cold.segmentCount(); }
+}
@@ -7,33 +7,90 @@ import repository.UserRepository;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public class InMemoryUserRepository implements UserRepository {
-    private final ConcurrentMap<UUID, User> byId = new ConcurrentHashMap<>();
-    private final ConcurrentMap<String, UUID> phoneToId = new ConcurrentHashMap<>();
+    // users by dense id; the UUID handed out encodes it (see DenseTable)
+    private final DenseTable<User> users;
+    private final int shard;
+    /*
+      Phone index: normalized phone (PhoneCodec) -> dense id, so a lookup is two primitive array
+      probes and no UUID / String / map node is kept per user. Phones that do not encode
+      (non-numeric identifiers) fall back to a String map.
+    */
+    private final ConcurrentLongIntMap phoneToId = new ConcurrentLongIntMap(64, 1024);
+    private final ConcurrentMap<String, Integer> otherPhoneToId = new ConcurrentHashMap<>();
+
+    public InMemoryUserRepository() {
+        this(0);
+    }
+
+    // shard encoded in the ids of the users and accounts this node creates (see ShardIds)
+    public InMemoryUserRepository(int shard) {
+        this.shard = shard;
+        this.users = new DenseTable<>(DenseTable.USER_TAG, shard, u -> u.id);
+    }
 
     public User createUser(String name, String phone) {
+        int id = createIfAbsent(name, phone);
+        return users.get(id < 0 ? ~id : id);
+    }
+
+    /*
+      Dense id of the user created for this phone, or ~id (negative) of the user that already had
+      it. A known phone is answered from the index without taking a slot; otherwise one atomic
+      putIfAbsent on the index decides who owns the phone, and only a racing loser wastes its slot.
+    */
+    int createIfAbsent(String name, String phone) {
         Objects.requireNonNull(phone);
-        // ensure phone uniqueness: use compute
-        UUID existing = phoneToId.compute(phone, (k, v) -> {
-            if (v != null) return v;
-            UUID newId = UUID.randomUUID();
-            return newId;
-        });
-        UUID userId = phoneToId.get(phone);
-        // if existed already, return existing user
-        User u = byId.computeIfAbsent(userId, id -> new User(id, name, phone));
-        return u;
+        long code = PhoneCodec.encode(phone);
+        int known = indexedId(phone, code);
+        if (known != ConcurrentLongIntMap.NO_VALUE) {
+            users.awaitFilled(known);
+            return ~known;
+        }
+        int id = users.allocate();
+        int existing = code != PhoneCodec.NOT_ENCODABLE
+                ? phoneToId.putIfAbsent(code, id)
+                : otherPhoneToId.computeIfAbsent(phone, p -> id);
+        if (existing != ConcurrentLongIntMap.NO_VALUE && existing != id) {
+            // lost the race (the id stays empty); the winner fills its slot right after indexing it
+            users.awaitFilled(existing);
+            return ~existing;
+        }
+        users.set(id, new User(users.mint(id), name, phone));
+        return id;
     }
 
-    public Optional<User> findById(UUID id) { return Optional.ofNullable(byId.get(id)); }
+    public Optional<User> findById(UUID id) { return Optional.ofNullable(users.find(id)); }
     public Optional<User> findByPhone(String phone) {
-        UUID id = phoneToId.get(phone);
-        return id == null ? Optional.empty() : findById(id);
+        int id = phone == null ? ConcurrentLongIntMap.NO_VALUE : indexedId(phone, PhoneCodec.encode(phone));
+        // null while the user is still being created
+        return Optional.ofNullable(users.get(id));
     }
-    public List<User> listAll() { return new ArrayList<>(byId.values()); }
+
+    // dense id indexed for phone (code is its PhoneCodec encoding), or NO_VALUE
+    private int indexedId(String phone, long code) {
+        if (code != PhoneCodec.NOT_ENCODABLE) return phoneToId.get(code);
+        Integer i = otherPhoneToId.get(phone);
+        return i == null ? ConcurrentLongIntMap.NO_VALUE : i;
+    }
+    public List<User> listAll() { return users.stream().collect(Collectors.toList()); }
+    public Stream<User> streamAll() { return users.stream(); }
     public void deactivateUser(UUID id) {
-        User u = byId.get(id);
+        User u = users.find(id);
         if (u != null) u.status = UserStatus.DEACTIVATED;
     }
+
+    public int shard() { return shard; }
+
+    User byDenseId(int id) { return users.get(id); }
+
+    // dense id of a user of this repository, for other repositories' primitive indexes (DenseTable.NO_ID if unknown)
+    int denseIdOf(UUID userId) { return users.find(userId) == null ? DenseTable.NO_ID : users.idOf(userId); }
+
+    /** Users in the phone index, and bytes held by its primitive arrays. */
+    public long getPhoneIndexSize() { return phoneToId.size() + otherPhoneToId.size(); }
+    public long getPhoneIndexFootprintBytes() { return phoneToId.footprintBytes(); }
 }
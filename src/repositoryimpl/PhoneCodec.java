@@ -0,0 +1,51 @@
+package repositoryimpl;
+
+/**
+ * Normalizes a phone number and packs it into a long for primitive-keyed indexes.
+ * Separators (spaces, '-', '.', parentheses) and a leading '+' are dropped; an Indian mobile
+ * written with its country code (91XXXXXXXXXX) or trunk prefix (0XXXXXXXXXX) is reduced to its
+ * 10 digits, so "+91 98765-43210" and "9876543210" encode the same. Numbers of 1..15 digits encode
+ * as (digit count << 56) | value, which keeps leading zeros significant and is never 0.
+ */
+public final class PhoneCodec {
+    public static final long NOT_ENCODABLE = 0;
+    private static final int MAX_DIGITS = 15; // 10^15 < 2^56
+
+    private PhoneCodec() { }
+
+    /** The encoded phone, or NOT_ENCODABLE if it holds anything but digits and separators or is too long. */
+    public static long encode(String phone) {
+        if (phone == null) return NOT_ENCODABLE;
+        long value = 0;
+        int digits = 0;
+        int start = 0, n = phone.length();
+        while (start < n && phone.charAt(start) == ' ') start++;
+        if (start < n && phone.charAt(start) == '+') start++;
+        for (int i = start; i < n; i++) {
+            char c = phone.charAt(i);
+            if (c >= '0' && c <= '9') {
+                if (++digits > MAX_DIGITS) return NOT_ENCODABLE;
+                value = value * 10 + (c - '0');
+            } else if (c != ' ' && c != '-' && c != '.' && c != '(' && c != ')') {
+                return NOT_ENCODABLE;
+            }
+        }
+        if (digits == 0) return NOT_ENCODABLE;
+        if (digits == 12 && value / 10_000_000_000L == 91) {
+            value %= 10_000_000_000L;
+            digits = 10;
+        } else if (digits == 11 && value / 10_000_000_000L == 0) {
+            digits = 10; // leading trunk 0
+        }
+        return ((long) digits << 56) | value;
+    }
+
+    /** The normalized digits of an encoded phone. */
+    public static String decode(long code) {
+        int digits = (int) (code >>> 56);
+        String s = Long.toString(code & ((1L << 56) - 1));
+        StringBuilder b = new StringBuilder(digits);
+        for (int i = s.length(); i < digits; i++) b.append('0');
+        return b.append(s).toString();
+    }
+}
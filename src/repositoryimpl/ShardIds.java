@@ -0,0 +1,18 @@
+package repositoryimpl;
+
+import java.util.UUID;
+
+/**
+ * Shard of an entity id minted by the in-memory repositories (users and accounts carry the
+ * shard of the repository that created them), so a router can send a request for an account
+ * to the node holding it without a directory lookup.
+ */
+public final class ShardIds {
+    public static final int MAX_SHARDS = 256;
+
+    private ShardIds() { }
+
+    public static int shardOf(UUID id) {
+        return (int) (id.getMostSignificantBits() & (MAX_SHARDS - 1));
+    }
+}
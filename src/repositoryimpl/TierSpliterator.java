@@ -0,0 +1,110 @@
+package repositoryimpl;
+
+import models.Transaction;
+
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
+
+/**
+ * Lazily materializes rows of an immutable segment snapshot (archive or cold tier). Covers the
+ * rows from (seg, row) up to, but excluding, (segEnd - 1, lastFence). Splits by halving the
+ * segment range, then the rows of a single segment, so a parallel scan of one large segment
+ * still spreads across cores.
+ * The snapshot is bound on first traversal or split, not at creation, so building a stream that
+ * is never consumed costs nothing.
+ */
+final class TierSpliterator<S> implements Spliterator<Transaction> {
+
+    /** Reads one row; returns null for rows the scan should skip (e.g. a non-matching status). */
+    interface RowReader<S> {
+        Transaction read(S seg, int row);
+    }
+
+    private static final int MIN_SPLIT_ROWS = 1024;
+
+    private Supplier<S[]> source; // non-null until bound
+    private S[] segs;
+    private final ToIntFunction<S> rowCount;
+    private final RowReader<S> reader;
+    private int seg, row;
+    private int segEnd, lastFence;
+
+    TierSpliterator(Supplier<S[]> source, ToIntFunction<S> rowCount, RowReader<S> reader) {
+        this.source = source;
+        this.rowCount = rowCount;
+        this.reader = reader;
+    }
+
+    private TierSpliterator(S[] segs, ToIntFunction<S> rowCount, RowReader<S> reader, int seg, int row, int segEnd, int lastFence) {
+        this.segs = segs;
+        this.rowCount = rowCount;
+        this.reader = reader;
+        this.seg = seg;
+        this.row = row;
+        this.segEnd = segEnd;
+        this.lastFence = lastFence;
+    }
+
+    private void bind() {
+        if (source == null) return;
+        segs = source.get();
+        source = null;
+        segEnd = segs.length;
+        lastFence = segEnd == 0 ? 0 : rowCount.applyAsInt(segs[segEnd - 1]);
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super Transaction> action) {
+        bind();
+        while (seg < segEnd) {
+            S s = segs[seg];
+            int limit = seg == segEnd - 1 ? lastFence : rowCount.applyAsInt(s);
+            while (row < limit) {
+                Transaction t = reader.read(s, row++);
+                if (t != null) {
+                    action.accept(t);
+                    return true;
+                }
+            }
+            seg++;
+            row = 0;
+        }
+        return false;
+    }
+
+    @Override
+    public Spliterator<Transaction> trySplit() {
+        bind();
+        if (segEnd - seg > 1) {
+            int mid = (seg + segEnd) >>> 1;
+            TierSpliterator<S> prefix = new TierSpliterator<>(segs, rowCount, reader, seg, row, mid, rowCount.applyAsInt(segs[mid - 1]));
+            seg = mid;
+            row = 0;
+            return prefix;
+        }
+        int remaining = lastFence - row;
+        if (seg >= segEnd || remaining < 2 * MIN_SPLIT_ROWS) return null;
+        int midRow = row + remaining / 2;
+        TierSpliterator<S> prefix = new TierSpliterator<>(segs, rowCount, reader, seg, row, seg + 1, midRow);
+        row = midRow;
+        return prefix;
+    }
+
+    @Override
+    public long estimateSize() {
+        // unknown until bound; Stream.concat asks for the size when the stream is built
+        if (source != null) return Long.MAX_VALUE;
+        if (seg >= segEnd) return 0;
+        long n = -row;
+        for (int s = seg; s < segEnd - 1; s++) n += rowCount.applyAsInt(segs[s]);
+        return n + lastFence;
+    }
+
+    @Override
+    public int characteristics() {
+        // segments never change once published, and the reader may skip rows, so the size is an upper bound
+        return NONNULL | IMMUTABLE;
+    }
+}
@@ -0,0 +1,109 @@
+package repositoryimpl;
+
+import models.Transaction;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Columnar tier for finalized transactions. Segments are immutable and published by replacing
+ * the volatile segment array (single writer: the compactor); readers never lock.
+ */
+class TransactionArchive {
+    final ValueDictionary<UUID> accounts = new ValueDictionary<>();
+    final ValueDictionary<String> strings = new ValueDictionary<>();
+    private volatile ColumnarTransactionSegment[] segments = new ColumnarTransactionSegment[0];
+
+    /** Append a batch of archivable transactions as a new segment. */
+    synchronized void append(List<Transaction> txns) {
+        if (txns.isEmpty()) return;
+        ColumnarTransactionSegment seg = ColumnarTransactionSegment.build(new ArrayList<>(txns), accounts, strings);
+        ColumnarTransactionSegment[] cur = segments;
+        ColumnarTransactionSegment[] next = Arrays.copyOf(cur, cur.length + 1);
+        next[cur.length] = seg;
+        // size-tiered: merge the two newest while they are of similar size, so there are O(log n)
+        // segments and each row is rewritten O(log n) times
+        int n = next.length;
+        while (n >= 2 && next[n - 2].size <= next[n - 1].size * 2) {
+            next[n - 2] = ColumnarTransactionSegment.merge(next[n - 2], next[n - 1]);
+            n--;
+        }
+        segments = n == next.length ? next : Arrays.copyOf(next, n);
+    }
+
+    /**
+     * Hand every row last updated before cutoffMillis to {@code sink} (which persists them
+     * elsewhere), then drop them from the archive. Runs under the archive's monitor so no rows
+     * are appended in between. Returns the rows handed over.
+     */
+    synchronized List<Transaction> evictUpdatedBefore(long cutoffMillis, Consumer<List<Transaction>> sink) {
+        List<Transaction> evicted = new ArrayList<>();
+        ColumnarTransactionSegment[] cur = segments;
+        for (ColumnarTransactionSegment seg : cur) {
+            for (int i = 0; i < seg.size; i++) {
+                if (seg.updatedMillis[i] < cutoffMillis) evicted.add(seg.materialize(i, accounts, strings));
+            }
+        }
+        if (evicted.isEmpty()) return evicted;
+        sink.accept(evicted);
+        List<ColumnarTransactionSegment> kept = new ArrayList<>();
+        for (ColumnarTransactionSegment seg : cur) {
+            ColumnarTransactionSegment k = seg.withoutUpdatedBefore(cutoffMillis);
+            if (k != null) kept.add(k);
+        }
+        segments = kept.toArray(new ColumnarTransactionSegment[0]);
+        return evicted;
+    }
+
+    Transaction find(UUID id) {
+        ColumnarTransactionSegment[] segs = segments;
+        // newest first: on a duplicate the latest copy wins
+        for (int s = segs.length - 1; s >= 0; s--) {
+            int row = segs[s].indexOf(id);
+            if (row >= 0) return segs[s].materialize(row, accounts, strings);
+        }
+        return null;
+    }
+
+    boolean contains(UUID id) {
+        for (ColumnarTransactionSegment seg : segments) if (seg.indexOf(id) >= 0) return true;
+        return false;
+    }
+
+    /** The published segments; streams take them as an argument so a caller can read several tiers as of one instant. */
+    ColumnarTransactionSegment[] segments() { return segments; }
+
+    /** Rows whose from account is {@code from} or to account is {@code to}; matched on int codes. */
+    Stream<Transaction> streamByFromOrTo(ColumnarTransactionSegment[] segs, UUID from, UUID to) {
+        int fromCode = accounts.codeOf(from), toCode = accounts.codeOf(to);
+        if (fromCode < 0 && toCode < 0) return Stream.empty();
+        return stream(segs, (seg, i) -> (fromCode >= 0 && seg.fromAcct[i] == fromCode) || (toCode >= 0 && seg.toAcct[i] == toCode)
+                ? seg.materialize(i, accounts, strings) : null);
+    }
+
+    Stream<Transaction> streamWithStatus(ColumnarTransactionSegment[] segs, byte statusOrdinal) {
+        return stream(segs, (seg, i) -> seg.status[i] == statusOrdinal ? seg.materialize(i, accounts, strings) : null);
+    }
+
+    Stream<Transaction> stream(ColumnarTransactionSegment[] segs) {
+        return stream(segs, (seg, i) -> seg.materialize(i, accounts, strings));
+    }
+
+    // rows are decoded as they are consumed
+    private Stream<Transaction> stream(ColumnarTransactionSegment[] segs, TierSpliterator.RowReader<ColumnarTransactionSegment> reader) {
+        return StreamSupport.stream(new TierSpliterator<>(() -> segs, seg -> seg.size, reader), false);
+    }
+
+    long size() {
+        long n = 0;
+        for (ColumnarTransactionSegment seg : segments) n += seg.size;
+        return n;
+    }
+
+    int segmentCount() { return segments.length; }
+}
@@ -0,0 +1,71 @@
+package repositoryimpl;
+
+import scheduling.Scheduler;
+
+import java.time.Duration;
+
+/**
+ * Background job that periodically moves finalized transactions from the hot map of an
+ * InMemoryTransactionRepository into its columnar archive and, if the repository has a cold
+ * tier and a spill age is set, spills older ones to disk and merges small segment files.
+ * Ages are measured on the scheduler's clock, which must be the one transactions are stamped with.
+ */
+public class TransactionArchiveCompactor {
+
+    private final InMemoryTransactionRepository txnRepo;
+    private final Scheduler scheduler;
+    private final boolean ownsScheduler;
+    private final Duration minAge;     // leave recently finalized txns hot (late updates, hot reads)
+    private final Duration interval;
+    private final Duration spillAge;   // null: never spill to disk
+    private Scheduler.Task task;
+
+    // segments below this many rows are merged on each run
+    private static final int SMALL_SEGMENT_ROWS = 64 * 1024;
+
+    public TransactionArchiveCompactor(InMemoryTransactionRepository txnRepo, Duration minAge, Duration interval) {
+        this(txnRepo, minAge, null, interval);
+    }
+
+    public TransactionArchiveCompactor(InMemoryTransactionRepository txnRepo, Duration minAge, Duration spillAge, Duration interval) {
+        this(txnRepo, minAge, spillAge, interval, Scheduler.system("txn-archive-compactor"), true);
+    }
+
+    public TransactionArchiveCompactor(InMemoryTransactionRepository txnRepo, Duration minAge, Duration spillAge, Duration interval,
+                                       Scheduler scheduler) {
+        this(txnRepo, minAge, spillAge, interval, scheduler, false);
+    }
+
+    private TransactionArchiveCompactor(InMemoryTransactionRepository txnRepo, Duration minAge, Duration spillAge, Duration interval,
+                                        Scheduler scheduler, boolean ownsScheduler) {
+        this.txnRepo = txnRepo;
+        this.minAge = minAge;
+        this.spillAge = spillAge;
+        this.interval = interval;
+        this.scheduler = scheduler;
+        this.ownsScheduler = ownsScheduler;
+    }
+
+    public synchronized void start() {
+        if (task == null) task = scheduler.scheduleWithFixedDelay(this::compactRun, interval, interval);
+    }
+
+    // a scheduler passed in is left running for its owner
+    public synchronized void stop() {
+        if (task != null) task.cancel();
+        task = null;
+        if (ownsScheduler) scheduler.shutdown();
+    }
+
+    private void compactRun() {
+        try {
+            txnRepo.compactFinalized(minAge, scheduler.clock().instant());
+            if (spillAge != null && txnRepo.hasColdTier()) {
+                txnRepo.spillOlderThan(spillAge, scheduler.clock().instant());
+                txnRepo.compactSegments(SMALL_SEGMENT_ROWS);
+            }
+        } catch (Throwable t) {
+            t.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,369 @@
+package repositoryimpl;
+
+import enums.TransactionStatus;
+import models.Transaction;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+
+/**
+ * Immutable, append-only segment file of finalized transactions, read through a memory map.
+ *
+ * Layout (big-endian):
+ *   header   64 bytes: magic, version, rowCount, accountEntries, keyEntries, section offsets,
+ *            min/max updatedAt
+ *   rows     fixed 96-byte records sorted by id (UUIDs as two longs, amount as unscaled long +
+ *            scale, epoch-millis timestamps, string refs into the string section)
+ *   strings  [int length][utf-8 bytes], de-duplicated per segment
+ *   accounts (accountHi, accountLo, row) sorted, one entry per distinct from/to account of a row
+ *   keys     (hash(idempotencyKey), row) sorted
+ * Every SPARSE-th id, account entry and key hash is kept on heap, so a lookup is a binary search
+ * in memory followed by a short scan of the mapped file.
+ */
+final class TransactionSegmentFile {
+    static final String SUFFIX = ".seg";
+    // mapped as a single buffer, so a segment must stay well below 2 GB
+    static final int MAX_ROWS = 4_000_000;
+
+    private static final int MAGIC = 0x55504953; // "UPIS"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 64;
+    private static final int ROW_BYTES = 96;
+    private static final int ACCT_ENTRY_BYTES = 20;
+    private static final int KEY_ENTRY_BYTES = 12;
+    private static final int SPARSE = 64;
+    private static final TransactionStatus[] STATUSES = TransactionStatus.values();
+
+    // row field offsets
+    private static final int R_ID_HI = 0, R_ID_LO = 8, R_FROM_HI = 16, R_FROM_LO = 24, R_TO_HI = 32, R_TO_LO = 40,
+            R_AMOUNT = 48, R_CREATED = 56, R_UPDATED = 64, R_ATTEMPTS = 72, R_TO_IDENT = 76, R_IDEM = 80,
+            R_PSP = 84, R_ERROR = 88, R_SCALE = 92, R_STATUS = 93, R_FLAGS = 94;
+    private static final byte HAS_FROM = 1, HAS_TO = 2;
+
+    final Path path;
+    final long seq;
+    final int rowCount;
+    final long minUpdatedMillis, maxUpdatedMillis;
+    private final MappedByteBuffer buf;
+    private final int stringsOffset, acctOffset, keyOffset, acctEntries, keyEntries;
+    private final long[] sparseIdHi, sparseIdLo, sparseAcctHi, sparseAcctLo, sparseKeyHash;
+
+    private TransactionSegmentFile(Path path, long seq) throws IOException {
+        this.path = path;
+        this.seq = seq;
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+            this.buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+        }
+        if (buf.getInt(0) != MAGIC || buf.getInt(4) != VERSION) throw new IOException("not a segment file: " + path);
+        rowCount = buf.getInt(8);
+        acctEntries = buf.getInt(12);
+        keyEntries = buf.getInt(16);
+        stringsOffset = (int) buf.getLong(24);
+        acctOffset = (int) buf.getLong(32);
+        keyOffset = (int) buf.getLong(40);
+        minUpdatedMillis = buf.getLong(48);
+        maxUpdatedMillis = buf.getLong(56);
+
+        sparseIdHi = new long[(rowCount + SPARSE - 1) / SPARSE];
+        sparseIdLo = new long[sparseIdHi.length];
+        for (int i = 0; i < sparseIdHi.length; i++) {
+            sparseIdHi[i] = buf.getLong(rowPos(i * SPARSE) + R_ID_HI);
+            sparseIdLo[i] = buf.getLong(rowPos(i * SPARSE) + R_ID_LO);
+        }
+        sparseAcctHi = new long[(acctEntries + SPARSE - 1) / SPARSE];
+        sparseAcctLo = new long[sparseAcctHi.length];
+        for (int i = 0; i < sparseAcctHi.length; i++) {
+            int p = acctOffset + i * SPARSE * ACCT_ENTRY_BYTES;
+            sparseAcctHi[i] = buf.getLong(p);
+            sparseAcctLo[i] = buf.getLong(p + 8);
+        }
+        sparseKeyHash = new long[(keyEntries + SPARSE - 1) / SPARSE];
+        for (int i = 0; i < sparseKeyHash.length; i++) sparseKeyHash[i] = buf.getLong(keyOffset + i * SPARSE * KEY_ENTRY_BYTES);
+    }
+
+    static TransactionSegmentFile open(Path path) throws IOException {
+        return new TransactionSegmentFile(path, seqOf(path));
+    }
+
+    // seq from a segment file's name (seg-<seq>.seg)
+    static long seqOf(Path path) {
+        String name = path.getFileName().toString();
+        return Long.parseLong(name.substring(4, name.length() - SUFFIX.length()));
+    }
+
+    static Path pathFor(Path dir, long seq) {
+        return dir.resolve(String.format("seg-%016d%s", seq, SUFFIX));
+    }
+
+    // ---------------- reads ----------------
+
+    Transaction findById(UUID id) {
+        int row = rowOf(id.getMostSignificantBits(), id.getLeastSignificantBits());
+        return row < 0 ? null : materialize(row);
+    }
+
+    boolean contains(UUID id) {
+        return rowOf(id.getMostSignificantBits(), id.getLeastSignificantBits()) >= 0;
+    }
+
+    Transaction findByIdempotencyKey(String key) {
+        int row = rowOfKey(key);
+        return row < 0 ? null : materialize(row);
+    }
+
+    /** Rows that have {@code account} as their from or to account (possibly both). */
+    void forEachRowByAccount(UUID account, IntConsumer rowSink) {
+        long hi = account.getMostSignificantBits(), lo = account.getLeastSignificantBits();
+        int block = Math.max(0, lastSparseBelow(sparseAcctHi, sparseAcctLo, hi, lo));
+        for (int e = block * SPARSE; e < acctEntries; e++) {
+            int p = acctOffset + e * ACCT_ENTRY_BYTES;
+            int c = compare(buf.getLong(p), buf.getLong(p + 8), hi, lo);
+            if (c > 0) break;
+            if (c == 0) rowSink.accept(buf.getInt(p + 16));
+        }
+    }
+
+    boolean containsIdempotencyKey(String key) {
+        return rowOfKey(key) >= 0;
+    }
+
+    TransactionStatus statusAt(int row) { return STATUSES[buf.get(rowPos(row) + R_STATUS)]; }
+
+    boolean matchesFromOrTo(int row, UUID from, UUID to) {
+        int p = rowPos(row);
+        byte flags = buf.get(p + R_FLAGS);
+        return (from != null && (flags & HAS_FROM) != 0 && buf.getLong(p + R_FROM_HI) == from.getMostSignificantBits()
+                        && buf.getLong(p + R_FROM_LO) == from.getLeastSignificantBits())
+                || (to != null && (flags & HAS_TO) != 0 && buf.getLong(p + R_TO_HI) == to.getMostSignificantBits()
+                        && buf.getLong(p + R_TO_LO) == to.getLeastSignificantBits());
+    }
+
+    Transaction materialize(int row) {
+        int p = rowPos(row);
+        byte flags = buf.get(p + R_FLAGS);
+        return Transaction.restore(
+                new UUID(buf.getLong(p + R_ID_HI), buf.getLong(p + R_ID_LO)),
+                readString(buf.getInt(p + R_IDEM)),
+                (flags & HAS_FROM) != 0 ? new UUID(buf.getLong(p + R_FROM_HI), buf.getLong(p + R_FROM_LO)) : null,
+                (flags & HAS_TO) != 0 ? new UUID(buf.getLong(p + R_TO_HI), buf.getLong(p + R_TO_LO)) : null,
+                readString(buf.getInt(p + R_TO_IDENT)),
+                BigDecimal.valueOf(buf.getLong(p + R_AMOUNT), buf.get(p + R_SCALE)),
+                STATUSES[buf.get(p + R_STATUS)],
+                readString(buf.getInt(p + R_PSP)),
+                readString(buf.getInt(p + R_ERROR)),
+                Instant.ofEpochMilli(buf.getLong(p + R_CREATED)),
+                Instant.ofEpochMilli(buf.getLong(p + R_UPDATED)),
+                buf.getInt(p + R_ATTEMPTS));
+    }
+
+    private int rowOfKey(String key) {
+        long h = hash(key);
+        int block = Math.max(0, lastSparseBelow(sparseKeyHash, null, h, 0));
+        for (int e = block * SPARSE; e < keyEntries; e++) {
+            int p = keyOffset + e * KEY_ENTRY_BYTES;
+            long eh = buf.getLong(p);
+            if (eh > h) break;
+            if (eh == h) {
+                int row = buf.getInt(p + 8);
+                if (key.equals(readString(buf.getInt(rowPos(row) + R_IDEM)))) return row;
+            }
+        }
+        return -1;
+    }
+
+    private int rowOf(long hi, long lo) {
+        int block = Math.max(0, lastSparseBelow(sparseIdHi, sparseIdLo, hi, lo));
+        // the id may be the first row of the next block (sparse entry equal to it)
+        int end = Math.min(rowCount, (block + 2) * SPARSE);
+        for (int row = block * SPARSE; row < end; row++) {
+            int p = rowPos(row);
+            int c = compare(buf.getLong(p + R_ID_HI), buf.getLong(p + R_ID_LO), hi, lo);
+            if (c == 0) return row;
+            if (c > 0) return -1;
+        }
+        return -1;
+    }
+
+    /**
+     * Index of the last sparse entry strictly below (hi, lo), or -1. For the key index lo is
+     * unused (los == null). Starting a scan there never skips an entry equal to the target, even
+     * when equal entries span several blocks.
+     */
+    private static int lastSparseBelow(long[] his, long[] los, long hi, long lo) {
+        int low = 0, high = his.length - 1, ans = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int c = los == null ? Long.compare(his[mid], hi) : compare(his[mid], los[mid], hi, lo);
+            if (c < 0) { ans = mid; low = mid + 1; } else high = mid - 1;
+        }
+        return ans;
+    }
+
+    private String readString(int ref) {
+        if (ref < 0) return null;
+        int p = stringsOffset + ref;
+        byte[] bytes = new byte[buf.getInt(p)];
+        buf.get(p + 4, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int rowPos(int row) { return HEADER_BYTES + row * ROW_BYTES; }
+
+    // same ordering as UUID.compareTo
+    static int compare(long hi1, long lo1, long hi2, long lo2) {
+        int c = Long.compare(hi1, hi2);
+        return c != 0 ? c : Long.compare(lo1, lo2);
+    }
+
+    // 64-bit FNV-1a over the UTF-16 chars, then a murmur finalizer
+    static long hash(String s) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < s.length(); i++) {
+            h ^= s.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33; h *= 0xff51afd7ed558ccdL; h ^= h >>> 33;
+        return h;
+    }
+
+    // ---------------- writes ----------------
+
+    /**
+     * Write final transactions (at most MAX_ROWS, unique ids) as segment {@code seq} in {@code dir}.
+     * The file is written under a temporary name, forced to disk and atomically renamed.
+     */
+    static TransactionSegmentFile write(Path dir, long seq, List<Transaction> txns) throws IOException {
+        if (txns.size() > MAX_ROWS) throw new IllegalArgumentException("segment too large: " + txns.size());
+        List<Transaction> rows = new ArrayList<>(txns);
+        rows.sort((a, b) -> a.id.compareTo(b.id));
+        int n = rows.size();
+
+        // string table, de-duplicated
+        HashMap<String, Integer> strings = new HashMap<>();
+        List<byte[]> encoded = new ArrayList<>();
+        int[] stringBytes = {0};
+        Consumer<String> intern = s -> {
+            if (s != null && !strings.containsKey(s)) {
+                byte[] b = s.getBytes(StandardCharsets.UTF_8);
+                strings.put(s, stringBytes[0]);
+                encoded.add(b);
+                stringBytes[0] += 4 + b.length;
+            }
+        };
+        int acctCount = 0;
+        long minUpdated = Long.MAX_VALUE, maxUpdated = Long.MIN_VALUE;
+        for (Transaction t : rows) {
+            intern.accept(t.toIdentifier); intern.accept(t.idempotencyKey);
+            intern.accept(t.pspTxnId); intern.accept(t.getErrorCode());
+            if (t.fromAccountId != null) acctCount++;
+            if (t.toAccountId != null && !t.toAccountId.equals(t.fromAccountId)) acctCount++;
+            long u = t.updatedAt.toEpochMilli();
+            minUpdated = Math.min(minUpdated, u);
+            maxUpdated = Math.max(maxUpdated, u);
+        }
+
+        // account and key index entries, sorted as parallel arrays
+        long[] acctHi = new long[acctCount], acctLo = new long[acctCount];
+        int[] acctRow = new int[acctCount];
+        int a = 0, k = 0;
+        for (int row = 0; row < n; row++) {
+            Transaction t = rows.get(row);
+            if (t.fromAccountId != null) {
+                acctHi[a] = t.fromAccountId.getMostSignificantBits(); acctLo[a] = t.fromAccountId.getLeastSignificantBits(); acctRow[a++] = row;
+            }
+            if (t.toAccountId != null && !t.toAccountId.equals(t.fromAccountId)) {
+                acctHi[a] = t.toAccountId.getMostSignificantBits(); acctLo[a] = t.toAccountId.getLeastSignificantBits(); acctRow[a++] = row;
+            }
+            if (t.idempotencyKey != null) k++;
+        }
+        sort(acctHi, acctLo, acctRow, 0, acctCount - 1);
+        long[] keyHash = new long[k], keyZero = new long[k];
+        int[] keyRow = new int[k];
+        k = 0;
+        for (int row = 0; row < n; row++) {
+            String key = rows.get(row).idempotencyKey;
+            if (key != null) { keyHash[k] = hash(key); keyRow[k++] = row; }
+        }
+        sort(keyHash, keyZero, keyRow, 0, k - 1);
+
+        long stringsOffset = HEADER_BYTES + (long) n * ROW_BYTES;
+        long acctOffset = stringsOffset + stringBytes[0];
+        long keyOffset = acctOffset + (long) acctCount * ACCT_ENTRY_BYTES;
+        if (keyOffset + (long) k * KEY_ENTRY_BYTES > Integer.MAX_VALUE) throw new IllegalArgumentException("segment exceeds 2 GB");
+
+        Path tmp = dir.resolve(String.format("seg-%016d.tmp", seq));
+        long fileBytes = keyOffset + (long) k * KEY_ENTRY_BYTES;
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // the size is known up front, so the file is filled through a writable map instead of a stream
+            MappedByteBuffer out = ch.map(FileChannel.MapMode.READ_WRITE, 0, fileBytes);
+            out.putInt(MAGIC).putInt(VERSION).putInt(n).putInt(acctCount).putInt(k).putInt(0);
+            out.putLong(stringsOffset).putLong(acctOffset).putLong(keyOffset);
+            out.putLong(n == 0 ? 0 : minUpdated).putLong(n == 0 ? 0 : maxUpdated);
+            for (Transaction t : rows) {
+                out.putLong(t.id.getMostSignificantBits()).putLong(t.id.getLeastSignificantBits());
+                out.putLong(t.fromAccountId == null ? 0 : t.fromAccountId.getMostSignificantBits());
+                out.putLong(t.fromAccountId == null ? 0 : t.fromAccountId.getLeastSignificantBits());
+                out.putLong(t.toAccountId == null ? 0 : t.toAccountId.getMostSignificantBits());
+                out.putLong(t.toAccountId == null ? 0 : t.toAccountId.getLeastSignificantBits());
+                out.putLong(t.amount.unscaledValue().longValueExact());
+                out.putLong(t.createdAt.toEpochMilli()).putLong(t.updatedAt.toEpochMilli());
+                out.putInt(t.reconciliationAttempts);
+                out.putInt(ref(strings, t.toIdentifier)).putInt(ref(strings, t.idempotencyKey));
+                out.putInt(ref(strings, t.pspTxnId)).putInt(ref(strings, t.getErrorCode()));
+                out.put((byte) t.amount.scale()).put((byte) t.status.ordinal());
+                out.put((byte) ((t.fromAccountId != null ? HAS_FROM : 0) | (t.toAccountId != null ? HAS_TO : 0)));
+                out.put((byte) 0);
+            }
+            for (byte[] b : encoded) out.putInt(b.length).put(b);
+            for (int i = 0; i < acctCount; i++) out.putLong(acctHi[i]).putLong(acctLo[i]).putInt(acctRow[i]);
+            for (int i = 0; i < k; i++) out.putLong(keyHash[i]).putInt(keyRow[i]);
+            out.force();
+        }
+        Path target = pathFor(dir, seq);
+        Files.move(tmp, target, java.nio.file.StandardCopyOption.ATOMIC_MOVE);
+        return open(target);
+    }
+
+    private static int ref(Map<String, Integer> strings, String s) {
+        return s == null ? -1 : strings.get(s);
+    }
+
+    // in-place quicksort of parallel arrays by (hi, lo, row)
+    private static void sort(long[] hi, long[] lo, int[] row, int left, int right) {
+        while (left < right) {
+            int mid = (left + right) >>> 1;
+            long ph = hi[mid], pl = lo[mid];
+            int pr = row[mid];
+            int i = left, j = right;
+            while (i <= j) {
+                while (cmp(hi[i], lo[i], row[i], ph, pl, pr) < 0) i++;
+                while (cmp(hi[j], lo[j], row[j], ph, pl, pr) > 0) j--;
+                if (i <= j) {
+                    long th = hi[i]; hi[i] = hi[j]; hi[j] = th;
+                    long tl = lo[i]; lo[i] = lo[j]; lo[j] = tl;
+                    int tr = row[i]; row[i] = row[j]; row[j] = tr;
+                    i++; j--;
+                }
+            }
+            // recurse into the smaller half to bound stack depth
+            if (j - left < right - i) { sort(hi, lo, row, left, j); left = i; }
+            else { sort(hi, lo, row, i, right); right = j; }
+        }
+    }
+
+    private static int cmp(long h1, long l1, int r1, long h2, long l2, int r2) {
+        int c = compare(h1, l1, h2, l2);
+        return c != 0 ? c : Integer.compare(r1, r2);
+    }
+}
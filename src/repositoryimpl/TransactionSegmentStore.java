@@ -0,0 +1,221 @@
+package repositoryimpl;
+
+import enums.TransactionStatus;
+import models.Transaction;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Cold tier: a directory of immutable segment files. Segments are only ever added (spill) or
+ * replaced by a merged segment (compaction); the live set is published through a volatile array
+ * so readers never lock. Everything needed to answer queries is in the files, so the tier is
+ * reloaded as-is after a restart.
+ * The live set is also recorded in a manifest, one segment seq per line in published order,
+ * written to a temporary file and atomically renamed over the old one. The manifest is what a
+ * restart loads: segment files it does not list (merged away but not deleted, or written just
+ * before a crash) are deleted, so no row is ever read from two segments.
+ */
+class TransactionSegmentStore {
+    static final String MANIFEST = "segments.manifest";
+
+    private final Path dir;
+    private volatile TransactionSegmentFile[] segments;
+    private long nextSeq;
+
+    TransactionSegmentStore(Path dir) {
+        this.dir = dir;
+        try {
+            Files.createDirectories(dir);
+            Map<Long, Path> files = new HashMap<>();
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir)) {
+                for (Path p : entries) {
+                    String name = p.getFileName().toString();
+                    if (name.endsWith(".tmp")) Files.delete(p); // interrupted write
+                    else if (name.startsWith("seg-") && name.endsWith(TransactionSegmentFile.SUFFIX)) files.put(TransactionSegmentFile.seqOf(p), p);
+                }
+            }
+            nextSeq = files.keySet().stream().mapToLong(Long::longValue).max().orElse(0) + 1;
+            Path manifest = dir.resolve(MANIFEST);
+            List<Long> live = new ArrayList<>();
+            if (Files.exists(manifest)) {
+                for (String line : Files.readAllLines(manifest)) {
+                    if (!line.isBlank()) live.add(Long.parseLong(line.trim()));
+                }
+            } else {
+                // written before manifests existed: every segment is live, in seq order
+                live.addAll(new TreeSet<>(files.keySet()));
+            }
+            List<TransactionSegmentFile> loaded = new ArrayList<>();
+            for (long seq : live) {
+                Path p = files.remove(seq);
+                if (p == null) throw new IOException("manifest lists missing segment " + seq);
+                loaded.add(TransactionSegmentFile.open(p));
+            }
+            segments = loaded.toArray(new TransactionSegmentFile[0]);
+            if (!Files.exists(manifest)) writeManifest(segments);
+            for (Path p : files.values()) Files.delete(p); // superseded or never published
+        } catch (IOException e) {
+            throw new UncheckedIOException("cannot open segment directory " + dir, e);
+        }
+    }
+
+    /** Write final transactions as one or more new segments. */
+    synchronized void append(List<Transaction> txns) {
+        if (txns.isEmpty()) return;
+        List<TransactionSegmentFile> added = new ArrayList<>();
+        for (int from = 0; from < txns.size(); from += TransactionSegmentFile.MAX_ROWS) {
+            List<Transaction> chunk = txns.subList(from, Math.min(txns.size(), from + TransactionSegmentFile.MAX_ROWS));
+            added.add(write(chunk));
+        }
+        TransactionSegmentFile[] cur = segments;
+        TransactionSegmentFile[] next = Arrays.copyOf(cur, cur.length + added.size());
+        for (int i = 0; i < added.size(); i++) next[cur.length + i] = added.get(i);
+        writeManifest(next);
+        segments = next;
+    }
+
+    /**
+     * Merge runs of adjacent segments smaller than smallRows into one segment each (bounded by
+     * MAX_ROWS). Old files are deleted after the manifest naming the merged one is in place;
+     * open maps stay valid. Returns the number of segments removed.
+     */
+    synchronized int compact(int smallRows) {
+        TransactionSegmentFile[] cur = segments;
+        List<TransactionSegmentFile> next = new ArrayList<>();
+        List<TransactionSegmentFile> obsolete = new ArrayList<>();
+        int i = 0;
+        while (i < cur.length) {
+            int j = i;
+            long rows = 0;
+            while (j < cur.length && cur[j].rowCount < smallRows && rows + cur[j].rowCount <= TransactionSegmentFile.MAX_ROWS) {
+                rows += cur[j++].rowCount;
+            }
+            if (j - i >= 2) {
+                Map<UUID, Transaction> merged = new LinkedHashMap<>();
+                for (int k = i; k < j; k++) {
+                    TransactionSegmentFile seg = cur[k];
+                    for (int row = 0; row < seg.rowCount; row++) {
+                        Transaction t = seg.materialize(row);
+                        merged.put(t.id, t);
+                    }
+                    obsolete.add(seg);
+                }
+                next.add(write(new ArrayList<>(merged.values())));
+                i = j;
+            } else {
+                next.add(cur[i++]);
+            }
+        }
+        if (obsolete.isEmpty()) return 0;
+        TransactionSegmentFile[] published = next.toArray(new TransactionSegmentFile[0]);
+        writeManifest(published);
+        segments = published;
+        for (TransactionSegmentFile seg : obsolete) {
+            try {
+                Files.deleteIfExists(seg.path);
+            } catch (IOException e) {
+                // left behind: the manifest no longer lists it, so it is deleted on the next load, never read
+            }
+        }
+        return cur.length - next.size();
+    }
+
+    Transaction findById(UUID id) {
+        TransactionSegmentFile[] segs = segments;
+        for (int s = segs.length - 1; s >= 0; s--) {
+            Transaction t = segs[s].findById(id);
+            if (t != null) return t;
+        }
+        return null;
+    }
+
+    boolean contains(UUID id) {
+        for (TransactionSegmentFile seg : segments) if (seg.contains(id)) return true;
+        return false;
+    }
+
+    Transaction findByIdempotencyKey(String key) {
+        TransactionSegmentFile[] segs = segments;
+        for (int s = segs.length - 1; s >= 0; s--) {
+            Transaction t = segs[s].findByIdempotencyKey(key);
+            if (t != null) return t;
+        }
+        return null;
+    }
+
+    boolean containsIdempotencyKey(String key) {
+        for (TransactionSegmentFile seg : segments) if (seg.containsIdempotencyKey(key)) return true;
+        return false;
+    }
+
+    /** The published segments; streams take them as an argument so a caller can read several tiers as of one instant. */
+    TransactionSegmentFile[] segments() { return segments; }
+
+    Stream<Transaction> streamByFromOrTo(TransactionSegmentFile[] segs, UUID from, UUID to) {
+        // per segment: rows reachable through either account, de-duplicated, then checked against the exact predicate
+        return Arrays.stream(segs).flatMap(seg -> {
+            BitSet rows = new BitSet();
+            if (from != null) seg.forEachRowByAccount(from, rows::set);
+            if (to != null && !to.equals(from)) seg.forEachRowByAccount(to, rows::set);
+            return rows.stream().filter(row -> seg.matchesFromOrTo(row, from, to)).mapToObj(seg::materialize);
+        });
+    }
+
+    Stream<Transaction> streamWithStatus(TransactionSegmentFile[] segs, TransactionStatus status) {
+        return stream(segs, (seg, row) -> seg.statusAt(row) == status ? seg.materialize(row) : null);
+    }
+
+    Stream<Transaction> stream(TransactionSegmentFile[] segs) {
+        return stream(segs, TransactionSegmentFile::materialize);
+    }
+
+    private Stream<Transaction> stream(TransactionSegmentFile[] segs, TierSpliterator.RowReader<TransactionSegmentFile> reader) {
+        return StreamSupport.stream(new TierSpliterator<>(() -> segs, seg -> seg.rowCount, reader), false);
+    }
+
+    long size() {
+        long n = 0;
+        for (TransactionSegmentFile seg : segments) n += seg.rowCount;
+        return n;
+    }
+
+    int segmentCount() { return segments.length; }
+
+    // replace the manifest with segs, in order; the rename is the point where the new set is durable
+    private void writeManifest(TransactionSegmentFile[] segs) {
+        StringBuilder sb = new StringBuilder();
+        for (TransactionSegmentFile seg : segs) sb.append(seg.seq).append('\n');
+        Path tmp = dir.resolve(MANIFEST + ".tmp");
+        try {
+            try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.WRITE)) {
+                ByteBuffer bytes = ByteBuffer.wrap(sb.toString().getBytes(StandardCharsets.US_ASCII));
+                while (bytes.hasRemaining()) ch.write(bytes);
+                ch.force(true);
+            }
+            Files.move(tmp, dir.resolve(MANIFEST), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new UncheckedIOException("cannot write segment manifest to " + dir, e);
+        }
+    }
+
+    private TransactionSegmentFile write(List<Transaction> txns) {
+        try {
+            return TransactionSegmentFile.write(dir, nextSeq++, txns);
+        } catch (IOException e) {
+            throw new UncheckedIOException("cannot write segment to " + dir, e);
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package repositoryimpl;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Append-only dictionary mapping repeated values (account ids, payee identifiers, error codes)
+ * to dense int codes for the archive columns. null is encoded as -1.
+ * Writes are serialized; decode() and codeOf() are lock-free.
+ */
+class ValueDictionary<T> {
+    private final ConcurrentMap<T, Integer> codes = new ConcurrentHashMap<>();
+    private volatile Object[] values = new Object[64];
+    private int size;
+
+    synchronized int encode(T value) {
+        if (value == null) return -1;
+        Integer code = codes.get(value);
+        if (code != null) return code;
+        Object[] v = values;
+        if (size == v.length) v = Arrays.copyOf(v, v.length * 2);
+        v[size] = value;
+        values = v; // publish the slot before the code becomes visible
+        codes.put(value, size);
+        return size++;
+    }
+
+    @SuppressWarnings("unchecked")
+    T decode(int code) {
+        return code < 0 ? null : (T) values[code];
+    }
+
+    // -1 if the value was never encoded (so no archived row can reference it)
+    int codeOf(T value) {
+        if (value == null) return -1;
+        Integer code = codes.get(value);
+        return code == null ? -1 : code;
+    }
+
+    int size() { return codes.size(); }
+}
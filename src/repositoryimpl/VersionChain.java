@@ -0,0 +1,96 @@
+package repositoryimpl;
+
+import models.BalanceHistory;
+
+import java.math.BigDecimal;
+
+/**
+ * Newest-first list of committed (balance, reserved) versions of one account (or one in-transit
+ * stripe), one per epoch it was written in (see CommitSequence). Single writer, any number of
+ * lock-free readers: a snapshot at sequence S reads the newest version stamped at or before S.
+ * A write in the epoch of the head overwrites it in place (no snapshot can read the open epoch
+ * yet); a write in a later epoch pushes a version and prunes what no pinned snapshot can still
+ * read, so with no snapshot open the chain holds two versions.
+ */
+public class VersionChain implements BalanceHistory {
+
+    static final class Version {
+        final long epoch;
+        // written by the writer while the epoch is open; a snapshot reads them after it closed
+        BigDecimal balance;
+        BigDecimal reserved;
+        volatile Version prev;
+
+        Version(long epoch, BigDecimal balance, BigDecimal reserved, Version prev) {
+            this.epoch = epoch;
+            this.balance = balance;
+            this.reserved = reserved;
+            this.prev = prev;
+        }
+    }
+
+    private final CommitSequence commits;
+    private volatile Version head;
+    private long prunedAt = -1; // pin floor of the last prune; writer-only
+
+    VersionChain(CommitSequence commits, long epoch, BigDecimal balance, BigDecimal reserved) {
+        this.commits = commits;
+        this.head = new Version(epoch, balance, reserved, null);
+    }
+
+    // an in-transit stripe: zero since epoch 0
+    VersionChain(CommitSequence commits) {
+        this(commits, 0, BigDecimal.ZERO, BigDecimal.ZERO);
+    }
+
+    @Override
+    public void record(long commit, BigDecimal balance, BigDecimal reserved) {
+        if (commit != OWN_COMMIT) {
+            push(commit, balance, reserved);
+            return;
+        }
+        long e = commits.enter();
+        try {
+            push(e, balance, reserved);
+        } finally {
+            commits.exit(e);
+        }
+    }
+
+    // caller has exclusive write access and is inside epoch e
+    private void push(long e, BigDecimal balance, BigDecimal reserved) {
+        Version h = head;
+        if (h.epoch == e) {
+            h.balance = balance;
+            h.reserved = reserved;
+            return;
+        }
+        // keep the newest version a pinned snapshot can read and everything after it.
+        // Versions pushed since the last prune are all newer than its floor, so the walk is only
+        // needed when the floor moved (or with no pin, where it stops at h)
+        long floor = commits.pinFloor();
+        if (floor != prunedAt || floor == Long.MAX_VALUE) {
+            for (Version v = h; v != null; v = v.prev) {
+                if (v.epoch <= floor) {
+                    v.prev = null;
+                    break;
+                }
+            }
+            prunedAt = floor;
+        }
+        head = new Version(e, balance, reserved, h);
+    }
+
+    // newest version stamped at or before seq, null if the chain did not exist yet
+    Version at(long seq) {
+        for (Version v = head; v != null; v = v.prev) {
+            if (v.epoch <= seq) return v;
+        }
+        return null;
+    }
+
+    /** Add delta to the value as part of the write in epoch e (caller has exclusive write access). */
+    void add(long e, BigDecimal delta) {
+        push(e, head.balance.add(delta), BigDecimal.ZERO);
+    }
+}
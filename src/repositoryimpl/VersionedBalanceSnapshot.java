@@ -0,0 +1,55 @@
+package repositoryimpl;
+
+import models.BalanceSnapshot;
+import models.BankAccount;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+// BalanceSnapshot over the repository's version chains, at a sequence pinned in its CommitSequence
+final class VersionedBalanceSnapshot implements BalanceSnapshot {
+    private final CommitSequence commits;
+    private final long seq;
+    private final Supplier<Stream<BankAccount>> accounts;
+    private final Function<BankAccount, VersionChain> versionsOf;
+    private final Collection<VersionChain> inTransit;
+    private boolean closed;
+
+    VersionedBalanceSnapshot(CommitSequence commits, Supplier<Stream<BankAccount>> accounts,
+                             Function<BankAccount, VersionChain> versionsOf, Collection<VersionChain> inTransit) {
+        this.commits = commits;
+        this.seq = commits.pin();
+        this.accounts = accounts;
+        this.versionsOf = versionsOf;
+        this.inTransit = inTransit;
+    }
+
+    @Override public long sequence() { return seq; }
+
+    @Override
+    public Stream<AccountBalance> balances() {
+        return accounts.get().map(a -> {
+            VersionChain chain = versionsOf.apply(a);
+            VersionChain.Version v = chain == null ? null : chain.at(seq);
+            return v == null ? null : new AccountBalance(a, v.balance, v.reserved);
+        }).filter(Objects::nonNull);
+    }
+
+    @Override
+    public BigDecimal inTransit() {
+        BigDecimal total = BigDecimal.ZERO;
+        for (VersionChain c : inTransit) total = total.add(c.at(seq).balance);
+        return total;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (closed) return;
+        closed = true;
+        commits.unpin(seq);
+    }
+}
@@ -0,0 +1,126 @@
+package scheduling;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+import java.util.function.IntToLongFunction;
+
+/**
+ * Hierarchical timing wheel of int ids (e.g. repository slots) by due time. Level 0 has one slot
+ * per tick, each higher level slots of 2^bits times the span of the level below; an id is kept
+ * at the lowest level whose span reaches its due tick and moves down a level when the slot it
+ * is in comes round. Scheduling is O(1), an id costs 4 bytes, and advancing costs one step per
+ * elapsed tick plus the ids that move or expire. Due times are not stored: they are read back
+ * through dueOf whenever an id is placed, so an id whose due time changed is simply placed again
+ * (stale entries are the caller's to ignore). Ids due further out than the top level reaches
+ * wait in its last slot and are re-placed from there.
+ * All methods are synchronized; the expired callback runs under the lock and must not call back.
+ */
+public class HierarchicalTimingWheel {
+
+    private final long tickMillis;
+    private final int bits;
+    private final int mask;
+    private final IntToLongFunction dueOf;
+    private final IntBag[][] levels;
+    private final IntBag ready = new IntBag(); // already due when placed
+    private long currentTick;                  // ticks before this one have been expired
+    private long size;
+
+    public HierarchicalTimingWheel(long tickMillis, int levelCount, int bits, long startMillis, IntToLongFunction dueOf) {
+        if (tickMillis <= 0 || levelCount <= 0 || bits <= 0 || (long) bits * levelCount >= 62) {
+            throw new IllegalArgumentException("bad wheel geometry");
+        }
+        this.tickMillis = tickMillis;
+        this.bits = bits;
+        this.mask = (1 << bits) - 1;
+        this.dueOf = dueOf;
+        this.levels = new IntBag[levelCount][1 << bits];
+        for (IntBag[] level : levels) for (int i = 0; i < level.length; i++) level[i] = new IntBag();
+        this.currentTick = startMillis / tickMillis;
+    }
+
+    public synchronized void schedule(int id) {
+        place(id);
+        size++;
+    }
+
+    /** Expire every id due at or before nowMillis, in due order (by tick); returns how many. */
+    public synchronized int advance(long nowMillis, IntConsumer expired) {
+        long target = nowMillis / tickMillis;
+        int n = ready.drainTo(expired);
+        while (currentTick <= target) {
+            if (size - n <= 0) {
+                currentTick = target + 1; // nothing scheduled: jump
+                break;
+            }
+            // cascade the higher-level slots this tick starts, highest first
+            for (int l = levels.length - 1; l >= 1; l--) {
+                if ((currentTick & ((1L << (bits * l)) - 1)) == 0) {
+                    IntBag bag = levels[l][(int) (currentTick >>> (bits * l)) & mask];
+                    if (!bag.isEmpty()) bag.drainTo(this::place);
+                }
+            }
+            n += ready.drainTo(expired);
+            n += levels[0][(int) currentTick & mask].drainTo(expired);
+            currentTick++;
+        }
+        size -= n;
+        return n;
+    }
+
+    public synchronized long size() { return size; }
+
+    /** Bytes held by the id arrays. */
+    public synchronized long footprintBytes() {
+        long b = ready.capacity() * (long) Integer.BYTES;
+        for (IntBag[] level : levels) for (IntBag bag : level) b += bag.capacity() * (long) Integer.BYTES;
+        return b;
+    }
+
+    private void place(int id) {
+        long tick = dueOf.applyAsLong(id) / tickMillis;
+        long delta = tick - currentTick;
+        if (delta < 0) {
+            ready.add(id);
+            return;
+        }
+        for (int l = 0; l < levels.length; l++) {
+            if (delta < (1L << (bits * (l + 1)))) {
+                levels[l][(int) (tick >>> (bits * l)) & mask].add(id);
+                return;
+            }
+        }
+        // beyond the top level's reach: park in its furthest slot
+        int top = levels.length - 1;
+        long far = currentTick + (1L << (bits * levels.length)) - 1;
+        levels[top][(int) (far >>> (bits * top)) & mask].add(id);
+    }
+
+    // growable int array; drained bags give back large arrays
+    private static final class IntBag {
+        private static final int[] EMPTY = new int[0];
+        private static final int KEEP = 1024;
+        private int[] ids = EMPTY;
+        private int n;
+
+        void add(int id) {
+            if (n == ids.length) ids = Arrays.copyOf(ids, Math.max(8, n * 2));
+            ids[n++] = id;
+        }
+
+        boolean isEmpty() { return n == 0; }
+
+        int capacity() { return ids.length; }
+
+        // hands out the ids and empties the bag first, so the consumer may add to it
+        int drainTo(IntConsumer consumer) {
+            int count = n;
+            if (count == 0) return 0;
+            int[] drained = ids;
+            ids = drained.length > KEEP ? EMPTY : new int[drained.length];
+            n = 0;
+            for (int i = 0; i < count; i++) consumer.accept(drained[i]);
+            return count;
+        }
+    }
+}
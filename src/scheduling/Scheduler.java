@@ -0,0 +1,29 @@
+package scheduling;
+
+import java.time.Clock;
+import java.time.Duration;
+
+/*
+  Where time comes from and how delayed / periodic work is run. system() is the wall clock and a
+  daemon thread; SimulatedScheduler is a discrete-event clock that runs hours of timers in
+  milliseconds, deterministically, on the thread that drives it.
+*/
+public interface Scheduler {
+
+    interface Task {
+        void cancel();
+    }
+
+    Clock clock();
+
+    Task schedule(Runnable task, Duration delay);
+
+    // the next run is scheduled delay after the previous one finished
+    Task scheduleWithFixedDelay(Runnable task, Duration initialDelay, Duration delay);
+
+    void shutdown();
+
+    static Scheduler system(String threadName) {
+        return new SystemScheduler(threadName);
+    }
+}
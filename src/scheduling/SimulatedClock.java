@@ -0,0 +1,50 @@
+package scheduling;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A Clock that only moves when told to (nanosecond resolution, never backwards). Zone views made
+ * with withZone share the same time.
+ */
+public class SimulatedClock extends Clock {
+    private final AtomicLong epochNanos;
+    private final ZoneId zone;
+
+    public SimulatedClock(Instant start) {
+        this(new AtomicLong(start.getEpochSecond() * 1_000_000_000L + start.getNano()), ZoneOffset.UTC);
+    }
+
+    private SimulatedClock(AtomicLong epochNanos, ZoneId zone) {
+        this.epochNanos = epochNanos;
+        this.zone = zone;
+    }
+
+    @Override
+    public ZoneId getZone() { return zone; }
+
+    @Override
+    public Clock withZone(ZoneId zone) { return new SimulatedClock(epochNanos, zone); }
+
+    @Override
+    public Instant instant() {
+        long n = epochNanos.get();
+        return Instant.ofEpochSecond(Math.floorDiv(n, 1_000_000_000L), Math.floorMod(n, 1_000_000_000L));
+    }
+
+    @Override
+    public long millis() { return Math.floorDiv(epochNanos.get(), 1_000_000L); }
+
+    public long nanos() { return epochNanos.get(); }
+
+    /** Move to the given time; earlier times are ignored. */
+    public void advanceTo(long epochNanos) { this.epochNanos.accumulateAndGet(epochNanos, Math::max); }
+
+    public void advance(long nanos) {
+        if (nanos < 0) throw new IllegalArgumentException("time does not go backwards");
+        epochNanos.addAndGet(nanos);
+    }
+}
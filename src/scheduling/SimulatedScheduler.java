@@ -0,0 +1,144 @@
+package scheduling;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Discrete-event Scheduler: timers wait in a queue ordered by (due time, order scheduled) and run
+ * only when the owner drives the simulation with runFor / runUntil / runNext, on the calling
+ * thread, with the clock set to each event's due time first. Nothing waits in real time, so hours
+ * of timers run as fast as their tasks do, and a run is reproducible as long as the tasks are
+ * (seeded randomness, no other threads). executor() turns "run this asynchronously" into an event
+ * at the current time, so work handed to an executor (e.g. PSP calls) stays inside the simulation.
+ * Scheduling is thread-safe; driving it is meant for one thread at a time.
+ */
+public class SimulatedScheduler implements Scheduler {
+
+    private static final class Event implements Task, Comparable<Event> {
+        final Runnable task;
+        final long periodNanos;   // 0 = one-shot
+        long dueNanos;
+        long seq;
+        volatile boolean cancelled;
+
+        Event(Runnable task, long dueNanos, long periodNanos) {
+            this.task = task;
+            this.dueNanos = dueNanos;
+            this.periodNanos = periodNanos;
+        }
+
+        @Override public void cancel() { cancelled = true; }
+
+        @Override public int compareTo(Event o) {
+            int c = Long.compare(dueNanos, o.dueNanos);
+            return c != 0 ? c : Long.compare(seq, o.seq);
+        }
+    }
+
+    private final SimulatedClock clock;
+    private final PriorityQueue<Event> queue = new PriorityQueue<>(); // guarded by this
+    private long nextSeq;                                             // guarded by this
+    private volatile boolean shutdown;
+    private long executed;
+
+    public SimulatedScheduler(Instant start) {
+        this.clock = new SimulatedClock(start);
+    }
+
+    @Override
+    public Clock clock() { return clock; }
+
+    @Override
+    public Task schedule(Runnable task, Duration delay) {
+        return enqueue(new Event(task, clock.nanos() + Math.max(0, delay.toNanos()), 0));
+    }
+
+    @Override
+    public Task scheduleWithFixedDelay(Runnable task, Duration initialDelay, Duration delay) {
+        if (delay.toNanos() <= 0) throw new IllegalArgumentException("delay must be > 0");
+        return enqueue(new Event(task, clock.nanos() + Math.max(0, initialDelay.toNanos()), delay.toNanos()));
+    }
+
+    @Override
+    public void shutdown() {
+        shutdown = true;
+        synchronized (this) {
+            queue.clear();
+        }
+    }
+
+    /** Run every event due within the next d of simulated time, then leave the clock at now + d. Returns events run. */
+    public long runFor(Duration d) {
+        return runUntil(clock.nanos() + d.toNanos());
+    }
+
+    public long runUntil(Instant t) {
+        return runUntil(t.getEpochSecond() * 1_000_000_000L + t.getNano());
+    }
+
+    /** Run the next event, moving the clock to its due time; false when none is queued. */
+    public boolean runNext() {
+        return runUntil(Long.MAX_VALUE, 1) == 1;
+    }
+
+    private long runUntil(long endNanos) {
+        long ran = runUntil(endNanos, Long.MAX_VALUE);
+        clock.advanceTo(endNanos);
+        return ran;
+    }
+
+    private long runUntil(long endNanos, long maxEvents) {
+        long ran = 0;
+        while (ran < maxEvents) {
+            Event e;
+            synchronized (this) {
+                e = queue.peek();
+                if (e == null || e.dueNanos > endNanos) break;
+                queue.poll();
+            }
+            if (e.cancelled) continue;
+            clock.advanceTo(e.dueNanos);
+            e.task.run();
+            ran++;
+            if (e.periodNanos > 0 && !e.cancelled) {
+                e.dueNanos = clock.nanos() + e.periodNanos;
+                enqueue(e);
+            }
+        }
+        executed += ran;
+        return ran;
+    }
+
+    private Event enqueue(Event e) {
+        if (shutdown) throw new RejectedExecutionException("scheduler shut down");
+        synchronized (this) {
+            e.seq = nextSeq++;
+            queue.add(e);
+        }
+        return e;
+    }
+
+    /** Tasks handed to this executor become events due now, run in submission order. */
+    public ExecutorService executor() {
+        return new AbstractExecutorService() {
+            @Override public void execute(Runnable command) { schedule(command, Duration.ZERO); }
+            @Override public void shutdown() { }
+            @Override public List<Runnable> shutdownNow() { return Collections.emptyList(); }
+            @Override public boolean isShutdown() { return shutdown; }
+            @Override public boolean isTerminated() { return shutdown; }
+            @Override public boolean awaitTermination(long timeout, TimeUnit unit) { return true; }
+        };
+    }
+
+    /** Events queued (including cancelled ones not yet reached) / events run so far. */
+    public synchronized int getQueued() { return queue.size(); }
+    public long getExecuted() { return executed; }
+}
@@ -0,0 +1,41 @@
+package scheduling;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/** Wall-clock Scheduler: Clock.systemUTC() and one daemon scheduler thread. */
+public class SystemScheduler implements Scheduler {
+    private final ScheduledExecutorService executor;
+
+    public SystemScheduler(String threadName) {
+        this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, threadName);
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @Override
+    public Clock clock() { return Clock.systemUTC(); }
+
+    @Override
+    public Task schedule(Runnable task, Duration delay) {
+        return cancellable(executor.schedule(task, delay.toNanos(), TimeUnit.NANOSECONDS));
+    }
+
+    @Override
+    public Task scheduleWithFixedDelay(Runnable task, Duration initialDelay, Duration delay) {
+        return cancellable(executor.scheduleWithFixedDelay(task, initialDelay.toNanos(), delay.toNanos(), TimeUnit.NANOSECONDS));
+    }
+
+    @Override
+    public void shutdown() { executor.shutdownNow(); }
+
+    private static Task cancellable(Future<?> f) {
+        return () -> f.cancel(false);
+    }
+}
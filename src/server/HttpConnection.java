@@ -0,0 +1,123 @@
+package server;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+/**
+ * A keep-alive connection owned by one I/O thread. Every complete request in the input buffer is
+ * answered in order into the output buffer (pipelining), which is written as far as the socket
+ * takes it. While output is left over the connection waits for OP_WRITE only, so a client that
+ * does not read its responses stops being read from instead of growing the buffer.
+ * A request answered later (a payment, see PaymentHttpServer) parks the connection: nothing more
+ * is read or answered until resume() has written its answer, on the I/O thread.
+ */
+final class HttpConnection {
+    static final int BUFFER_SIZE = 16 * 1024;
+    private static final int OUTPUT_HIGH_WATER = 64 * 1024;
+
+    private final SocketChannel channel;
+    private final PaymentHttpServer server;
+    private final Executor ioThread;
+    private final ByteBuffer in = ByteBuffer.allocate(BUFFER_SIZE);
+    private final HttpRequest request = new HttpRequest();
+    private final HttpResponse response = new HttpResponse(BUFFER_SIZE);
+    private SelectionKey key;
+    private boolean closing;   // answer what was read, then close
+    private boolean waiting;   // a request's answer is still being made elsewhere
+
+    HttpConnection(SocketChannel channel, PaymentHttpServer server, Executor ioThread) {
+        this.channel = channel;
+        this.server = server;
+        this.ioThread = ioThread;
+    }
+
+    void register(SelectionKey key) { this.key = key; }
+
+    void onReadable() throws IOException {
+        if (channel.read(in) < 0) closing = true;
+        pump();
+    }
+
+    void onWritable() throws IOException { pump(); }
+
+    private void pump() throws IOException {
+        answerBuffered();
+        ByteBuffer out = response.buffer();
+        out.flip();
+        channel.write(out);
+        out.compact();
+        if (out.position() > 0) {
+            key.interestOps(SelectionKey.OP_WRITE);
+        } else if (waiting) {
+            key.interestOps(0); // resume() carries on
+        } else if (closing) {
+            close();
+        } else if (hasCompleteRequest()) {
+            // stopped at the high-water mark with requests left: answer them once writable again
+            key.interestOps(SelectionKey.OP_WRITE);
+        } else {
+            key.interestOps(SelectionKey.OP_READ);
+        }
+    }
+
+    // from any thread: write the parked request's answer and carry on, on the I/O thread
+    void resume(Consumer<HttpResponse> answer) {
+        ioThread.execute(() -> {
+            if (!key.isValid()) return; // closed meanwhile
+            answer.accept(response);
+            waiting = false;
+            try {
+                pump();
+            } catch (IOException | RuntimeException e) {
+                close();
+            }
+        });
+    }
+
+    private void answerBuffered() {
+        if (waiting) return;
+        byte[] buf = in.array();
+        int pos = 0, limit = in.position();
+        while (response.buffer().position() < OUTPUT_HIGH_WATER) {
+            int used = request.parse(buf, pos, limit, BUFFER_SIZE);
+            if (used == 0) break;
+            if (used < 0) {
+                server.answerMalformed(request, response);
+                closing = true;
+                pos = limit;
+                break;
+            }
+            boolean answered = server.handle(request, response, this);
+            pos += used;
+            if (request.close) {
+                closing = true;
+                pos = limit; // nothing after a closing request is answered
+            }
+            if (!answered) {
+                waiting = true;
+                break;
+            }
+            if (closing) break;
+        }
+        if (pos > 0) {
+            System.arraycopy(buf, pos, buf, 0, limit - pos);
+            in.position(limit - pos);
+        }
+    }
+
+    private boolean hasCompleteRequest() {
+        return in.position() > 0 && request.parse(in.array(), 0, in.position(), BUFFER_SIZE) != 0;
+    }
+
+    void close() {
+        key.cancel();
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
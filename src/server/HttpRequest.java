@@ -0,0 +1,246 @@
+package server;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+/**
+ * One HTTP/1.1 request parsed in place: the fields are offsets into the connection's input
+ * buffer, reused for every request on the connection. Only what the routes need is looked at:
+ * method, path, query, Content-Length, Connection and Transfer-Encoding (chunked bodies are not
+ * supported). Values become objects (UUID, String, BigDecimal) only when a route asks for them.
+ */
+final class HttpRequest {
+    static final int GET = 1, POST = 2, OTHER = 3;
+
+    private static final byte[] CONTENT_LENGTH = HttpResponse.ascii("content-length");
+    private static final byte[] CONNECTION = HttpResponse.ascii("connection");
+    private static final byte[] TRANSFER_ENCODING = HttpResponse.ascii("transfer-encoding");
+    private static final byte[] CLOSE = HttpResponse.ascii("close");
+    private static final byte[] KEEP_ALIVE = HttpResponse.ascii("keep-alive");
+    private static final byte[] HTTP_10 = HttpResponse.ascii("HTTP/1.0");
+    private static final byte[] HTTP_11 = HttpResponse.ascii("HTTP/1.1");
+
+    byte[] buf;
+    int method;
+    int pathStart, pathEnd;
+    int queryStart, queryEnd;   // empty when there is no query
+    int bodyStart, bodyEnd;
+    boolean close;              // answer, then close the connection
+    int error;                  // status to answer a malformed request with
+
+    // the value found by the last formValue / queryValue
+    int valueStart, valueEnd;
+
+    /**
+     * Parse the request starting at buf[from], with buf[from..to) read so far and at most max
+     * bytes allowed for the whole request. Returns the request's length once it is complete, 0
+     * when more bytes are needed, or -1 when it is malformed (error says how to answer).
+     */
+    int parse(byte[] buf, int from, int to, int max) {
+        this.buf = buf;
+        error = 0;
+        int headersEnd = indexOfBlankLine(buf, from, to);
+        if (headersEnd < 0) return to - from >= max ? fail(431) : 0;
+
+        // request line: METHOD SP target SP version CRLF
+        int lineEnd = indexOf(buf, from, headersEnd, (byte) '\r');
+        int sp1 = indexOf(buf, from, lineEnd, (byte) ' ');
+        if (sp1 < 0) return fail(400);
+        int sp2 = indexOf(buf, sp1 + 1, lineEnd, (byte) ' ');
+        if (sp2 < 0) return fail(400);
+        method = matches(buf, from, sp1, "GET") ? GET : matches(buf, from, sp1, "POST") ? POST : OTHER;
+        pathStart = sp1 + 1;
+        int q = indexOf(buf, pathStart, sp2, (byte) '?');
+        pathEnd = q < 0 ? sp2 : q;
+        queryStart = q < 0 ? sp2 : q + 1;
+        queryEnd = sp2;
+        if (regionEquals(buf, sp2 + 1, lineEnd, HTTP_11)) close = false;
+        else if (regionEquals(buf, sp2 + 1, lineEnd, HTTP_10)) close = true;
+        else return fail(400);
+
+        long contentLength = 0;
+        int line = lineEnd + 2;
+        while (line < headersEnd) {
+            int end = indexOf(buf, line, headersEnd, (byte) '\r');
+            if (end < 0) end = headersEnd;
+            int colon = indexOf(buf, line, end, (byte) ':');
+            if (colon < 0) return fail(400);
+            int v = colon + 1, vEnd = end;
+            while (v < vEnd && (buf[v] == ' ' || buf[v] == '\t')) v++;
+            while (vEnd > v && (buf[vEnd - 1] == ' ' || buf[vEnd - 1] == '\t')) vEnd--;
+            if (equalsIgnoreCase(buf, line, colon, CONTENT_LENGTH)) {
+                contentLength = parseLong(buf, v, vEnd);
+                if (contentLength < 0) return fail(400);
+            } else if (equalsIgnoreCase(buf, line, colon, CONNECTION)) {
+                if (equalsIgnoreCase(buf, v, vEnd, CLOSE)) close = true;
+                else if (equalsIgnoreCase(buf, v, vEnd, KEEP_ALIVE)) close = false;
+            } else if (equalsIgnoreCase(buf, line, colon, TRANSFER_ENCODING)) {
+                return fail(501);
+            }
+            line = end + 2;
+        }
+        bodyStart = headersEnd + 4;
+        if (bodyStart - from + contentLength > max) return fail(413);
+        bodyEnd = bodyStart + (int) contentLength;
+        return bodyEnd <= to ? bodyEnd - from : 0;
+    }
+
+    private int fail(int status) {
+        error = status;
+        close = true;
+        return -1;
+    }
+
+    boolean pathEquals(byte[] path) { return regionEquals(buf, pathStart, pathEnd, path); }
+
+    boolean pathStartsWith(byte[] prefix) {
+        return pathEnd - pathStart >= prefix.length && regionEquals(buf, pathStart, pathStart + prefix.length, prefix);
+    }
+
+    /** Find name=value in the form-encoded body; sets valueStart/valueEnd. */
+    boolean formValue(byte[] name) { return findValue(bodyStart, bodyEnd, name); }
+
+    boolean queryValue(byte[] name) { return findValue(queryStart, queryEnd, name); }
+
+    private boolean findValue(int from, int to, byte[] name) {
+        int p = from;
+        while (p < to) {
+            int amp = indexOf(buf, p, to, (byte) '&');
+            if (amp < 0) amp = to;
+            int eq = indexOf(buf, p, amp, (byte) '=');
+            if (eq >= 0 && regionEquals(buf, p, eq, name)) {
+                valueStart = eq + 1;
+                valueEnd = amp;
+                return true;
+            }
+            p = amp + 1;
+        }
+        return false;
+    }
+
+    /** A UUID in canonical 8-4-4-4-12 form, or null. */
+    UUID uuid(int from, int to) {
+        if (to - from != 36) return null;
+        long msb = 0, lsb = 0;
+        for (int i = 0; i < 36; i++) {
+            byte b = buf[from + i];
+            if (i == 8 || i == 13 || i == 18 || i == 23) {
+                if (b != '-') return null;
+                continue;
+            }
+            int d = hexDigit(b);
+            if (d < 0) return null;
+            if (i < 18) msb = msb << 4 | d;
+            else lsb = lsb << 4 | d;
+        }
+        return new UUID(msb, lsb);
+    }
+
+    UUID uuidValue() { return uuid(valueStart, valueEnd); }
+
+    /** A positive decimal amount with at most two fraction digits, in paise; -1 if malformed. */
+    long paiseValue() {
+        long paise = 0;
+        int fraction = -1;
+        for (int i = valueStart; i < valueEnd; i++) {
+            byte b = buf[i];
+            if (b == '.' && fraction < 0) {
+                fraction = 0;
+                continue;
+            }
+            if (b < '0' || b > '9' || fraction == 2 || paise > Long.MAX_VALUE / 100) return -1;
+            paise = paise * 10 + (b - '0');
+            if (fraction >= 0) fraction++;
+        }
+        if (valueEnd == valueStart) return -1;
+        for (int f = Math.max(fraction, 0); f < 2; f++) paise *= 10;
+        return paise;
+    }
+
+    BigDecimal amountValue() {
+        long paise = paiseValue();
+        return paise < 0 ? null : BigDecimal.valueOf(paise, 2);
+    }
+
+    long longValue() { return parseLong(buf, valueStart, valueEnd); }
+
+    /** The value percent-decoded ('+' is a space), as a String. */
+    String stringValue() {
+        int n = 0;
+        byte[] decoded = null;
+        for (int i = valueStart; i < valueEnd; i++) {
+            byte b = buf[i];
+            if (b == '%' || b == '+') {
+                decoded = new byte[valueEnd - valueStart];
+                break;
+            }
+        }
+        if (decoded == null) return new String(buf, valueStart, valueEnd - valueStart, StandardCharsets.UTF_8);
+        for (int i = valueStart; i < valueEnd; i++) {
+            byte b = buf[i];
+            if (b == '+') {
+                decoded[n++] = ' ';
+            } else if (b == '%' && i + 2 < valueEnd && hexDigit(buf[i + 1]) >= 0 && hexDigit(buf[i + 2]) >= 0) {
+                decoded[n++] = (byte) (hexDigit(buf[i + 1]) << 4 | hexDigit(buf[i + 2]));
+                i += 2;
+            } else {
+                decoded[n++] = b;
+            }
+        }
+        return new String(decoded, 0, n, StandardCharsets.UTF_8);
+    }
+
+    private static int indexOfBlankLine(byte[] buf, int from, int to) {
+        for (int i = from; i + 3 < to; i++) {
+            if (buf[i] == '\r' && buf[i + 1] == '\n' && buf[i + 2] == '\r' && buf[i + 3] == '\n') return i;
+        }
+        return -1;
+    }
+
+    private static int indexOf(byte[] buf, int from, int to, byte b) {
+        for (int i = from; i < to; i++) if (buf[i] == b) return i;
+        return -1;
+    }
+
+    private static boolean matches(byte[] buf, int from, int to, String ascii) {
+        if (to - from != ascii.length()) return false;
+        for (int i = 0; i < ascii.length(); i++) if (buf[from + i] != ascii.charAt(i)) return false;
+        return true;
+    }
+
+    private static boolean regionEquals(byte[] buf, int from, int to, byte[] s) {
+        if (to - from != s.length) return false;
+        for (int i = 0; i < s.length; i++) if (buf[from + i] != s[i]) return false;
+        return true;
+    }
+
+    // s is lower case
+    private static boolean equalsIgnoreCase(byte[] buf, int from, int to, byte[] s) {
+        if (to - from != s.length) return false;
+        for (int i = 0; i < s.length; i++) {
+            byte b = buf[from + i];
+            if (b >= 'A' && b <= 'Z') b += 'a' - 'A';
+            if (b != s[i]) return false;
+        }
+        return true;
+    }
+
+    // non-negative decimal, -1 if malformed
+    private static long parseLong(byte[] buf, int from, int to) {
+        if (from == to || to - from > 18) return -1;
+        long v = 0;
+        for (int i = from; i < to; i++) {
+            if (buf[i] < '0' || buf[i] > '9') return -1;
+            v = v * 10 + (buf[i] - '0');
+        }
+        return v;
+    }
+
+    private static int hexDigit(byte b) {
+        if (b >= '0' && b <= '9') return b - '0';
+        if (b >= 'a' && b <= 'f') return b - 'a' + 10;
+        if (b >= 'A' && b <= 'F') return b - 'A' + 10;
+        return -1;
+    }
+}
@@ -0,0 +1,258 @@
+package server;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+/**
+ * Encodes responses straight into a connection's output buffer: ASCII status line and headers
+ * from constant byte arrays, numbers, UUIDs and amounts written digit by digit, JSON strings
+ * escaped as they are copied, with no String or intermediate buffer per field. Content-Length
+ * is written as a fixed-width field padded with leading spaces (optional whitespace in HTTP) and
+ * filled in when the body is done, so the body is never built separately.
+ */
+final class HttpResponse {
+    private static final byte[] HTTP_11 = ascii("HTTP/1.1 ");
+    private static final byte[] HEADERS = ascii("\r\nContent-Type: application/json\r\nContent-Length: ");
+    private static final byte[] CLOSE = ascii("\r\nConnection: close");
+    private static final byte[] END_HEADERS = ascii("\r\n\r\n");
+    private static final byte[] NULL = ascii("null");
+    private static final byte[] HEX = ascii("0123456789abcdef");
+    private static final int LENGTH_WIDTH = 10;
+    private static final int MAX_BUFFER = 16 << 20;
+
+    private ByteBuffer out;
+    private int lengthAt;   // where the Content-Length digits go
+    private int bodyStart;
+    private boolean firstField;
+
+    HttpResponse(int capacity) {
+        this.out = ByteBuffer.allocate(capacity);
+    }
+
+    ByteBuffer buffer() { return out; }
+
+    // where the next response starts; reset() drops a response that failed half way
+    int mark() { return out.position(); }
+
+    void reset(int mark) { out.position(mark); }
+
+    void begin(int status, boolean close) {
+        put(HTTP_11);
+        putLong(status);
+        put((byte) ' ');
+        put(reason(status));
+        put(HEADERS);
+        lengthAt = out.position();
+        for (int i = 0; i < LENGTH_WIDTH; i++) put((byte) ' ');
+        if (close) put(CLOSE);
+        put(END_HEADERS);
+        bodyStart = out.position();
+    }
+
+    void end() {
+        long length = out.position() - bodyStart;
+        int at = lengthAt + LENGTH_WIDTH;
+        do {
+            out.put(--at, (byte) ('0' + length % 10));
+            length /= 10;
+        } while (length > 0);
+    }
+
+    // JSON
+
+    HttpResponse objectStart() {
+        put((byte) '{');
+        firstField = true;
+        return this;
+    }
+
+    HttpResponse objectEnd() {
+        put((byte) '}');
+        firstField = false;
+        return this;
+    }
+
+    HttpResponse arrayStart() {
+        put((byte) '[');
+        firstField = true;
+        return this;
+    }
+
+    HttpResponse arrayEnd() {
+        put((byte) ']');
+        return this;
+    }
+
+    // separator before the next array element
+    HttpResponse element() {
+        if (!firstField) put((byte) ',');
+        firstField = true;
+        return this;
+    }
+
+    HttpResponse field(byte[] name) {
+        if (!firstField) put((byte) ',');
+        firstField = false;
+        put((byte) '"');
+        put(name);
+        put((byte) '"');
+        put((byte) ':');
+        return this;
+    }
+
+    HttpResponse string(CharSequence s) {
+        if (s == null) {
+            put(NULL);
+            return this;
+        }
+        put((byte) '"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                put((byte) '\\');
+                put((byte) c);
+            } else if (c < 0x20 || c > 0x7e) {
+                put((byte) '\\');
+                put((byte) 'u');
+                for (int shift = 12; shift >= 0; shift -= 4) put(HEX[(c >> shift) & 0xF]);
+            } else {
+                put((byte) c);
+            }
+        }
+        put((byte) '"');
+        return this;
+    }
+
+    HttpResponse string(byte[] ascii) {
+        put((byte) '"');
+        put(ascii);
+        put((byte) '"');
+        return this;
+    }
+
+    HttpResponse uuid(UUID id) {
+        if (id == null) {
+            put(NULL);
+            return this;
+        }
+        put((byte) '"');
+        long msb = id.getMostSignificantBits(), lsb = id.getLeastSignificantBits();
+        hex(msb >>> 32, 8);
+        put((byte) '-');
+        hex(msb >>> 16, 4);
+        put((byte) '-');
+        hex(msb, 4);
+        put((byte) '-');
+        hex(lsb >>> 48, 4);
+        put((byte) '-');
+        hex(lsb, 12);
+        put((byte) '"');
+        return this;
+    }
+
+    // amount in paise as a decimal string, e.g. "12.50"
+    HttpResponse money(long paise) {
+        put((byte) '"');
+        if (paise < 0) {
+            put((byte) '-');
+            paise = -paise;
+        }
+        putLong(paise / 100);
+        put((byte) '.');
+        put((byte) ('0' + paise % 100 / 10));
+        put((byte) ('0' + paise % 10));
+        put((byte) '"');
+        return this;
+    }
+
+    HttpResponse money(BigDecimal amount) {
+        if (amount == null) {
+            put(NULL);
+            return this;
+        }
+        return money(amount.setScale(2, RoundingMode.HALF_UP).unscaledValue().longValueExact());
+    }
+
+    HttpResponse number(long v) {
+        putLong(v);
+        return this;
+    }
+
+    private void hex(long v, int digits) {
+        for (int shift = (digits - 1) * 4; shift >= 0; shift -= 4) put(HEX[(int) (v >>> shift) & 0xF]);
+    }
+
+    private void putLong(long v) {
+        if (v < 0) {
+            put((byte) '-');
+            if (v == Long.MIN_VALUE) {
+                put(ascii("9223372036854775808"));
+                return;
+            }
+            v = -v;
+        }
+        ensure(20);
+        int start = out.position();
+        do {
+            out.put((byte) ('0' + v % 10));
+            v /= 10;
+        } while (v > 0);
+        // digits went in backwards
+        for (int i = start, j = out.position() - 1; i < j; i++, j--) {
+            byte t = out.get(i);
+            out.put(i, out.get(j));
+            out.put(j, t);
+        }
+    }
+
+    private void put(byte b) {
+        ensure(1);
+        out.put(b);
+    }
+
+    private void put(byte[] bytes) {
+        ensure(bytes.length);
+        out.put(bytes);
+    }
+
+    private void ensure(int n) {
+        if (out.remaining() >= n) return;
+        int capacity = out.capacity();
+        while (capacity - out.position() < n) capacity *= 2;
+        if (capacity > MAX_BUFFER) throw new IllegalStateException("response too large");
+        ByteBuffer grown = ByteBuffer.allocate(capacity);
+        out.flip();
+        grown.put(out);
+        out = grown;
+    }
+
+    private static byte[] reason(int status) {
+        switch (status) {
+            case 200: return OK;
+            case 201: return CREATED;
+            case 400: return BAD_REQUEST;
+            case 404: return NOT_FOUND;
+            case 405: return METHOD_NOT_ALLOWED;
+            case 409: return CONFLICT;
+            case 413: return TOO_LARGE;
+            case 431: return HEADERS_TOO_LARGE;
+            case 422: return UNPROCESSABLE;
+            case 429: return TOO_MANY;
+            case 501: return NOT_IMPLEMENTED;
+            case 503: return UNAVAILABLE;
+            default: return SERVER_ERROR;
+        }
+    }
+
+    private static final byte[] OK = ascii("OK"), CREATED = ascii("Created"), BAD_REQUEST = ascii("Bad Request"),
+            NOT_FOUND = ascii("Not Found"), METHOD_NOT_ALLOWED = ascii("Method Not Allowed"), CONFLICT = ascii("Conflict"),
+            TOO_LARGE = ascii("Payload Too Large"), HEADERS_TOO_LARGE = ascii("Request Header Fields Too Large"),
+            UNPROCESSABLE = ascii("Unprocessable Entity"),
+            TOO_MANY = ascii("Too Many Requests"), NOT_IMPLEMENTED = ascii("Not Implemented"),
+            UNAVAILABLE = ascii("Service Unavailable"), SERVER_ERROR = ascii("Internal Server Error");
+
+    static byte[] ascii(String s) { return s.getBytes(StandardCharsets.US_ASCII); }
+}
@@ -0,0 +1,379 @@
+package server;
+
+import enums.TransactionStatus;
+import exception.AdmissionRejectedException;
+import exception.BankDownException;
+import exception.IdempotencyException;
+import exception.LimitExceededException;
+import models.BankAccount;
+import models.Transaction;
+import service.BankAccountService;
+import service.TransactionService;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Embedded HTTP/1.1 front-end on NIO selectors:
+ *   POST /payments                          form body: key, from, to (optional), toIdentifier, amount
+ *   GET  /transactions/{id}
+ *   GET  /accounts/{id}/transactions?limit=N
+ *   GET  /accounts/{id}/balance
+ * One acceptor thread hands connections round-robin to the I/O threads, each running a selector
+ * over its connections. Requests are parsed in place and lookups are answered on the I/O thread
+ * (history reads the account's activity index, newest first). A payment is handed to a worker:
+ * createPayment can wait on an account lock or on a full event bus under BLOCK, which must not
+ * stall the other connections of the selector. Its connection reads nothing more until the
+ * worker is done; the I/O thread then writes the answer, so pipelined responses stay in order.
+ * Responses are JSON; errors map to 400 / 404 / 409 (idempotency) / 422 / 429 (admission) /
+ * 503 (bank down).
+ */
+public class PaymentHttpServer {
+    private static final byte[] PAYMENTS = HttpResponse.ascii("/payments");
+    private static final byte[] TRANSACTIONS = HttpResponse.ascii("/transactions/");
+    private static final byte[] ACCOUNTS = HttpResponse.ascii("/accounts/");
+    private static final byte[] BALANCE = HttpResponse.ascii("/balance");
+    private static final byte[] HISTORY = HttpResponse.ascii("/transactions");
+
+    private static final byte[] KEY = HttpResponse.ascii("key"), FROM = HttpResponse.ascii("from"),
+            TO = HttpResponse.ascii("to"), TO_IDENTIFIER = HttpResponse.ascii("toIdentifier"),
+            AMOUNT = HttpResponse.ascii("amount"), LIMIT = HttpResponse.ascii("limit");
+    private static final byte[] ID = HttpResponse.ascii("id"), STATUS = HttpResponse.ascii("status"),
+            PSP_TXN_ID = HttpResponse.ascii("pspTxnId"), ERROR = HttpResponse.ascii("error"),
+            CREATED_AT = HttpResponse.ascii("createdAt"), UPDATED_AT = HttpResponse.ascii("updatedAt"),
+            ACCOUNT = HttpResponse.ascii("account"), BALANCE_FIELD = HttpResponse.ascii("balance"),
+            RESERVED = HttpResponse.ascii("reserved"), AVAILABLE = HttpResponse.ascii("available"),
+            ITEMS = HttpResponse.ascii("transactions");
+    private static final byte[][] STATUS_NAMES = new byte[TransactionStatus.values().length][];
+    static {
+        for (TransactionStatus s : TransactionStatus.values()) STATUS_NAMES[s.ordinal()] = HttpResponse.ascii(s.name());
+    }
+    private static final int DEFAULT_HISTORY = 20;
+    private static final int MAX_HISTORY = 1_000;
+
+    private final TransactionService txnService;
+    private final BankAccountService acctService;
+    private final int port;
+    private final IoLoop[] loops;
+    private final ExecutorService paymentWorkers;
+    private final boolean ownsWorkers;
+    private volatile ServerSocketChannel serverChannel;
+    private volatile boolean running;
+
+    private final LongAdder connections = new LongAdder();
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+
+    public PaymentHttpServer(TransactionService txnService, BankAccountService acctService, int port) {
+        this(txnService, acctService, port, Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+    }
+
+    // two payment workers per I/O thread: a worker only waits for locks and the event bus, never for a bank
+    public PaymentHttpServer(TransactionService txnService, BankAccountService acctService, int port, int ioThreads) {
+        this(txnService, acctService, port, ioThreads,
+                Executors.newFixedThreadPool(2 * Math.max(1, ioThreads), r -> daemon(r, "http-payment")), true);
+    }
+
+    // paymentWorkers is left running for its owner
+    public PaymentHttpServer(TransactionService txnService, BankAccountService acctService, int port, int ioThreads,
+                             ExecutorService paymentWorkers) {
+        this(txnService, acctService, port, ioThreads, paymentWorkers, false);
+    }
+
+    private PaymentHttpServer(TransactionService txnService, BankAccountService acctService, int port, int ioThreads,
+                              ExecutorService paymentWorkers, boolean ownsWorkers) {
+        this.txnService = txnService;
+        this.acctService = acctService;
+        this.port = port;
+        this.loops = new IoLoop[Math.max(1, ioThreads)];
+        this.paymentWorkers = paymentWorkers;
+        this.ownsWorkers = ownsWorkers;
+    }
+
+    public void start() {
+        try {
+            serverChannel = ServerSocketChannel.open();
+            serverChannel.bind(new InetSocketAddress(port), 1024);
+            for (int i = 0; i < loops.length; i++) loops[i] = new IoLoop(Selector.open());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        running = true;
+        for (int i = 0; i < loops.length; i++) daemon(loops[i], "http-io-" + i).start();
+        daemon(this::acceptLoop, "http-accept").start();
+    }
+
+    public void stop() {
+        running = false;
+        try {
+            if (serverChannel != null) serverChannel.close();
+        } catch (IOException ignored) {
+        }
+        for (IoLoop loop : loops) if (loop != null) loop.selector.wakeup();
+        if (ownsWorkers) paymentWorkers.shutdown();
+    }
+
+    /** The bound port (useful when constructed with port 0). */
+    public int getPort() { return serverChannel.socket().getLocalPort(); }
+
+    /** Connections accepted / requests answered / requests answered with an error status. */
+    public long getConnections() { return connections.sum(); }
+    public long getRequests() { return requests.sum(); }
+    public long getErrors() { return errors.sum(); }
+
+    private void acceptLoop() {
+        int next = 0;
+        while (running) {
+            try {
+                SocketChannel ch = serverChannel.accept();
+                ch.configureBlocking(false);
+                ch.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                connections.increment();
+                IoLoop loop = loops[next++ % loops.length];
+                loop.incoming.add(ch);
+                loop.selector.wakeup();
+            } catch (IOException e) {
+                if (running) e.printStackTrace();
+            }
+        }
+    }
+
+    private final class IoLoop implements Runnable {
+        final Selector selector;
+        final Queue<SocketChannel> incoming = new ConcurrentLinkedQueue<>();
+        final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>(); // from payment workers, run on this thread
+
+        IoLoop(Selector selector) { this.selector = selector; }
+
+        void runOnLoop(Runnable task) {
+            tasks.add(task);
+            selector.wakeup();
+        }
+
+        @Override public void run() {
+            while (running) {
+                try {
+                    selector.select();
+                    SocketChannel ch;
+                    while ((ch = incoming.poll()) != null) {
+                        HttpConnection conn = new HttpConnection(ch, PaymentHttpServer.this, this::runOnLoop);
+                        conn.register(ch.register(selector, SelectionKey.OP_READ, conn));
+                    }
+                    Runnable task;
+                    while ((task = tasks.poll()) != null) task.run();
+                    Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                    while (it.hasNext()) {
+                        SelectionKey key = it.next();
+                        it.remove();
+                        HttpConnection conn = (HttpConnection) key.attachment();
+                        try {
+                            if (key.isReadable()) conn.onReadable();
+                            else if (key.isWritable()) conn.onWritable();
+                        } catch (IOException | RuntimeException e) {
+                            conn.close(); // peer reset or a broken connection; others carry on
+                        }
+                    }
+                } catch (IOException e) {
+                    if (running) e.printStackTrace();
+                }
+            }
+            for (SelectionKey key : selector.keys()) ((HttpConnection) key.attachment()).close();
+            try {
+                selector.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    // routes
+
+    // false if the answer comes later, through conn.resume
+    boolean handle(HttpRequest req, HttpResponse res, HttpConnection conn) {
+        requests.increment();
+        int mark = res.mark();
+        try {
+            return route(req, res, conn);
+        } catch (RuntimeException | IdempotencyException e) {
+            fail(res, mark, e, req.close);
+            return true;
+        }
+    }
+
+    private void fail(HttpResponse res, int mark, Throwable e, boolean close) {
+        if (e instanceof IllegalArgumentException) error(res, mark, 400, e.getMessage(), close);
+        else if (e instanceof IdempotencyException) error(res, mark, 409, e.getMessage(), close);
+        else if (e instanceof AdmissionRejectedException) error(res, mark, 429, e.getMessage(), close);
+        else if (e instanceof BankDownException) error(res, mark, 503, e.getMessage(), close);
+        else if (e instanceof IllegalStateException || e instanceof LimitExceededException) error(res, mark, 422, e.getMessage(), close);
+        else error(res, mark, 500, e.getClass().getSimpleName(), close);
+    }
+
+    void answerMalformed(HttpRequest req, HttpResponse res) {
+        requests.increment();
+        String message = req.error == 501 ? "chunked bodies are not supported"
+                : req.error == 400 ? "malformed request" : "request too large";
+        error(res, res.mark(), req.error, message, true);
+    }
+
+    private boolean route(HttpRequest req, HttpResponse res, HttpConnection conn) throws IdempotencyException {
+        if (req.pathEquals(PAYMENTS)) {
+            if (req.method != HttpRequest.POST) {
+                error(res, res.mark(), 405, "use POST", req.close);
+                return true;
+            }
+            createPayment(req, conn);
+            return false;
+        } else if (req.pathStartsWith(TRANSACTIONS)) {
+            if (req.method != HttpRequest.GET) {
+                error(res, res.mark(), 405, "use GET", req.close);
+                return true;
+            }
+            UUID id = req.uuid(req.pathStart + TRANSACTIONS.length, req.pathEnd);
+            Optional<Transaction> t = id == null ? Optional.empty() : txnService.getTransaction(id);
+            if (t.isEmpty()) {
+                error(res, res.mark(), 404, "transaction not found", req.close);
+                return true;
+            }
+            res.begin(200, req.close);
+            transaction(res, t.get());
+            res.end();
+        } else if (req.pathStartsWith(ACCOUNTS)) {
+            if (req.method != HttpRequest.GET) {
+                error(res, res.mark(), 405, "use GET", req.close);
+                return true;
+            }
+            int idStart = req.pathStart + ACCOUNTS.length, idEnd = idStart + 36;
+            UUID id = idEnd <= req.pathEnd ? req.uuid(idStart, idEnd) : null;
+            BankAccount acct = id == null ? null : acctService.findAccount(id).orElse(null);
+            if (acct == null) {
+                error(res, res.mark(), 404, "account not found", req.close);
+                return true;
+            }
+            int suffixLength = req.pathEnd - idEnd;
+            if (suffixLength == BALANCE.length && regionMatches(req, idEnd, BALANCE)) {
+                balance(res, acct, req.close);
+            } else if (suffixLength == HISTORY.length && regionMatches(req, idEnd, HISTORY)) {
+                long limit = req.queryValue(LIMIT) ? req.longValue() : DEFAULT_HISTORY;
+                if (limit < 0) throw new IllegalArgumentException("limit must be a number");
+                history(res, acct, (int) Math.min(limit, MAX_HISTORY), req.close);
+            } else {
+                error(res, res.mark(), 404, "not found", req.close);
+            }
+        } else {
+            error(res, res.mark(), 404, "not found", req.close);
+        }
+        return true;
+    }
+
+    // the form is read here, on the I/O thread (the request buffer is reused); the payment is made by a worker
+    private void createPayment(HttpRequest req, HttpConnection conn) {
+        if (!req.formValue(KEY) || req.valueStart == req.valueEnd) throw new IllegalArgumentException("key is required");
+        String key = req.stringValue();
+        UUID from = req.formValue(FROM) ? req.uuidValue() : null;
+        if (from == null) throw new IllegalArgumentException("from must be an account id");
+        UUID to = null;
+        if (req.formValue(TO) && req.valueStart < req.valueEnd) {
+            to = req.uuidValue();
+            if (to == null) throw new IllegalArgumentException("to must be an account id");
+        }
+        if (!req.formValue(TO_IDENTIFIER)) throw new IllegalArgumentException("toIdentifier is required");
+        String toIdentifier = req.stringValue();
+        BigDecimal amount = req.formValue(AMOUNT) ? req.amountValue() : null;
+        if (amount == null) throw new IllegalArgumentException("amount must be a decimal with at most two fraction digits");
+
+        UUID payee = to;
+        boolean close = req.close;
+        paymentWorkers.execute(() -> {
+            Transaction t = null;
+            Throwable failure = null;
+            try {
+                t = txnService.createPayment(key, from, payee, toIdentifier, amount);
+            } catch (Throwable e) {
+                failure = e;
+            }
+            Transaction made = t;
+            Throwable failed = failure;
+            conn.resume(res -> {
+                int mark = res.mark();
+                if (failed != null) {
+                    fail(res, mark, failed, close);
+                    return;
+                }
+                res.begin(201, close);
+                transaction(res, made);
+                res.end();
+            });
+        });
+    }
+
+    private void balance(HttpResponse res, BankAccount acct, boolean close) {
+        BigDecimal[] pair = acct.readConsistent(a -> new BigDecimal[]{a.getBalance(), a.getReserved()});
+        BigDecimal balance = pair[0], reserved = pair[1];
+        res.begin(200, close);
+        res.objectStart()
+                .field(ACCOUNT).uuid(acct.id)
+                .field(BALANCE_FIELD).money(balance)
+                .field(RESERVED).money(reserved)
+                .field(AVAILABLE).money(balance.subtract(reserved))
+                .objectEnd();
+        res.end();
+    }
+
+    // the account's latest transactions, newest first, up to limit
+    private void history(HttpResponse res, BankAccount acct, int limit, boolean close) {
+        res.begin(200, close);
+        res.objectStart().field(ACCOUNT).uuid(acct.id).field(ITEMS).arrayStart();
+        for (Transaction t : txnService.recentByUserAccount(acct.id, limit)) transaction(res.element(), t);
+        res.arrayEnd().objectEnd();
+        res.end();
+    }
+
+    private static void transaction(HttpResponse res, Transaction t) {
+        res.objectStart()
+                .field(ID).uuid(t.id)
+                .field(STATUS).string(STATUS_NAMES[t.status.ordinal()])
+                .field(AMOUNT).money(t.amount)
+                .field(FROM).uuid(t.fromAccountId)
+                .field(TO).uuid(t.toAccountId)
+                .field(TO_IDENTIFIER).string(t.toIdentifier)
+                .field(PSP_TXN_ID).string(t.pspTxnId)
+                .field(ERROR).string(t.getErrorCode())
+                .field(CREATED_AT).number(t.createdAt.toEpochMilli())
+                .field(UPDATED_AT).number(t.updatedAt.toEpochMilli())
+                .objectEnd();
+    }
+
+    private void error(HttpResponse res, int mark, int status, String message, boolean close) {
+        errors.increment();
+        res.reset(mark);
+        res.begin(status, close);
+        res.objectStart().field(ERROR).string(message == null ? "" : message).objectEnd();
+        res.end();
+    }
+
+    private static boolean regionMatches(HttpRequest req, int from, byte[] s) {
+        for (int i = 0; i < s.length; i++) if (req.buf[from + i] != s[i]) return false;
+        return true;
+    }
+
+    private static Thread daemon(Runnable r, String name) {
+        Thread t = new Thread(r, name);
+        t.setDaemon(true);
+        return t;
+    }
+}
@@ -0,0 +1,38 @@
+package service;
+
+import models.BankAccount;
+
+import java.util.Collection;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
+
+/*
+  Gives BankAccountService exclusive write access to accounts. Actions run with no other
+  writer on the account, so they use the BankAccount *Owned mutators. Unknown account ids fail
+  with IllegalArgumentException("account not found"); exceptions thrown by an action reach the
+  caller unchanged.
+*/
+public interface AccountExecutor {
+
+    // run the action on the account and wait for it
+    void execute(UUID accountId, Consumer<BankAccount> action);
+
+    // run the action on the account without waiting; chained stages may run on the executor's threads
+    CompletableFuture<Void> submit(UUID accountId, Consumer<BankAccount> action);
+
+    // run the action once per account (unknown ids are skipped), with exclusive access to all of them, and wait
+    void executeAll(Collection<UUID> accountIds, Consumer<BankAccount> action);
+
+    // wait for a submitted action, rethrowing its own exception rather than the CompletionException wrapper
+    static void await(CompletableFuture<?> f) {
+        try {
+            f.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            if (e.getCause() instanceof Error) throw (Error) e.getCause();
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package service;
+
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bank health registry driven by observed PSP outcomes. Each bank gets a circuit breaker fed by a
+ * sliding window of call counts, failures and slow calls:
+ * - CLOSED: traffic flows; trips to OPEN once the window has enough calls and the failure or
+ *   slow-call rate crosses its threshold
+ * - OPEN: isDown() is true until openDuration has passed, then the circuit goes HALF_OPEN
+ * - HALF_OPEN: tryAcquireProbe() lets a few probe payments through; enough successes close the
+ *   circuit, a failure or slow call re-opens it. Only outcomes recorded as probes count here:
+ *   status queries and calls started before the trip are ignored
+ * markDown/markUp still work as a manual override on top of the automatic state.
+ * isDown() only reads state, so pre-checks and pollers do not use up probes; tryAcquireProbe()
+ * is called once per payment sent. Both are lock-free (volatile reads and CAS only).
+ */
+public class AdaptiveBankHealthRegistry implements BankHealthRegistry {
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final ConcurrentMap<UUID, Circuit> circuits = new ConcurrentHashMap<>();
+    // bucket epochs are counted from here so they are always >= 1 (0 marks an unused bucket)
+    private final long originNanos = System.nanoTime();
+
+    // config
+    private final long bucketNanos;
+    private final int buckets;
+    private final int minCalls;
+    private final double failureRateThreshold;
+    private final long slowCallNanos;
+    private final double slowCallRateThreshold;
+    private final long openNanos;
+    private final int halfOpenProbes;
+
+    public AdaptiveBankHealthRegistry() {
+        this(Duration.ofSeconds(10), 10, 20, 0.5, Duration.ofSeconds(2), 0.8, Duration.ofSeconds(5), 3);
+    }
+
+    public AdaptiveBankHealthRegistry(Duration window, int buckets, int minCalls, double failureRateThreshold,
+                                      Duration slowCall, double slowCallRateThreshold,
+                                      Duration openDuration, int halfOpenProbes) {
+        if (buckets <= 0 || minCalls <= 0 || halfOpenProbes <= 0) throw new IllegalArgumentException("counts must be > 0");
+        this.buckets = buckets;
+        this.bucketNanos = Math.max(1, window.toNanos() / buckets);
+        this.minCalls = minCalls;
+        this.failureRateThreshold = failureRateThreshold;
+        this.slowCallNanos = slowCall.toNanos();
+        this.slowCallRateThreshold = slowCallRateThreshold;
+        this.openNanos = openDuration.toNanos();
+        this.halfOpenProbes = halfOpenProbes;
+    }
+
+    @Override
+    public boolean isDown(UUID bankId) {
+        if (bankId == null) return false;
+        Circuit c = circuits.get(bankId);
+        return c != null && c.isDown(System.nanoTime());
+    }
+
+    @Override
+    public boolean tryAcquireProbe(UUID bankId) {
+        if (bankId == null) return true;
+        Circuit c = circuits.get(bankId);
+        return c == null || c.allowRequest(System.nanoTime());
+    }
+
+    @Override
+    public boolean isFullyUp(UUID bankId) {
+        if (bankId == null) return true;
+        Circuit c = circuits.get(bankId);
+        return c == null || (!c.forcedDown && c.state.get() == Circuit.CLOSED);
+    }
+
+    @Override
+    public void markDown(UUID bankId) {
+        if (bankId != null) circuit(bankId).forcedDown = true;
+    }
+
+    @Override
+    public void markUp(UUID bankId) {
+        if (bankId == null) return;
+        Circuit c = circuit(bankId);
+        c.forcedDown = false;
+        c.close();
+    }
+
+    @Override
+    public void recordOutcome(UUID bankId, long latencyNanos, boolean failed) {
+        recordOutcome(bankId, latencyNanos, failed, false);
+    }
+
+    @Override
+    public void recordOutcome(UUID bankId, long latencyNanos, boolean failed, boolean probe) {
+        if (bankId == null) return;
+        circuit(bankId).record(System.nanoTime(), latencyNanos, failed, probe);
+    }
+
+    public State getState(UUID bankId) {
+        Circuit c = circuits.get(bankId);
+        return c == null ? State.CLOSED : State.values()[c.state.get()];
+    }
+
+    private long epochOf(long nanos) {
+        return (nanos - originNanos) / bucketNanos + 1;
+    }
+
+    private Circuit circuit(UUID bankId) {
+        Circuit c = circuits.get(bankId);
+        return c != null ? c : circuits.computeIfAbsent(bankId, id -> new Circuit());
+    }
+
+    private final class Circuit {
+        private static final int CLOSED = 0, OPEN = 1, HALF_OPEN = 2;
+        // per bucket: [epoch, calls, failures, slow]
+        private static final int STRIDE = 4;
+
+        final AtomicInteger state = new AtomicInteger(CLOSED);
+        final AtomicLongArray window = new AtomicLongArray(buckets * STRIDE);
+        final AtomicInteger probePermits = new AtomicInteger();
+        final AtomicInteger probeSuccesses = new AtomicInteger();
+        final AtomicLong stateSince = new AtomicLong(System.nanoTime());
+        volatile boolean forcedDown;
+
+        // what allowRequest would answer, without taking a probe or moving the state
+        boolean isDown(long now) {
+            if (forcedDown) return true;
+            int s = state.get();
+            if (s == CLOSED) return false;
+            long since = stateSince.get();
+            if (s == OPEN) return now - since < openNanos;
+            return probePermits.get() <= 0 && now - since < openNanos; // stale probes are re-issued
+        }
+
+        boolean allowRequest(long now) {
+            if (forcedDown) return false;
+            int s = state.get();
+            if (s == CLOSED) return true;
+            long since = stateSince.get();
+            if (s == OPEN) {
+                if (now - since < openNanos) return false;
+                if (state.compareAndSet(OPEN, HALF_OPEN)) startProbing(now);
+            } else if (now - since >= openNanos && probePermits.get() <= 0
+                    && stateSince.compareAndSet(since, now)) {
+                // probes were handed out but never reported (e.g. payment rejected later): re-issue
+                probePermits.set(halfOpenProbes);
+            }
+            return probePermits.getAndDecrement() > 0;
+        }
+
+        void record(long now, long latencyNanos, boolean failed, boolean probe) {
+            boolean slow = latencyNanos >= slowCallNanos;
+            int s = state.get();
+            if (s == HALF_OPEN) {
+                if (!probe) return; // not a probe: says nothing about the recovery
+                if (failed || slow) trip(HALF_OPEN, now);
+                else if (probeSuccesses.incrementAndGet() >= halfOpenProbes) close();
+                return;
+            }
+            if (s == OPEN) return; // stragglers from before the trip
+            add(now, failed, slow);
+            long calls = 0, failures = 0, slowCalls = 0;
+            long epoch = epochOf(now);
+            for (int i = 0; i < buckets; i++) {
+                int base = i * STRIDE;
+                if (epoch - window.get(base) >= buckets) continue;
+                calls += window.get(base + 1);
+                failures += window.get(base + 2);
+                slowCalls += window.get(base + 3);
+            }
+            if (calls >= minCalls && (failures >= calls * failureRateThreshold || slowCalls >= calls * slowCallRateThreshold)) {
+                trip(CLOSED, now);
+            }
+        }
+
+        private void add(long now, boolean failed, boolean slow) {
+            long epoch = epochOf(now);
+            int base = (int) (epoch % buckets) * STRIDE;
+            long cur = window.get(base);
+            if (cur != epoch && window.compareAndSet(base, cur, epoch)) {
+                // stale bucket: whoever wins the CAS clears it; a racing increment may be lost, which is fine for health stats
+                window.set(base + 1, 0); window.set(base + 2, 0); window.set(base + 3, 0);
+            }
+            window.incrementAndGet(base + 1);
+            if (failed) window.incrementAndGet(base + 2);
+            if (slow) window.incrementAndGet(base + 3);
+        }
+
+        private void trip(int from, long now) {
+            if (state.compareAndSet(from, OPEN)) stateSince.set(now);
+        }
+
+        private void startProbing(long now) {
+            probeSuccesses.set(0);
+            probePermits.set(halfOpenProbes);
+            stateSince.set(now);
+        }
+
+        void close() {
+            for (int i = 0; i < window.length(); i++) window.set(i, 0);
+            state.set(CLOSED);
+            stateSince.set(System.nanoTime());
+        }
+    }
+}
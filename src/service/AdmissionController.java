@@ -0,0 +1,127 @@
+package service;
+
+import enums.RejectionReason;
+import exception.AdmissionRejectedException;
+
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Admission control in front of the async PSP executor. A payment is admitted only if
+ * - the number of admitted-but-unfinished payments is below maxInFlight,
+ * - the payer's and the source bank's token buckets have a token, and
+ * - the executor is not shedding load: while tasks are queued and the smoothed queue wait is
+ *   above the target, new payments are refused.
+ * Checks run before funds are reserved; every refusal throws AdmissionRejectedException and bumps
+ * a per-reason counter.
+ */
+public class AdmissionController {
+
+    private final int maxInFlight;
+    private final double payerPermitsPerSecond;
+    private final int payerBurst;
+    private final double bankPermitsPerSecond;
+    private final int bankBurst;
+    private final long queueWaitTargetNanos;
+    private final int maxTrackedPayers;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger queued = new AtomicInteger();
+    private volatile long queueWaitEwmaNanos;
+
+    private final ConcurrentMap<UUID, TokenBucket> payerBuckets = new ConcurrentHashMap<>();
+    private final ConcurrentMap<UUID, TokenBucket> bankBuckets = new ConcurrentHashMap<>();
+    private final IdleSweeper<TokenBucket> payerSweeper = new IdleSweeper<>(payerBuckets);
+
+    private final LongAdder admitted = new LongAdder();
+    private final LongAdder[] rejected = new LongAdder[RejectionReason.values().length];
+
+    public AdmissionController(int maxInFlight,
+                               double payerPermitsPerSecond, int payerBurst,
+                               double bankPermitsPerSecond, int bankBurst,
+                               Duration queueWaitTarget) {
+        if (maxInFlight <= 0) throw new IllegalArgumentException("maxInFlight must be > 0");
+        this.maxInFlight = maxInFlight;
+        this.payerPermitsPerSecond = payerPermitsPerSecond;
+        this.payerBurst = payerBurst;
+        this.bankPermitsPerSecond = bankPermitsPerSecond;
+        this.bankBurst = bankBurst;
+        this.queueWaitTargetNanos = queueWaitTarget.toNanos();
+        this.maxTrackedPayers = 100_000;
+        for (int i = 0; i < rejected.length; i++) rejected[i] = new LongAdder();
+    }
+
+    /**
+     * Admit one payment or throw. On success the caller owns an in-flight slot and must call
+     * {@link #release()} exactly once.
+     */
+    public void admit(UUID payerId, UUID bankId) {
+        long now = System.nanoTime();
+        if (queued.get() > 0 && queueWaitEwmaNanos > queueWaitTargetNanos) {
+            reject(RejectionReason.LOAD_SHED, "PSP queue wait above target, shedding load");
+        }
+        // payer first, so a payer over its own rate never takes a shared slot or bank token; whatever
+        // was taken is given back when a later check refuses the payment
+        TokenBucket payer = null;
+        if (payerId != null && payerPermitsPerSecond > 0) {
+            payer = payerBucket(payerId, now);
+            if (!payer.tryAcquire(now)) reject(RejectionReason.PAYER_RATE_LIMIT, "payer rate limit exceeded");
+        }
+        if (inFlight.incrementAndGet() > maxInFlight) {
+            inFlight.decrementAndGet();
+            if (payer != null) payer.refund();
+            reject(RejectionReason.IN_FLIGHT_LIMIT, "too many payments in flight");
+        }
+        if (bankId != null && bankPermitsPerSecond > 0
+                && !bankBuckets.computeIfAbsent(bankId, id -> new TokenBucket(bankPermitsPerSecond, bankBurst)).tryAcquire(now)) {
+            inFlight.decrementAndGet();
+            if (payer != null) payer.refund();
+            reject(RejectionReason.BANK_RATE_LIMIT, "bank rate limit exceeded");
+        }
+        admitted.increment();
+    }
+
+    public void release() {
+        inFlight.decrementAndGet();
+    }
+
+    // executor hooks: measure how long PSP tasks wait in the queue
+    public void taskQueued() {
+        queued.incrementAndGet();
+    }
+
+    public void taskStarted(long queueWaitNanos) {
+        queued.decrementAndGet();
+        long cur = queueWaitEwmaNanos;
+        // racy EWMA (alpha = 1/8); a lost update only delays the signal slightly
+        queueWaitEwmaNanos = cur + ((queueWaitNanos - cur) >> 3);
+    }
+
+    public void taskAbandoned() {
+        queued.decrementAndGet();
+    }
+
+    // metrics
+    public long getAdmittedCount() { return admitted.sum(); }
+    public long getRejectedCount(RejectionReason reason) { return rejected[reason.ordinal()].sum(); }
+    public int getInFlight() { return inFlight.get(); }
+    public int getQueued() { return queued.get(); }
+    public long getQueueWaitEwmaNanos() { return queueWaitEwmaNanos; }
+
+    private void reject(RejectionReason reason, String message) {
+        rejected[reason.ordinal()].increment();
+        throw new AdmissionRejectedException(reason, message);
+    }
+
+    private TokenBucket payerBucket(UUID payerId, long now) {
+        TokenBucket b = payerBuckets.get(payerId);
+        if (b != null) return b;
+        // full buckets carry no state, so they can be dropped and recreated on demand
+        if (payerBuckets.size() >= maxTrackedPayers) payerSweeper.sweep(old -> old.isIdle(now));
+        return payerBuckets.computeIfAbsent(payerId, id -> new TokenBucket(payerPermitsPerSecond, payerBurst));
+    }
+}
@@ -1,26 +1,47 @@
 package service;
 
 import enums.AccountStatus;
+import enums.PaymentEventType;
 import enums.UserStatus;
+import events.PaymentEventBus;
 import lock.LockManager;
+import models.BalanceSnapshot;
 import models.BankAccount;
 import models.User;
 import repository.BankAccountRepository;
 import repository.UserRepository;
 
 import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.UUID;
-import java.util.concurrent.locks.Lock;
+import java.util.concurrent.CompletableFuture;
 
 public class BankAccountService {
 
     private final BankAccountRepository acctRepo;
     private final UserRepository userRepo;
     private final LockManager lockManager;
+    private final PaymentEventBus events; // optional, null = no balance events
+    private final ThreadLocal<BalanceEvents> outboxes;
+    private final AccountExecutor accountExecutor; // how balance mutations get exclusive access
 
     public BankAccountService(BankAccountRepository acctRepo, UserRepository userRepo, LockManager lockManager) {
-        this.acctRepo = acctRepo; this.userRepo = userRepo; this.lockManager = lockManager;
+        this(acctRepo, userRepo, lockManager, null);
+    }
+
+    public BankAccountService(BankAccountRepository acctRepo, UserRepository userRepo, LockManager lockManager, PaymentEventBus events) {
+        this(acctRepo, userRepo, lockManager, events, new LockingAccountExecutor(acctRepo, lockManager));
+    }
+
+    public BankAccountService(BankAccountRepository acctRepo, UserRepository userRepo, LockManager lockManager,
+                              PaymentEventBus events, AccountExecutor accountExecutor) {
+        this.acctRepo = acctRepo; this.userRepo = userRepo; this.lockManager = lockManager; this.events = events;
+        this.outboxes = ThreadLocal.withInitial(() -> new BalanceEvents(events));
+        this.accountExecutor = accountExecutor;
     }
 
     public BankAccount linkBankAccount(UUID userId, UUID bankId, String accountNumber, BigDecimal initialBalance) {
@@ -35,60 +56,265 @@ public class BankAccountService {
         acctRepo.setPrimary(userId, accountId);
     }
 
+    /**
+     * Change an account's status without taking its lock: compare-and-set on the version read,
+     * retrying on conflict with concurrent writers.
+     */
+    public void changeStatus(UUID accountId, AccountStatus status) {
+        BankAccount acct = acctRepo.findById(accountId).orElseThrow(() -> new IllegalArgumentException("account not found"));
+        for (int attempt = 0; !acctRepo.compareAndUpdate(accountId, acct.getVersion(), a -> a.status = status); attempt++) {
+            BankAccount.backoff(attempt);
+        }
+    }
+
     public void validateActive(UUID accountId) {
         BankAccount acct = acctRepo.findById(accountId).orElseThrow(() -> new IllegalArgumentException("account not found"));
         if (acct.status != AccountStatus.ACTIVE) throw new IllegalStateException("account is not active");
     }
 
-    // Reserve amount with account-level lock
+    // Reserve amount with exclusive access to the account (its lock, or its partition's thread)
     public void reserve(UUID accountId, BigDecimal amount) {
-        Lock lock = lockManager.getLockForAccount(accountId);
-        lock.lock();
+        BalanceEvents out = outbox();
         try {
-            BankAccount acct = acctRepo.findById(accountId).orElseThrow(() -> new IllegalArgumentException("account not found"));
-            acct.reserve(amount);
-            acctRepo.update(acct);
+            accountExecutor.execute(accountId, acct -> {
+                acct.reserveOwned(amount);
+                acctRepo.update(acct);
+                out.add(PaymentEventType.FUNDS_RESERVED, acct, amount);
+            });
         } finally {
-            lock.unlock();
+            out.publish();
         }
     }
 
-    public void release(UUID accountId, BigDecimal amount) {
-        Lock lock = lockManager.getLockForAccount(accountId);
-        lock.lock();
+    /**
+     * Reserve many amounts with exclusive access to all the source accounts at once (one ordered
+     * lock acquisition, or one message per partition). Each source first tries to reserve its
+     * total in one step; if that fails the items are reserved one by one in order, so some may
+     * succeed and others not. Returns, per source account, which of its amounts were reserved.
+     */
+    public Map<UUID, boolean[]> reserveBatch(Map<UUID, List<BigDecimal>> amountsBySource) {
+        // filled in before any action runs, then only read, so it is safe to share with partition threads
+        Map<UUID, boolean[]> reserved = new HashMap<>();
+        for (Map.Entry<UUID, List<BigDecimal>> e : amountsBySource.entrySet()) reserved.put(e.getKey(), new boolean[e.getValue().size()]);
+        BalanceEvents out = outbox();
         try {
-            BankAccount acct = acctRepo.findById(accountId).orElseThrow(() -> new IllegalArgumentException("account not found"));
-            acct.releaseReserved(amount);
+            reserveAll(amountsBySource, reserved, out);
+        } finally {
+            out.publish();
+        }
+        return reserved;
+    }
+
+    private void reserveAll(Map<UUID, List<BigDecimal>> amountsBySource, Map<UUID, boolean[]> reserved, BalanceEvents out) {
+        accountExecutor.executeAll(amountsBySource.keySet(), acct -> {
+            List<BigDecimal> amounts = amountsBySource.get(acct.id);
+            boolean[] ok = reserved.get(acct.id);
+            BigDecimal total = BigDecimal.ZERO;
+            for (BigDecimal a : amounts) total = total.add(a);
+            try {
+                acct.reserveOwned(total);
+                Arrays.fill(ok, true);
+                out.add(PaymentEventType.FUNDS_RESERVED, acct, total);
+            } catch (RuntimeException all) {
+                // partial: reserve item by item until funds run out
+                for (int i = 0; i < ok.length; i++) {
+                    try {
+                        acct.reserveOwned(amounts.get(i));
+                        ok[i] = true;
+                        out.add(PaymentEventType.FUNDS_RESERVED, acct, amounts.get(i));
+                    } catch (RuntimeException one) {
+                        // leave ok[i] false
+                    }
+                }
+            }
             acctRepo.update(acct);
+        });
+    }
+
+    public void release(UUID accountId, BigDecimal amount) {
+        BalanceEvents out = outbox();
+        try {
+            accountExecutor.execute(accountId, acct -> {
+                acct.releaseReservedOwned(amount);
+                acctRepo.update(acct);
+                out.add(PaymentEventType.FUNDS_RELEASED, acct, amount);
+            });
+        } finally {
+            out.publish();
+        }
+    }
+
+    /**
+     * Release amount only if the account's reserved amount is still exactly expectedReserved,
+     * checked with exclusive access: for corrections decided on an earlier read. Returns whether
+     * it released.
+     */
+    public boolean releaseIfReserved(UUID accountId, BigDecimal expectedReserved, BigDecimal amount) {
+        boolean[] released = new boolean[1];
+        BalanceEvents out = outbox();
+        try {
+            accountExecutor.execute(accountId, acct -> {
+                if (acct.getReserved().compareTo(expectedReserved) != 0) return;
+                acct.releaseReservedOwned(amount);
+                acctRepo.update(acct);
+                out.add(PaymentEventType.FUNDS_RELEASED, acct, amount);
+                released[0] = true;
+            });
         } finally {
-            lock.unlock();
+            out.publish();
         }
+        return released[0];
     }
 
     public void settle(UUID accountId, BigDecimal amount) {
-        Lock lock = lockManager.getLockForAccount(accountId);
-        lock.lock();
+        BalanceEvents out = outbox();
         try {
-            BankAccount acct = acctRepo.findById(accountId).orElseThrow(() -> new IllegalArgumentException("account not found"));
-            acct.settle(amount);
-            acctRepo.update(acct);
+            accountExecutor.execute(accountId, acct -> {
+                acct.settleOwned(amount);
+                acctRepo.update(acct);
+                out.add(PaymentEventType.FUNDS_SETTLED, acct, amount);
+            });
         } finally {
-            lock.unlock();
+            out.publish();
         }
     }
 
     // credit a destination account (internal)
     public void credit(UUID accountId, BigDecimal amount) {
-        Lock lock = lockManager.getLockForAccount(accountId);
-        lock.lock();
+        BalanceEvents out = outbox();
         try {
-            BankAccount acct = acctRepo.findById(accountId).orElseThrow(() -> new IllegalArgumentException("account not found"));
-            acct.credit(amount);
+            accountExecutor.execute(accountId, acct -> {
+                acct.creditOwned(amount);
+                acctRepo.update(acct);
+                out.add(PaymentEventType.FUNDS_CREDITED, acct, amount);
+            });
+        } finally {
+            out.publish();
+        }
+    }
+
+    /**
+     * Complete a transfer: settle the payer's reserved amount, then credit the payee (if
+     * internal). Two separate steps, never holding both accounts; with a partitioned executor
+     * the credit is a message sent by the payer's partition once the settle succeeded.
+     * The payee must exist and be active, checked before anything moves. If the credit still
+     * fails (the payee was deactivated in between), the amount goes back to the payer's reserved
+     * and the credit's exception is thrown: either both sides move or neither does.
+     */
+    public void settleAndCredit(UUID fromAccountId, UUID toAccountId, BigDecimal amount) {
+        if (toAccountId == null) {
+            settle(fromAccountId, amount);
+            return;
+        }
+        validateActive(toAccountId);
+        // in between, the amount is in transit, so balance snapshots still add up
+        BalanceEvents out = outbox();
+        CompletableFuture<Void> settled = accountExecutor.submit(fromAccountId, acct -> {
+            acctRepo.settleToTransit(acct, amount);
             acctRepo.update(acct);
+            out.add(PaymentEventType.FUNDS_SETTLED, acct, amount);
+        });
+        try {
+            try {
+                AccountExecutor.await(settled.thenCompose(v -> accountExecutor.submit(toAccountId, acct -> {
+                    if (acct.status != AccountStatus.ACTIVE) throw new IllegalStateException("account is not active");
+                    acctRepo.creditFromTransit(acct, fromAccountId, amount);
+                    acctRepo.update(acct);
+                    out.add(PaymentEventType.FUNDS_CREDITED, acct, amount);
+                })));
+            } finally {
+                out.publish();
+            }
+        } catch (RuntimeException e) {
+            if (settled.isDone() && !settled.isCompletedExceptionally()) returnToPayer(fromAccountId, amount);
+            throw e;
+        }
+    }
+
+    // undo a settle whose credit failed: out of transit back into the payer's balance, reserved again
+    private void returnToPayer(UUID fromAccountId, BigDecimal amount) {
+        BalanceEvents out = outbox();
+        try {
+            accountExecutor.execute(fromAccountId, acct -> {
+                acctRepo.creditFromTransit(acct, fromAccountId, amount);
+                out.add(PaymentEventType.FUNDS_CREDITED, acct, amount);
+                acct.reserveOwned(amount); // not short: the credit just added amount; throws only if the payer was deactivated
+                acctRepo.update(acct);
+                out.add(PaymentEventType.FUNDS_RESERVED, acct, amount);
+            });
         } finally {
-            lock.unlock();
+            out.publish();
         }
     }
 
+    // whether balance events go to bus (for consumers that rely on seeing every mutation)
+    boolean publishesTo(PaymentEventBus bus) { return bus != null && events == bus; }
+
+    /** Consistent balances of all accounts (see BalanceSnapshot); close when done. */
+    public BalanceSnapshot snapshotBalances() { return acctRepo.snapshot(); }
+
     public List<BankAccount> getAccountsForUser(UUID userId) { return acctRepo.findByUserId(userId); }
+    public Optional<BankAccount> findAccount(UUID accountId) { return acctRepo.findById(accountId); }
+
+    // this thread's outbox, or a shared no-op one when there is no bus
+    private BalanceEvents outbox() {
+        if (events == null) return BalanceEvents.NONE;
+        BalanceEvents out = outboxes.get();
+        if (out.inUse) return new BalanceEvents(events); // re-entered before the thread's outbox was published
+        out.inUse = true;
+        return out;
+    }
+
+    /**
+     * One operation's balance events. add() runs with exclusive access to the account and claims
+     * the event's place on the bus, so an account's events keep mutation order; publish() runs
+     * once the account is let go, so a BLOCK bus waiting on a slow subscriber never holds an
+     * account (or a partition thread). publish() must run even if the operation failed: every
+     * claimed place has to be filled. Each thread reuses one outbox: claimed seqs and the events'
+     * fields sit in arrays that only grow, so steady state adds no garbage per event.
+     */
+    private static final class BalanceEvents {
+        static final BalanceEvents NONE = new BalanceEvents(null);
+        // per event: type, accountId, amount, balanceAfter, reservedAfter
+        private static final int REFS = 5;
+
+        private final PaymentEventBus bus;
+        private long[] seqs = new long[4];
+        private Object[] refs = new Object[4 * REFS];
+        private int size;
+        boolean inUse;
+
+        BalanceEvents(PaymentEventBus bus) { this.bus = bus; }
+
+        void add(PaymentEventType type, BankAccount acct, BigDecimal amount) {
+            if (bus == null) return;
+            // synchronized: executeAll may run one operation's accounts on several partition threads
+            synchronized (this) {
+                long seq = bus.claimBalance(acct.id);
+                if (seq < 0) return;
+                if (size == seqs.length) {
+                    seqs = Arrays.copyOf(seqs, size * 2);
+                    refs = Arrays.copyOf(refs, size * 2 * REFS);
+                }
+                seqs[size] = seq;
+                int r = size++ * REFS;
+                refs[r] = type; refs[r + 1] = acct.id; refs[r + 2] = amount;
+                refs[r + 3] = acct.getBalance(); refs[r + 4] = acct.getReserved();
+            }
+        }
+
+        void publish() {
+            if (bus == null) return;
+            synchronized (this) {
+                for (int i = 0; i < size; i++) {
+                    int r = i * REFS;
+                    bus.publishBalance(seqs[i], (PaymentEventType) refs[r], (UUID) refs[r + 1],
+                            (BigDecimal) refs[r + 2], (BigDecimal) refs[r + 3], (BigDecimal) refs[r + 4]);
+                }
+                Arrays.fill(refs, 0, size * REFS, null); // do not keep accounts' amounts alive
+                size = 0;
+                inUse = false;
+            }
+        }
+    }
 }
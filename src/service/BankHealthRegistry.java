@@ -8,10 +8,22 @@ import java.util.UUID;
  */
 public interface BankHealthRegistry {
     /**
-     * Returns true if the bank is currently considered down/unavailable.
+     * Returns true if the bank is currently considered down/unavailable. Read-only: safe to poll.
      */
     boolean isDown(UUID bankId);
 
+    /**
+     * Like !isDown, but for a payment about to be sent to the PSP: a recovering bank lets only a
+     * few probe payments through, and this claims one. Report the call with recordOutcome.
+     */
+    default boolean tryAcquireProbe(UUID bankId) { return !isDown(bankId); }
+
+    /**
+     * True when the bank takes all traffic: not down and not recovering. A payment sent to a bank
+     * that is not fully up must claim a probe (tryAcquireProbe). Read-only.
+     */
+    default boolean isFullyUp(UUID bankId) { return !isDown(bankId); }
+
     /**
      * Mark bank as down (for testing/admin).
      */
@@ -21,4 +33,20 @@ public interface BankHealthRegistry {
      * Mark bank as up (available).
      */
     void markUp(UUID bankId);
+
+    /**
+     * Feed the outcome of a PSP call made on behalf of this bank: failed means no usable answer
+     * (transport error, timeout), not a decline. Registries that only support manual up/down
+     * ignore it.
+     */
+    default void recordOutcome(UUID bankId, long latencyNanos, boolean failed) { }
+
+    /**
+     * recordOutcome for a call that may have claimed a probe: only probe calls decide whether a
+     * recovering bank closes again, any other call made meanwhile (status queries, payments sent
+     * before the trip) is ignored until then.
+     */
+    default void recordOutcome(UUID bankId, long latencyNanos, boolean failed, boolean probe) {
+        recordOutcome(bankId, latencyNanos, failed);
+    }
 }
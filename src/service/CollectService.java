@@ -0,0 +1,234 @@
+package service;
+
+import enums.CollectStatus;
+import exception.IdempotencyException;
+import models.BankAccount;
+import models.CollectRequest;
+import models.Transaction;
+import models.User;
+import repository.BankAccountRepository;
+import repository.CollectRequestRepository;
+import repository.UserRepository;
+import scheduling.HierarchicalTimingWheel;
+
+import java.math.BigDecimal;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collect (pull) payments: a payee asks a payer, found by phone, for an amount; the payer
+ * approves it from one of their accounts, declines it, or lets it expire.
+ * Approving makes the payment with createPayment and the request id as idempotency key, so an
+ * approval repeated (or raced) yields the same transaction. If the payment cannot be made (bank
+ * down, not admitted, ...) the request is pending again until it expires.
+ * Pending requests sit in a timing wheel by expiry; a tick expires the ones due, so expiring
+ * millions of outstanding requests costs work only for those that actually expire.
+ */
+public class CollectService {
+    private static final int WHEEL_LEVELS = 3;
+    private static final int WHEEL_BITS = 8;
+    private static final int SAVE_WAIT_YIELDS = 1000;
+
+    private final CollectRequestRepository collects;
+    private final UserRepository userRepo;
+    private final BankAccountRepository acctRepo;
+    private final TransactionService txnService;
+    private final Clock clock; // the TransactionService's
+    private final Duration defaultExpiry;
+    private final long tickMillis;
+    private final HierarchicalTimingWheel expiry;
+    private final ScheduledExecutorService ticker;
+    private int[] due = new int[1024]; // guarded by this
+
+    private final LongAdder created = new LongAdder();
+    private final LongAdder approved = new LongAdder();
+    private final LongAdder declined = new LongAdder();
+    private final LongAdder expired = new LongAdder();
+
+    public CollectService(CollectRequestRepository collects, UserRepository userRepo, BankAccountRepository acctRepo,
+                          TransactionService txnService) {
+        this(collects, userRepo, acctRepo, txnService, Duration.ofMinutes(30), Duration.ofSeconds(1));
+    }
+
+    public CollectService(CollectRequestRepository collects, UserRepository userRepo, BankAccountRepository acctRepo,
+                          TransactionService txnService, Duration defaultExpiry, Duration tick) {
+        this.collects = collects;
+        this.userRepo = userRepo;
+        this.acctRepo = acctRepo;
+        this.txnService = txnService;
+        this.clock = txnService.clock();
+        this.defaultExpiry = defaultExpiry;
+        this.tickMillis = Math.max(1, tick.toMillis());
+        this.expiry = new HierarchicalTimingWheel(tickMillis, WHEEL_LEVELS, WHEEL_BITS, clock.millis(),
+                slot -> collects.get(slot).expiresAt.toEpochMilli());
+        this.ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "collect-expiry");
+            t.setDaemon(true);
+            return t;
+        });
+        for (int slot = 0, count = collects.slotCount(); slot < count; slot++) {
+            CollectRequest r = collects.get(slot);
+            if (r != null && r.status == CollectStatus.PENDING) expiry.schedule(slot);
+        }
+    }
+
+    public void start() {
+        ticker.scheduleWithFixedDelay(this::expireDue, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public void stop() {
+        ticker.shutdownNow();
+    }
+
+    public CollectRequest requestCollect(UUID payeeAccountId, String payeeIdentifier, String payerPhone, BigDecimal amount, String note) {
+        return requestCollect(payeeAccountId, payeeIdentifier, payerPhone, amount, note, defaultExpiry);
+    }
+
+    public CollectRequest requestCollect(UUID payeeAccountId, String payeeIdentifier, String payerPhone, BigDecimal amount,
+                                         String note, Duration expiresIn) {
+        if (amount == null || amount.compareTo(BigDecimal.ZERO) <= 0) throw new IllegalArgumentException("amount must be > 0");
+        acctRepo.findById(payeeAccountId).orElseThrow(() -> new IllegalArgumentException("payee account not found"));
+        User payer = userRepo.findByPhone(payerPhone).orElseThrow(() -> new IllegalArgumentException("payer not found"));
+        Instant now = clock.instant();
+        CollectRequest r = collects.create(payeeAccountId, payeeIdentifier, payer.id, payer.phone, amount, note, now, now.plus(expiresIn));
+        expiry.schedule(r.slot);
+        created.increment();
+        return r;
+    }
+
+    /** The payer's requests still waiting for an answer, oldest first. */
+    public List<CollectRequest> pendingFor(String payerPhone) {
+        return userRepo.findByPhone(payerPhone).map(u -> collects.findPendingByPayer(u.id)).orElse(List.of());
+    }
+
+    /**
+     * Pay the request from one of the payer's accounts. Returns the payment's transaction (the
+     * same one when called again for an approved request, or by a second approver while the
+     * first is still paying).
+     */
+    public Transaction approve(UUID requestId, UUID fromAccountId) throws IdempotencyException {
+        CollectRequest r = find(requestId);
+        BankAccount from = acctRepo.findById(fromAccountId).orElseThrow(() -> new IllegalArgumentException("from account not found"));
+        if (!from.userId.equals(r.payerUserId)) throw new IllegalArgumentException("account does not belong to the payer");
+        if (r.status == CollectStatus.APPROVED) return paymentOf(r, fromAccountId);
+        if (!clock.instant().isBefore(r.expiresAt)) {
+            if (collects.transition(r.id, CollectStatus.PENDING, CollectStatus.EXPIRED, clock.instant())) expired.increment();
+            throw new IllegalStateException("collect request expired");
+        }
+        if (!collects.transition(r.id, CollectStatus.PENDING, CollectStatus.APPROVED, clock.instant())) {
+            if (r.status == CollectStatus.APPROVED) return paymentOf(r, fromAccountId); // another approver got there first
+            throw new IllegalStateException("collect request is " + r.status);
+        }
+        Transaction t;
+        try {
+            t = pay(r, fromAccountId);
+        } catch (RuntimeException | IdempotencyException e) {
+            synchronized (r) {
+                // a concurrent approver may have made the payment under the same key after all
+                Optional<Transaction> made = txnService.findByIdempotencyKey(r.id.toString());
+                if (made.isEmpty()) {
+                    // no payment: pending again (the wheel may have passed it meanwhile, so it goes back in)
+                    collects.transition(r.id, CollectStatus.APPROVED, CollectStatus.PENDING, clock.instant());
+                    expiry.schedule(r.slot);
+                    throw e;
+                }
+                t = made.get();
+            }
+        }
+        r.transactionId = t.id;
+        approved.increment();
+        return t;
+    }
+
+    // an approved request's payment; if the approver is still making it, the same key makes this call return it
+    private Transaction paymentOf(CollectRequest r, UUID fromAccountId) throws IdempotencyException {
+        UUID txnId = r.transactionId;
+        if (txnId != null) return txnService.getTransaction(txnId).orElseThrow();
+        Transaction t = pay(r, fromAccountId);
+        synchronized (r) {
+            // the first approver's payment failed and reopened the request before this one was made
+            CollectStatus s;
+            while ((s = r.status) != CollectStatus.APPROVED && !collects.transition(r.id, s, CollectStatus.APPROVED, clock.instant())) {
+                Thread.onSpinWait();
+            }
+        }
+        r.transactionId = t.id;
+        return t;
+    }
+
+    // createPayment under the request's key; a concurrent call that saved first is returned instead of an error
+    private Transaction pay(CollectRequest r, UUID fromAccountId) throws IdempotencyException {
+        String key = r.id.toString();
+        try {
+            return txnService.createPayment(key, fromAccountId, r.payeeAccountId, r.payeeIdentifier, r.amount);
+        } catch (IdempotencyException e) {
+            // the winner's key is indexed just before its transaction is stored; give that a moment
+            for (int i = 0; i < SAVE_WAIT_YIELDS; i++) {
+                Optional<Transaction> made = txnService.findByIdempotencyKey(key);
+                if (made.isPresent()) return made.get();
+                Thread.yield();
+            }
+            throw e;
+        }
+    }
+
+    public void decline(UUID requestId) {
+        CollectRequest r = find(requestId);
+        if (!collects.transition(r.id, CollectStatus.PENDING, CollectStatus.DECLINED, clock.instant())) {
+            throw new IllegalStateException("collect request is " + r.status);
+        }
+        declined.increment();
+    }
+
+    public CollectRequest find(UUID requestId) {
+        return collects.findById(requestId).orElseThrow(() -> new IllegalArgumentException("collect request not found"));
+    }
+
+    /** Expire what is due now; the ticker calls this every tick once started. Returns how many expired. */
+    public int expireDue() {
+        try {
+            long now = clock.millis();
+            int[] n = new int[1];
+            synchronized (this) {
+                expiry.advance(now, slot -> {
+                    if (n[0] == due.length) due = Arrays.copyOf(due, n[0] * 2);
+                    due[n[0]++] = slot;
+                });
+                int count = 0;
+                for (int i = 0; i < n[0]; i++) {
+                    CollectRequest r = collects.get(due[i]);
+                    if (r.status != CollectStatus.PENDING) continue; // answered meanwhile
+                    if (r.expiresAt.toEpochMilli() > now) {
+                        // its tick started but the request has a little left: next tick
+                        expiry.schedule(r.slot);
+                        continue;
+                    }
+                    if (collects.transition(r.id, CollectStatus.PENDING, CollectStatus.EXPIRED, clock.instant())) count++;
+                }
+                if (due.length > 1 << 16) due = new int[1024];
+                expired.add(count);
+                return count;
+            }
+        } catch (Throwable t) {
+            t.printStackTrace();
+            return 0;
+        }
+    }
+
+    /** Requests created / approved / declined / expired; requests pending; entries in the expiry wheel. */
+    public long getCreated() { return created.sum(); }
+    public long getApproved() { return approved.sum(); }
+    public long getDeclined() { return declined.sum(); }
+    public long getExpired() { return expired.sum(); }
+    public long getPending() { return collects.countPending(); }
+    public long getScheduled() { return expiry.size(); }
+}
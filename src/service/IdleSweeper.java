@@ -0,0 +1,41 @@
+package service;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+
+/**
+ * Drops idle entries from a per-key state map once it reaches its size cap (LimitsEngine
+ * counters, AdmissionController payer buckets). Each sweep looks at a bounded batch of entries,
+ * continuing from where the last one stopped and wrapping around, so a miss on a full map costs
+ * O(BATCH) rather than a pass over the whole map. One sweep at a time: a caller that finds a
+ * sweep running goes on without waiting, the map is only briefly above its cap.
+ */
+final class IdleSweeper<V> {
+    private static final int BATCH = 64; // entries looked at per sweep
+
+    private final Map<?, V> map; // entries are only ever removed here
+    private final ReentrantLock lock = new ReentrantLock();
+    private Iterator<V> cursor; // guarded by lock; weakly consistent, so it may outlive concurrent puts
+
+    IdleSweeper(Map<?, V> map) {
+        this.map = map;
+    }
+
+    // idle decides per entry and may mark it as removed for callers still holding it
+    void sweep(Predicate<V> idle) {
+        if (!lock.tryLock()) return;
+        try {
+            for (int i = 0; i < BATCH; i++) {
+                if (cursor == null || !cursor.hasNext()) {
+                    cursor = map.values().iterator();
+                    if (!cursor.hasNext()) return;
+                }
+                if (idle.test(cursor.next())) cursor.remove();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+}
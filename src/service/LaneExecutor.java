@@ -0,0 +1,25 @@
+package service;
+
+import enums.ExecutionLane;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Where TransactionService runs its PSP calls: a task plus the ExecutionLane it belongs to.
+ * PriorityLaneExecutor queues it in that lane; fifo() adapts a plain pool that ignores lanes.
+ */
+@FunctionalInterface
+public interface LaneExecutor {
+
+    void execute(ExecutionLane lane, Runnable task);
+
+    /** Runs every task on pool in submission order, whatever its lane. */
+    static LaneExecutor fifo(ExecutorService pool) {
+        return (lane, task) -> pool.submit(task);
+    }
+
+    /** pool itself when it already runs lanes (PriorityLaneExecutor), otherwise fifo(pool). */
+    static LaneExecutor of(ExecutorService pool) {
+        return pool instanceof LaneExecutor ? (LaneExecutor) pool : fifo(pool);
+    }
+}
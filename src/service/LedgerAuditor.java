@@ -0,0 +1,308 @@
+package service;
+
+import enums.TransactionStatus;
+import events.PaymentEvent;
+import events.PaymentEventBus;
+import events.WaitStrategy;
+import models.BankAccount;
+import models.Transaction;
+import repository.TransactionRepository;
+import scheduling.Scheduler;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Checks that money is conserved, incrementally, from the PaymentEventBus. Per account it keeps
+ * running tallies from the events:
+ * - open: amounts of its transactions created and not yet SUCCESS / FAILED (as payer)
+ * - the balance and reserved amount after its last balance event; each balance event must
+ *   move them by exactly its own amount (a break means a mutation that bypassed the events)
+ * - settled / credited amounts vs the amounts of its SUCCESS transactions as payer / payee
+ * Each audit run looks only at the accounts touched since they were last found clean, and
+ * compares the tallies with the live account: reserved must equal open, balance and reserved
+ * must equal the last event's, and settled / credited must match SUCCESS. Transaction and
+ * balance events travel on different shards, so a mismatch is only flagged as drift once it
+ * has lasted the grace period. Cost is O(changes), never a scan of all accounts.
+ *
+ * With autoRelease, a drifting account whose reserved amount exceeds its open transactions is
+ * released down to them when the reservation is provably orphaned: the excess has not changed
+ * and the account has had no events for the grace period, every open transaction is confirmed
+ * PENDING in the repository, no event was dropped, and the reserved amount is still the one
+ * audited when the release runs (BankAccountService.releaseIfReserved). A shortfall (reserved
+ * below open, e.g. settled but never marked SUCCESS) is only flagged.
+ *
+ * Construct before events.start(), so the auditor sees every mutation from the first one.
+ * autoRelease is refused unless it demonstrably is: nothing published on the bus yet, and
+ * acctService publishing its balance events to the same bus (transaction events must go there
+ * too: the TransactionServices' Options.events).
+ */
+public class LedgerAuditor {
+
+    /** A flagged account: what it is off by, and since when. */
+    public static final class Drift {
+        public final UUID accountId;
+        public final BigDecimal reservedExcess;  // live reserved - open transactions (negative = shortfall)
+        public final BigDecimal flowMismatch;    // (credited - settled) - (SUCCESS in - SUCCESS out)
+        public final boolean untracked;          // live balance / reserved differs from the last event's
+        public final Instant since;
+
+        Drift(UUID accountId, BigDecimal reservedExcess, BigDecimal flowMismatch, boolean untracked, Instant since) {
+            this.accountId = accountId; this.reservedExcess = reservedExcess; this.flowMismatch = flowMismatch;
+            this.untracked = untracked; this.since = since;
+        }
+
+        @Override public String toString() {
+            return "Drift{" + accountId + ",reservedExcess=" + reservedExcess + ",flowMismatch=" + flowMismatch
+                    + (untracked ? ",untracked" : "") + ",since=" + since + "}";
+        }
+    }
+
+    // one account's tallies, in paise; guarded by the auditor's monitor
+    private static final class Ledger {
+        final UUID accountId;
+        Map<UUID, Long> open;        // txn id -> amount, created lazily
+        long openPaise;
+        boolean seen;                // a balance event has been observed
+        long balance, reserved;      // after the last balance event
+        long settled, credited, successOut, successIn;
+        long lastEventAt;
+        boolean dirty;
+        long suspectSince;           // 0 = clean at the last audit
+        long excess, excessSince, flow;
+        boolean untracked, flagged;
+
+        Ledger(UUID accountId) { this.accountId = accountId; }
+    }
+
+    private static final class Orphan {
+        final Ledger ledger;
+        final long reserved, excess;
+        final List<UUID> open;
+
+        Orphan(Ledger ledger, long reserved, long excess, List<UUID> open) {
+            this.ledger = ledger; this.reserved = reserved; this.excess = excess; this.open = open;
+        }
+    }
+
+    private final BankAccountService acctService;
+    private final TransactionRepository txnRepo;
+    private final PaymentEventBus events;
+    private final Scheduler scheduler;
+    private final Duration interval;
+    private final long graceMillis;
+    private final boolean autoRelease;
+    private final boolean ownsScheduler;
+    private final Map<UUID, Ledger> ledgers = new HashMap<>();
+    private List<Ledger> dirty = new ArrayList<>();
+    private Scheduler.Task task;
+
+    private long eventsSeen, audits, accountsChecked, chainBreaks, driftsFlagged, driftsResolved;
+    private long orphansReleased, releasedPaise, releasesSkipped;
+
+    public LedgerAuditor(BankAccountService acctService, TransactionRepository txnRepo, PaymentEventBus events) {
+        this(acctService, txnRepo, events, Scheduler.system("ledger-auditor"), Duration.ofSeconds(1), Duration.ofSeconds(3),
+                false, true);
+    }
+
+    public LedgerAuditor(BankAccountService acctService, TransactionRepository txnRepo, PaymentEventBus events,
+                         Scheduler scheduler, Duration interval, Duration grace, boolean autoRelease) {
+        this(acctService, txnRepo, events, scheduler, interval, grace, autoRelease, false);
+    }
+
+    private LedgerAuditor(BankAccountService acctService, TransactionRepository txnRepo, PaymentEventBus events,
+                          Scheduler scheduler, Duration interval, Duration grace, boolean autoRelease, boolean ownsScheduler) {
+        if (autoRelease && !acctService.publishesTo(events)) {
+            throw new IllegalArgumentException("autoRelease needs acctService publishing balance events to this bus");
+        }
+        if (autoRelease && events.published() != 0) {
+            throw new IllegalStateException("autoRelease needs the auditor attached before any event is published");
+        }
+        this.acctService = acctService;
+        this.txnRepo = txnRepo;
+        this.events = events;
+        this.scheduler = scheduler;
+        this.interval = interval;
+        this.graceMillis = grace.toMillis();
+        this.autoRelease = autoRelease;
+        this.ownsScheduler = ownsScheduler;
+        events.subscribe("ledger-auditor", this::onEvent, WaitStrategy.parking(Duration.ofMillis(1)));
+    }
+
+    public synchronized void start() {
+        if (task == null) task = scheduler.scheduleWithFixedDelay(this::auditRun, interval, interval);
+    }
+
+    // a scheduler passed in is left running for its owner
+    public synchronized void stop() {
+        if (task != null) task.cancel();
+        task = null;
+        if (ownsScheduler) scheduler.shutdown();
+    }
+
+    private synchronized void onEvent(PaymentEvent e, long sequence, boolean endOfBatch) {
+        eventsSeen++;
+        long now = scheduler.clock().millis();
+        long amount = LimitsEngine.toPaise(e.amount);
+        Ledger l = touch(e.accountId, now);
+        switch (e.type) {
+            case TXN_CREATED:
+                if (l.open == null) l.open = new HashMap<>(4);
+                if (l.open.put(e.txnId, amount) == null) l.openPaise += amount;
+                break;
+            case TXN_PENDING:
+                break; // still open
+            case TXN_SUCCESS:
+                close(l, e.txnId);
+                l.successOut += amount;
+                if (e.counterpartyId != null) touch(e.counterpartyId, now).successIn += amount;
+                break;
+            case TXN_FAILED:
+                close(l, e.txnId);
+                break;
+            default:
+                observe(l, e, amount);
+        }
+    }
+
+    // a balance event must move balance / reserved by exactly its own amount
+    private void observe(Ledger l, PaymentEvent e, long amount) {
+        long balanceDelta = 0, reservedDelta = 0;
+        switch (e.type) {
+            case FUNDS_RESERVED: reservedDelta = amount; break;
+            case FUNDS_RELEASED: reservedDelta = -amount; break;
+            case FUNDS_SETTLED: balanceDelta = -amount; reservedDelta = -amount; l.settled += amount; break;
+            case FUNDS_CREDITED: balanceDelta = amount; l.credited += amount; break;
+            default: break;
+        }
+        long balance = LimitsEngine.toPaise(e.balanceAfter), reserved = LimitsEngine.toPaise(e.reservedAfter);
+        if (l.seen && (balance != l.balance + balanceDelta || reserved != l.reserved + reservedDelta)) chainBreaks++;
+        l.seen = true;
+        l.balance = balance;
+        l.reserved = reserved;
+    }
+
+    private static void close(Ledger l, UUID txnId) {
+        Long amount = l.open == null ? null : l.open.remove(txnId);
+        if (amount != null) l.openPaise -= amount;
+    }
+
+    private Ledger touch(UUID accountId, long now) {
+        Ledger l = ledgers.computeIfAbsent(accountId, Ledger::new);
+        l.lastEventAt = now;
+        if (!l.dirty) {
+            l.dirty = true;
+            dirty.add(l);
+        }
+        return l;
+    }
+
+    private void auditRun() {
+        try {
+            audit();
+        } catch (Throwable t) {
+            t.printStackTrace();
+        }
+    }
+
+    /** Check the accounts touched since they were last clean; releases orphans if enabled. */
+    public void audit() {
+        List<Orphan> orphans = new ArrayList<>();
+        synchronized (this) {
+            audits++;
+            long now = scheduler.clock().millis();
+            boolean lossless = events.dropped() == 0;
+            List<Ledger> stillDirty = new ArrayList<>();
+            for (Ledger l : dirty) {
+                accountsChecked++;
+                if (check(l, now, lossless, orphans)) stillDirty.add(l);
+                else l.dirty = false;
+            }
+            dirty = stillDirty;
+        }
+        // outside the monitor: a release publishes an event, and under BLOCK the handler must be free to take it
+        for (Orphan o : orphans) release(o);
+    }
+
+    // false once the account is clean
+    private boolean check(Ledger l, long now, boolean lossless, List<Orphan> orphans) {
+        Optional<BankAccount> acct = acctService.findAccount(l.accountId);
+        if (acct.isEmpty()) return false;
+        long[] live = acct.get().readConsistent(a -> new long[]{LimitsEngine.toPaise(a.getBalance()), LimitsEngine.toPaise(a.getReserved())});
+        long excess = live[1] - l.openPaise;
+        long flow = (l.credited - l.settled) - (l.successIn - l.successOut);
+        boolean untracked = l.seen && (live[0] != l.balance || live[1] != l.reserved);
+        if (excess == 0 && flow == 0 && !untracked) {
+            if (l.flagged) driftsResolved++;
+            l.flagged = false;
+            l.suspectSince = 0;
+            return false;
+        }
+        if (l.suspectSince == 0 || excess != l.excess) {
+            if (l.suspectSince == 0) l.suspectSince = now;
+            l.excess = excess;
+            l.excessSince = now;
+        }
+        l.flow = flow;
+        l.untracked = untracked;
+        if (!l.flagged && now - l.suspectSince >= graceMillis) {
+            l.flagged = true;
+            driftsFlagged++;
+        }
+        if (autoRelease && lossless && l.flagged && excess > 0 && flow == 0 && !untracked
+                && now - l.excessSince >= graceMillis && now - l.lastEventAt >= graceMillis) {
+            orphans.add(new Orphan(l, live[1], excess, l.open == null ? List.of() : new ArrayList<>(l.open.keySet())));
+        }
+        return true;
+    }
+
+    private void release(Orphan o) {
+        // the tallies say these are open; the repository must agree, or the events are behind
+        for (UUID txnId : o.open) {
+            Optional<Transaction> t = txnRepo.findById(txnId);
+            if (t.isEmpty() || t.get().status != TransactionStatus.PENDING) {
+                synchronized (this) { releasesSkipped++; }
+                return;
+            }
+        }
+        boolean released = acctService.releaseIfReserved(o.ledger.accountId, BigDecimal.valueOf(o.reserved, 2),
+                BigDecimal.valueOf(o.excess, 2));
+        synchronized (this) {
+            if (released) {
+                orphansReleased++;
+                releasedPaise += o.excess;
+            } else {
+                releasesSkipped++;
+            }
+        }
+    }
+
+    /** The accounts currently flagged as drifting. */
+    public synchronized List<Drift> getDrifting() {
+        List<Drift> out = new ArrayList<>();
+        for (Ledger l : dirty) {
+            if (!l.flagged) continue;
+            out.add(new Drift(l.accountId, BigDecimal.valueOf(l.excess, 2), BigDecimal.valueOf(l.flow, 2), l.untracked,
+                    Instant.ofEpochMilli(l.suspectSince)));
+        }
+        return out;
+    }
+
+    // metrics: events seen, audit runs, accounts checked, chain breaks, drifts flagged / resolved, orphans released
+    public synchronized long getEventsSeen() { return eventsSeen; }
+    public synchronized long getAudits() { return audits; }
+    public synchronized long getAccountsChecked() { return accountsChecked; }
+    public synchronized long getChainBreaks() { return chainBreaks; }
+    public synchronized long getDriftsFlagged() { return driftsFlagged; }
+    public synchronized long getDriftsResolved() { return driftsResolved; }
+    public synchronized long getOrphansReleased() { return orphansReleased; }
+    public synchronized BigDecimal getReleasedAmount() { return BigDecimal.valueOf(releasedPaise, 2); }
+    public synchronized long getReleasesSkipped() { return releasesSkipped; }
+}
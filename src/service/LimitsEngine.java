@@ -0,0 +1,165 @@
+package service;
+
+import enums.LimitType;
+import exception.LimitExceededException;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-user and per-account payment limits, enforced incrementally:
+ * - daily amount and daily count over a rolling 24h window (24 one-hour buckets)
+ * - velocity: count over a rolling minute (60 one-second buckets)
+ * Each payer and each source account has its own counters in primitive ring windows, so a check
+ * is O(1) and allocates nothing once the counters exist. acquire() runs before funds are reserved
+ * and counts the payment; release() rolls it back when the payment fails or its funds are
+ * released. Amounts are in paise; a limit of 0 is unlimited.
+ * The txn-id variants also remember when each payment was counted until it finishes, so the
+ * caller need not, and a payment is rolled back at most once.
+ */
+public class LimitsEngine {
+
+    /** Limits for one kind of key (user or account); 0 = no limit. */
+    public static final class Limits {
+        public final long dailyAmountPaise;
+        public final long dailyCount;
+        public final long perMinuteCount;
+
+        public Limits(long dailyAmountPaise, long dailyCount, long perMinuteCount) {
+            this.dailyAmountPaise = dailyAmountPaise;
+            this.dailyCount = dailyCount;
+            this.perMinuteCount = perMinuteCount;
+        }
+
+        public static Limits none() { return new Limits(0, 0, 0); }
+    }
+
+    private static final class Counters {
+        final RollingWindow day = new RollingWindow(24, 3_600_000L);
+        final RollingWindow minute = new RollingWindow(60, 1_000L);
+        boolean swept; // removed from the map: a caller still holding it must look the key up again
+    }
+
+    private final Limits userLimits;
+    private final Limits accountLimits;
+    private final int maxTrackedKeys;
+    private final ConcurrentMap<UUID, Counters> users = new ConcurrentHashMap<>();
+    private final ConcurrentMap<UUID, Counters> accounts = new ConcurrentHashMap<>();
+    private final IdleSweeper<Counters> userSweeper = new IdleSweeper<>(users);
+    private final IdleSweeper<Counters> accountSweeper = new IdleSweeper<>(accounts);
+    // payments counted by acquire(txnId, ...) and not finished or released yet -> epoch millis they were counted at
+    private final ConcurrentMap<UUID, Long> open = new ConcurrentHashMap<>();
+
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder[] rejected = new LongAdder[LimitType.values().length];
+
+    public LimitsEngine(Limits userLimits, Limits accountLimits) {
+        this.userLimits = userLimits;
+        this.accountLimits = accountLimits;
+        this.maxTrackedKeys = 1_000_000;
+        for (int i = 0; i < rejected.length; i++) rejected[i] = new LongAdder();
+    }
+
+    public static long toPaise(BigDecimal amount) {
+        return amount.movePointRight(2).setScale(0, RoundingMode.CEILING).longValueExact();
+    }
+
+    /**
+     * Count a payment against the user's and the account's limits, or throw without counting
+     * anything. On success the caller must call release() with the same arguments if the payment
+     * fails or its funds are released.
+     */
+    public void acquire(UUID userId, UUID accountId, long amountPaise, long nowMillis) {
+        while (true) {
+            Counters u = counters(users, userSweeper, userId, nowMillis);
+            Counters a = counters(accounts, accountSweeper, accountId, nowMillis);
+            // user monitor always before account monitor, so two payments never wait on each other in a cycle
+            synchronized (u) {
+                synchronized (a) {
+                    if (u.swept || a.swept) continue;
+                    check(u, userLimits, amountPaise, nowMillis, LimitType.USER_DAILY_AMOUNT, LimitType.USER_DAILY_COUNT, LimitType.USER_VELOCITY);
+                    check(a, accountLimits, amountPaise, nowMillis, LimitType.ACCOUNT_DAILY_AMOUNT, LimitType.ACCOUNT_DAILY_COUNT, LimitType.ACCOUNT_VELOCITY);
+                    add(u, amountPaise, nowMillis);
+                    add(a, amountPaise, nowMillis);
+                }
+            }
+            accepted.increment();
+            return;
+        }
+    }
+
+    /** acquire() for payment txnId, remembering when it was counted. */
+    public void acquire(UUID txnId, UUID userId, UUID accountId, long amountPaise, long nowMillis) {
+        acquire(userId, accountId, amountPaise, nowMillis);
+        open.put(txnId, nowMillis);
+    }
+
+    /** Roll back payment txnId; no-op unless it was counted and neither finished nor released yet. */
+    public void release(UUID txnId, UUID userId, UUID accountId, long amountPaise, long nowMillis) {
+        Long countedAt = open.remove(txnId);
+        if (countedAt != null) release(userId, accountId, amountPaise, countedAt, nowMillis);
+    }
+
+    /** Payment txnId went through: its counts stay and it can no longer be released. */
+    public void finish(UUID txnId) {
+        open.remove(txnId);
+    }
+
+    /** Roll back a payment counted by acquire() at acquiredAtMillis (no-op for buckets already expired). */
+    public void release(UUID userId, UUID accountId, long amountPaise, long acquiredAtMillis, long nowMillis) {
+        Counters u = users.get(userId);
+        if (u != null) {
+            synchronized (u) {
+                u.day.remove(acquiredAtMillis, nowMillis, amountPaise);
+                u.minute.remove(acquiredAtMillis, nowMillis, amountPaise);
+            }
+        }
+        Counters a = accounts.get(accountId);
+        if (a != null) {
+            synchronized (a) {
+                a.day.remove(acquiredAtMillis, nowMillis, amountPaise);
+                a.minute.remove(acquiredAtMillis, nowMillis, amountPaise);
+            }
+        }
+    }
+
+    // metrics
+    public long getAcceptedCount() { return accepted.sum(); }
+    public long getRejectedCount(LimitType limit) { return rejected[limit.ordinal()].sum(); }
+    public int getTrackedKeys() { return users.size() + accounts.size(); }
+    public int getOpenPayments() { return open.size(); }
+
+    private void check(Counters c, Limits l, long amountPaise, long now, LimitType amountType, LimitType countType, LimitType velocityType) {
+        if (l.dailyAmountPaise > 0 && c.day.amount(now) + amountPaise > l.dailyAmountPaise) reject(amountType, "daily amount limit exceeded");
+        if (l.dailyCount > 0 && c.day.count(now) >= l.dailyCount) reject(countType, "daily payment count limit exceeded");
+        if (l.perMinuteCount > 0 && c.minute.count(now) >= l.perMinuteCount) reject(velocityType, "too many payments in the last minute");
+    }
+
+    private static void add(Counters c, long amountPaise, long now) {
+        c.day.add(now, amountPaise);
+        c.minute.add(now, amountPaise);
+    }
+
+    private void reject(LimitType limit, String message) {
+        rejected[limit.ordinal()].increment();
+        throw new LimitExceededException(limit, message);
+    }
+
+    private Counters counters(ConcurrentMap<UUID, Counters> map, IdleSweeper<Counters> sweeper, UUID key, long now) {
+        Counters c = map.get(key);
+        if (c != null) return c;
+        // counters with nothing left in the day window carry no state and are recreated on demand
+        if (map.size() >= maxTrackedKeys) {
+            sweeper.sweep(old -> {
+                synchronized (old) {
+                    return old.swept = old.day.isEmpty(now);
+                }
+            });
+        }
+        return map.computeIfAbsent(key, k -> new Counters());
+    }
+}
@@ -0,0 +1,59 @@
+package service;
+
+import lock.LockManager;
+import models.BankAccount;
+import repository.BankAccountRepository;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Consumer;
+
+/**
+ * Default AccountExecutor: runs actions on the calling thread under the account's LockManager
+ * lock; batches take all locks in id order.
+ */
+public class LockingAccountExecutor implements AccountExecutor {
+
+    private final BankAccountRepository acctRepo;
+    private final LockManager lockManager;
+
+    public LockingAccountExecutor(BankAccountRepository acctRepo, LockManager lockManager) {
+        this.acctRepo = acctRepo;
+        this.lockManager = lockManager;
+    }
+
+    @Override
+    public void execute(UUID accountId, Consumer<BankAccount> action) {
+        Lock lock = lockManager.getLockForAccount(accountId);
+        lock.lock();
+        try {
+            BankAccount acct = acctRepo.findById(accountId).orElseThrow(() -> new IllegalArgumentException("account not found"));
+            action.accept(acct);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public CompletableFuture<Void> submit(UUID accountId, Consumer<BankAccount> action) {
+        try {
+            execute(accountId, action);
+            return CompletableFuture.completedFuture(null);
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    @Override
+    public void executeAll(Collection<UUID> accountIds, Consumer<BankAccount> action) {
+        List<Lock> locks = lockManager.acquireLocksOrdered(accountIds);
+        try {
+            for (UUID id : accountIds) acctRepo.findById(id).ifPresent(action);
+        } finally {
+            for (Lock l : locks) l.unlock();
+        }
+    }
+}
@@ -0,0 +1,353 @@
+package service;
+
+import enums.MandateFrequency;
+import enums.MandateStatus;
+import models.Mandate;
+import repository.BankAccountRepository;
+import repository.MandateRepository;
+import scheduling.HierarchicalTimingWheel;
+
+import java.math.BigDecimal;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs UPI AutoPay mandates. Mandate slots sit in a hierarchical timing wheel by next due time;
+ * a dispatcher thread expires the due ones every tick, queues them by the payer's bank and takes
+ * batches from the queues round-robin, so one large bank cannot hold back the others. Banks that
+ * are down (BankHealthRegistry) keep their queue until they are back up.
+ * Each batch goes through TransactionService.createPayments on a small worker pool, at most
+ * parallelBatches at a time, and mandate payments are paced by a token bucket of
+ * paymentsPerSecond so a due burst leaves capacity for interactive payments (which do not wait
+ * behind it). The idempotency key is "mandate:{id}:{cycle}", so a cycle is never debited twice,
+ * whether a batch is retried or a mandate was queued twice.
+ * After its debit, or a rejection that is the payment's own (insufficient balance, account not
+ * found), a mandate moves to its next cycle, due firstDueAt plus cycle periods in the
+ * scheduler's zone, and goes back into the wheel. A retryable rejection (payer or payee bank
+ * down) or a failed batch leaves the cycle open: the mandate is due again at the next tick.
+ * Due times are read on the TransactionService's clock.
+ */
+public class MandateScheduler {
+    private static final int WHEEL_LEVELS = 4;
+    private static final int WHEEL_BITS = 8;     // 2^32 ticks of reach
+    private static final UUID NO_BANK = new UUID(0, 0); // payer account not found: the payment rejects it
+
+    private final MandateRepository mandates;
+    private final TransactionService txnService;
+    private final BankAccountRepository acctRepo;
+    private final BankHealthRegistry bankHealth;
+    private final TokenBucket pacer;             // null = unshaped
+    private final long pacerIntervalNanos;
+    private final int batchSize;
+    private final Semaphore batchPermits;
+    private final long tickMillis;
+    private final ZoneId zone;
+    private final Clock clock;                   // the TransactionService's
+    private final HierarchicalTimingWheel wheel;
+    private final ExecutorService workers;
+    private volatile Thread dispatcher;
+    private volatile boolean running;
+
+    // deferred by the workers: slot and the time it may be retried, in retry-time order
+    private final ConcurrentLinkedQueue<long[]> retries = new ConcurrentLinkedQueue<>();
+
+    // dispatcher thread only
+    private final Map<UUID, IntQueue> byBank = new LinkedHashMap<>();
+    private int[] due = new int[1024];
+    private int pacerTokens;
+
+    private final LongAdder dueCount = new LongAdder();
+    private final LongAdder paid = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder deferred = new LongAdder();
+    private final LongAdder skipped = new LongAdder();
+    private volatile long queued;
+
+    public MandateScheduler(MandateRepository mandates, TransactionService txnService,
+                            BankAccountRepository acctRepo, BankHealthRegistry bankHealth, double paymentsPerSecond) {
+        this(mandates, txnService, acctRepo, bankHealth, paymentsPerSecond, 256, 4, Duration.ofSeconds(1), ZoneId.of("Asia/Kolkata"));
+    }
+
+    /**
+     * paymentsPerSecond <= 0 leaves mandate payments unpaced. Mandates already in the repository
+     * are scheduled here.
+     */
+    public MandateScheduler(MandateRepository mandates, TransactionService txnService,
+                            BankAccountRepository acctRepo, BankHealthRegistry bankHealth, double paymentsPerSecond,
+                            int batchSize, int parallelBatches, Duration tick, ZoneId zone) {
+        if (batchSize <= 0 || parallelBatches <= 0) throw new IllegalArgumentException("batchSize and parallelBatches must be > 0");
+        this.mandates = mandates;
+        this.txnService = txnService;
+        this.acctRepo = acctRepo;
+        this.bankHealth = bankHealth;
+        this.pacer = paymentsPerSecond > 0 ? new TokenBucket(paymentsPerSecond, batchSize) : null;
+        this.pacerIntervalNanos = paymentsPerSecond > 0 ? Math.max(1L, (long) (1_000_000_000d / paymentsPerSecond)) : 0;
+        this.batchSize = batchSize;
+        this.batchPermits = new Semaphore(parallelBatches);
+        this.tickMillis = Math.max(1, tick.toMillis());
+        this.zone = zone;
+        this.clock = txnService.clock();
+        this.wheel = new HierarchicalTimingWheel(tickMillis, WHEEL_LEVELS, WHEEL_BITS, clock.millis(), mandates::nextDueMillis);
+        AtomicInteger n = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(parallelBatches, r -> {
+            Thread t = new Thread(r, "mandate-batch-" + n.getAndIncrement());
+            t.setDaemon(true);
+            return t;
+        });
+        for (int slot = 0, count = mandates.slotCount(); slot < count; slot++) {
+            Mandate m = mandates.get(slot);
+            if (m != null && m.status == MandateStatus.ACTIVE) wheel.schedule(slot);
+        }
+    }
+
+    public Mandate createMandate(UUID fromAccountId, UUID toAccountId, String toIdentifier, BigDecimal amount,
+                                 MandateFrequency frequency, Instant firstDueAt) {
+        acctRepo.findById(fromAccountId).orElseThrow(() -> new IllegalArgumentException("from account not found"));
+        Mandate m = mandates.create(fromAccountId, toAccountId, toIdentifier, amount, frequency, firstDueAt);
+        wheel.schedule(m.slot);
+        return m;
+    }
+
+    public void pause(UUID mandateId) { mandates.updateStatus(mandateId, MandateStatus.PAUSED); }
+
+    public void revoke(UUID mandateId) { mandates.updateStatus(mandateId, MandateStatus.REVOKED); }
+
+    /** Reactivate a paused mandate; cycles missed while paused are due at once. */
+    public void resume(UUID mandateId) {
+        Mandate m = mandates.findById(mandateId).orElseThrow(() -> new IllegalArgumentException("mandate not found"));
+        if (m.status == MandateStatus.REVOKED) throw new IllegalStateException("mandate is revoked");
+        mandates.updateStatus(mandateId, MandateStatus.ACTIVE);
+        wheel.schedule(m.slot);
+    }
+
+    public synchronized void start() {
+        if (running) return;
+        running = true;
+        Thread t = new Thread(this::dispatchLoop, "mandate-dispatcher");
+        t.setDaemon(true);
+        dispatcher = t;
+        t.start();
+    }
+
+    /** Stop dispatching and wait for the batches already handed out. */
+    public synchronized void stop() {
+        running = false;
+        Thread t = dispatcher;
+        if (t != null) {
+            LockSupport.unpark(t);
+            try {
+                t.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        workers.shutdown();
+        try {
+            workers.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void dispatchLoop() {
+        while (running) {
+            try {
+                long now = clock.millis();
+                collectDue(now);
+                if (!dispatchRound(now)) {
+                    // nothing sendable: wait for the next tick (or for tokens / a bank to come back)
+                    long waitMillis = queued > 0 ? 1 : tickMillis - now % tickMillis;
+                    LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(waitMillis));
+                }
+            } catch (Throwable t) {
+                t.printStackTrace();
+            }
+        }
+    }
+
+    // expire the wheel into the per-bank queues; the bank lookups run outside the wheel's lock
+    private void collectDue(long now) {
+        for (long[] r = retries.peek(); r != null && r[1] <= now; r = retries.peek()) {
+            retries.poll();
+            wheel.schedule((int) r[0]);
+        }
+        int[] n = new int[1];
+        wheel.advance(now, slot -> {
+            if (n[0] == due.length) due = Arrays.copyOf(due, n[0] * 2);
+            due[n[0]++] = slot;
+        });
+        dueCount.add(n[0]);
+        long added = 0;
+        for (int i = 0; i < n[0]; i++) {
+            Mandate m = mandates.get(due[i]);
+            if (m == null || m.status != MandateStatus.ACTIVE) {
+                skipped.increment();
+                continue;
+            }
+            UUID bank = acctRepo.findById(m.fromAccountId).map(a -> a.bankId).orElse(NO_BANK);
+            byBank.computeIfAbsent(bank, b -> new IntQueue()).add(due[i]);
+            added++;
+        }
+        if (due.length > 1 << 16 && n[0] < due.length / 4) due = new int[1024];
+        queued += added;
+    }
+
+    // one batch per bank that is up and has work; false if nothing was handed out
+    private boolean dispatchRound(long now) {
+        boolean sent = false;
+        for (Map.Entry<UUID, IntQueue> e : byBank.entrySet()) {
+            IntQueue q = e.getValue();
+            if (q.isEmpty() || bankHealth.isDown(e.getKey())) continue;
+            int n = Math.min(batchSize, q.size());
+            if (pacer != null) {
+                while (pacerTokens < n && pacer.tryAcquire(System.nanoTime())) pacerTokens++;
+                if (pacerTokens < n) {
+                    long waitNanos = (n - pacerTokens) * pacerIntervalNanos;
+                    if (waitNanos > 0) LockSupport.parkNanos(Math.min(waitNanos, TimeUnit.MILLISECONDS.toNanos(tickMillis)));
+                    while (pacerTokens < n && pacer.tryAcquire(System.nanoTime())) pacerTokens++;
+                    if (pacerTokens == 0) return sent;
+                    n = pacerTokens;
+                }
+                pacerTokens -= n;
+            }
+            batchPermits.acquireUninterruptibly();
+            int[] slots = new int[n];
+            for (int i = 0; i < n; i++) slots[i] = q.poll();
+            queued -= n;
+            try {
+                workers.execute(() -> runBatch(slots, now));
+            } catch (RuntimeException ex) {
+                batchPermits.release();
+                for (int slot : slots) wheel.schedule(slot);
+                throw ex;
+            }
+            sent = true;
+        }
+        return sent;
+    }
+
+    private void runBatch(int[] slots, long now) {
+        try {
+            List<PaymentRequest> requests = new ArrayList<>(slots.length);
+            List<Mandate> batch = new ArrayList<>(slots.length);
+            for (int slot : slots) {
+                Mandate m = mandates.get(slot);
+                // paused / revoked since it was queued, or a second entry for a cycle already done
+                // (due counts by tick: the wheel hands out a tick's mandates when the tick starts)
+                if (m.status != MandateStatus.ACTIVE || m.nextDueAt.toEpochMilli() / tickMillis > now / tickMillis) {
+                    skipped.increment();
+                    continue;
+                }
+                requests.add(new PaymentRequest(idempotencyKey(m), m.fromAccountId, m.toAccountId, m.toIdentifier, m.amount));
+                batch.add(m);
+            }
+            if (requests.isEmpty()) return;
+            List<PaymentResult> results;
+            try {
+                results = txnService.createPayments(requests);
+            } catch (RuntimeException e) {
+                // nothing is known about any item: all stay on this cycle (the keys make a retry safe)
+                e.printStackTrace();
+                for (Mandate m : batch) defer(m);
+                return;
+            }
+            for (int i = 0; i < results.size(); i++) {
+                Mandate m = batch.get(i);
+                PaymentResult r = results.get(i);
+                if (!r.isAccepted() && r.retryable) {
+                    // not this cycle's fault: due again as soon as the bank is back
+                    defer(m);
+                    continue;
+                }
+                if (!mandates.completeCycle(m.slot, m.cycle, nextDue(m))) continue;
+                if (r.isAccepted()) paid.increment();
+                else rejected.increment();
+                wheel.schedule(m.slot);
+            }
+        } catch (Throwable t) {
+            t.printStackTrace();
+        } finally {
+            batchPermits.release();
+        }
+    }
+
+    // same cycle again after a tick, so a payee bank outage is not retried in a tight loop
+    private void defer(Mandate m) {
+        deferred.increment();
+        retries.add(new long[]{m.slot, clock.millis() + tickMillis});
+    }
+
+    public static String idempotencyKey(Mandate m) {
+        return "mandate:" + m.id + ":" + m.cycle;
+    }
+
+    // counted from the first due time, so month ends and DST do not drift the schedule
+    private Instant nextDue(Mandate m) {
+        ZonedDateTime first = m.firstDueAt.atZone(zone);
+        long cycles = m.cycle + 1L;
+        switch (m.frequency) {
+            case DAILY: return first.plusDays(cycles).toInstant();
+            case WEEKLY: return first.plusWeeks(cycles).toInstant();
+            case MONTHLY: return first.plusMonths(cycles).toInstant();
+            default: throw new IllegalStateException("unknown frequency " + m.frequency);
+        }
+    }
+
+    /** Mandate entries expired from the wheel; debits made; debits rejected; put back on a retryable rejection; stale entries dropped. */
+    public long getDue() { return dueCount.sum(); }
+    public long getPaid() { return paid.sum(); }
+    public long getRejected() { return rejected.sum(); }
+    public long getDeferred() { return deferred.sum(); }
+    public long getSkipped() { return skipped.sum(); }
+    /** Mandates due and waiting for their bank, the pacer, a batch permit or a retry. */
+    public long getQueued() { return queued + retries.size(); }
+    public long getScheduled() { return wheel.size(); }
+    public long wheelFootprintBytes() { return wheel.footprintBytes(); }
+
+    // FIFO of slots, a growable ring buffer
+    private static final class IntQueue {
+        private int[] items = new int[16];
+        private int head, size;
+
+        void add(int v) {
+            if (size == items.length) {
+                int[] grown = new int[items.length * 2];
+                for (int i = 0; i < size; i++) grown[i] = items[(head + i) & (items.length - 1)];
+                items = grown;
+                head = 0;
+            }
+            items[(head + size++) & (items.length - 1)] = v;
+        }
+
+        int poll() {
+            int v = items[head];
+            head = (head + 1) & (items.length - 1);
+            if (--size == 0 && items.length > 1 << 16) {
+                items = new int[16]; // give a burst's array back
+                head = 0;
+            }
+            return v;
+        }
+
+        int size() { return size; }
+
+        boolean isEmpty() { return size == 0; }
+    }
+}
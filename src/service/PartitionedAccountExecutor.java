@@ -0,0 +1,110 @@
+package service;
+
+import models.BankAccount;
+import repository.BankAccountRepository;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Single-writer AccountExecutor: accounts are hash-partitioned onto K single-threaded executors
+ * and every mutation of an account runs on its partition's thread, so no locks are taken.
+ * Work touching accounts of several partitions is split into one message per partition
+ * (e.g. settle on the payer's partition, whose completion then sends the credit to the payee's
+ * partition) instead of holding anything across partitions.
+ * A partition thread may only wait on its own partition: blocking calls for another partition's
+ * accounts from a partition thread are rejected, since two partitions waiting on each other
+ * would deadlock. Use submit() and chain instead.
+ */
+public class PartitionedAccountExecutor implements AccountExecutor {
+
+    private final BankAccountRepository acctRepo;
+    private final ExecutorService[] partitions;
+    private final Thread[] owners; // written by the thread factory before the thread starts
+
+    public PartitionedAccountExecutor(BankAccountRepository acctRepo, int partitionCount) {
+        if (partitionCount <= 0) throw new IllegalArgumentException("partitionCount must be > 0");
+        this.acctRepo = acctRepo;
+        this.partitions = new ExecutorService[partitionCount];
+        this.owners = new Thread[partitionCount];
+        for (int i = 0; i < partitionCount; i++) {
+            int p = i;
+            partitions[i] = Executors.newSingleThreadExecutor(r -> {
+                Thread t = new Thread(r, "account-partition-" + p);
+                t.setDaemon(true);
+                owners[p] = t;
+                return t;
+            });
+        }
+    }
+
+    @Override
+    public void execute(UUID accountId, Consumer<BankAccount> action) {
+        int p = partitionOf(accountId);
+        if (Thread.currentThread() == owners[p]) {
+            action.accept(find(accountId));
+            return;
+        }
+        checkNotOnPartitionThread();
+        AccountExecutor.await(submit(accountId, action));
+    }
+
+    @Override
+    public CompletableFuture<Void> submit(UUID accountId, Consumer<BankAccount> action) {
+        return CompletableFuture.runAsync(() -> action.accept(find(accountId)), partitions[partitionOf(accountId)]);
+    }
+
+    @Override
+    public void executeAll(Collection<UUID> accountIds, Consumer<BankAccount> action) {
+        checkNotOnPartitionThread();
+        List<List<UUID>> byPartition = new ArrayList<>();
+        for (int i = 0; i < partitions.length; i++) byPartition.add(new ArrayList<>());
+        for (UUID id : accountIds) byPartition.get(partitionOf(id)).add(id);
+        // one message per partition; partitions work through their share in parallel
+        List<CompletableFuture<Void>> parts = new ArrayList<>();
+        for (int p = 0; p < partitions.length; p++) {
+            List<UUID> ids = byPartition.get(p);
+            if (ids.isEmpty()) continue;
+            parts.add(CompletableFuture.runAsync(() -> {
+                for (UUID id : ids) acctRepo.findById(id).ifPresent(action);
+            }, partitions[p]));
+        }
+        AccountExecutor.await(CompletableFuture.allOf(parts.toArray(new CompletableFuture<?>[0])));
+    }
+
+    public int partitionCount() { return partitions.length; }
+
+    public void stop() {
+        for (ExecutorService e : partitions) e.shutdown();
+        for (ExecutorService e : partitions) {
+            try {
+                e.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private int partitionOf(UUID accountId) {
+        int h = accountId.hashCode();
+        return Math.floorMod(h ^ (h >>> 16), partitions.length);
+    }
+
+    private BankAccount find(UUID accountId) {
+        return acctRepo.findById(accountId).orElseThrow(() -> new IllegalArgumentException("account not found"));
+    }
+
+    private void checkNotOnPartitionThread() {
+        for (Thread t : owners) {
+            if (Thread.currentThread() == t) throw new IllegalStateException("blocking call on another partition from a partition thread");
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package service;
+
+import enums.TransactionStatus;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Live payment throughput, outcome ratios and volume per source bank, per PSP and overall, fed
+ * by TransactionService as payments are created and resolved.
+ * - the payment path only bumps cumulative LongAdders (striped, no shared cache line)
+ * - a ticker samples every series once a second into rings: per second for the last 5 minutes,
+ *   per minute for the last hour
+ * - a query for the last N seconds is the live sum minus one sample, O(1) and no scans
+ * Windows over 5 minutes have minute granularity; stats report the span actually covered.
+ */
+public class PaymentAnalytics {
+    private static final int CREATED = 0, SUCCEEDED = 1, FAILED = 2, PENDING = 3, CREATED_PAISE = 4, SUCCEEDED_PAISE = 5;
+    private static final int METRICS = 6;
+    private static final int SECOND_SLOTS = 300 + 2;  // +2: the slot being written is never one a query can ask for
+    private static final int MINUTE_SLOTS = 60 + 2;
+    public static final Duration MAX_WINDOW = Duration.ofHours(1);
+
+    private final ConcurrentMap<UUID, Series> byBank = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Series> byPsp = new ConcurrentHashMap<>();
+    private final Series overall = new Series(System.nanoTime());
+    private final ScheduledExecutorService ticker;
+
+    public PaymentAnalytics() {
+        this.ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "payment-analytics");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public void start() {
+        ticker.scheduleAtFixedRate(this::tick, 1, 1, TimeUnit.SECONDS);
+    }
+
+    public void stop() {
+        ticker.shutdownNow();
+    }
+
+    // payment path
+    public void recordCreated(UUID bankId, String psp, long amountPaise) {
+        record(bankId, psp, CREATED, CREATED_PAISE, amountPaise);
+    }
+
+    public void recordOutcome(UUID bankId, String psp, TransactionStatus status, long amountPaise) {
+        switch (status) {
+            case SUCCESS: record(bankId, psp, SUCCEEDED, SUCCEEDED_PAISE, amountPaise); break;
+            case FAILED: record(bankId, psp, FAILED, -1, 0); break;
+            default: record(bankId, psp, PENDING, -1, 0); break;
+        }
+    }
+
+    // queries
+    public PaymentStats overall(Duration window) { return overall.stats(seconds(window)); }
+
+    public PaymentStats forBank(UUID bankId, Duration window) {
+        Series s = byBank.get(bankId);
+        return s == null ? Series.EMPTY : s.stats(seconds(window));
+    }
+
+    public PaymentStats forPsp(String psp, Duration window) {
+        Series s = byPsp.get(psp);
+        return s == null ? Series.EMPTY : s.stats(seconds(window));
+    }
+
+    public Map<UUID, PaymentStats> byBank(Duration window) {
+        int w = seconds(window);
+        Map<UUID, PaymentStats> out = new TreeMap<>();
+        byBank.forEach((k, s) -> out.put(k, s.stats(w)));
+        return out;
+    }
+
+    public Map<String, PaymentStats> byPsp(Duration window) {
+        int w = seconds(window);
+        Map<String, PaymentStats> out = new TreeMap<>();
+        byPsp.forEach((k, s) -> out.put(k, s.stats(w)));
+        return out;
+    }
+
+    private void record(UUID bankId, String psp, int count, int amount, long amountPaise) {
+        overall.add(count, amount, amountPaise);
+        if (bankId != null) series(byBank, bankId).add(count, amount, amountPaise);
+        if (psp != null) series(byPsp, psp).add(count, amount, amountPaise);
+    }
+
+    private static <K> Series series(ConcurrentMap<K, Series> map, K key) {
+        Series s = map.get(key);
+        return s != null ? s : map.computeIfAbsent(key, k -> new Series(System.nanoTime()));
+    }
+
+    private static int seconds(Duration window) {
+        if (window.isNegative() || window.isZero() || window.compareTo(MAX_WINDOW) > 0) {
+            throw new IllegalArgumentException("window must be in (0, " + MAX_WINDOW + "]");
+        }
+        return (int) Math.max(1, window.getSeconds());
+    }
+
+    private void tick() {
+        long now = System.nanoTime();
+        overall.sample(now);
+        for (Series s : byBank.values()) s.sample(now);
+        for (Series s : byPsp.values()) s.sample(now);
+    }
+
+    /*
+      Cumulative counters plus rings of their past values. Sample k (k = 0 at creation, all zero)
+      is taken at tick k; every 60th also goes to the minute ring. Only the ticker writes the
+      rings; ticks is published after a sample is fully written.
+    */
+    private static final class Series {
+        static final PaymentStats EMPTY = new PaymentStats(0, 0, 0, 0, 0, 0, 0);
+
+        final LongAdder[] live = new LongAdder[METRICS];
+        final long[][] perSecond = new long[METRICS][SECOND_SLOTS];
+        final long[] secondNanos = new long[SECOND_SLOTS];
+        final long[][] perMinute = new long[METRICS][MINUTE_SLOTS];
+        final long[] minuteNanos = new long[MINUTE_SLOTS];
+        volatile long ticks = 1;
+
+        Series(long createdNanos) {
+            for (int m = 0; m < METRICS; m++) live[m] = new LongAdder();
+            secondNanos[0] = createdNanos;
+            minuteNanos[0] = createdNanos;
+        }
+
+        void add(int count, int amount, long amountPaise) {
+            live[count].increment();
+            if (amount >= 0) live[amount].add(amountPaise);
+        }
+
+        void sample(long now) {
+            long k = ticks;
+            int s = (int) (k % SECOND_SLOTS);
+            for (int m = 0; m < METRICS; m++) perSecond[m][s] = live[m].sum();
+            secondNanos[s] = now;
+            if (k % 60 == 0) {
+                int mi = (int) ((k / 60) % MINUTE_SLOTS);
+                for (int m = 0; m < METRICS; m++) perMinute[m][mi] = perSecond[m][s];
+                minuteNanos[mi] = now;
+            }
+            ticks = k + 1;
+        }
+
+        PaymentStats stats(int windowSeconds) {
+            long[] now = new long[METRICS];
+            long nowNanos = System.nanoTime();
+            for (int m = 0; m < METRICS; m++) now[m] = live[m].sum();
+            long t = ticks;
+            long k = Math.max(0, t - windowSeconds); // oldest sample inside the window
+            long[][] ring;
+            int slot;
+            long baseNanos;
+            if (windowSeconds < SECOND_SLOTS - 1) {
+                slot = (int) (k % SECOND_SLOTS);
+                ring = perSecond;
+                baseNanos = secondNanos[slot];
+            } else {
+                long minute = Math.min((k + 59) / 60, (t - 1) / 60); // first minute sample at or after k
+                slot = (int) (minute % MINUTE_SLOTS);
+                ring = perMinute;
+                baseNanos = minuteNanos[slot];
+            }
+            return new PaymentStats((nowNanos - baseNanos) / 1e9,
+                    now[CREATED] - ring[CREATED][slot], now[SUCCEEDED] - ring[SUCCEEDED][slot],
+                    now[FAILED] - ring[FAILED][slot], now[PENDING] - ring[PENDING][slot],
+                    now[CREATED_PAISE] - ring[CREATED_PAISE][slot], now[SUCCEEDED_PAISE] - ring[SUCCEEDED_PAISE][slot]);
+        }
+    }
+}
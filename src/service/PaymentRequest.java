@@ -0,0 +1,21 @@
+package service;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+
+/** One item of a bulk payment run; same fields as TransactionService.createPayment. */
+public class PaymentRequest {
+    public final String idempotencyKey;
+    public final UUID fromAccountId;
+    public final UUID toAccountId;     // nullable (if external)
+    public final String toIdentifier;
+    public final BigDecimal amount;
+
+    public PaymentRequest(String idempotencyKey, UUID fromAccountId, UUID toAccountId, String toIdentifier, BigDecimal amount) {
+        this.idempotencyKey = idempotencyKey;
+        this.fromAccountId = fromAccountId;
+        this.toAccountId = toAccountId;
+        this.toIdentifier = toIdentifier;
+        this.amount = amount;
+    }
+}
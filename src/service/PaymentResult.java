@@ -0,0 +1,30 @@
+package service;
+
+import models.Transaction;
+
+/**
+ * Per-item outcome of a bulk payment run: either the (new or existing) transaction or an error.
+ * A retryable rejection (a bank outage, a key race) says nothing about the payment itself: the
+ * same request may be accepted later.
+ */
+public class PaymentResult {
+    public final PaymentRequest request;
+    public final Transaction transaction; // null if rejected
+    public final String error;            // null if accepted
+    public final boolean retryable;       // rejected for a transient reason
+
+    private PaymentResult(PaymentRequest request, Transaction transaction, String error, boolean retryable) {
+        this.request = request; this.transaction = transaction; this.error = error; this.retryable = retryable;
+    }
+
+    public static PaymentResult accepted(PaymentRequest request, Transaction txn) { return new PaymentResult(request, txn, null, false); }
+    public static PaymentResult rejected(PaymentRequest request, String error) { return new PaymentResult(request, null, error, false); }
+    public static PaymentResult unavailable(PaymentRequest request, String error) { return new PaymentResult(request, null, error, true); }
+
+    public boolean isAccepted() { return transaction != null; }
+
+    @Override public String toString() {
+        return isAccepted() ? "PaymentResult{ok," + transaction.id + "}"
+                : "PaymentResult{" + (retryable ? "unavailable," : "rejected,") + error + "}";
+    }
+}
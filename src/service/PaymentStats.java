@@ -0,0 +1,42 @@
+package service;
+
+import java.math.BigDecimal;
+
+/** Payment counts and rates of one bank / PSP / overall over a recent window (see PaymentAnalytics). */
+public class PaymentStats {
+    public final double windowSeconds;   // span actually covered (shorter right after start-up)
+    public final long created;
+    public final long succeeded;
+    public final long failed;
+    public final long pending;           // PSP answered PENDING (resolved later by the reconciler)
+    public final BigDecimal createdAmount;
+    public final BigDecimal succeededAmount;
+
+    PaymentStats(double windowSeconds, long created, long succeeded, long failed, long pending, long createdPaise, long succeededPaise) {
+        this.windowSeconds = windowSeconds;
+        this.created = created;
+        this.succeeded = succeeded;
+        this.failed = failed;
+        this.pending = pending;
+        this.createdAmount = BigDecimal.valueOf(createdPaise, 2);
+        this.succeededAmount = BigDecimal.valueOf(succeededPaise, 2);
+    }
+
+    /** Payments created per second. */
+    public double tps() { return windowSeconds <= 0 ? 0 : created / windowSeconds; }
+
+    /** Share of the payments finalized in the window that succeeded. */
+    public double successRate() { return ratio(succeeded, succeeded + failed); }
+
+    public double failureRate() { return ratio(failed, succeeded + failed); }
+
+    /** Share of created payments whose PSP call came back PENDING. */
+    public double pendingRatio() { return ratio(pending, created); }
+
+    private static double ratio(long n, long d) { return d == 0 ? 0 : (double) n / d; }
+
+    @Override public String toString() {
+        return String.format("PaymentStats{%.0fs tps=%.2f created=%d ok=%d failed=%d pending=%d success=%.1f%% volume=%s}",
+                windowSeconds, tps(), created, succeeded, failed, pending, 100 * successRate(), succeededAmount);
+    }
+}
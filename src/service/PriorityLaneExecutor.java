@@ -0,0 +1,301 @@
+package service;
+
+import enums.ExecutionLane;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.ToLongFunction;
+
+/**
+ * Fixed pool of worker threads fed from one queue per ExecutionLane instead of a single FIFO,
+ * so a retry or bulk backlog does not queue in front of a user at checkout.
+ * - weighted fair sharing of worker time (stride scheduling): a free worker takes the head of
+ *   the backlogged lane with the least run time divided by weight, so each backlogged lane gets
+ *   at least weight / total weight of the workers' time, whatever its tasks' length. A dispatch
+ *   is charged the lane's average run time and corrected when the task finishes; a lane coming
+ *   back from idle starts at the current virtual time, with no credit for time it did not use
+ * - reservedForInteractive workers never run RETRY / BULK tasks, so long background tasks
+ *   cannot leave an interactive one waiting for a worker
+ * - per lane: submitted / completed counts, queue depth and queue-wait mean, max and
+ *   percentiles over the last WAIT_SAMPLES dispatches
+ * Plain execute() / submit() use the INTERACTIVE lane, so it is a drop-in for a fixed pool.
+ * A task that throws is counted in getTaskErrors() and the worker carries on.
+ */
+public class PriorityLaneExecutor extends AbstractExecutorService implements LaneExecutor {
+    private static final int WAIT_SAMPLES = 4096;
+
+    private static final class Queued {
+        final Runnable task;
+        final long enqueuedNanos;
+
+        Queued(Runnable task, long enqueuedNanos) { this.task = task; this.enqueuedNanos = enqueuedNanos; }
+    }
+
+    // guarded by the executor's lock
+    private static final class Lane {
+        final ArrayDeque<Queued> queue = new ArrayDeque<>();
+        final int weight;
+        final boolean background;
+        long pass;                     // run nanos / weight
+        long runNanosEstimate = 1_000_000;
+        int busy;
+        long submitted, completed, waitNanos, maxWaitNanos;
+        final long[] waits = new long[WAIT_SAMPLES];
+        long samples;
+
+        Lane(int weight, boolean background) {
+            this.weight = weight;
+            this.background = background;
+        }
+    }
+
+    private final Lane[] lanes;
+    private final Thread[] workers;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition workAvailable = lock.newCondition();
+    private final Condition allExited = lock.newCondition();
+    private final int maxBackgroundBusy;
+    private long virtualTime;
+    private int backgroundBusy;
+    private int liveWorkers;
+    private boolean shutdown;
+    private long taskErrors;
+
+    /** Weights 8 / 3 / 1 (interactive / retry / bulk); one worker reserved for interactive if threads > 1. */
+    public PriorityLaneExecutor(String name, int threads) {
+        this(name, threads, new int[]{8, 3, 1}, threads > 1 ? 1 : 0);
+    }
+
+    public PriorityLaneExecutor(String name, int threads, int[] weights, int reservedForInteractive) {
+        if (threads <= 0) throw new IllegalArgumentException("threads must be > 0");
+        if (weights.length != ExecutionLane.values().length) throw new IllegalArgumentException("one weight per lane");
+        if (reservedForInteractive < 0 || reservedForInteractive >= threads) {
+            throw new IllegalArgumentException("reservedForInteractive must be in [0, threads)");
+        }
+        this.lanes = new Lane[weights.length];
+        for (int i = 0; i < weights.length; i++) {
+            if (weights[i] <= 0) throw new IllegalArgumentException("weights must be > 0");
+            lanes[i] = new Lane(weights[i], i != ExecutionLane.INTERACTIVE.ordinal());
+        }
+        this.maxBackgroundBusy = threads - reservedForInteractive;
+        this.workers = new Thread[threads];
+        this.liveWorkers = threads;
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Thread(this::work, name + "-" + i);
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        execute(ExecutionLane.INTERACTIVE, task);
+    }
+
+    @Override
+    public void execute(ExecutionLane lane, Runnable task) {
+        if (task == null) throw new NullPointerException();
+        Queued q = new Queued(task, System.nanoTime());
+        lock.lock();
+        try {
+            if (shutdown) throw new RejectedExecutionException("executor is shut down");
+            Lane l = lanes[lane.ordinal()];
+            if (l.queue.isEmpty() && l.busy == 0) l.pass = Math.max(l.pass, virtualTime);
+            l.queue.add(q);
+            l.submitted++;
+            workAvailable.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void work() {
+        try {
+            while (true) {
+                Lane lane;
+                Queued q;
+                long charged;
+                lock.lock();
+                try {
+                    while ((lane = next()) == null) {
+                        if (shutdown && queued() == 0) return;
+                        try {
+                            workAvailable.await();
+                        } catch (InterruptedException e) {
+                            if (shutdown) return; // shutdownNow
+                        }
+                    }
+                    q = lane.queue.poll();
+                    long wait = System.nanoTime() - q.enqueuedNanos;
+                    lane.waitNanos += wait;
+                    if (wait > lane.maxWaitNanos) lane.maxWaitNanos = wait;
+                    lane.waits[(int) (lane.samples++ % WAIT_SAMPLES)] = wait;
+                    virtualTime = lane.pass;
+                    charged = lane.runNanosEstimate;
+                    lane.pass += charged / lane.weight;
+                    lane.busy++;
+                    if (lane.background) backgroundBusy++;
+                } finally {
+                    lock.unlock();
+                }
+                boolean failed = false;
+                Thread.interrupted(); // a stale interrupt is not the next task's
+                long started = System.nanoTime();
+                try {
+                    q.task.run();
+                } catch (Throwable t) {
+                    failed = true;
+                }
+                long ran = System.nanoTime() - started;
+                lock.lock();
+                try {
+                    lane.pass += (ran - charged) / lane.weight;
+                    lane.runNanosEstimate += (ran - lane.runNanosEstimate) >> 3;
+                    lane.busy--;
+                    lane.completed++;
+                    if (failed) taskErrors++;
+                    if (lane.background) {
+                        // a RETRY / BULK task held back by the cap can run now, on another worker if this one takes something else
+                        if (backgroundBusy-- == maxBackgroundBusy && queued() > 0) workAvailable.signal();
+                    }
+                } finally {
+                    lock.unlock();
+                }
+            }
+        } finally {
+            lock.lock();
+            try {
+                if (--liveWorkers == 0) allExited.signalAll();
+                else workAvailable.signal(); // pass on the wake-up a shutdown may need
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    // the backlogged lane with the lowest pass, background lanes only below their worker cap; ties go to the earlier lane
+    private Lane next() {
+        Lane best = null;
+        for (Lane l : lanes) {
+            if (l.queue.isEmpty() || (l.background && backgroundBusy >= maxBackgroundBusy)) continue;
+            if (best == null || l.pass < best.pass) best = l;
+        }
+        return best;
+    }
+
+    private int queued() {
+        int n = 0;
+        for (Lane l : lanes) n += l.queue.size();
+        return n;
+    }
+
+    @Override
+    public void shutdown() {
+        lock.lock();
+        try {
+            shutdown = true;
+            workAvailable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        List<Runnable> pending = new ArrayList<>();
+        lock.lock();
+        try {
+            shutdown = true;
+            for (Lane l : lanes) {
+                for (Queued q : l.queue) pending.add(q.task);
+                l.queue.clear();
+            }
+            workAvailable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        for (Thread t : workers) t.interrupt();
+        return pending;
+    }
+
+    @Override
+    public boolean isShutdown() {
+        lock.lock();
+        try {
+            return shutdown;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean isTerminated() {
+        lock.lock();
+        try {
+            return liveWorkers == 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        lock.lock();
+        try {
+            while (liveWorkers > 0) {
+                if (nanos <= 0) return false;
+                nanos = allExited.awaitNanos(nanos);
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // metrics: per lane submitted, completed, queued, queue wait (mean, max, percentile of recent dispatches); task errors
+    public long getSubmitted(ExecutionLane lane) { return read(lane, l -> l.submitted); }
+    public long getCompleted(ExecutionLane lane) { return read(lane, l -> l.completed); }
+    public long getQueued(ExecutionLane lane) { return read(lane, l -> l.queue.size()); }
+    public double getMeanQueueWaitMillis(ExecutionLane lane) { return read(lane, l -> l.samples == 0 ? 0 : l.waitNanos / l.samples) / 1e6; }
+    public double getMaxQueueWaitMillis(ExecutionLane lane) { return read(lane, l -> l.maxWaitNanos) / 1e6; }
+
+    public double getQueueWaitMillis(ExecutionLane lane, double percentile) {
+        long[] sorted;
+        lock.lock();
+        try {
+            Lane l = lanes[lane.ordinal()];
+            sorted = Arrays.copyOf(l.waits, (int) Math.min(l.samples, WAIT_SAMPLES));
+        } finally {
+            lock.unlock();
+        }
+        if (sorted.length == 0) return 0;
+        Arrays.sort(sorted);
+        return sorted[Math.min(sorted.length - 1, (int) (sorted.length * percentile))] / 1e6;
+    }
+
+    public long getTaskErrors() {
+        lock.lock();
+        try {
+            return taskErrors;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private long read(ExecutionLane lane, ToLongFunction<Lane> f) {
+        lock.lock();
+        try {
+            return f.applyAsLong(lanes[lane.ordinal()]);
+        } finally {
+            lock.unlock();
+        }
+    }
+}
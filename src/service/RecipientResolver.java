@@ -33,7 +33,8 @@ public class RecipientResolver {
             UUID userId = userOpt.get().id;
             // pick primary account
             for (BankAccount a : acctRepo.findByUserId(userId)) {
-                if (a.isPrimary && a.status == AccountStatus.ACTIVE) {
+                // both flags from the same version of the account, without locking it
+                if (a.readConsistent(x -> x.isPrimary && x.status == AccountStatus.ACTIVE)) {
                     return Optional.of(a.id);
                 }
             }
@@ -47,12 +48,10 @@ public class RecipientResolver {
         // 2) exact bank account number -> find by bank/account (if your repo supports it)
         // This requires that the caller includes bank info or the account numbers are globally unique.
         // For demo, try linear search:
-        for (BankAccount a : acctRepo.listAll()) {
-            if (a.accountNumber.equals(toIdentifier)) {
-                return Optional.of(a.id);
-            }
-        }
-        // not resolved -> external
-        return Optional.empty();
+        // streamed straight off the map, stopping at the first match; not resolved -> external
+        return acctRepo.streamAll()
+                .filter(a -> a.accountNumber.equals(toIdentifier))
+                .map(a -> a.id)
+                .findFirst();
     }
 }
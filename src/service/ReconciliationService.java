@@ -3,45 +3,90 @@ package service;
 import enums.TransactionStatus;
 import models.Transaction;
 import repository.TransactionRepository;
+import scheduling.Scheduler;
 
 import java.time.Duration;
 import java.util.List;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
 
+/**
+ * Periodically settles PENDING transactions through TransactionService.reconcileOnce: queries the
+ * PSP, re-initiates calls that never reached it, and fails what stays pending past
+ * maxPendingDuration or maxAttempts. With a backoff, a transaction already queried is skipped
+ * until backoff * 2^(attempts - 1) has passed since its last attempt, so slow PSP resolutions
+ * cost fewer queries. Runs on the given Scheduler, so a SimulatedScheduler drives it in
+ * simulated time.
+ */
 public class ReconciliationService {
 
     private final TransactionService txnService;
     private final TransactionRepository txnRepo;
-    private final ScheduledExecutorService scheduler;
-    private final Duration maxPendingDuration = Duration.ofSeconds(120); // spec: PSP will update within 120s; configurable
-    private final int maxAttempts = 5;
+    private final Scheduler scheduler;
+    private final Duration initialDelay;
+    private final Duration interval;
+    private final Duration maxPendingDuration; // spec: PSP will update within 120s
+    private final int maxAttempts;
+    private final Duration backoff;            // ZERO = query every pending transaction every run
+    private final boolean ownsScheduler;
+    private Scheduler.Task task;
 
     public ReconciliationService(TransactionService txnService, TransactionRepository txnRepo) {
+        this(txnService, txnRepo, Scheduler.system("reconciler"), Duration.ofSeconds(5), Duration.ofSeconds(10),
+                Duration.ofSeconds(120), 5, Duration.ZERO, true);
+    }
+
+    public ReconciliationService(TransactionService txnService, TransactionRepository txnRepo, Scheduler scheduler,
+                                 Duration initialDelay, Duration interval, Duration maxPendingDuration, int maxAttempts,
+                                 Duration backoff) {
+        this(txnService, txnRepo, scheduler, initialDelay, interval, maxPendingDuration, maxAttempts, backoff, false);
+    }
+
+    private ReconciliationService(TransactionService txnService, TransactionRepository txnRepo, Scheduler scheduler,
+                                  Duration initialDelay, Duration interval, Duration maxPendingDuration, int maxAttempts,
+                                  Duration backoff, boolean ownsScheduler) {
         this.txnService = txnService;
         this.txnRepo = txnRepo;
-        this.scheduler = Executors.newSingleThreadScheduledExecutor();
+        this.scheduler = scheduler;
+        this.initialDelay = initialDelay;
+        this.interval = interval;
+        this.maxPendingDuration = maxPendingDuration;
+        this.maxAttempts = maxAttempts;
+        this.backoff = backoff;
+        this.ownsScheduler = ownsScheduler;
     }
 
-    public void start() {
-        // run every 10 seconds
-        scheduler.scheduleWithFixedDelay(this::reconcileRun, 5, 10, TimeUnit.SECONDS);
+    public synchronized void start() {
+        if (task == null) task = scheduler.scheduleWithFixedDelay(this::reconcileRun, initialDelay, interval);
     }
 
-    public void stop() {
-        scheduler.shutdownNow();
+    // a scheduler passed in is left running for its owner
+    public synchronized void stop() {
+        if (task != null) task.cancel();
+        task = null;
+        if (ownsScheduler) scheduler.shutdown();
     }
 
     private void reconcileRun() {
         try {
+            long now = scheduler.clock().millis();
             List<Transaction> pending = txnRepo.findByStatus(TransactionStatus.PENDING);
             for (Transaction t : pending) {
-                txnService.reconcileOnce(t, maxPendingDuration, maxAttempts);
+                if (backingOff(t, now)) continue;
+                // one transaction failing (PSP unreachable, ...) must not skip the rest of the run
+                try {
+                    txnService.reconcileOnce(t, maxPendingDuration, maxAttempts);
+                } catch (RuntimeException e) {
+                    e.printStackTrace();
+                }
             }
         } catch (Throwable t) {
             t.printStackTrace();
         }
     }
-}
 
+    private boolean backingOff(Transaction t, long now) {
+        if (backoff.isZero() || t.reconciliationAttempts == 0) return false;
+        if (now >= t.createdAt.toEpochMilli() + maxPendingDuration.toMillis()) return false; // due to time out
+        long wait = backoff.toMillis() << Math.min(t.reconciliationAttempts - 1, 20);
+        return now < t.updatedAt.toEpochMilli() + wait;
+    }
+}
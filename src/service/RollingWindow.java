@@ -0,0 +1,87 @@
+package service;
+
+import java.util.Arrays;
+
+/**
+ * Amount and count over the last {@code buckets} buckets of {@code bucketMillis} each, kept in
+ * primitive rings with running totals. Not thread-safe: the owner guards it.
+ * Advancing clears at most one ring's worth of buckets, so every operation is O(buckets) worst
+ * case and O(1) when called at least once per bucket.
+ */
+final class RollingWindow {
+    private final long bucketMillis;
+    private final long[] amounts;
+    private final long[] counts;
+    private long head = Long.MIN_VALUE; // newest bucket id seen
+    private long amount;
+    private long count;
+
+    RollingWindow(int buckets, long bucketMillis) {
+        this.bucketMillis = bucketMillis;
+        this.amounts = new long[buckets];
+        this.counts = new long[buckets];
+    }
+
+    long amount(long nowMillis) {
+        advance(nowMillis / bucketMillis);
+        return amount;
+    }
+
+    long count(long nowMillis) {
+        advance(nowMillis / bucketMillis);
+        return count;
+    }
+
+    void add(long nowMillis, long amt) {
+        long b = nowMillis / bucketMillis;
+        advance(b);
+        int i = slot(b);
+        amounts[i] += amt;
+        counts[i]++;
+        amount += amt;
+        count++;
+    }
+
+    // undo an add made at atMillis, if its bucket has not rolled out of the window yet
+    void remove(long atMillis, long nowMillis, long amt) {
+        long b = atMillis / bucketMillis;
+        advance(nowMillis / bucketMillis);
+        if (b > head || head - b >= amounts.length) return;
+        int i = slot(b);
+        long a = Math.min(amt, amounts[i]);
+        amounts[i] -= a;
+        amount -= a;
+        if (counts[i] > 0) {
+            counts[i]--;
+            count--;
+        }
+    }
+
+    boolean isEmpty(long nowMillis) {
+        advance(nowMillis / bucketMillis);
+        return count == 0;
+    }
+
+    private void advance(long bucket) {
+        if (bucket <= head) return;
+        if (head == Long.MIN_VALUE || bucket - head >= amounts.length) {
+            Arrays.fill(amounts, 0);
+            Arrays.fill(counts, 0);
+            amount = 0;
+            count = 0;
+        } else {
+            for (long b = head + 1; b <= bucket; b++) {
+                int i = slot(b);
+                amount -= amounts[i];
+                count -= counts[i];
+                amounts[i] = 0;
+                counts[i] = 0;
+            }
+        }
+        head = bucket;
+    }
+
+    private int slot(long bucket) {
+        return (int) Math.floorMod(bucket, (long) amounts.length);
+    }
+}
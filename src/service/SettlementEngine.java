@@ -0,0 +1,374 @@
+package service;
+
+import enums.TransactionStatus;
+import models.Transaction;
+import repository.BankAccountRepository;
+import repository.TransactionRepository;
+import scheduling.Scheduler;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Inter-bank net settlement in cycles. TransactionService reports every SUCCESS between accounts
+ * of two different banks; the open cycle adds it to the gross position of that (payer bank,
+ * payee bank) pair in striped counters, so the payment path never contends on a shared total.
+ *
+ * A cycle holds the payments whose success time (Transaction.updatedAt) falls in
+ * [startMillis, endMillis). Closing swaps in the next cycle without stopping payments: a
+ * payment marks itself in flight on the cycle it saw (enter / exit around markSuccess), is
+ * stamped with stamp(), never before that cycle's start, and goes to the next cycle if its
+ * success time is past the cut-over; the close waits only for the payments in flight on the old
+ * cycle, never for the clock, so a simulated clock works too. Cycles are closed from a Scheduler. The closed cycle's gross pairs and per-bank net positions
+ * are then streamed to a settlement file in outputDir. Closing costs O(bank pairs) however many
+ * payments the cycle had. reconcile() recomputes a closed cycle from the transaction set.
+ */
+public class SettlementEngine {
+    private static final UUID NO_BANK = new UUID(0, 0); // account not found
+
+    private final TransactionRepository txnRepo;
+    private final BankAccountRepository acctRepo;
+    private final Path outputDir;
+    private final ConcurrentMap<Long, CycleReport> closed = new ConcurrentHashMap<>();
+    private final Scheduler scheduler;
+    private final boolean ownsScheduler;
+    private final Clock clock;
+    private volatile Cycle current;
+    private Scheduler.Task task;
+
+    public SettlementEngine(TransactionRepository txnRepo, BankAccountRepository acctRepo, Path outputDir) {
+        this(txnRepo, acctRepo, outputDir, Scheduler.system("settlement-cycle"), true);
+    }
+
+    /** scheduler's clock must be the TransactionService's: success times are stamped with it. */
+    public SettlementEngine(TransactionRepository txnRepo, BankAccountRepository acctRepo, Path outputDir, Scheduler scheduler) {
+        this(txnRepo, acctRepo, outputDir, scheduler, false);
+    }
+
+    private SettlementEngine(TransactionRepository txnRepo, BankAccountRepository acctRepo, Path outputDir,
+                             Scheduler scheduler, boolean ownsScheduler) {
+        this.txnRepo = txnRepo;
+        this.acctRepo = acctRepo;
+        this.outputDir = outputDir;
+        this.scheduler = scheduler;
+        this.ownsScheduler = ownsScheduler;
+        this.clock = scheduler.clock();
+        this.current = new Cycle(1, clock.millis());
+    }
+
+    /** Close a cycle every cycleLength. */
+    public synchronized void start(Duration cycleLength) {
+        if (task != null) return;
+        task = scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                closeCycle();
+            } catch (Throwable t) {
+                t.printStackTrace();
+            }
+        }, cycleLength, cycleLength);
+    }
+
+    // a scheduler passed in is left running for its owner
+    public synchronized void stop() {
+        if (task != null) task.cancel();
+        task = null;
+        if (ownsScheduler) scheduler.shutdown();
+    }
+
+    // payment path: enter, mark the transaction SUCCESS, record, exit
+
+    /** The open cycle, marked in flight until exit(), which must be called on the same thread. */
+    public Cycle enter() {
+        int stripe = Cycle.stripe();
+        for (;;) {
+            Cycle c = current;
+            c.inFlight.incrementAndGet(stripe);
+            if (c == current) return c;
+            c.inFlight.decrementAndGet(stripe); // closed meanwhile: the close may already have counted in-flight
+        }
+    }
+
+    public void exit(Cycle entered) {
+        entered.inFlight.decrementAndGet(Cycle.stripe());
+    }
+
+    /** The success time for a payment entered on a cycle: the clock's, but never before the cycle's start. */
+    public Instant stamp(Cycle entered) {
+        Instant now = clock.instant();
+        return now.toEpochMilli() >= entered.startMillis ? now : Instant.ofEpochMilli(entered.startMillis);
+    }
+
+    /** Count a successful payment from a payer at fromBankId to a payee at toBankId (no-op for the same bank). */
+    public void record(Cycle entered, Transaction txn, UUID fromBankId, UUID toBankId) {
+        if (fromBankId == null || toBankId == null || fromBankId.equals(toBankId)) return;
+        Cycle c = entered;
+        long at = txn.updatedAt.toEpochMilli();
+        // cut over while this payment was in flight: the success time decides the cycle
+        while (c.closing) {
+            long end = c.endMillis;
+            if (end == Long.MAX_VALUE) {
+                Thread.yield(); // cut-over time being chosen
+                continue;
+            }
+            if (at < end) break;
+            c = c.next;
+        }
+        c.position(fromBankId, toBankId).add(LimitsEngine.toPaise(txn.amount));
+    }
+
+    /**
+     * Close the open cycle now: start the next one, wait for the payments in flight on it and
+     * write its settlement file. Returns the closed cycle's report.
+     * Synchronized against start() / stop() too; none of them waits on a payment or on the clock.
+     */
+    public synchronized CycleReport closeCycle() {
+        long t0 = System.nanoTime();
+        Cycle old = current;
+        // closing first: a payment that does not see it yet was stamped before the cut-over, which
+        // is the next millisecond
+        old.closing = true;
+        long cutOver = Math.max(clock.millis() + 1, old.startMillis + 1);
+        Cycle next = new Cycle(old.number + 1, cutOver);
+        old.next = next;
+        old.endMillis = cutOver; // after next: a payment that sees the cut-over finds the next cycle
+        // payments entering the next cycle are stamped at or after its start by stamp(), even if the clock has not got there
+        current = next;
+        while (old.inFlightCount() != 0) Thread.yield();
+
+        CycleReport report = old.report();
+        try {
+            report.file = writeFile(report);
+        } catch (IOException e) {
+            throw new UncheckedIOException("settlement file for cycle " + report.cycle, e);
+        }
+        report.closeNanos = System.nanoTime() - t0;
+        closed.put(report.cycle, report);
+        return report;
+    }
+
+    public Clock clock() { return clock; }
+
+    public Optional<CycleReport> findClosed(long cycle) { return Optional.ofNullable(closed.get(cycle)); }
+
+    public long openCycle() { return current.number; }
+
+    /**
+     * Recompute a closed cycle from the transaction set: every SUCCESS transaction between accounts
+     * of two banks with updatedAt in the cycle, summed per bank pair, must match the report.
+     */
+    public Reconciliation reconcile(long cycle) {
+        CycleReport report = findClosed(cycle).orElseThrow(() -> new IllegalArgumentException("cycle not closed: " + cycle));
+        ConcurrentMap<UUID, UUID> bankOf = new ConcurrentHashMap<>();
+        ConcurrentMap<BankPair, Position> recomputed = new ConcurrentHashMap<>();
+        txnRepo.streamByStatus(TransactionStatus.SUCCESS).parallel()
+                .filter(t -> t.toAccountId != null)
+                .filter(t -> {
+                    long at = t.updatedAt.toEpochMilli();
+                    return at >= report.startMillis && at < report.endMillis;
+                })
+                .forEach(t -> {
+                    UUID from = bankOf.computeIfAbsent(t.fromAccountId, this::bankOf);
+                    UUID to = bankOf.computeIfAbsent(t.toAccountId, this::bankOf);
+                    if (from.equals(NO_BANK) || to.equals(NO_BANK) || from.equals(to)) return;
+                    recomputed.computeIfAbsent(new BankPair(from, to), p -> new Position()).add(LimitsEngine.toPaise(t.amount));
+                });
+
+        List<String> mismatches = new ArrayList<>();
+        long transactions = 0;
+        for (Map.Entry<BankPair, Position> e : recomputed.entrySet()) {
+            long[] expected = report.gross.get(e.getKey());
+            long paise = e.getValue().paise.sum(), count = e.getValue().count.sum();
+            transactions += count;
+            if (expected == null || expected[0] != paise || expected[1] != count) {
+                mismatches.add(e.getKey() + ": transactions " + count + " / " + paise + " paise, cycle "
+                        + (expected == null ? "none" : expected[1] + " / " + expected[0] + " paise"));
+            }
+        }
+        for (BankPair p : report.gross.keySet()) {
+            if (!recomputed.containsKey(p)) mismatches.add(p + ": in the cycle, no transactions found");
+        }
+        return new Reconciliation(cycle, transactions, mismatches);
+    }
+
+    private UUID bankOf(UUID accountId) {
+        return acctRepo.findById(accountId).map(a -> a.bankId).orElse(NO_BANK);
+    }
+
+    // cycle_<n>.csv: gross lines per bank pair, then the net line per bank (receivable - payable)
+    private Path writeFile(CycleReport r) throws IOException {
+        Files.createDirectories(outputDir);
+        Path file = outputDir.resolve("settlement_cycle_" + r.cycle + ".csv");
+        Path tmp = outputDir.resolve(file.getFileName() + ".part");
+        try (BufferedWriter w = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            w.write("# cycle " + r.cycle + " " + Instant.ofEpochMilli(r.startMillis) + " .. " + Instant.ofEpochMilli(r.endMillis)
+                    + " transactions " + r.transactions + "\n");
+            w.write("type,payer_bank,payee_bank,count,amount\n");
+            for (Map.Entry<BankPair, long[]> e : r.gross.entrySet()) {
+                long[] v = e.getValue();
+                w.write("GROSS," + e.getKey().from + "," + e.getKey().to + "," + v[1] + "," + rupees(v[0]) + "\n");
+            }
+            for (Map.Entry<UUID, Long> e : r.net.entrySet()) {
+                w.write("NET," + e.getKey() + ",," + "," + rupees(e.getValue()) + "\n");
+            }
+        }
+        return Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static String rupees(long paise) {
+        return BigDecimal.valueOf(paise, 2).toPlainString();
+    }
+
+    /** One settlement cycle; handed out by enter(). */
+    public static final class Cycle {
+        private static final int IN_FLIGHT_STRIPES = 64;
+        private static final int STRIPE_SPACING = 8; // longs per cache line
+        final long number;
+        final long startMillis;
+        volatile boolean closing;
+        volatile long endMillis = Long.MAX_VALUE;
+        volatile Cycle next;
+        /*
+          Payments in flight, striped by thread (a cache line each). Unlike a LongAdder's cells, a
+          thread's enter and exit hit the same stripe, so no stripe is ever below the number of
+          threads in flight on it and a sum of 0 really means none are.
+        */
+        final AtomicLongArray inFlight = new AtomicLongArray(IN_FLIGHT_STRIPES * STRIPE_SPACING);
+        // payer bank -> payee bank -> gross position
+        private final ConcurrentMap<UUID, ConcurrentMap<UUID, Position>> positions = new ConcurrentHashMap<>();
+
+        Cycle(long number, long startMillis) {
+            this.number = number;
+            this.startMillis = startMillis;
+        }
+
+        static int stripe() {
+            return ((int) Thread.currentThread().getId() & (IN_FLIGHT_STRIPES - 1)) * STRIPE_SPACING;
+        }
+
+        long inFlightCount() {
+            long n = 0;
+            for (int i = 0; i < IN_FLIGHT_STRIPES; i++) n += inFlight.get(i * STRIPE_SPACING);
+            return n;
+        }
+
+        Position position(UUID from, UUID to) {
+            ConcurrentMap<UUID, Position> row = positions.get(from);
+            if (row == null) row = positions.computeIfAbsent(from, k -> new ConcurrentHashMap<>());
+            Position p = row.get(to);
+            return p != null ? p : row.computeIfAbsent(to, k -> new Position());
+        }
+
+        CycleReport report() {
+            Map<BankPair, long[]> gross = new TreeMap<>();
+            Map<UUID, Long> net = new TreeMap<>();
+            long transactions = 0, grossPaise = 0;
+            for (Map.Entry<UUID, ConcurrentMap<UUID, Position>> row : positions.entrySet()) {
+                for (Map.Entry<UUID, Position> cell : row.getValue().entrySet()) {
+                    long paise = cell.getValue().paise.sum(), count = cell.getValue().count.sum();
+                    gross.put(new BankPair(row.getKey(), cell.getKey()), new long[] { paise, count });
+                    net.merge(row.getKey(), -paise, Long::sum);
+                    net.merge(cell.getKey(), paise, Long::sum);
+                    transactions += count;
+                    grossPaise += paise;
+                }
+            }
+            return new CycleReport(number, startMillis, endMillis, transactions, grossPaise,
+                    Collections.unmodifiableMap(gross), Collections.unmodifiableMap(net));
+        }
+    }
+
+    static final class Position {
+        final LongAdder paise = new LongAdder();
+        final LongAdder count = new LongAdder();
+
+        void add(long amountPaise) {
+            paise.add(amountPaise);
+            count.increment();
+        }
+    }
+
+    public static final class BankPair implements Comparable<BankPair> {
+        public final UUID from, to;
+
+        BankPair(UUID from, UUID to) { this.from = from; this.to = to; }
+
+        @Override public boolean equals(Object o) {
+            return o instanceof BankPair && ((BankPair) o).from.equals(from) && ((BankPair) o).to.equals(to);
+        }
+
+        @Override public int hashCode() { return from.hashCode() * 31 + to.hashCode(); }
+
+        @Override public int compareTo(BankPair o) {
+            int c = from.compareTo(o.from);
+            return c != 0 ? c : to.compareTo(o.to);
+        }
+
+        @Override public String toString() { return from + "->" + to; }
+    }
+
+    /** A closed cycle: gross {paise, count} per bank pair and net paise per bank (positive = receives). */
+    public static final class CycleReport {
+        public final long cycle;
+        public final long startMillis, endMillis;
+        public final long transactions;
+        public final long grossPaise;
+        public final Map<BankPair, long[]> gross;
+        public final Map<UUID, Long> net;
+        public volatile Path file;
+        public volatile long closeNanos;
+
+        CycleReport(long cycle, long startMillis, long endMillis, long transactions, long grossPaise,
+                    Map<BankPair, long[]> gross, Map<UUID, Long> net) {
+            this.cycle = cycle;
+            this.startMillis = startMillis;
+            this.endMillis = endMillis;
+            this.transactions = transactions;
+            this.grossPaise = grossPaise;
+            this.gross = gross;
+            this.net = net;
+        }
+
+        @Override public String toString() {
+            return String.format("Cycle{%d, txns=%d, gross=%s, pairs=%d, banks=%d, close=%.2fms, file=%s}",
+                    cycle, transactions, rupees(grossPaise), gross.size(), net.size(), closeNanos / 1e6, file);
+        }
+    }
+
+    public static final class Reconciliation {
+        public final long cycle;
+        public final long transactions;
+        public final List<String> mismatches;
+
+        Reconciliation(long cycle, long transactions, List<String> mismatches) {
+            this.cycle = cycle;
+            this.transactions = transactions;
+            this.mismatches = Collections.unmodifiableList(mismatches);
+        }
+
+        public boolean isBalanced() { return mismatches.isEmpty(); }
+
+        @Override public String toString() {
+            return "Reconciliation{cycle=" + cycle + ",txns=" + transactions + (isBalanced() ? ",balanced}" : ",mismatches=" + mismatches + "}");
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package service;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free token bucket implemented as GCRA: a single "theoretical arrival time" is pushed forward
+ * by one emission interval per token, and a request is refused when that time runs further ahead
+ * of now than the burst allows.
+ */
+public final class TokenBucket {
+    private final long intervalNanos;
+    private final long toleranceNanos;
+    private final AtomicLong tat = new AtomicLong(Long.MIN_VALUE);
+
+    public TokenBucket(double permitsPerSecond, int burst) {
+        if (permitsPerSecond <= 0 || burst <= 0) throw new IllegalArgumentException("rate and burst must be > 0");
+        this.intervalNanos = Math.max(1L, (long) (1_000_000_000d / permitsPerSecond));
+        this.toleranceNanos = intervalNanos * (burst - 1);
+    }
+
+    public boolean tryAcquire(long nowNanos) {
+        for (;;) {
+            long t = tat.get();
+            long base = Math.max(t, nowNanos);
+            if (base - nowNanos > toleranceNanos) return false;
+            if (tat.compareAndSet(t, base + intervalNanos)) return true;
+        }
+    }
+
+    /** Give back a token taken by tryAcquire() for a request that was refused further on. */
+    public void refund() {
+        tat.addAndGet(-intervalNanos);
+    }
+
+    /** True when the bucket is full again, i.e. forgetting it loses nothing. */
+    public boolean isIdle(long nowNanos) {
+        return tat.get() <= nowNanos;
+    }
+}
@@ -1,8 +1,12 @@
 package service;
 
+import enums.AccountStatus;
+import enums.ExecutionLane;
+import enums.PaymentEventType;
 import enums.TransactionStatus;
 import exception.BankDownException;
 import exception.IdempotencyException;
+import events.PaymentEventBus;
 import lock.LockManager;
 import models.BankAccount;
 import models.Transaction;
@@ -11,12 +15,12 @@ import repository.BankAccountRepository;
 import repository.TransactionRepository;
 
 import java.math.BigDecimal;
+import java.time.Clock;
 import java.time.Duration;
-import java.time.Instant;
-import java.util.List;
-import java.util.Optional;
-import java.util.UUID;
+import java.util.*;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.stream.Stream;
 
 public class TransactionService {
 
@@ -24,12 +28,40 @@ public class TransactionService {
     private final BankAccountRepository acctRepo;
     private final BankAccountService acctService;
     private final PspClient pspClient;
-    private final ExecutorService asyncExecutor;
+    private final LaneExecutor asyncExecutor;
     private final LockManager lockManager;
     private final BankHealthRegistry bankHealthRegistry; // NEW
+    private final AdmissionController admission; // optional, null = admit everything
+    private final PaymentEventBus events; // optional, null = no state-change events
+    private final LimitsEngine limits; // optional, null = no per-user / per-account limits
+    private final PaymentAnalytics analytics; // optional, null = no live throughput / outcome stats
+    private final SettlementEngine settlement; // optional, null = no inter-bank net settlement
+    private final Clock clock; // timestamps, limit windows and reconcile timeouts; simulated in simulations
 
     // config
     private final int maxPspInitiateRetries = 3;
+    private static final int BULK_LOCK_GROUP = 256;  // source accounts locked together in createPayments
+    private static final int BULK_PSP_BATCH = 64;    // transactions per executor task in createPayments
+
+    /**
+     * The optional collaborators, each off unless set. Pass the same clock to the SettlementEngine
+     * (its cycle boundaries are compared with the success times stamped here).
+     */
+    public static final class Options {
+        AdmissionController admission;
+        PaymentEventBus events;
+        LimitsEngine limits;
+        PaymentAnalytics analytics;
+        SettlementEngine settlement;
+        Clock clock = Clock.systemUTC();
+
+        public Options admission(AdmissionController admission) { this.admission = admission; return this; }
+        public Options events(PaymentEventBus events) { this.events = events; return this; }
+        public Options limits(LimitsEngine limits) { this.limits = limits; return this; }
+        public Options analytics(PaymentAnalytics analytics) { this.analytics = analytics; return this; }
+        public Options settlement(SettlementEngine settlement) { this.settlement = settlement; return this; }
+        public Options clock(Clock clock) { this.clock = clock; return this; }
+    }
 
     public TransactionService(TransactionRepository txnRepo,
                               BankAccountRepository acctRepo,
@@ -38,6 +70,42 @@ public class TransactionService {
                               ExecutorService asyncExecutor,
                               LockManager lockManager,
                               BankHealthRegistry bankHealthRegistry) { // NEW param
+        this(txnRepo, acctRepo, acctService, pspClient, asyncExecutor, lockManager, bankHealthRegistry, new Options());
+    }
+
+    // PSP calls go in their lanes on a pool that is a LaneExecutor (PriorityLaneExecutor), in submission order on any other
+    public TransactionService(TransactionRepository txnRepo,
+                              BankAccountRepository acctRepo,
+                              BankAccountService acctService,
+                              PspClient pspClient,
+                              ExecutorService asyncExecutor,
+                              LockManager lockManager,
+                              BankHealthRegistry bankHealthRegistry,
+                              Options options) {
+        this(txnRepo, acctRepo, acctService, pspClient, LaneExecutor.of(asyncExecutor), lockManager, bankHealthRegistry, options);
+    }
+
+    public TransactionService(TransactionRepository txnRepo,
+                              BankAccountRepository acctRepo,
+                              BankAccountService acctService,
+                              PspClient pspClient,
+                              LaneExecutor asyncExecutor,
+                              LockManager lockManager,
+                              BankHealthRegistry bankHealthRegistry) {
+        this(txnRepo, acctRepo, acctService, pspClient, asyncExecutor, lockManager, bankHealthRegistry, new Options());
+    }
+
+    public TransactionService(TransactionRepository txnRepo,
+                              BankAccountRepository acctRepo,
+                              BankAccountService acctService,
+                              PspClient pspClient,
+                              LaneExecutor asyncExecutor,
+                              LockManager lockManager,
+                              BankHealthRegistry bankHealthRegistry,
+                              Options options) {
+        if (options.settlement != null && !options.settlement.clock().equals(options.clock)) {
+            throw new IllegalArgumentException("settlement engine must use the service's clock");
+        }
         this.txnRepo = txnRepo;
         this.acctRepo = acctRepo;
         this.acctService = acctService;
@@ -45,8 +113,17 @@ public class TransactionService {
         this.asyncExecutor = asyncExecutor;
         this.lockManager = lockManager;
         this.bankHealthRegistry = bankHealthRegistry;
+        this.admission = options.admission;
+        this.events = options.events;
+        this.limits = options.limits;
+        this.analytics = options.analytics;
+        this.settlement = options.settlement;
+        this.clock = options.clock;
     }
 
+    /** The clock transactions are stamped with; services built on this one (mandates, collects) use it too. */
+    public Clock clock() { return clock; }
+
     // DTO style request
     public Transaction createPayment(String idempotencyKey,
                                      UUID fromAccountId,
@@ -65,77 +142,326 @@ public class TransactionService {
         BankAccount fromAcct = acctRepo.findById(fromAccountId)
                 .orElseThrow(() -> new IllegalArgumentException("from account not found"));
 
-        // 2.6 check source bank health
+        // 2.6 if internal destination provided, check its bank (read-only)
         UUID fromBankId = fromAcct.bankId; // assumes public or getter
-        if (bankHealthRegistry != null && bankHealthRegistry.isDown(fromBankId)) {
-            throw new BankDownException("Source bank (" + fromBankId + ") is currently unavailable");
-        }
-
-        // 2.7 if internal destination provided, check its bank as well
+        BankAccount toAcct = null;
         if (toAccountId != null) {
-            BankAccount toAcct = acctRepo.findById(toAccountId)
+            toAcct = acctRepo.findById(toAccountId)
                     .orElseThrow(() -> new IllegalArgumentException("to account not found"));
+            // refused before anything is reserved; a payee deactivated later fails the payment at credit time
+            if (toAcct.status != AccountStatus.ACTIVE) throw new IllegalStateException("destination account is not active");
             UUID toBankId = toAcct.bankId;
             if (bankHealthRegistry != null && bankHealthRegistry.isDown(toBankId)) {
                 throw new BankDownException("Destination bank (" + toBankId + ") is currently unavailable");
             }
         }
 
-        // 3. reserve funds on fromAccount (after bank health checks)
-        acctService.reserve(fromAccountId, amount);
+        // 2.7 source bank health; PSP outcomes are recorded against it, so a recovering bank hands out a probe here
+        boolean probe = bankHealthRegistry != null && !bankHealthRegistry.isFullyUp(fromBankId);
+        if (bankHealthRegistry != null && !bankHealthRegistry.tryAcquireProbe(fromBankId)) {
+            throw new BankDownException("Source bank (" + fromBankId + ") is currently unavailable");
+        }
+
+        // 2.75 daily amount / count and velocity limits; counted now under the txn's id, rolled back if the payment does not go through
+        UUID txnId = UUID.randomUUID();
+        if (limits != null) limits.acquire(txnId, fromAcct.userId, fromAccountId, LimitsEngine.toPaise(amount), clock.millis());
+
+        // 2.8 admission control: in-flight budget, payer/bank rate limits, load shedding
+        try {
+            if (admission != null) admission.admit(fromAcct.userId, fromBankId);
+        } catch (RuntimeException e) {
+            releaseLimits(txnId, fromAcct.userId, fromAccountId, amount);
+            throw e;
+        }
+
+        // 3. reserve funds on fromAccount (after bank health, limit and admission checks)
+        try {
+            acctService.reserve(fromAccountId, amount);
+        } catch (RuntimeException e) {
+            releaseLimits(txnId, fromAcct.userId, fromAccountId, amount);
+            if (admission != null) admission.release();
+            throw e;
+        }
 
         // 4. create transaction (PENDING)
-        Transaction txn = new Transaction(UUID.randomUUID(), idempotencyKey, fromAccountId, toAccountId, toIdentifier, amount);
+        // the accounts' own id instances, so the many transactions of an account share one UUID object
+        Transaction txn = new Transaction(txnId, idempotencyKey, fromAcct.id, toAcct == null ? null : toAcct.id, toIdentifier, amount,
+                clock.instant());
         try {
             txnRepo.saveNew(txn);
         } catch (IdempotencyException e) {
             // If saving failed due to idempotency (rare race), release reserved and return existing
             acctService.release(fromAccountId, amount);
+            releaseLimits(txnId, fromAcct.userId, fromAccountId, amount);
+            if (admission != null) admission.release();
             throw e;
         }
+        publish(PaymentEventType.TXN_CREATED, txn);
+        if (analytics != null) analytics.recordCreated(fromBankId, pspClient.name(), LimitsEngine.toPaise(amount));
 
         // 5. async call to PSP to perform transfer
-        asyncExecutor.submit(() -> {
-            callPspAndHandle(txn.id);
-        });
+        submitPsp(txn.id, admission != null, ExecutionLane.INTERACTIVE, probe);
 
         return txn;
     }
 
-    private void callPspAndHandle(UUID txnId) {
+    /**
+     * Bulk variant of createPayment for payroll / cashback runs. Requests are grouped by source
+     * account; each group's total is reserved under one ordered lock acquisition, transactions
+     * are saved in bulk and PSP calls are handed to the executor in batches. Items fail
+     * independently: the result list is in request order and carries either the transaction
+     * or the reason the item was rejected. Bulk runs are not subject to interactive admission
+     * control or to per-user payment limits. A source bank that is recovering only gets as many
+     * items as it hands out probes; the rest are reported unavailable.
+     */
+    public List<PaymentResult> createPayments(List<PaymentRequest> requests) {
+        PaymentResult[] results = new PaymentResult[requests.size()];
+        Map<UUID, BankAccount> accounts = new HashMap<>();
+        Map<UUID, Boolean> bankDown = new HashMap<>();
+        Map<UUID, Boolean> bankFullyUp = new HashMap<>();
+        boolean[] probe = new boolean[results.length];
+        Set<String> keysInBatch = new HashSet<>();
+        // source account -> indexes of its requests, in request order
+        Map<UUID, List<Integer>> bySource = new LinkedHashMap<>();
+
+        // 1. validate, idempotency and bank health, with lookups cached for the whole batch
+        for (int i = 0; i < results.length; i++) {
+            PaymentRequest r = requests.get(i);
+            if (r.amount == null || r.amount.compareTo(BigDecimal.ZERO) <= 0) {
+                results[i] = PaymentResult.rejected(r, "amount must be > 0");
+                continue;
+            }
+            Optional<Transaction> existing = txnRepo.findByIdempotencyKey(r.idempotencyKey);
+            if (existing.isPresent()) {
+                results[i] = PaymentResult.accepted(r, existing.get());
+                continue;
+            }
+            if (r.idempotencyKey != null && !keysInBatch.add(r.idempotencyKey)) {
+                continue; // resolved to the first item's transaction after saving
+            }
+            BankAccount from = accounts.computeIfAbsent(r.fromAccountId, id -> acctRepo.findById(id).orElse(null));
+            if (from == null) {
+                results[i] = PaymentResult.rejected(r, "from account not found");
+                continue;
+            }
+            // a bank that is not fully up takes one probe per item, so a batch cannot flood it while it recovers
+            if (!bankFullyUp.computeIfAbsent(from.bankId, this::isBankFullyUp)) {
+                if (!bankHealthRegistry.tryAcquireProbe(from.bankId)) {
+                    results[i] = PaymentResult.unavailable(r, "Source bank (" + from.bankId + ") is currently unavailable");
+                    continue;
+                }
+                probe[i] = true;
+            }
+            if (r.toAccountId != null) {
+                BankAccount to = accounts.computeIfAbsent(r.toAccountId, id -> acctRepo.findById(id).orElse(null));
+                if (to == null) {
+                    results[i] = PaymentResult.rejected(r, "to account not found");
+                    continue;
+                }
+                if (bankDown.computeIfAbsent(to.bankId, this::isBankDown)) {
+                    results[i] = PaymentResult.unavailable(r, "Destination bank (" + to.bankId + ") is currently unavailable");
+                    continue;
+                }
+            }
+            bySource.computeIfAbsent(r.fromAccountId, id -> new ArrayList<>()).add(i);
+        }
+
+        // 2. reserve per source under ordered locks, a bounded number of accounts at a time
+        List<Transaction> toSave = new ArrayList<>();
+        Set<UUID> probes = new HashSet<>(); // txns that carry a probe of their source bank
+        List<UUID> sources = new ArrayList<>(bySource.keySet());
+        for (int from = 0; from < sources.size(); from += BULK_LOCK_GROUP) {
+            Map<UUID, List<BigDecimal>> amounts = new LinkedHashMap<>();
+            for (UUID src : sources.subList(from, Math.min(sources.size(), from + BULK_LOCK_GROUP))) {
+                List<BigDecimal> list = new ArrayList<>();
+                for (int idx : bySource.get(src)) list.add(requests.get(idx).amount);
+                amounts.put(src, list);
+            }
+            Map<UUID, boolean[]> reserved = acctService.reserveBatch(amounts);
+            for (UUID src : amounts.keySet()) {
+                boolean[] ok = reserved.get(src);
+                List<Integer> idxs = bySource.get(src);
+                for (int k = 0; k < idxs.size(); k++) {
+                    int idx = idxs.get(k);
+                    PaymentRequest r = requests.get(idx);
+                    if (!ok[k]) {
+                        results[idx] = PaymentResult.rejected(r, "Insufficient available balance");
+                        continue;
+                    }
+                    Transaction txn = new Transaction(UUID.randomUUID(), r.idempotencyKey, accounts.get(r.fromAccountId).id,
+                            r.toAccountId == null ? null : accounts.get(r.toAccountId).id, r.toIdentifier, r.amount, clock.instant());
+                    results[idx] = PaymentResult.accepted(r, txn);
+                    toSave.add(txn);
+                    if (probe[idx]) probes.add(txn.id);
+                }
+            }
+        }
+
+        // 3. bulk save; a key taken concurrently by another request releases its funds
+        Set<Transaction> duplicates = Collections.newSetFromMap(new IdentityHashMap<>());
+        duplicates.addAll(txnRepo.saveAllNew(toSave));
+        for (Transaction dup : duplicates) acctService.release(dup.fromAccountId, dup.amount);
+        if (!duplicates.isEmpty()) toSave.removeIf(duplicates::contains);
+        for (Transaction t : toSave) {
+            publish(PaymentEventType.TXN_CREATED, t);
+            if (analytics != null) analytics.recordCreated(accounts.get(t.fromAccountId).bankId, pspClient.name(), LimitsEngine.toPaise(t.amount));
+        }
+        for (int i = 0; i < results.length; i++) {
+            PaymentResult res = results[i];
+            PaymentRequest r = requests.get(i);
+            if (res != null && (!res.isAccepted() || !duplicates.contains(res.transaction))) continue;
+            // duplicate key (in batch or concurrent): report whatever transaction owns the key
+            results[i] = txnRepo.findByIdempotencyKey(r.idempotencyKey)
+                    .map(t -> PaymentResult.accepted(r, t))
+                    .orElseGet(() -> PaymentResult.unavailable(r, "duplicate idempotency key"));
+        }
+
+        // 4. PSP work in batches: one executor task per chunk of transactions
+        for (int from = 0; from < toSave.size(); from += BULK_PSP_BATCH) {
+            List<UUID> chunk = new ArrayList<>();
+            for (Transaction t : toSave.subList(from, Math.min(toSave.size(), from + BULK_PSP_BATCH))) chunk.add(t.id);
+            try {
+                runAsync(ExecutionLane.BULK, () -> chunk.forEach(id -> callPspAndHandle(id, probes.contains(id))));
+            } catch (RejectedExecutionException e) {
+                // left PENDING without a PSP id; the reconciler re-initiates them
+            }
+        }
+        return Arrays.asList(results);
+    }
+
+    // mark SUCCESS inside the open settlement cycle's window, so the cycle it lands in cannot close under it
+    private void markSuccess(Transaction txn, String pspTxnId, UUID fromBankId) {
+        if (limits != null) limits.finish(txn.id); // its counts stay
+        if (settlement == null || txn.toAccountId == null) {
+            txn.markSuccess(pspTxnId, clock.instant());
+            return;
+        }
+        UUID toBankId = acctRepo.findById(txn.toAccountId).map(a -> a.bankId).orElse(null);
+        SettlementEngine.Cycle cycle = settlement.enter();
+        try {
+            txn.markSuccess(pspTxnId, settlement.stamp(cycle));
+            settlement.record(cycle, txn, fromBankId, toBankId);
+        } finally {
+            settlement.exit(cycle);
+        }
+    }
+
+    private void publish(PaymentEventType type, Transaction txn) {
+        if (events != null) events.publishTransaction(type, txn);
+    }
+
+    // count a PSP answer / final outcome in the live analytics (by the txn's status after it)
+    private void recordOutcome(UUID bankId, Transaction txn) {
+        if (analytics != null) analytics.recordOutcome(bankId, pspClient.name(), txn.status, LimitsEngine.toPaise(txn.amount));
+    }
+
+    // undo a payment's limit counts (no-op when limits are off, or it was never counted or already released)
+    private void releaseLimits(UUID txnId, UUID userId, UUID accountId, BigDecimal amount) {
+        if (limits != null) limits.release(txnId, userId, accountId, LimitsEngine.toPaise(amount), clock.millis());
+    }
+
+    private void releaseLimits(UUID userId, Transaction txn) {
+        releaseLimits(txn.id, userId, txn.fromAccountId, txn.amount);
+    }
+
+    private boolean isBankDown(UUID bankId) {
+        return bankHealthRegistry != null && bankHealthRegistry.isDown(bankId);
+    }
+
+    private boolean isBankFullyUp(UUID bankId) {
+        return bankHealthRegistry == null || bankHealthRegistry.isFullyUp(bankId);
+    }
+
+    // hand the PSP call to the executor; queue wait is reported to admission control for load shedding
+    // probe: the payment took a probe from its recovering source bank, so its outcome decides the recovery
+    private void submitPsp(UUID txnId, boolean holdsAdmission, ExecutionLane lane, boolean probe) {
+        if (admission == null) {
+            runAsync(lane, () -> callPspAndHandle(txnId, probe));
+            return;
+        }
+        long enqueuedAt = System.nanoTime();
+        admission.taskQueued();
+        try {
+            runAsync(lane, () -> {
+                admission.taskStarted(System.nanoTime() - enqueuedAt);
+                try {
+                    callPspAndHandle(txnId, probe);
+                } finally {
+                    if (holdsAdmission) admission.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // executor refused: txn stays PENDING without a PSP id and the reconciler re-initiates it
+            admission.taskAbandoned();
+            if (holdsAdmission) admission.release();
+        }
+    }
+
+    private void callPspAndHandle(UUID txnId, boolean probe) {
         Transaction txn = txnRepo.findById(txnId).orElseThrow();
         // create transfer request using masked account
         BankAccount fromAcct = acctRepo.findById(txn.fromAccountId).orElseThrow();
         PspClient.PspResponse resp = null;
+        long start = System.nanoTime();
         try {
             resp = pspClient.initiateTransfer(fromAcct.maskedAccount, txn.toIdentifier, txn.amount);
         } catch (Throwable t) {
+            recordPspOutcome(fromAcct.bankId, start, true, probe);
             // network or other error -> leave pending for reconciler
             // keep txn PENDING and increment attempts
             txn.reconciliationAttempts++;
-            txn.updatedAt = Instant.now();
+            txn.updatedAt = clock.instant();
             txnRepo.update(txn);
             return;
         }
+        recordPspOutcome(fromAcct.bankId, start, false, probe); // a decline is an answer, not a bank failure
 
         // handle response
         if (resp.status == PspClient.PspStatus.SUCCESS) {
-            // settle reserved funds
-            acctService.settle(txn.fromAccountId, txn.amount);
-            // credit internal destination if applicable
-            if (txn.toAccountId != null) acctService.credit(txn.toAccountId, txn.amount);
-            txn.markSuccess(resp.pspTxnId);
-            txnRepo.update(txn);
+            // settle reserved funds, then credit internal destination if applicable
+            settleOrFail(txn, resp.pspTxnId, fromAcct);
         } else if (resp.status == PspClient.PspStatus.PENDING) {
             // store the PSP id and keep PENDING - reconciler will pick it up
-            txn.markPending(resp.pspTxnId);
+            txn.markPending(resp.pspTxnId, clock.instant());
             txnRepo.update(txn);
+            publish(PaymentEventType.TXN_PENDING, txn);
         } else {
             // failure -> release reserved amount and mark FAILED
             acctService.release(txn.fromAccountId, txn.amount);
-            txn.markFailed(resp.errorCode);
+            releaseLimits(fromAcct.userId, txn);
+            txn.markFailed(resp.errorCode, clock.instant());
+            txnRepo.update(txn);
+            publish(PaymentEventType.TXN_FAILED, txn);
+        }
+        recordOutcome(fromAcct.bankId, txn);
+    }
+
+    /*
+      The PSP reported SUCCESS: settle and credit, then mark SUCCESS. If the credit cannot be made
+      (payee deactivated meanwhile) settleAndCredit has moved nothing, or put the amount back into
+      the payer's reserved, and asking again would fail the same way forever: the payment fails
+      for good, its reservation and limit counts are released, and the PSP id stays on it.
+    */
+    private void settleOrFail(Transaction txn, String pspTxnId, BankAccount fromAcct) {
+        UUID fromBankId = fromAcct == null ? null : fromAcct.bankId;
+        try {
+            acctService.settleAndCredit(txn.fromAccountId, txn.toAccountId, txn.amount);
+        } catch (RuntimeException e) {
+            try {
+                acctService.release(txn.fromAccountId, txn.amount);
+            } catch (RuntimeException payerGone) {
+                // the payer was deactivated too: the amount went back to its balance without being reserved again
+            }
+            if (fromAcct != null) releaseLimits(fromAcct.userId, txn);
+            txn.pspTxnId = pspTxnId; // the PSP's record of the transfer stays on the failed transaction
+            txn.markFailed("CREDIT_FAILED", clock.instant());
             txnRepo.update(txn);
+            publish(PaymentEventType.TXN_FAILED, txn);
+            return;
         }
+        markSuccess(txn, pspTxnId, fromBankId);
+        txnRepo.update(txn);
+        publish(PaymentEventType.TXN_SUCCESS, txn);
     }
 
     // Expose ability for ReconciliationService to try reprocessing a pending txn:
@@ -145,39 +471,63 @@ public class TransactionService {
         if (txn.pspTxnId == null) {
             // No PSP id assigned - re-initiate PSP call
             txn.reconciliationAttempts++;
-            txn.updatedAt = Instant.now();
+            txn.updatedAt = clock.instant();
             txnRepo.update(txn);
-            asyncExecutor.submit(() -> callPspAndHandle(txn.id));
+            submitPsp(txn.id, false, ExecutionLane.RETRY, false);
             return;
         }
         // Query PSP for status
-        PspClient.PspResponse resp = pspClient.queryStatus(txn.pspTxnId);
+        BankAccount fromAcct = acctRepo.findById(txn.fromAccountId).orElse(null);
+        UUID fromBankId = fromAcct == null ? null : fromAcct.bankId;
+        long start = System.nanoTime();
+        PspClient.PspResponse resp;
+        try {
+            resp = pspClient.queryStatus(txn.pspTxnId);
+        } catch (RuntimeException e) {
+            recordPspOutcome(fromBankId, start, true, false);
+            throw e;
+        }
+        recordPspOutcome(fromBankId, start, false, false);
         if (resp.status == PspClient.PspStatus.SUCCESS) {
-            // settle
-            acctService.settle(txn.fromAccountId, txn.amount);
-            if (txn.toAccountId != null) acctService.credit(txn.toAccountId, txn.amount);
-            txn.markSuccess(resp.pspTxnId);
-            txnRepo.update(txn);
+            // settle + credit
+            settleOrFail(txn, resp.pspTxnId, fromAcct);
+            recordOutcome(fromBankId, txn);
         } else if (resp.status == PspClient.PspStatus.FAILED) {
             acctService.release(txn.fromAccountId, txn.amount);
-            txn.markFailed(resp.errorCode);
+            if (fromAcct != null) releaseLimits(fromAcct.userId, txn);
+            txn.markFailed(resp.errorCode, clock.instant());
             txnRepo.update(txn);
+            publish(PaymentEventType.TXN_FAILED, txn);
+            recordOutcome(fromBankId, txn);
         } else {
             // still pending - increment attempts and maybe timeout
             txn.reconciliationAttempts++;
-            txn.updatedAt = Instant.now();
+            txn.updatedAt = clock.instant();
             txnRepo.update(txn);
-            if (txn.reconciliationAttempts > maxAttempts || Duration.between(txn.createdAt, Instant.now()).compareTo(maxPendingDuration) > 0) {
+            if (txn.reconciliationAttempts > maxAttempts || Duration.between(txn.createdAt, clock.instant()).compareTo(maxPendingDuration) > 0) {
                 // give up -> fail and release
                 acctService.release(txn.fromAccountId, txn.amount);
-                txn.markFailed("RECONCILE_TIMEOUT");
+                if (fromAcct != null) releaseLimits(fromAcct.userId, txn);
+                txn.markFailed("RECONCILE_TIMEOUT", clock.instant());
                 txnRepo.update(txn);
+                publish(PaymentEventType.TXN_FAILED, txn);
+                recordOutcome(fromBankId, txn);
             }
         }
     }
 
+    private void runAsync(ExecutionLane lane, Runnable task) {
+        asyncExecutor.execute(lane, task);
+    }
+
+    // feed PSP latency / transport failures (not declines) to the health registry so it can open a circuit for a degraded bank
+    private void recordPspOutcome(UUID bankId, long startNanos, boolean failed, boolean probe) {
+        if (bankHealthRegistry != null) bankHealthRegistry.recordOutcome(bankId, System.nanoTime() - startNanos, failed, probe);
+    }
+
     // query and search operations:
     public Optional<Transaction> getTransaction(UUID id) { return txnRepo.findById(id); }
+    public Optional<Transaction> findByIdempotencyKey(String key) { return txnRepo.findByIdempotencyKey(key); }
     public List<Transaction> searchByPayerOrPayee(UUID payer, String payeeIdentifier) {
         return txnRepo.search(t ->
                 (payer != null && t.fromAccountId != null && t.fromAccountId.equals(payer)) ||
@@ -189,5 +539,15 @@ public class TransactionService {
         return txnRepo.findByFromOrTo(userAccountId, userAccountId);
     }
 
+    // statements / exports: rows are produced as consumed instead of collected into one list
+    public Stream<Transaction> streamByUserAccount(UUID userAccountId) {
+        return txnRepo.streamByFromOrTo(userAccountId, userAccountId);
+    }
+
+    // latest first, up to limit; point reads, no scan
+    public List<Transaction> recentByUserAccount(UUID userAccountId, int limit) {
+        return txnRepo.findRecentByAccount(userAccountId, limit);
+    }
+
     public List<Transaction> findPending() { return txnRepo.findByStatus(TransactionStatus.PENDING); }
 }